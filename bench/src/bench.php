@@ -4,17 +4,22 @@ use benchmarks\ArrayAccessBenchmark;
 use benchmarks\ArrayBenchmark;
 use benchmarks\Benchmark;
 use benchmarks\ClosureBenchmark;
+use benchmarks\ConcurrentObjectPropertyBenchmark;
 use benchmarks\ConditionBenchmark;
 use benchmarks\ConstantCallBenchmark;
 use benchmarks\DynamicAccessBenchmark;
 use benchmarks\FetchConstantsBenchmark;
 use benchmarks\FibonacciBenchmark;
+use benchmarks\GeneratorBenchmark;
 use benchmarks\GetterSetterBenchmark;
+use benchmarks\HttpRouterBenchmark;
 use benchmarks\IteratorBenchmark;
 use benchmarks\LoopBenchmark;
 use benchmarks\MathBenchmark;
 use benchmarks\NewObjectBenchmark;
 use benchmarks\ObjectPropertyBenchmark;
+use benchmarks\RegexBenchmark;
+use benchmarks\SerializeBenchmark;
 use benchmarks\ServiceContainerBenchmark;
 use benchmarks\SimpleFuncCallBenchmark;
 use benchmarks\SimpleMethodCallBenchmark;
@@ -12,6 +12,8 @@ abstract class Benchmark {
 	/** @var Benchmark[] */
 	protected static $benchmarks = array();
 
+	protected static $operations = array();
+
 	protected $isJphp;
 
 	function __construct()
@@ -22,6 +24,19 @@ abstract class Benchmark {
 	abstract public function getName();
 	abstract public function run();
 
+	/**
+	 * Count of operations in one run(), if it is set the result contains ops per second.
+	 */
+	public function getOperations() {
+		return 0;
+	}
+
+	/**
+	 * Called after all runs.
+	 */
+	public function finish() {
+	}
+
 	static function register(Benchmark $benchmark) {
 		self::$benchmarks[] = $benchmark;
 	}
@@ -60,16 +75,32 @@ abstract class Benchmark {
 		Benchmark::register(new TypeHintingBenchmark());
 		Benchmark::register(new NewObjectBenchmark());
 		Benchmark::register(new ObjectPropertyBenchmark());
+		Benchmark::register(new ConcurrentObjectPropertyBenchmark());
 		Benchmark::register(new ArrayBenchmark());
 		Benchmark::register(new StringBenchmark());
+		Benchmark::register(new StringBenchmark(10000));
+		Benchmark::register(new StringBenchmark(10000, 100));
+		Benchmark::register(new RegexBenchmark());
 		Benchmark::register(new ClosureBenchmark());
 		Benchmark::register(new UndefinedBenchmark());
 		Benchmark::register(new SingletonBenchmark());
 		Benchmark::register(new ArrayAccessBenchmark());
 		Benchmark::register(new GetterSetterBenchmark());
 		Benchmark::register(new IteratorBenchmark());
+		Benchmark::register(new GeneratorBenchmark());
 		Benchmark::register(new ServiceContainerBenchmark());
 		Benchmark::register(new NBodyBenchmark());
+		Benchmark::register(new SerializeBenchmark(false));
+
+		if (function_exists('serialize_binary')) {
+			Benchmark::register(new SerializeBenchmark(true));
+		}
+
+		if (class_exists('php\\http\\HttpServer')) {
+			foreach ([10, 100, 1000] as $routes) {
+				Benchmark::register(new HttpRouterBenchmark($routes));
+			}
+		}
 	}
 
 	static function startBench() {
@@ -82,6 +113,7 @@ abstract class Benchmark {
 				$stat = microtime(1) - $t;
 
 				$result[$benchmark->getName()] += $stat;
+				self::$operations[$benchmark->getName()] += $benchmark->getOperations();
 			}
 		}
 
@@ -95,7 +127,13 @@ abstract class Benchmark {
 			self::startServer();
 			return [];
 		}
-		return self::startBench();
+		$result = self::startBench();
+
+		foreach (self::$benchmarks as $benchmark) {
+			$benchmark->finish();
+		}
+
+		return $result;
 	}
 
 	static function showResult($result) {
@@ -106,6 +144,10 @@ abstract class Benchmark {
 		foreach ($result as $type => $stat) {
 			$total += $stat;
 			echo "\n -> " . $type . ": " . round($stat * 1000) . " ms";
+
+			if (self::$operations[$type] && $stat > 0) {
+				echo " (" . round(self::$operations[$type] / $stat) . " ops/s)";
+			}
 		}
 
 		echo "\n\n-------- ";
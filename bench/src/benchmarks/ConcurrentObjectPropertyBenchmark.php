@@ -0,0 +1,62 @@
+<?php
+namespace benchmarks;
+
+use php\lang\Environment;
+use php\lang\Thread;
+
+/**
+ * Object property benchmark running in several threads of one concurrent environment.
+ */
+class ConcurrentObjectPropertyBenchmark extends Benchmark
+{
+    const THREADS = 4;
+    const RUNS_PER_THREAD = 25;
+
+    /** @var Environment */
+    protected $env;
+
+    public function getName()
+    {
+        return "object property (" . self::THREADS . " threads)";
+    }
+
+    public function getOperations()
+    {
+        return self::THREADS * self::RUNS_PER_THREAD * self::DEFAULT_ITERATIONS;
+    }
+
+    public function run()
+    {
+        if (!$this->isJphp) {
+            for ($i = 0; $i < self::THREADS * self::RUNS_PER_THREAD; $i++) {
+                (new ObjectPropertyBenchmark())->run();
+            }
+
+            return;
+        }
+
+        if (!$this->env) {
+            $this->env = new Environment(null, Environment::CONCURRENT);
+            $this->env->importClass(ObjectPropertyBenchmark::class);
+            $this->env->importClass(ObjectPropertyBenchmark_A::class);
+        }
+
+        $threads = [];
+
+        for ($i = 0; $i < self::THREADS; $i++) {
+            $threads[] = $thread = new Thread(function () {
+                $benchmark = new ObjectPropertyBenchmark();
+
+                for ($i = 0; $i < self::RUNS_PER_THREAD; $i++) {
+                    $benchmark->run();
+                }
+            }, $this->env);
+
+            $thread->start();
+        }
+
+        foreach ($threads as $thread) {
+            $thread->join();
+        }
+    }
+}
@@ -0,0 +1,41 @@
+<?php
+
+namespace benchmarks;
+
+class GeneratorBenchmark extends Benchmark
+{
+    const YIELDS = 1000;
+
+    public function getName()
+    {
+        return "generator";
+    }
+
+    public function getOperations()
+    {
+        return self::YIELDS * 2;
+    }
+
+    protected function rows($count)
+    {
+        for ($i = 0; $i < $count; $i++) {
+            yield $i => ['id' => $i, 'value' => $i * 2];
+        }
+    }
+
+    protected function map($rows)
+    {
+        foreach ($rows as $key => $row) {
+            yield $key => $row['value'] + 1;
+        }
+    }
+
+    public function run()
+    {
+        $r = 0;
+
+        foreach ($this->map($this->rows(self::YIELDS)) as $value) {
+            $r += $value;
+        }
+    }
+}
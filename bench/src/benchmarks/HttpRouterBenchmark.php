@@ -0,0 +1,68 @@
+<?php
+namespace benchmarks;
+
+use php\http\HttpServer;
+
+/**
+ * Requests per second of a http server with many routes, the requested route is added last.
+ */
+class HttpRouterBenchmark extends Benchmark
+{
+    const PORT = 18000;
+    const REQUESTS = 2;
+
+    protected $routes;
+
+    /** @var HttpServer */
+    protected $server;
+
+    function __construct($routes)
+    {
+        parent::__construct();
+        $this->routes = $routes;
+    }
+
+    public function getName()
+    {
+        return "http router (" . $this->routes . " routes)";
+    }
+
+    public function getOperations()
+    {
+        return self::REQUESTS;
+    }
+
+    protected function createServer()
+    {
+        $this->server = new HttpServer(self::PORT + $this->routes, '127.0.0.1');
+
+        for ($i = 0; $i < $this->routes; $i++) {
+            $this->server->get("/api/v1/resource$i/{id}", function () {
+                return 'ok';
+            });
+        }
+
+        $this->server->runInBackground();
+    }
+
+    public function run()
+    {
+        if (!$this->server) {
+            $this->createServer();
+        }
+
+        $url = "http://127.0.0.1:" . (self::PORT + $this->routes) . "/api/v1/resource" . ($this->routes - 1) . "/42";
+
+        for ($i = 0; $i < self::REQUESTS; $i++) {
+            file_get_contents($url);
+        }
+    }
+
+    public function finish()
+    {
+        if ($this->server) {
+            $this->server->shutdown();
+            $this->server = null;
+        }
+    }
+}
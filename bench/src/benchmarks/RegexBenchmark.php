@@ -0,0 +1,67 @@
+<?php
+namespace benchmarks;
+
+use php\util\Regex;
+
+/**
+ * Validation-like regex calls with the same patterns: Regex::match(), Regex::split() and replace(),
+ * preg_* functions for zend php. Literal patterns use the fast paths without the regex engine.
+ */
+class RegexBenchmark extends Benchmark
+{
+    const COUNT = 100;
+
+    protected $values = [
+        'john.doe@example.com',
+        '2024-01-15',
+        'foo,bar,baz,qux',
+        '+1 (555) 123-4567',
+    ];
+
+    public function getName()
+    {
+        return "regex";
+    }
+
+    public function getOperations()
+    {
+        return self::COUNT * 6;
+    }
+
+    public function runJphp()
+    {
+        foreach ($this->values as $value) {
+            $email = Regex::match('^[\\w.+-]+@[\\w-]+\\.[\\w.]+$', $value);
+            $date = Regex::match('^\\d{4}-\\d{2}-\\d{2}$', $value);
+            $comma = Regex::match(',', $value);
+            $parts = Regex::split(',', $value);
+            $digits = Regex::of('\\D', 0, $value)->replace('');
+            $dashes = Regex::of('-', 0, $value)->replace('/');
+        }
+    }
+
+    public function runZendPhp()
+    {
+        foreach ($this->values as $value) {
+            $email = preg_match('/^[\\w.+-]+@[\\w-]+\\.[\\w.]+$/', $value);
+            $date = preg_match('/^\\d{4}-\\d{2}-\\d{2}$/', $value);
+            $comma = preg_match('/,/', $value);
+            $parts = preg_split('/,/', $value);
+            $digits = preg_replace('/\\D/', '', $value);
+            $dashes = preg_replace('/-/', '/', $value);
+        }
+    }
+
+    public function run()
+    {
+        $count = self::COUNT / sizeof($this->values);
+
+        for ($i = 0; $i < $count; $i++) {
+            if ($this->isJphp) {
+                $this->runJphp();
+            } else {
+                $this->runZendPhp();
+            }
+        }
+    }
+}
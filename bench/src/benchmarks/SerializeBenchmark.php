@@ -0,0 +1,56 @@
+<?php
+namespace benchmarks;
+
+/**
+ * serialize() + unserialize() of a cache-like value in the text or the binary (serialize_binary) format,
+ * the size of the serialized value is shown in the name.
+ */
+class SerializeBenchmark extends Benchmark
+{
+    const COUNT = 10;
+
+    protected $binary;
+    protected $value;
+    protected $size;
+
+    function __construct($binary)
+    {
+        parent::__construct();
+        $this->binary = $binary;
+
+        $items = [];
+        for ($i = 0; $i < 100; $i++) {
+            $items[] = [
+                'id' => $i,
+                'title' => "Item $i",
+                'price' => $i * 1.5,
+                'active' => $i % 2 == 0,
+                'tags' => ['foo', 'bar', 'baz'],
+            ];
+        }
+
+        $this->value = ['total' => 100, 'page' => 1, 'items' => $items];
+        $this->size = strlen($binary ? serialize_binary($this->value) : serialize($this->value));
+    }
+
+    public function getName()
+    {
+        return "serialize " . ($this->binary ? "binary" : "text") . " (" . $this->size . " bytes)";
+    }
+
+    public function getOperations()
+    {
+        return self::COUNT;
+    }
+
+    public function run()
+    {
+        for ($i = 0; $i < self::COUNT; $i++) {
+            if ($this->binary) {
+                $value = unserialize_binary(serialize_binary($this->value));
+            } else {
+                $value = unserialize(serialize($this->value));
+            }
+        }
+    }
+}
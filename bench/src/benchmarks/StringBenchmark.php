@@ -5,11 +5,54 @@ use php\lib\Str;
 
 class StringBenchmark extends Benchmark
 {
+    /**
+     * Count of `.=` in one run, 0 - string functions only.
+     */
+    protected $appends;
+
+    /**
+     * Read the whole string after each N appends.
+     */
+    protected $readEach;
+
+    function __construct($appends = 0, $readEach = 0)
+    {
+        parent::__construct();
+        $this->appends = $appends;
+        $this->readEach = $readEach;
+    }
+
     public function getName()
     {
+        if ($this->appends) {
+            return "string concat (" . $this->appends . " appends"
+                . ($this->readEach ? ", read each " . $this->readEach : "") . ")";
+        }
+
         return "string";
     }
 
+    public function getOperations()
+    {
+        return $this->appends;
+    }
+
+    public function runConcat()
+    {
+        $html = '';
+        $length = 0;
+
+        for ($i = 0; $i < $this->appends; $i++) {
+            $html .= '<li class="item">' . $i . '</li>';
+
+            if ($this->readEach && $i % $this->readEach == 0) {
+                $length += strlen($html);
+            }
+        }
+
+        return $html;
+    }
+
     public function runJphp()
     {
         $str1 = 'foobar';
@@ -40,6 +83,11 @@ class StringBenchmark extends Benchmark
 
     public function run()
     {
+        if ($this->appends) {
+            $this->runConcat();
+            return;
+        }
+
         $isJphp = $this->isJphp;
 
         $str1 = 'foobar';
@@ -1,6 +1,7 @@
 package org.develnext.jphp.ext.httpserver.classes;
 
 import org.develnext.jphp.ext.httpserver.HttpServerExtension;
+import org.develnext.jphp.ext.httpserver.support.HttpRouter;
 import php.runtime.Memory;
 import php.runtime.annotation.Reflection;
 import php.runtime.annotation.Reflection.Name;
@@ -33,8 +34,6 @@ public class PHttpRouteFilter extends PHttpAbstractHandler {
     private Invoker invoker;
     private Memory handler;
 
-    private static Pattern pathConverterPattern = Pattern.compile("(\\{[\\w\\d\\-\\_\\*]+\\}|\\*\\*)", Pattern.CASE_INSENSITIVE);
-
     public PHttpRouteFilter(Environment env) {
         super(env);
     }
@@ -65,36 +64,7 @@ public class PHttpRouteFilter extends PHttpAbstractHandler {
             }
         }
 
-        Matcher matcher = pathConverterPattern.matcher(path);
-
-        StringBuffer sb = new StringBuffer();
-        sb.append("^");
-
-        while (matcher.find()) {
-            String partName = matcher.group(1);
-
-            String part = "([^\\/]+)";
-
-            if ("**".equals(partName)) {
-                part = "(.*)";
-            }
-
-            if (partName.startsWith("{")) {
-                partName = partName.substring(1);
-            }
-
-            if (partName.endsWith("}")) {
-                partName = partName.substring(0, partName.length() - 1);
-            }
-
-            pathParts.add(partName);
-            matcher.appendReplacement(sb, part);
-        }
-
-        matcher.appendTail(sb);
-        sb.append("$");
-
-        this.pathPattern = Pattern.compile(sb.toString());
+        this.pathPattern = HttpRouter.compilePattern(path, pathParts);
     }
 
     @Signature
@@ -128,7 +98,7 @@ public class PHttpRouteFilter extends PHttpAbstractHandler {
     }
 
     @Signature
-    public boolean __invoke(PHttpServerRequest request, PHttpServerResponse response) throws Throwable {
+    public boolean __invoke(Environment env, PHttpServerRequest request, PHttpServerResponse response) throws Throwable {
         if (!methods.isEmpty()) {
             String method = request.method().toUpperCase();
 
@@ -160,12 +130,19 @@ public class PHttpRouteFilter extends PHttpAbstractHandler {
             return false;
         }
 
+        handle(env, request, response);
+        return true;
+    }
+
+    /**
+     * Calls the handler of the route matched to the request in the environment of the request.
+     */
+    public void handle(Environment env, PHttpServerRequest request, PHttpServerResponse response) throws Throwable {
+        Invoker invoker = env == this.invoker.getEnvironment() ? this.invoker : Invoker.create(env, handler);
         Memory call = invoker.call(ObjectMemory.valueOf(request), ObjectMemory.valueOf(response));
 
         if (call.toBoolean()) {
             response.write(StringMemory.valueOf(call.toString()));
         }
-
-        return true;
     }
 }
@@ -20,14 +20,8 @@ public class PHttpRouteHandler extends PHttpRouteFilter {
     }
 
     @Override
-    @Signature
-    public boolean __invoke(PHttpServerRequest request, PHttpServerResponse response) throws Throwable {
-        boolean invoke = super.__invoke(request, response);
-
-        if (invoke) {
-            request.end();
-        }
-
-        return invoke;
+    public void handle(Environment env, PHttpServerRequest request, PHttpServerResponse response) throws Throwable {
+        super.handle(env, request, response);
+        request.end();
     }
 }
@@ -2,10 +2,13 @@ package org.develnext.jphp.ext.httpserver.classes;
 
 import javax.servlet.RequestDispatcher;
 import org.develnext.jphp.ext.httpserver.HttpServerExtension;
+import org.develnext.jphp.ext.httpserver.support.HttpRouter;
 import org.eclipse.jetty.server.*;
 import org.eclipse.jetty.server.handler.*;
 import org.eclipse.jetty.server.session.DefaultSessionIdManager;
 import org.eclipse.jetty.server.session.SessionHandler;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
 import org.eclipse.jetty.util.ssl.SslContextFactory;
 import org.eclipse.jetty.util.thread.QueuedThreadPool;
 import org.eclipse.jetty.websocket.api.Session;
@@ -21,16 +24,22 @@ import php.runtime.annotation.Reflection.Namespace;
 import php.runtime.annotation.Reflection.Nullable;
 import php.runtime.annotation.Reflection.Signature;
 import php.runtime.env.Environment;
+import php.runtime.env.EnvironmentPool;
 import php.runtime.invoke.Invoker;
 import php.runtime.lang.BaseObject;
 import php.runtime.memory.*;
 import php.runtime.reflection.ClassEntity;
+import php.runtime.util.VirtualThreads;
 
+import javax.servlet.AsyncContext;
+import javax.servlet.DispatcherType;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 
 @Name("HttpServer")
 @Namespace(HttpServerExtension.NS)
@@ -40,6 +49,11 @@ public class PHttpServer extends BaseObject {
     private HandlerList filters = new HandlerList();
     private SessionIdManager idmanager;
     private QueuedThreadPool threadPool;
+    private EnvironmentPool environmentPool;
+    private boolean virtualThreads;
+    private ExecutorService virtualExecutor;
+
+    private static final ThreadLocal<Environment> currentRequestEnvironment = new ThreadLocal<>();
 
     public PHttpServer(Environment env, Server server) {
         super(env);
@@ -48,6 +62,7 @@ public class PHttpServer extends BaseObject {
 
     public PHttpServer(Environment env, ClassEntity clazz) {
         super(env, clazz);
+        virtualThreads = env.getScope().isVirtualThreads();
     }
 
     @Signature
@@ -115,6 +130,52 @@ public class PHttpServer extends BaseObject {
         return threadPool.getIdleTimeout();
     }
 
+    /**
+     * Runs handlers of requests on virtual threads instead of the threads of the pool when the JVM supports them.
+     */
+    @Signature
+    public void virtualThreads(Environment env, boolean value) {
+        if (server.isRunning()) {
+            env.exception("Unable to change the thread mode of running server");
+        }
+
+        virtualThreads = value;
+    }
+
+    @Signature
+    public boolean virtualThreads() {
+        return virtualThreads && VirtualThreads.isSupported();
+    }
+
+    /**
+     * Runs each request in an own environment from a pool of copies of the current environment, 0 - disable.
+     */
+    @Signature
+    public void environmentPool(Environment env, int maxSize) {
+        if (server.isRunning()) {
+            env.exception("Unable to change the environment pool of running server");
+        }
+
+        environmentPool = maxSize > 0 ? new EnvironmentPool(env, maxSize) : null;
+    }
+
+    @Signature
+    public Memory environmentPoolStats() {
+        if (environmentPool == null) {
+            return Memory.NULL;
+        }
+
+        ArrayMemory result = ArrayMemory.createHashed();
+        result.refOfIndex("maxSize").assign(environmentPool.getMaxSize());
+        result.refOfIndex("active").assign(environmentPool.getActiveCount());
+        result.refOfIndex("idle").assign(environmentPool.getIdleCount());
+        result.refOfIndex("created").assign(environmentPool.getCreatedCount());
+        result.refOfIndex("reused").assign(environmentPool.getReusedCount());
+        result.refOfIndex("dropped").assign(environmentPool.getDroppedCount());
+
+        return result.toImmutable();
+    }
+
     @Signature
     public boolean stopAtShutdown() {
         return server.getStopAtShutdown();
@@ -202,7 +263,7 @@ public class PHttpServer extends BaseObject {
         PHttpRouteHandler routeHandler = new PHttpRouteHandler(env);
         routeHandler.reset(env, methods, path, invoker);
 
-        addHandler(Invoker.create(env, ObjectMemory.valueOf(routeHandler)));
+        handlers.addHandler(new RouteInvokeHandler(Invoker.create(env, ObjectMemory.valueOf(routeHandler)), routeHandler));
         return routeHandler;
     }
 
@@ -388,11 +449,31 @@ public class PHttpServer extends BaseObject {
             handlerList.addHandler(handler);
         }
 
+        // routes in a row are matched by one router, other handlers keep their order.
+        RouterHandler router = null;
+
         for (Handler handler : handlers.getHandlers()) {
-            handlerList.addHandler(handler);
+            if (handler instanceof RouteInvokeHandler) {
+                if (router == null) {
+                    router = new RouterHandler();
+                    handlerList.addHandler(router);
+                }
+
+                router.add(((RouteInvokeHandler) handler).getRoute());
+            } else {
+                router = null;
+                handlerList.addHandler(handler);
+            }
+        }
+
+        Handler handler = environmentPool == null ? handlerList : new EnvironmentPoolHandler(environmentPool, handlerList);
+
+        if (virtualThreads()) {
+            virtualExecutor = VirtualThreads.newExecutor("jphp-http");
+            handler = new ExecutorHandler(virtualExecutor, handler);
         }
 
-        server.setHandler(handlerList);
+        server.setHandler(handler);
         server.start();
     }
 
@@ -405,6 +486,11 @@ public class PHttpServer extends BaseObject {
     @Signature
     public void shutdown() throws Exception {
         server.stop();
+
+        if (virtualExecutor != null) {
+            virtualExecutor.shutdown();
+            virtualExecutor = null;
+        }
     }
 
     @Signature
@@ -473,10 +559,152 @@ public class PHttpServer extends BaseObject {
 
         @Override
         public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException {
+            Environment env = requestEnvironment(invoker.getEnvironment());
+            Invoker requestInvoker = env == invoker.getEnvironment() ? invoker : Invoker.create(env, invoker.getMemory());
+
+            try {
+                requestInvoker.callAny(new PHttpServerRequest(env, baseRequest), new PHttpServerResponse(env, response));
+            } catch (Throwable e) {
+                Environment.catchThrowable(e, env);
+            }
+        }
+    }
+
+    /**
+     * @return the pooled environment of the current request or the default one.
+     */
+    protected static Environment requestEnvironment(Environment defaultEnv) {
+        Environment env = currentRequestEnvironment.get();
+        return env == null ? defaultEnv : env;
+    }
+
+    public static class EnvironmentPoolHandler extends HandlerWrapper {
+        private final EnvironmentPool pool;
+
+        public EnvironmentPoolHandler(EnvironmentPool pool, Handler handler) {
+            this.pool = pool;
+            setHandler(handler);
+        }
+
+        @Override
+        public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException {
+            Environment env;
+
+            try {
+                env = pool.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ServletException(e);
+            }
+
+            currentRequestEnvironment.set(env);
+            Environment previous = Environment.bindCurrent(env);
+
+            try {
+                super.handle(target, baseRequest, request, response);
+            } finally {
+                Environment.bindCurrent(previous);
+                currentRequestEnvironment.remove();
+                pool.release(env);
+            }
+        }
+    }
+
+    /**
+     * Handles requests in async mode by tasks of the executor, a thread of the server pool is released
+     * while a handler is blocked on io.
+     */
+    public static class ExecutorHandler extends HandlerWrapper {
+        private static final Logger LOG = Log.getLogger(ExecutorHandler.class);
+
+        private final Executor executor;
+
+        public ExecutorHandler(Executor executor, Handler handler) {
+            this.executor = executor;
+            setHandler(handler);
+        }
+
+        @Override
+        public void handle(final String target, final Request baseRequest, final HttpServletRequest request, final HttpServletResponse response) throws IOException, ServletException {
+            if (baseRequest.getDispatcherType() != DispatcherType.REQUEST) {
+                super.handle(target, baseRequest, request, response);
+                return;
+            }
+
+            final AsyncContext context = request.startAsync();
+            context.setTimeout(0);
+
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        ExecutorHandler.super.handle(target, baseRequest, request, response);
+
+                        // the same as the server does after sync handling.
+                        if (!baseRequest.isHandled() && !response.isCommitted()) {
+                            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+                        }
+                    } catch (Throwable e) {
+                        LOG.warn(e);
+
+                        if (!response.isCommitted()) {
+                            try {
+                                response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+                            } catch (IOException ignore) {
+                                // nop.
+                            }
+                        }
+                    } finally {
+                        baseRequest.setHandled(true);
+                        context.complete();
+                    }
+                }
+            });
+        }
+    }
+
+    public static class RouteInvokeHandler extends InvokeHandler {
+        private final PHttpRouteFilter route;
+
+        public RouteInvokeHandler(Invoker invoker, PHttpRouteFilter route) {
+            super(invoker);
+            this.route = route;
+        }
+
+        public PHttpRouteFilter getRoute() {
+            return route;
+        }
+    }
+
+    /**
+     * Handler of routes, finds a route via {@link HttpRouter} instead of matching routes one by one.
+     */
+    public static class RouterHandler extends AbstractHandler {
+        private final HttpRouter<PHttpRouteFilter> router = new HttpRouter<>();
+
+        public void add(PHttpRouteFilter route) {
+            router.add(route.methods(), route.path(), route);
+        }
+
+        @Override
+        public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException {
+            HttpRouter.Match<PHttpRouteFilter> match = router.match(baseRequest.getMethod().toUpperCase(), baseRequest.getPathInfo());
+
+            if (match == null) {
+                return;
+            }
+
+            PHttpRouteFilter route = match.getValue();
+            Environment env = requestEnvironment(route.getEnvironment());
+
+            for (int i = 0; i < match.size(); i++) {
+                baseRequest.setAttribute(match.getName(i), match.getParam(i));
+            }
+
             try {
-                invoker.callAny(new PHttpServerRequest(invoker.getEnvironment(), baseRequest), new PHttpServerResponse(invoker.getEnvironment(), response));
+                route.handle(env, new PHttpServerRequest(env, baseRequest), new PHttpServerResponse(env, response));
             } catch (Throwable e) {
-                Environment.catchThrowable(e, invoker.getEnvironment());
+                Environment.catchThrowable(e, env);
             }
         }
     }
@@ -0,0 +1,331 @@
+package org.develnext.jphp.ext.httpserver.support;
+
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Router of paths with static, {param} and ** segments, routes are kept in a segment tree per http method.
+ *
+ * The result is the same as of checking patterns of the routes in the order of adding: when several routes
+ * match a path the first added wins. Paths which are not split to segments (a param or ** inside a segment,
+ * ** not at the end, regex chars) are checked via their patterns.
+ */
+public class HttpRouter<T> {
+    public static final String WILDCARD = "**";
+
+    private static final int MAX_PARAMS = 16;
+
+    private static final Pattern PATH_CONVERTER_PATTERN = Pattern.compile("(\\{[\\w\\d\\-\\_\\*]+\\}|\\*\\*)", Pattern.CASE_INSENSITIVE);
+    private static final Pattern PARAM_PATTERN = Pattern.compile("\\{[\\w\\d\\-\\_\\*]+\\}");
+    private static final Pattern LITERAL_PATTERN = Pattern.compile("[^\\\\^$.|?*+()\\[\\]{}]*");
+
+    private final Map<String, Node<T>> methodTrees = new HashMap<>();
+    private final Node<T> anyMethodTree = new Node<>();
+    private final List<Route<T>> patternRoutes = new ArrayList<>();
+
+    private int count = 0;
+
+    /**
+     * @param methods upper case methods, empty for any method
+     */
+    public void add(Collection<String> methods, String path, T value) {
+        Route<T> route = new Route<>(count++, methods, value);
+        String[] segments = path.split("/", -1);
+
+        if (!isTreePath(segments)) {
+            List<String> names = new ArrayList<>();
+
+            route.pattern = compilePattern(path, names);
+            route.names = names.toArray(new String[names.size()]);
+            patternRoutes.add(route);
+            return;
+        }
+
+        List<String> names = new ArrayList<>();
+
+        for (String segment : segments) {
+            if (segment.equals(WILDCARD)) {
+                names.add(WILDCARD);
+            } else if (segment.startsWith("{")) {
+                names.add(segment.substring(1, segment.length() - 1));
+            }
+        }
+
+        route.names = names.toArray(new String[names.size()]);
+
+        if (methods.isEmpty()) {
+            anyMethodTree.add(segments, route);
+        } else {
+            for (String method : methods) {
+                Node<T> tree = methodTrees.get(method);
+
+                if (tree == null) {
+                    methodTrees.put(method, tree = new Node<>());
+                }
+
+                tree.add(segments, route);
+            }
+        }
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * @return the first added route of the method matching the path or null
+     */
+    public Match<T> match(String method, String path) {
+        if (path == null) {
+            path = "";
+        }
+
+        Search<T> search = new Search<>(path);
+
+        Node<T> tree = methodTrees.get(method);
+        if (tree != null) {
+            search.visit(tree, 0, 0);
+        }
+
+        search.visit(anyMethodTree, 0, 0);
+
+        for (Route<T> route : patternRoutes) {
+            if (search.route != null && route.index > search.route.index) {
+                break;
+            }
+
+            if (route.accepts(method)) {
+                Matcher matcher = route.pattern.matcher(path);
+
+                if (matcher.matches()) {
+                    String[] values = new String[matcher.groupCount()];
+
+                    for (int i = 0; i < values.length; i++) {
+                        values[i] = matcher.group(i + 1);
+                    }
+
+                    return new Match<>(route.value, route.names, values);
+                }
+            }
+        }
+
+        if (search.route == null) {
+            return null;
+        }
+
+        return new Match<>(search.route.value, search.route.names, search.result);
+    }
+
+    private static boolean isTreePath(String[] segments) {
+        int params = 0;
+
+        for (int i = 0; i < segments.length; i++) {
+            String segment = segments[i];
+
+            if (segment.equals(WILDCARD)) {
+                if (i != segments.length - 1) {
+                    return false;
+                }
+
+                params++;
+            } else if (PARAM_PATTERN.matcher(segment).matches()) {
+                params++;
+            } else if (!LITERAL_PATTERN.matcher(segment).matches()) {
+                return false;
+            }
+        }
+
+        return params <= MAX_PARAMS;
+    }
+
+    /**
+     * Converts a path to the regex, {param} is ([^/]+) and ** is (.*).
+     *
+     * @param names receives names of the groups
+     */
+    public static Pattern compilePattern(String path, List<String> names) {
+        Matcher matcher = PATH_CONVERTER_PATTERN.matcher(path);
+
+        StringBuffer sb = new StringBuffer();
+        sb.append("^");
+
+        while (matcher.find()) {
+            String partName = matcher.group(1);
+
+            String part = "([^\\/]+)";
+
+            if (WILDCARD.equals(partName)) {
+                part = "(.*)";
+            }
+
+            if (partName.startsWith("{")) {
+                partName = partName.substring(1);
+            }
+
+            if (partName.endsWith("}")) {
+                partName = partName.substring(0, partName.length() - 1);
+            }
+
+            names.add(partName);
+            matcher.appendReplacement(sb, part);
+        }
+
+        matcher.appendTail(sb);
+        sb.append("$");
+
+        return Pattern.compile(sb.toString());
+    }
+
+    public static class Match<T> {
+        private final T value;
+        private final String[] names;
+        private final String[] values;
+
+        Match(T value, String[] names, String[] values) {
+            this.value = value;
+            this.names = names;
+            this.values = values;
+        }
+
+        public T getValue() {
+            return value;
+        }
+
+        public int size() {
+            return names.length;
+        }
+
+        public String getName(int index) {
+            return names[index];
+        }
+
+        public String getParam(int index) {
+            return values[index];
+        }
+    }
+
+    private static class Route<T> {
+        final int index;
+        final Set<String> methods;
+        final T value;
+
+        String[] names;
+        Pattern pattern;
+
+        Route(int index, Collection<String> methods, T value) {
+            this.index = index;
+            this.methods = new HashSet<>(methods);
+            this.value = value;
+        }
+
+        boolean accepts(String method) {
+            return methods.isEmpty() || methods.contains(method);
+        }
+    }
+
+    private static class Node<T> {
+        Map<String, Node<T>> statics;
+        Node<T> param;
+
+        Route<T> route;
+        Route<T> wildcard;
+
+        void add(String[] segments, Route<T> route) {
+            Node<T> node = this;
+
+            for (int i = 0; i < segments.length; i++) {
+                String segment = segments[i];
+
+                if (segment.equals(WILDCARD)) {
+                    if (node.wildcard == null) {
+                        node.wildcard = route;
+                    }
+                    return;
+                }
+
+                Node<T> next;
+
+                if (segment.startsWith("{")) {
+                    if (node.param == null) {
+                        node.param = new Node<>();
+                    }
+
+                    next = node.param;
+                } else {
+                    if (node.statics == null) {
+                        node.statics = new HashMap<>();
+                    }
+
+                    next = node.statics.get(segment);
+
+                    if (next == null) {
+                        node.statics.put(segment, next = new Node<>());
+                    }
+                }
+
+                node = next;
+            }
+
+            // only the first added route of the same segments can win.
+            if (node.route == null) {
+                node.route = route;
+            }
+        }
+    }
+
+    private static class Search<T> {
+        final String path;
+        final String[] values = new String[MAX_PARAMS];
+
+        Route<T> route;
+        String[] result;
+
+        Search(String path) {
+            this.path = path;
+        }
+
+        void found(Route<T> route, int depth) {
+            if (this.route == null || route.index < this.route.index) {
+                this.route = route;
+                this.result = Arrays.copyOf(values, depth);
+            }
+        }
+
+        /**
+         * @param start offset of the current segment, greater than the length when all segments are consumed
+         * @param depth count of captured params
+         */
+        void visit(Node<T> node, int start, int depth) {
+            if (start > path.length()) {
+                if (node.route != null) {
+                    found(node.route, depth);
+                }
+                return;
+            }
+
+            if (node.wildcard != null) {
+                values[depth] = path.substring(start);
+                found(node.wildcard, depth + 1);
+            }
+
+            int end = path.indexOf('/', start);
+            if (end == -1) {
+                end = path.length();
+            }
+
+            if (node.statics != null) {
+                Node<T> next = node.statics.get(path.substring(start, end));
+
+                if (next != null) {
+                    visit(next, end + 1, depth);
+                }
+            }
+
+            if (node.param != null && end > start) {
+                values[depth] = path.substring(start, end);
+                visit(node.param, end + 1, depth + 1);
+            }
+        }
+    }
+}
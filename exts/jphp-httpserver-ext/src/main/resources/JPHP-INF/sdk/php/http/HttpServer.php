@@ -54,6 +54,39 @@ class HttpServer
     {
     }
 
+    /**
+     * Runs request handlers on virtual threads (Java 21+), the thread pool is used only for io then.
+     * Without the argument returns true if virtual threads are enabled and supported by the JVM.
+     * The default value is the env.virtualThreads option of the launcher.
+     *
+     * @param bool $value [optional]
+     * @return bool
+     */
+    public function virtualThreads(bool $value): bool
+    {
+    }
+
+    /**
+     * Runs each request in an own environment, environments are copies of the current one
+     * and are reset after a request (globals, output buffers, declared classes and functions).
+     * Must be called before run(), 0 disables the pool.
+     *
+     * @param int $maxSize max count of environments, requests wait while all are in use
+     */
+    public function environmentPool(int $maxSize)
+    {
+    }
+
+    /**
+     * Returns [maxSize, active, idle, created, reused, dropped] counters of the environment pool
+     * or null if the pool is disabled.
+     *
+     * @return array|null
+     */
+    public function environmentPoolStats()
+    {
+    }
+
     /**
      * Add connector to server:
      *  127.0.0.1:8080
@@ -3,8 +3,9 @@ package org.develnext.jphp.json.classes;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonIOException;
-import com.google.gson.JsonSyntaxException;
+import com.google.gson.JsonParseException;
 import com.google.gson.stream.JsonWriter;
+import org.develnext.jphp.json.gson.MemoryDecoder;
 import org.develnext.jphp.json.gson.MemoryDeserializer;
 import org.develnext.jphp.json.gson.MemorySerializer;
 import php.runtime.Memory;
@@ -12,17 +13,19 @@ import php.runtime.common.HintType;
 import php.runtime.env.Environment;
 import php.runtime.ext.core.classes.format.WrapProcessor;
 import php.runtime.ext.core.classes.stream.Stream;
+import php.runtime.ext.core.classes.util.WrapFlow;
 import php.runtime.invoke.Invoker;
+import php.runtime.lang.ForeachIterator;
 import php.runtime.memory.*;
 import php.runtime.memory.helper.*;
 import php.runtime.memory.support.ArrayMapEntryMemory;
 import php.runtime.reflection.ClassEntity;
 
-import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.io.OutputStreamWriter;
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import static php.runtime.annotation.Reflection.*;
@@ -33,10 +36,14 @@ public class JsonProcessor extends WrapProcessor {
     public static final int DESERIALIZE_AS_ARRAYS = 1024;
     public static final int DESERIALIZE_LENIENT = 2048;
 
+    protected static final int BUFFER_SIZE = 8192;
+
     protected GsonBuilder builder;
     protected Gson gson;
     protected MemorySerializer memorySerializer;
     protected MemoryDeserializer memoryDeserializer;
+    protected MemoryDecoder memoryDecoder = new MemoryDecoder(false, 512, true);
+    protected boolean prettyPrint;
 
     protected final static List<Class<? extends Memory>> memClasses = new ArrayList<Class<? extends Memory>>() {{
         add(Memory.class);
@@ -93,6 +100,7 @@ public class JsonProcessor extends WrapProcessor {
 
         if ((flags & SERIALIZE_PRETTY_PRINT) == SERIALIZE_PRETTY_PRINT) {
             builder.setPrettyPrinting();
+            prettyPrint = true;
         }
 
         if ((flags & DESERIALIZE_LENIENT) == DESERIALIZE_LENIENT) {
@@ -101,6 +109,7 @@ public class JsonProcessor extends WrapProcessor {
 
         if ((flags & DESERIALIZE_AS_ARRAYS) == DESERIALIZE_AS_ARRAYS) {
             memoryDeserializer.setAssoc(true);
+            memoryDecoder = new MemoryDecoder(true, memoryDecoder.getMaxDepth(), memoryDecoder.isLenient());
         }
 
         if (flags > 0) {
@@ -117,13 +126,16 @@ public class JsonProcessor extends WrapProcessor {
 
         try {
             if (args[0].instanceOf(Stream.class)) {
-                r = gson.fromJson(new InputStreamReader(Stream.getInputStream(env, args[0]), env.getDefaultCharset()), Memory.class);
+                r = memoryDecoder.decode(env, new InputStreamReader(Stream.getInputStream(env, args[0]), env.getDefaultCharset()));
             } else {
-                r = gson.fromJson(args[0].toString(), Memory.class);
+                r = memoryDecoder.decode(env, args[0].toString());
             }
-        } catch (JsonSyntaxException e) {
+        } catch (JsonParseException e) {
             env.exception(ProcessorException.class, e.getMessage());
             return Memory.NULL;
+        } catch (MemoryDeserializer.MaxDepthException e) {
+            env.exception(ProcessorException.class, "Maximum stack depth exceeded");
+            return Memory.NULL;
         }
 
         if (r == null)
@@ -132,12 +144,102 @@ public class JsonProcessor extends WrapProcessor {
         return r;
     }
 
+    /**
+     * Iterates elements of a top level array, each element is decoded when it is needed.
+     */
+    @Signature
+    public Memory parseItems(final Environment env, Memory... args) {
+        Reader reader;
+
+        if (args[0].instanceOf(Stream.class)) {
+            reader = new InputStreamReader(Stream.getInputStream(env, args[0]), env.getDefaultCharset());
+        } else {
+            reader = new StringReader(args[0].toString());
+        }
+
+        final MemoryDecoder.Items items = memoryDecoder.items(env, reader);
+
+        return new ObjectMemory(new WrapFlow(env, new ForeachIterator(false, false, false) {
+            @Override
+            protected boolean init() {
+                currentKey = Memory.CONST_INT_M1;
+                return true;
+            }
+
+            @Override
+            protected boolean nextValue() {
+                try {
+                    if (!items.hasNext()) {
+                        return false;
+                    }
+
+                    currentValue = items.next();
+                } catch (JsonParseException e) {
+                    env.exception(ProcessorException.class, e.getMessage());
+                    return false;
+                } catch (MemoryDeserializer.MaxDepthException e) {
+                    env.exception(ProcessorException.class, "Maximum stack depth exceeded");
+                    return false;
+                }
+
+                currentKey = ((LongMemory) currentKey).inc();
+                return true;
+            }
+
+            @Override
+            protected boolean prevValue() {
+                return false;
+            }
+
+            @Override
+            public void reset() {
+                // nop, a stream is read once.
+            }
+        }));
+    }
+
+    protected JsonWriter createWriter(Writer writer) {
+        // the same settings as of Gson.toJson().
+        JsonWriter json = new JsonWriter(writer);
+        json.setLenient(true);
+        json.setHtmlSafe(false);
+        json.setSerializeNulls(false);
+
+        if (prettyPrint) {
+            json.setIndent("  ");
+        }
+
+        return json;
+    }
+
+    /**
+     * Writes json to the output via a buffer of fixed size, the json text is never in memory at whole.
+     */
+    protected void write(Memory value, OutputStream output, Charset charset) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(output, charset), BUFFER_SIZE);
+
+        if (memorySerializer == null) {
+            gson.toJson(value, Memory.class, writer);
+        } else {
+            memorySerializer.write(createWriter(writer), value);
+        }
+
+        writer.flush();
+    }
+
     @Override
     @Signature
     public Memory format(Environment env, Memory... args) {
         try {
-            return StringMemory.valueOf(gson.toJson(args[0]));
-        } catch (JsonIOException e) {
+            if (memorySerializer == null) {
+                return StringMemory.valueOf(gson.toJson(args[0]));
+            }
+
+            StringWriter writer = new StringWriter();
+            memorySerializer.write(createWriter(writer), args[0]);
+
+            return StringMemory.valueOf(writer.toString());
+        } catch (JsonIOException | IOException e) {
             env.exception(ProcessorException.class, e.getMessage());
             return Memory.NULL;
         }
@@ -149,14 +251,9 @@ public class JsonProcessor extends WrapProcessor {
         OutputStream outputStream = Stream.getOutputStream(env, args[1]);
 
         try {
-            OutputStreamWriter writer = new OutputStreamWriter(outputStream);
-            gson.toJson(args[0], Memory.class, writer);
-            try {
-                writer.close();
-            } catch (IOException e) {
-                throw new JsonIOException(e);
-            }
-        } catch (JsonIOException e) {
+            write(args[0], outputStream, StandardCharsets.UTF_8);
+            outputStream.close();
+        } catch (JsonIOException | IOException e) {
             env.exception(ProcessorException.class, e.getMessage());
             return Memory.NULL;
         } finally {
@@ -166,6 +263,32 @@ public class JsonProcessor extends WrapProcessor {
         return Memory.NULL;
     }
 
+    /**
+     * Writes json to the current output buffer in the default charset (as echo does).
+     */
+    @Signature
+    public Memory formatToOutput(final Environment env, Memory... args) {
+        OutputStream outputStream = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                env.echo(new byte[] { (byte) b }, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                env.echo(off == 0 ? b : Arrays.copyOfRange(b, off, off + len), len);
+            }
+        };
+
+        try {
+            write(args[0], outputStream, env.getDefaultCharset());
+        } catch (JsonIOException | IOException e) {
+            env.exception(ProcessorException.class, e.getMessage());
+        }
+
+        return Memory.NULL;
+    }
+
     @Signature({
             @Arg("type"),
             @Arg(value = "callback", type = HintType.CALLABLE, optional = @Optional("null"))
@@ -0,0 +1,274 @@
+package org.develnext.jphp.json.gson;
+
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
+import php.runtime.Memory;
+import php.runtime.env.Environment;
+import php.runtime.lang.StdClass;
+import php.runtime.memory.*;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * Streaming json decoder, reads tokens via {@link JsonReader} and creates arrays, objects and strings at once
+ * without a tree of JsonElement. Values of an array are collected in a buffer until the end of the array
+ * to create it with the exact size.
+ *
+ * Options are final, so a decoder can be shared by threads.
+ */
+public class MemoryDecoder {
+    protected final boolean assoc;
+    protected final int maxDepth;
+    protected final boolean lenient;
+
+    public MemoryDecoder(boolean assoc, int maxDepth, boolean lenient) {
+        this.assoc = assoc;
+        this.maxDepth = maxDepth;
+        this.lenient = lenient;
+    }
+
+    public boolean isAssoc() {
+        return assoc;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public boolean isLenient() {
+        return lenient;
+    }
+
+    public Memory decode(Environment env, String json) {
+        return decode(env, new StringReader(json));
+    }
+
+    /**
+     * @return null for empty input
+     * @throws JsonSyntaxException invalid json
+     * @throws JsonIOException io error
+     * @throws MemoryDeserializer.MaxDepthException nesting is deeper than the max depth
+     */
+    public Memory decode(Environment env, Reader reader) {
+        JsonReader json = createReader(reader);
+
+        try {
+            try {
+                json.peek();
+            } catch (EOFException e) {
+                return null;
+            }
+
+            Memory result = read(env, json, new Buffer(), 0);
+
+            if (json.peek() != JsonToken.END_DOCUMENT) {
+                throw new JsonSyntaxException("JSON document was not fully consumed.");
+            }
+
+            return result;
+        } catch (MalformedJsonException | EOFException | IllegalStateException | NumberFormatException e) {
+            throw new JsonSyntaxException(e);
+        } catch (IOException e) {
+            throw new JsonIOException(e);
+        }
+    }
+
+    /**
+     * Decodes elements of a top level array one by one, only the current element is in memory.
+     */
+    public Items items(Environment env, Reader reader) {
+        return new Items(env, createReader(reader));
+    }
+
+    protected JsonReader createReader(Reader reader) {
+        JsonReader json = new JsonReader(reader);
+        json.setLenient(lenient);
+
+        return json;
+    }
+
+    protected Memory read(Environment env, JsonReader json, Buffer buffer, int depth) throws IOException {
+        if (depth > maxDepth) {
+            throw new MemoryDeserializer.MaxDepthException();
+        }
+
+        switch (json.peek()) {
+            case NULL:
+                json.nextNull();
+                return Memory.NULL;
+
+            case BOOLEAN:
+                return json.nextBoolean() ? Memory.TRUE : Memory.FALSE;
+
+            case STRING:
+                return StringMemory.valueOf(json.nextString());
+
+            case NUMBER: {
+                String number = json.nextString();
+                Memory l = StringMemory.toLong(number);
+
+                return l == null ? new DoubleMemory(Double.parseDouble(number)) : l;
+            }
+
+            case BEGIN_ARRAY: {
+                int start = buffer.size;
+
+                json.beginArray();
+                while (json.hasNext()) {
+                    buffer.add(read(env, json, buffer, depth + 1));
+                }
+                json.endArray();
+
+                ArrayMemory array = ArrayMemory.createListed(buffer.size - start);
+
+                for (int i = start; i < buffer.size; i++) {
+                    array.add((Memory) buffer.items[i]);
+                }
+
+                buffer.truncate(start);
+                return array;
+            }
+
+            case BEGIN_OBJECT: {
+                int start = buffer.size;
+                boolean list = true;
+
+                json.beginObject();
+                while (json.hasNext()) {
+                    String name = json.nextName();
+                    Memory value = read(env, json, buffer, depth + 1);
+
+                    if (!name.startsWith("\0")) {
+                        Memory longKey = StringMemory.toLong(name);
+
+                        list = list && longKey != null && longKey.toLong() == (buffer.size - start) / 2;
+
+                        buffer.add(longKey == null ? name : longKey);
+                        buffer.add(value);
+                    }
+                }
+                json.endObject();
+
+                int size = (buffer.size - start) / 2;
+                StdClass stdClass = null;
+                ArrayMemory array;
+
+                if (assoc) {
+                    array = list ? ArrayMemory.createListed(size) : ArrayMemory.createHashed(size);
+                } else {
+                    stdClass = new StdClass(env);
+                    array = stdClass.getProperties();
+                }
+
+                for (int i = start; i < buffer.size; i += 2) {
+                    array.put(buffer.items[i], (Memory) buffer.items[i + 1]);
+                }
+
+                buffer.truncate(start);
+                return assoc ? array : new ObjectMemory(stdClass);
+            }
+
+            default:
+                throw new MalformedJsonException("Unexpected " + json.peek() + " at " + json.getPath());
+        }
+    }
+
+    /**
+     * Stack of decoded values and keys of unfinished arrays and objects.
+     */
+    protected static class Buffer {
+        Object[] items = new Object[32];
+        int size = 0;
+
+        void add(Object item) {
+            if (size == items.length) {
+                items = Arrays.copyOf(items, size * 2);
+            }
+
+            items[size++] = item;
+        }
+
+        void truncate(int newSize) {
+            Arrays.fill(items, newSize, size, null);
+            size = newSize;
+        }
+    }
+
+    public class Items {
+        protected final Environment env;
+        protected final JsonReader json;
+        protected final Buffer buffer = new Buffer();
+
+        protected boolean started = false;
+        protected boolean finished = false;
+
+        protected Items(Environment env, JsonReader json) {
+            this.env = env;
+            this.json = json;
+        }
+
+        /**
+         * @throws JsonSyntaxException invalid json or the top level value is not an array
+         */
+        public boolean hasNext() {
+            if (finished) {
+                return false;
+            }
+
+            try {
+                if (!started) {
+                    started = true;
+
+                    if (json.peek() != JsonToken.BEGIN_ARRAY) {
+                        throw new JsonSyntaxException("Expected BEGIN_ARRAY but was " + json.peek() + " at " + json.getPath());
+                    }
+
+                    json.beginArray();
+                }
+
+                if (json.hasNext()) {
+                    return true;
+                }
+
+                finished = true;
+                json.endArray();
+
+                if (json.peek() != JsonToken.END_DOCUMENT) {
+                    throw new JsonSyntaxException("JSON document was not fully consumed.");
+                }
+
+                return false;
+            } catch (MalformedJsonException | EOFException | IllegalStateException e) {
+                finished = true;
+                throw new JsonSyntaxException(e);
+            } catch (IOException e) {
+                finished = true;
+                throw new JsonIOException(e);
+            }
+        }
+
+        public Memory next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            try {
+                return read(env, json, buffer, 1);
+            } catch (MalformedJsonException | EOFException | IllegalStateException | NumberFormatException e) {
+                finished = true;
+                throw new JsonSyntaxException(e);
+            } catch (IOException e) {
+                finished = true;
+                throw new JsonIOException(e);
+            }
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package org.develnext.jphp.json.gson;
 
 import com.google.gson.*;
+import com.google.gson.stream.JsonWriter;
 import org.develnext.jphp.json.JsonSerializable;
 import php.runtime.Memory;
 import php.runtime.common.collections.map.HashedMap;
@@ -12,8 +13,10 @@ import php.runtime.memory.ObjectMemory;
 import php.runtime.memory.StringMemory;
 import php.runtime.reflection.ClassEntity;
 
+import java.io.IOException;
 import java.lang.ref.WeakReference;
 import java.lang.reflect.Type;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
@@ -146,6 +149,142 @@ public class MemorySerializer implements JsonSerializer<Memory> {
         }
     }
 
+    /**
+     * Writes the value to the json writer without creating a tree of JsonElement, the result is the same as of
+     * {@link #serialize(Memory, Type, JsonSerializationContext)}.
+     */
+    public void write(JsonWriter out, Memory src) throws IOException {
+        write(out, src, new Path(), true);
+    }
+
+    protected void write(JsonWriter out, Memory src, Path path, boolean useHandlers) throws IOException {
+        if (useHandlers) {
+            Handler handler = typeHandlers.get(src.getRealType());
+            if (handler != null) {
+                write(out, handler.call(getEnv(), src), path, false);
+                return;
+            }
+        }
+
+        switch (src.getRealType()) {
+            case BOOL:
+                out.value(src.toBoolean());
+                break;
+            case DOUBLE: {
+                double value = src.toDouble();
+
+                if (Double.isNaN(value) || Double.isInfinite(value)) {
+                    out.value((Number) value);
+                } else {
+                    out.value(value);
+                }
+                break;
+            }
+            case INT:
+                out.value(src.toLong());
+                break;
+            case STRING: {
+                if (numericCheck) {
+                    Memory m = StringMemory.toLong(src.toString());
+
+                    if (m != null) {
+                        out.value(m.toLong());
+                        break;
+                    }
+                }
+
+                out.value(src.toString());
+                break;
+            }
+            case ARRAY: {
+                ArrayMemory array = src.toValue(ArrayMemory.class);
+
+                if (!path.push(array)) {
+                    out.nullValue();
+                    break;
+                }
+
+                boolean isList = !forceObject && array.isList();
+                ForeachIterator iterator = array.foreachIterator(false, false);
+
+                if (isList) {
+                    out.beginArray();
+                    while (iterator.next()) {
+                        write(out, iterator.getValue(), path, useHandlers);
+                    }
+                    out.endArray();
+                } else {
+                    out.beginObject();
+                    while (iterator.next()) {
+                        out.name(iterator.getKey().toString());
+                        write(out, iterator.getValue(), path, useHandlers);
+                    }
+                    out.endObject();
+                }
+
+                path.pop();
+                break;
+            }
+            case OBJECT: {
+                IObject object = src.toValue(ObjectMemory.class).value;
+
+                if (!path.push(object)) {
+                    out.nullValue();
+                    break;
+                }
+
+                try {
+                    if (useHandlers) {
+                        Handler handler;
+
+                        ClassEntity pr = object.getReflection();
+                        do {
+                            handler = classHandlers.get(pr.getLowerName());
+                            pr = pr.getParent();
+                            if (pr == null)
+                                break;
+
+                        } while (handler == null);
+
+                        if (handler != null) {
+                            write(out, handler.call(getEnv(), src), path, false);
+                            break;
+                        }
+                    }
+
+                    if (object instanceof JsonSerializable) {
+                        Environment env = this.getEnv() == null ? Environment.current() : this.getEnv();
+
+                        env.pushCall(object, "jsonSerialize");
+                        try {
+                            write(out, ((JsonSerializable) object).jsonSerialize(env), path, useHandlers);
+                        } finally {
+                            env.popCall();
+                        }
+                    } else {
+                        ForeachIterator iterator = object.getProperties().foreachIterator(false, false);
+
+                        out.beginObject();
+                        while (iterator.next()) {
+                            String key = iterator.getKey().toString();
+
+                            if (!key.startsWith("\0")) {
+                                out.name(key);
+                                write(out, iterator.getValue(), path, useHandlers);
+                            }
+                        }
+                        out.endObject();
+                    }
+                } finally {
+                    path.pop();
+                }
+                break;
+            }
+            default:
+                out.nullValue();
+        }
+    }
+
     public JsonElement serialize(Memory src, Type typeOfSrc, JsonSerializationContext context) {
         return convert(src, new HashSet<Integer>(), true);
     }
@@ -169,4 +308,32 @@ public class MemorySerializer implements JsonSerializer<Memory> {
     public interface Handler {
         Memory call(Environment env, Memory value);
     }
+
+    /**
+     * Arrays and objects being written, to write null for a recursive one. Compared by identity
+     * and searched linearly, the depth of json is small.
+     */
+    protected static class Path {
+        private Object[] items = new Object[16];
+        private int size = 0;
+
+        boolean push(Object item) {
+            for (int i = 0; i < size; i++) {
+                if (items[i] == item) {
+                    return false;
+                }
+            }
+
+            if (size == items.length) {
+                items = Arrays.copyOf(items, size * 2);
+            }
+
+            items[size++] = item;
+            return true;
+        }
+
+        void pop() {
+            items[--size] = null;
+        }
+    }
 }
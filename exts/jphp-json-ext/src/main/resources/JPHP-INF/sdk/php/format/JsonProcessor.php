@@ -1,6 +1,7 @@
 <?php
 namespace php\format;
 use php\io\Stream;
+use php\util\Flow;
 
 /**
  * Class JsonProcessor
@@ -26,6 +27,16 @@ class JsonProcessor extends Processor
      */
     public function parse($json) { return []; }
 
+    /**
+     * Iterates elements of a top level json array, each element is parsed when the flow reaches it,
+     * so a large array is never fully in memory.
+     *
+     * @param string|Stream $json
+     * @return Flow
+     * @throws ProcessorException
+     */
+    public function parseItems($json) { return new Flow([]); }
+
     /**
      * @param mixed $value
      * @return string
@@ -34,12 +45,23 @@ class JsonProcessor extends Processor
     public function format($value) { return ''; }
 
     /**
+     * Writes utf-8 json to the stream (e.g. HttpServerResponse::bodyStream()) by chunks,
+     * without building the whole json string.
+     *
      * @param mixed $value
      * @param Stream $output
      * @throws ProcessorException
      */
     public function formatTo($value, Stream $output) { }
 
+    /**
+     * Writes json to the current output (as echo) by chunks, without building the whole json string.
+     *
+     * @param mixed $value
+     * @throws ProcessorException
+     */
+    public function formatToOutput($value) { }
+
     /**
      * @param string $nameOfType - null, int, float, string, bool, object, array
      * @param callable $handler (mixed $value) -> mixed
@@ -24,5 +24,7 @@ public class JsonProcessorTest extends JsonJvmTestCase {
         check("json/JsonProcessor_009.php");
         check("json/JsonProcessor_010.php");
         check("json/JsonProcessor_011.php");
+        check("json/JsonProcessor_012.php");
+        check("json/JsonProcessor_013.php");
     }
 }
@@ -0,0 +1,44 @@
+--TEST--
+JsonProcessor test #12: Parse items
+--FILE--
+<?php
+
+use php\format\JsonProcessor;
+use php\format\ProcessorException;
+use php\io\MemoryStream;
+
+$json = new JsonProcessor(JsonProcessor::DESERIALIZE_AS_ARRAYS);
+
+foreach ($json->parseItems(new MemoryStream('[{"x": 100}, [1, 2], "foobar"]')) as $i => $item) {
+    var_dump($i, $item);
+}
+
+foreach ($json->parseItems('[]') as $item) {
+    var_dump($item);
+}
+
+try {
+    foreach ($json->parseItems('{"x": 100}') as $item) {
+        var_dump($item);
+    }
+} catch (ProcessorException $e) {
+    echo "error\n";
+}
+
+?>
+--EXPECT--
+int(0)
+array(1) {
+  ["x"]=>
+  int(100)
+}
+int(1)
+array(2) {
+  [0]=>
+  int(1)
+  [1]=>
+  int(2)
+}
+int(2)
+string(6) "foobar"
+error
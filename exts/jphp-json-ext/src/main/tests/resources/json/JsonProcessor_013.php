@@ -0,0 +1,33 @@
+--TEST--
+JsonProcessor test #13: Format to streams
+--FILE--
+<?php
+
+use php\format\JsonProcessor;
+use php\io\MemoryStream;
+
+$json = new JsonProcessor();
+
+$object = new stdClass();
+$object->x = 20;
+$object->list = [1, 'foo', null];
+
+$json->formatToOutput([$object, $object]);
+echo "\n";
+
+$stream = new MemoryStream();
+$json->formatTo(['x' => $object], $stream);
+$stream->seek(0);
+echo $stream->readFully(), "\n";
+
+ob_start();
+$json->formatToOutput('buffered');
+$out = ob_get_contents();
+ob_end_clean();
+var_dump($out);
+
+?>
+--EXPECT--
+[{"x":20,"list":[1,"foo",null]},{"x":20,"list":[1,"foo",null]}]
+{"x":{"x":20,"list":[1,"foo",null]}}
+string(10) ""buffered""
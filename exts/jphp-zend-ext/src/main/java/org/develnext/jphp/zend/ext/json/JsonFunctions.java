@@ -1,9 +1,10 @@
 package org.develnext.jphp.zend.ext.json;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
+import com.google.gson.JsonIOException;
 import com.google.gson.JsonParseException;
 import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonWriter;
+import org.develnext.jphp.json.gson.MemoryDecoder;
 import org.develnext.jphp.json.gson.MemoryDeserializer;
 import org.develnext.jphp.json.gson.MemorySerializer;
 import php.runtime.Memory;
@@ -11,26 +12,31 @@ import php.runtime.env.Environment;
 import php.runtime.ext.support.compile.FunctionsContainer;
 import php.runtime.memory.StringMemory;
 
+import java.io.IOException;
+import java.io.StringWriter;
+
 import static php.runtime.annotation.Runtime.Immutable;
 
 public class JsonFunctions extends FunctionsContainer {
 
+    private static final int DEFAULT_DEPTH = 512;
+
+    private static final MemoryDecoder DECODER = new MemoryDecoder(false, DEFAULT_DEPTH, true);
+    private static final MemoryDecoder ASSOC_DECODER = new MemoryDecoder(true, DEFAULT_DEPTH, true);
+
     public static Memory json_decode(Environment env, String json, boolean assoc, int depth) {
-        MemoryDeserializer memoryDeserializer = new MemoryDeserializer();
-        memoryDeserializer.setEnv(env);
-        GsonBuilder gsonBuilder = JsonExtension.createGsonBuilderForDecode(memoryDeserializer);
+        MemoryDecoder decoder;
 
-        memoryDeserializer.setAssoc(assoc);
-        memoryDeserializer.setMaxDepth(depth);
+        if (depth == DEFAULT_DEPTH) {
+            decoder = assoc ? ASSOC_DECODER : DECODER;
+        } else {
+            decoder = new MemoryDecoder(assoc, depth, true);
+        }
 
-        Gson gson = gsonBuilder.create();
         try {
             env.setUserValue(JsonFunctions.class.getName() + "#error", null);
-            Memory r = gson.fromJson(json, Memory.class);
-            if (r == null)
-                return Memory.NULL;
-            else
-                return assoc ? r.toImmutable() : r;
+            Memory r = decoder.decode(env, json);
+            return r == null ? Memory.NULL : r;
         } catch (MemoryDeserializer.MaxDepthException e) {
             env.setUserValue(JsonFunctions.class.getName() + "#error", JsonConstants.JSON_ERROR_DEPTH);
         } catch (JsonSyntaxException e) {
@@ -43,7 +49,7 @@ public class JsonFunctions extends FunctionsContainer {
     }
 
     public static Memory json_decode(Environment env, String json, boolean assoc) {
-        return json_decode(env, json, assoc, 512);
+        return json_decode(env, json, assoc, DEFAULT_DEPTH);
     }
 
     public static int json_last_error(Environment env) {
@@ -71,34 +77,37 @@ public class JsonFunctions extends FunctionsContainer {
         return json_decode(env, json, false);
     }
 
+    private static final MemorySerializer SERIALIZER = new MemorySerializer();
+
     @Immutable
     public static String json_encode(Memory memory, int options) {
-        GsonBuilder builder;
-        if (options != 0){
-            MemorySerializer serializer = new MemorySerializer();
-            builder = JsonExtension.createGsonBuilder(serializer);
-
-            if ((options & JsonConstants.JSON_PRETTY_PRINT) == JsonConstants.JSON_PRETTY_PRINT){
-                builder.setPrettyPrinting();
-            }
-
-            if ((options & JsonConstants.JSON_HEX_TAG) != JsonConstants.JSON_HEX_TAG){
-                builder.disableHtmlEscaping();
-            }
-
-            if ((options & JsonConstants.JSON_FORCE_OBJECT) == JsonConstants.JSON_FORCE_OBJECT){
-                serializer.setForceObject(true);
-            }
-
-            if ((options & JsonConstants.JSON_NUMERIC_CHECK) == JsonConstants.JSON_NUMERIC_CHECK){
-                serializer.setNumericCheck(true);
-            }
-        } else {
-            builder = JsonExtension.DEFAULT_GSON_BUILDER;
+        MemorySerializer serializer = SERIALIZER;
+
+        if ((options & (JsonConstants.JSON_FORCE_OBJECT | JsonConstants.JSON_NUMERIC_CHECK)) != 0) {
+            serializer = new MemorySerializer();
+            serializer.setForceObject((options & JsonConstants.JSON_FORCE_OBJECT) == JsonConstants.JSON_FORCE_OBJECT);
+            serializer.setNumericCheck((options & JsonConstants.JSON_NUMERIC_CHECK) == JsonConstants.JSON_NUMERIC_CHECK);
+        }
+
+        StringWriter writer = new StringWriter();
+
+        // the same settings as of Gson.toJson().
+        JsonWriter json = new JsonWriter(writer);
+        json.setLenient(true);
+        json.setSerializeNulls(false);
+        json.setHtmlSafe((options & JsonConstants.JSON_HEX_TAG) == JsonConstants.JSON_HEX_TAG);
+
+        if ((options & JsonConstants.JSON_PRETTY_PRINT) == JsonConstants.JSON_PRETTY_PRINT) {
+            json.setIndent("  ");
+        }
+
+        try {
+            serializer.write(json, memory);
+        } catch (IOException e) {
+            throw new JsonIOException(e);
         }
 
-        Gson gson = builder.create();
-        return gson.toJson(memory);
+        return writer.toString();
     }
 
     @Immutable
@@ -927,7 +927,70 @@ public class StringFunctions extends FunctionsContainer {
     }
 
     @Immutable
-    public static Memory substr(String value, int start, int length) {
+    public static Memory substr(Memory value, int start, int length) {
+        value = value.toValue();
+
+        if (value instanceof BinaryMemory) {
+            byte[] bytes = value.getBinaryBytes(StandardCharsets.UTF_8);
+            int end = substrEnd(bytes.length, start, length);
+
+            if (end < 0)
+                return end == -1 ? Memory.FALSE : Memory.CONST_EMPTY_STRING;
+
+            return new BinaryMemory(Arrays.copyOfRange(bytes, substrStart(bytes.length, start), end));
+        }
+
+        return substr(value.toString(), start, length);
+    }
+
+    @Immutable
+    public static Memory substr(Memory value, int start) {
+        value = value.toValue();
+
+        if (value instanceof BinaryMemory) {
+            byte[] bytes = value.getBinaryBytes(StandardCharsets.UTF_8);
+            if (start < 0)
+                start = bytes.length + start;
+
+            if (start < 0 || start > bytes.length)
+                return Memory.FALSE;
+
+            return new BinaryMemory(Arrays.copyOfRange(bytes, start, bytes.length));
+        }
+
+        return substr(value.toString(), start);
+    }
+
+    private static int substrStart(int strLen, int start) {
+        return start < 0 ? strLen + start : start;
+    }
+
+    /**
+     * @return end index of substr() or -1 for false, -2 for an empty string
+     */
+    private static int substrEnd(int strLen, int start, int length) {
+        start = substrStart(strLen, start);
+
+        if (start < 0 || start >= strLen)
+            return -1;
+
+        if (length == 0)
+            return -2;
+
+        int end;
+
+        if (length < 0)
+            end = strLen + length;
+        else
+            end = (strLen < length) ? strLen : start + length;
+
+        if (end <= start)
+            return -1;
+
+        return strLen <= end ? strLen : end;
+    }
+
+    private static Memory substr(String value, int start, int length) {
         int strLen = value.length();
         if (start < 0)
             start = strLen + start;
@@ -953,8 +1016,7 @@ public class StringFunctions extends FunctionsContainer {
             return new StringMemory(value.substring(start, end));
     }
 
-    @Immutable
-    public static Memory substr(String value, int start) {
+    private static Memory substr(String value, int start) {
         int length = value.length();
         if (start < 0)
             start = length + start;
@@ -1128,7 +1190,58 @@ public class StringFunctions extends FunctionsContainer {
     }
 
     @Immutable
-    public static Memory strpos(Environment env, TraceInfo trace, String haystack, Memory needle, int offset) {
+    public static Memory strpos(Environment env, TraceInfo trace, Memory haystack, Memory needle, int offset) {
+        haystack = haystack.toValue();
+
+        if (haystack instanceof BinaryMemory) {
+            byte[] bytes = haystack.getBinaryBytes(StandardCharsets.UTF_8);
+            if (offset < 0 || offset > bytes.length) {
+                env.warning(trace, "strpos(): Offset not contained in string");
+                return Memory.FALSE;
+            }
+
+            needle = needle.toValue();
+            byte[] search = needle.isString()
+                    ? needle.getBinaryBytes(StandardCharsets.UTF_8)
+                    : new byte[]{(byte) needle.toChar()}; // an int needle is one byte.
+
+            if (search.length == 0) {
+                env.warning(trace, "Empty needle");
+                return Memory.FALSE;
+            }
+
+            int p = indexOf(bytes, search, offset);
+            return p < 0 ? Memory.FALSE : LongMemory.valueOf(p);
+        }
+
+        return strpos(env, trace, haystack.toString(), needle, offset);
+    }
+
+    @Immutable
+    public static Memory strpos(Environment env, TraceInfo trace, Memory haystack, Memory needle) {
+        return strpos(env, trace, haystack, needle, 0);
+    }
+
+    private static int indexOf(byte[] bytes, byte[] search, int offset) {
+        byte first = search[0];
+        int max = bytes.length - search.length;
+
+        for (int i = offset; i <= max; i++) {
+            if (bytes[i] != first)
+                continue;
+
+            int j = 1;
+            while (j < search.length && bytes[i + j] == search[j])
+                j++;
+
+            if (j == search.length)
+                return i;
+        }
+
+        return -1;
+    }
+
+    private static Memory strpos(Environment env, TraceInfo trace, String haystack, Memory needle, int offset) {
         int haystackLen = haystack.length();
         if (offset < 0 || offset > haystackLen) {
             env.warning(trace, "strpos(): Offset not contained in string");
@@ -1167,11 +1280,6 @@ public class StringFunctions extends FunctionsContainer {
             return LongMemory.valueOf(p);
     }
 
-    @Immutable
-    public static Memory strpos(Environment env, TraceInfo trace, String haystack, Memory needle) {
-        return strpos(env, trace, haystack, needle, 0);
-    }
-
     @Immutable
     public static Memory strrpos(Environment env, TraceInfo trace, String haystack, Memory needle, Memory offsetV) {
         int haystackLen = haystack.length();
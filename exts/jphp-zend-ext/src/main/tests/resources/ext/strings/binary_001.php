@@ -0,0 +1,38 @@
+--TEST--
+Substr and strpos of binary strings
+--FILE--
+<?php
+use php\io\MemoryStream;
+
+$stream = new MemoryStream();
+$stream->write("h" . chr(233) . "llo world");
+$stream->seek(0);
+$bin = $stream->readFully();
+
+var_dump(strlen($bin));
+var_dump(strlen(substr($bin, 1, 2)));
+var_dump(substr($bin, 3));
+var_dump(substr($bin, -5, 2));
+var_dump(substr($bin, 20));
+var_dump(substr($bin, 1, 0));
+var_dump(strpos($bin, "llo"));
+var_dump(strpos($bin, "o", 6));
+var_dump(strpos($bin, "x"));
+var_dump(strpos($bin, 0xC3));
+var_dump(strpos($bin, 0xA9));
+echo substr($bin, 0, 3) === "h" . chr(233) ? "ok" : "fail";
+
+?>
+--EXPECT--
+int(12)
+int(2)
+string(9) "llo world"
+string(2) "wo"
+bool(false)
+string(0) ""
+int(3)
+int(8)
+bool(false)
+int(1)
+int(2)
+ok
@@ -55,4 +55,7 @@ public class StringsTest extends ZendJvmTestCase {
 
     @Test
     public void testBase64() { check("ext/strings/base64_001.php"); }
+
+    @Test
+    public void testBinary() { check("ext/strings/binary_001.php"); }
 }
@@ -0,0 +1,389 @@
+package org.develnext.jphp.core.compiler.jvm;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Type;
+import php.runtime.Memory;
+import php.runtime.env.Environment;
+import php.runtime.env.TraceInfo;
+import php.runtime.ext.support.compile.CompileFunction;
+import php.runtime.invoke.NativeInvoker;
+import php.runtime.memory.DoubleMemory;
+import php.runtime.memory.LongMemory;
+import php.runtime.memory.StringMemory;
+import php.runtime.memory.TrueMemory;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.objectweb.asm.Opcodes.*;
+
+/**
+ * Generates a NativeInvoker class for a native method:
+ *
+ *   Memory invoke(Object self, Environment env, TraceInfo trace, Memory[] args) {
+ *       try { r = ((Clazz) self).method(env, args[0].toLong(), (Foo) convert(2, env, trace, args[1])); }
+ *       catch (Throwable e) { return NativeInvoker.rethrow(env, e); }
+ *
+ *       return LongMemory.valueOf(r);
+ *   }
+ *
+ * Classes are defined in a child loader of the loader of the method class. Methods which are not accessible
+ * from other packages, var-args and arguments needing a release after the call are not supported.
+ */
+public class NativeInvokerGenerator implements NativeInvoker.Generator {
+    private static final String INVOKER = Type.getInternalName(NativeInvoker.class);
+    private static final String MEMORY = Type.getInternalName(Memory.class);
+    private static final String MEMORY_DESC = Type.getDescriptor(Memory.class);
+    private static final String ENVIRONMENT_DESC = Type.getDescriptor(Environment.class);
+    private static final String TRACE_DESC = Type.getDescriptor(TraceInfo.class);
+
+    private static final String INVOKE_DESC = "(Ljava/lang/Object;" + ENVIRONMENT_DESC + TRACE_DESC + "[" + MEMORY_DESC + ")" + MEMORY_DESC;
+
+    private static final int L_SELF = 1;
+    private static final int L_ENV = 2;
+    private static final int L_TRACE = 3;
+    private static final int L_ARGS = 4;
+
+    private static final AtomicLong counter = new AtomicLong();
+    private static final Map<ClassLoader, WeakReference<InvokerClassLoader>> loaders = new WeakHashMap<>();
+
+    @Override
+    public NativeInvoker generate(CompileFunction.Method method) throws Throwable {
+        Method target = method.method;
+        Class<?> owner = target.getDeclaringClass();
+
+        if (!Modifier.isPublic(target.getModifiers()) || !isAccessible(owner) || !isAccessible(target.getReturnType())) {
+            return null;
+        }
+
+        Class<?>[] types = method.parameterTypes;
+        int[] kinds = new int[types.length];
+
+        for (int i = 0; i < types.length; i++) {
+            kinds[i] = method.getArgumentKind(i);
+
+            if (kinds[i] == NativeInvoker.UNSUPPORTED || !isAccessible(types[i])) {
+                return null;
+            }
+        }
+
+        InvokerClassLoader loader = getLoader(owner);
+
+        if (loader == null) {
+            return null;
+        }
+
+        String name = "php/runtime/invoke/generated/" + owner.getSimpleName() + "$" + target.getName() + "$" + counter.incrementAndGet();
+        byte[] bytes = generateClass(name, method, kinds);
+
+        Class<?> invokerClass = loader.define(name.replace('/', '.'), bytes);
+
+        return (NativeInvoker) invokerClass.getConstructor(CompileFunction.Method.class).newInstance(method);
+    }
+
+    protected byte[] generateClass(String name, CompileFunction.Method method, int[] kinds) {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS | ClassWriter.COMPUTE_FRAMES) {
+            @Override
+            protected String getCommonSuperClass(String type1, String type2) {
+                return "java/lang/Object";
+            }
+        };
+
+        cw.visit(V1_7, ACC_PUBLIC | ACC_FINAL | ACC_SUPER, name, null, INVOKER, null);
+
+        String methodDesc = "(" + Type.getDescriptor(CompileFunction.Method.class) + ")V";
+        MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "<init>", methodDesc, null, null);
+        mv.visitCode();
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitVarInsn(ALOAD, 1);
+        mv.visitMethodInsn(INVOKESPECIAL, INVOKER, "<init>", methodDesc, false);
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        mv = cw.visitMethod(ACC_PUBLIC, "invoke", INVOKE_DESC, null, new String[]{"java/lang/Throwable"});
+        mv.visitCode();
+        writeInvoke(mv, method, kinds);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    protected void writeInvoke(MethodVisitor mv, CompileFunction.Method method, int[] kinds) {
+        Method target = method.method;
+        Class<?> owner = target.getDeclaringClass();
+        String ownerName = Type.getInternalName(owner);
+        boolean isStatic = Modifier.isStatic(target.getModifiers());
+        int resultKind = method.getResultKind();
+
+        if (resultKind == NativeInvoker.CONVERT) {
+            // for unconvert(env, trace, result) after the call
+            mv.visitVarInsn(ALOAD, 0);
+            mv.visitVarInsn(ALOAD, L_ENV);
+            mv.visitVarInsn(ALOAD, L_TRACE);
+        }
+
+        if (!isStatic) {
+            mv.visitVarInsn(ALOAD, L_SELF);
+            mv.visitTypeInsn(CHECKCAST, ownerName);
+        }
+
+        Class<?>[] types = method.parameterTypes;
+
+        for (int i = 0, j = 0; i < types.length; i++) {
+            switch (kinds[i]) {
+                case NativeInvoker.ENVIRONMENT:
+                    mv.visitVarInsn(ALOAD, L_ENV);
+                    continue;
+                case NativeInvoker.TRACE:
+                    mv.visitVarInsn(ALOAD, L_TRACE);
+                    continue;
+                case NativeInvoker.CONVERT:
+                    mv.visitVarInsn(ALOAD, 0);
+                    writePushInt(mv, i);
+                    mv.visitVarInsn(ALOAD, L_ENV);
+                    mv.visitVarInsn(ALOAD, L_TRACE);
+                    writePushArgument(mv, j++);
+                    mv.visitMethodInsn(INVOKEVIRTUAL, INVOKER, "convert",
+                            "(I" + ENVIRONMENT_DESC + TRACE_DESC + MEMORY_DESC + ")Ljava/lang/Object;", false);
+                    writeUnbox(mv, types[i]);
+                    continue;
+            }
+
+            writePushArgument(mv, j++);
+
+            switch (kinds[i]) {
+                case NativeInvoker.VALUE:
+                    writeMemoryCall(mv, "toValue", "()" + MEMORY_DESC);
+                    break;
+                case NativeInvoker.IMMUTABLE:
+                    writeMemoryCall(mv, "toImmutable", "()" + MEMORY_DESC);
+                    break;
+                case NativeInvoker.LONG:
+                    writeMemoryCall(mv, "toLong", "()J");
+                    break;
+                case NativeInvoker.INT:
+                    writeMemoryCall(mv, "toInteger", "()I");
+                    break;
+                case NativeInvoker.DOUBLE:
+                    writeMemoryCall(mv, "toDouble", "()D");
+                    break;
+                case NativeInvoker.BOOLEAN:
+                    writeMemoryCall(mv, "toBoolean", "()Z");
+                    break;
+                case NativeInvoker.STRING:
+                    writeMemoryCall(mv, "toString", "()Ljava/lang/String;");
+                    break;
+            }
+        }
+
+        Label start = new Label();
+        Label end = new Label();
+        Label handler = new Label();
+
+        mv.visitTryCatchBlock(start, end, handler, "java/lang/Throwable");
+        mv.visitLabel(start);
+
+        boolean isInterface = owner.isInterface();
+        String desc = Type.getMethodDescriptor(target);
+
+        if (isStatic) {
+            mv.visitMethodInsn(INVOKESTATIC, ownerName, target.getName(), desc, isInterface);
+        } else {
+            mv.visitMethodInsn(isInterface ? INVOKEINTERFACE : INVOKEVIRTUAL, ownerName, target.getName(), desc, isInterface);
+        }
+
+        mv.visitLabel(end);
+
+        Class<?> resultType = target.getReturnType();
+
+        switch (resultKind) {
+            case NativeInvoker.VOID:
+                if (resultType != void.class) {
+                    mv.visitInsn(resultType == long.class || resultType == double.class ? POP2 : POP);
+                }
+
+                mv.visitFieldInsn(GETSTATIC, MEMORY, "NULL", MEMORY_DESC);
+                break;
+            case NativeInvoker.MEMORY:
+                Label nonNull = new Label();
+                mv.visitInsn(DUP);
+                mv.visitJumpInsn(IFNONNULL, nonNull);
+                mv.visitInsn(POP);
+                mv.visitFieldInsn(GETSTATIC, MEMORY, "NULL", MEMORY_DESC);
+                mv.visitLabel(nonNull);
+                mv.visitTypeInsn(CHECKCAST, MEMORY);
+                break;
+            case NativeInvoker.LONG:
+                writeValueOf(mv, LongMemory.class, "J");
+                break;
+            case NativeInvoker.INT:
+                mv.visitInsn(I2L);
+                writeValueOf(mv, LongMemory.class, "J");
+                break;
+            case NativeInvoker.DOUBLE:
+                writeValueOf(mv, DoubleMemory.class, "D");
+                break;
+            case NativeInvoker.BOOLEAN:
+                writeValueOf(mv, TrueMemory.class, "Z");
+                break;
+            case NativeInvoker.STRING:
+                writeValueOf(mv, StringMemory.class, "Ljava/lang/String;");
+                break;
+            default:
+                writeBox(mv, resultType);
+                mv.visitMethodInsn(INVOKEVIRTUAL, INVOKER, "unconvert",
+                        "(" + ENVIRONMENT_DESC + TRACE_DESC + "Ljava/lang/Object;)" + MEMORY_DESC, false);
+        }
+
+        mv.visitInsn(ARETURN);
+
+        mv.visitLabel(handler);
+        mv.visitVarInsn(ALOAD, L_ENV);
+        mv.visitInsn(SWAP);
+        mv.visitMethodInsn(INVOKESTATIC, INVOKER, "rethrow",
+                "(" + ENVIRONMENT_DESC + "Ljava/lang/Throwable;)" + MEMORY_DESC, false);
+        mv.visitInsn(ARETURN);
+    }
+
+    private static void writePushArgument(MethodVisitor mv, int index) {
+        mv.visitVarInsn(ALOAD, L_ARGS);
+        writePushInt(mv, index);
+        mv.visitInsn(AALOAD);
+    }
+
+    private static void writePushInt(MethodVisitor mv, int value) {
+        if (value <= 5) {
+            mv.visitInsn(ICONST_0 + value);
+        } else if (value <= Byte.MAX_VALUE) {
+            mv.visitIntInsn(BIPUSH, value);
+        } else {
+            mv.visitIntInsn(SIPUSH, value);
+        }
+    }
+
+    private static void writeMemoryCall(MethodVisitor mv, String name, String desc) {
+        mv.visitMethodInsn(INVOKEVIRTUAL, MEMORY, name, desc, false);
+    }
+
+    private static void writeValueOf(MethodVisitor mv, Class<?> memoryClass, String argDesc) {
+        String owner = Type.getInternalName(memoryClass);
+        mv.visitMethodInsn(INVOKESTATIC, owner, "valueOf", "(" + argDesc + ")" + MEMORY_DESC, false);
+    }
+
+    private static void writeUnbox(MethodVisitor mv, Class<?> type) {
+        if (type.isPrimitive()) {
+            Type box = Type.getType(box(type));
+            Type primitive = Type.getType(type);
+
+            mv.visitTypeInsn(CHECKCAST, box.getInternalName());
+            mv.visitMethodInsn(INVOKEVIRTUAL, box.getInternalName(), primitive.getClassName() + "Value",
+                    "()" + primitive.getDescriptor(), false);
+        } else if (type != Object.class) {
+            mv.visitTypeInsn(CHECKCAST, Type.getInternalName(type));
+        }
+    }
+
+    private static void writeBox(MethodVisitor mv, Class<?> type) {
+        if (type == void.class) {
+            mv.visitInsn(ACONST_NULL);
+        } else if (type.isPrimitive()) {
+            Type box = Type.getType(box(type));
+            mv.visitMethodInsn(INVOKESTATIC, box.getInternalName(), "valueOf",
+                    "(" + Type.getDescriptor(type) + ")" + box.getDescriptor(), false);
+        }
+    }
+
+    private static Class<?> box(Class<?> type) {
+        if (type == int.class) return Integer.class;
+        if (type == long.class) return Long.class;
+        if (type == double.class) return Double.class;
+        if (type == float.class) return Float.class;
+        if (type == boolean.class) return Boolean.class;
+        if (type == byte.class) return Byte.class;
+        if (type == short.class) return Short.class;
+        if (type == char.class) return Character.class;
+
+        throw new IllegalArgumentException("Not a primitive type - " + type);
+    }
+
+    /**
+     * Internal classes of the JDK are skipped, they can be not exported to the unnamed module.
+     */
+    private static boolean isAccessible(Class<?> type) {
+        while (type.isArray()) {
+            type = type.getComponentType();
+        }
+
+        if (type.isPrimitive()) {
+            return true;
+        }
+
+        String name = type.getName();
+
+        if (name.startsWith("sun.") || name.startsWith("com.sun.") || name.startsWith("jdk.")) {
+            return false;
+        }
+
+        for (Class<?> cls = type; cls != null; cls = cls.getEnclosingClass()) {
+            if (!Modifier.isPublic(cls.getModifiers())) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @return null if there is no loader which sees both the runtime and the class
+     */
+    private static InvokerClassLoader getLoader(Class<?> owner) {
+        ClassLoader parent = owner.getClassLoader();
+
+        if (!isVisible(NativeInvoker.class, parent)) {
+            parent = NativeInvoker.class.getClassLoader();
+
+            if (!isVisible(owner, parent)) {
+                return null;
+            }
+        }
+
+        synchronized (loaders) {
+            WeakReference<InvokerClassLoader> reference = loaders.get(parent);
+            InvokerClassLoader loader = reference == null ? null : reference.get();
+
+            if (loader == null) {
+                loader = new InvokerClassLoader(parent);
+                loaders.put(parent, new WeakReference<>(loader));
+            }
+
+            return loader;
+        }
+    }
+
+    private static boolean isVisible(Class<?> type, ClassLoader loader) {
+        try {
+            return Class.forName(type.getName(), false, loader) == type;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    static class InvokerClassLoader extends ClassLoader {
+        InvokerClassLoader(ClassLoader parent) {
+            super(parent);
+        }
+
+        Class<?> define(String name, byte[] bytes) {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+}
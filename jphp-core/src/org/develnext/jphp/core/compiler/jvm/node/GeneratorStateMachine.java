@@ -0,0 +1,450 @@
+package org.develnext.jphp.core.compiler.jvm.node;
+
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.*;
+import org.objectweb.asm.tree.analysis.*;
+import php.runtime.Memory;
+import php.runtime.env.Environment;
+import php.runtime.env.TraceInfo;
+import php.runtime.lang.Generator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.objectweb.asm.Opcodes.*;
+
+/**
+ * Transforms the _run method of a compiled generator into a resumable state machine.
+ *
+ * Each yield saves the locals and the operand stack of _run into the fields of
+ * {@link Generator} and returns, the next call of _run restores them via a jump table and
+ * continues after the yield. Such generators are executed in the caller thread, if the method
+ * cannot be transformed the generator class stays as is and works via a separate thread.
+ */
+public class GeneratorStateMachine {
+    private static final String GENERATOR = Type.getInternalName(Generator.class);
+    private static final String RUN_DESC = Type.getMethodDescriptor(
+            Type.getType(Memory.class), Type.getType(Environment.class), Type.getType(Memory[].class)
+    );
+
+    private static final String YIELD_DESC = Type.getMethodDescriptor(
+            Type.getType(Memory.class), Type.getType(Environment.class), Type.getType(TraceInfo.class)
+    );
+    private static final String YIELD_VALUE_DESC = Type.getMethodDescriptor(
+            Type.getType(Memory.class), Type.getType(Environment.class), Type.getType(TraceInfo.class), Type.getType(Memory.class)
+    );
+
+    private static final int MAX_STACK = 1024;
+
+    protected final ClassNode node;
+
+    private MethodNode original;
+    private MethodNode resumable;
+    private MethodNode resumableFlag;
+
+    public GeneratorStateMachine(ClassNode node) {
+        this.node = node;
+    }
+
+    /**
+     * Replaces _run of the class with the resumable version.
+     * @return false if the method cannot be transformed
+     */
+    public boolean apply() {
+        for (MethodNode method : node.methods) {
+            if ("_run".equals(method.name) && RUN_DESC.equals(method.desc)) {
+                original = method;
+                break;
+            }
+        }
+
+        if (original == null) {
+            return false;
+        }
+
+        MethodNode method = new MethodNode(
+                ASM5, original.access, original.name, original.desc, original.signature,
+                original.exceptions.toArray(new String[original.exceptions.size()])
+        );
+        original.accept(method);
+
+        try {
+            if (!transform(method)) {
+                return false;
+            }
+        } catch (AnalyzerException | RuntimeException e) {
+            return false;
+        }
+
+        resumable = method;
+
+        resumableFlag = new MethodNode(ASM5, ACC_PROTECTED, "isResumable", "()Z", null, null);
+        resumableFlag.instructions.add(new InsnNode(ICONST_1));
+        resumableFlag.instructions.add(new InsnNode(IRETURN));
+
+        node.methods.set(node.methods.indexOf(original), resumable);
+        node.methods.add(resumableFlag);
+        return true;
+    }
+
+    /**
+     * Restores the original _run, for example if the transformed method is too large.
+     */
+    public void revert() {
+        if (resumable != null) {
+            node.methods.set(node.methods.indexOf(resumable), original);
+            node.methods.remove(resumableFlag);
+
+            resumable = null;
+            resumableFlag = null;
+        }
+    }
+
+    protected boolean transform(MethodNode method) throws AnalyzerException {
+        List<MethodInsnNode> calls = new ArrayList<MethodInsnNode>();
+
+        for (AbstractInsnNode insn : method.instructions.toArray()) {
+            if (isYieldCall(insn)) {
+                calls.add((MethodInsnNode) insn);
+            }
+        }
+
+        method.maxLocals = computeMaxLocals(method);
+
+        Frame<BasicValue>[] frames = analyze(method, new Verifier(node));
+        Frame<SourceValue>[] sources = analyze(method, new SourceInterpreter());
+
+        List<Site> sites = new ArrayList<Site>();
+        int frameSize = method.maxLocals;
+
+        for (MethodInsnNode call : calls) {
+            int index = method.instructions.indexOf(call);
+            Frame<BasicValue> frame = frames[index];
+
+            if (frame == null) {
+                continue; // dead code
+            }
+
+            int argCount = Type.getArgumentTypes(call.desc).length + 1;
+            int stackSize = frame.getStackSize() - argCount;
+
+            for (int i = 0; i < stackSize; i++) {
+                for (AbstractInsnNode source : sources[index].getStack(i).insns) {
+                    if (source.getOpcode() == NEW) {
+                        return false; // uninitialized objects cannot be saved
+                    }
+                }
+            }
+
+            Site site = new Site(call, sites.size() + 1);
+
+            for (int i = 1; i < method.maxLocals; i++) {
+                BasicValue value = frame.getLocal(i);
+                if (!isSaved(value)) {
+                    continue;
+                }
+
+                if (value.getType().getSort() == Type.METHOD) {
+                    return false;
+                }
+
+                site.locals.add(new Slot(i, value.getType()));
+            }
+
+            int slot = method.maxLocals;
+            for (int i = 0; i < stackSize; i++) {
+                BasicValue value = frame.getStack(i);
+
+                if (value.getType() == null || value.getType().getSort() == Type.METHOD) {
+                    return false;
+                }
+
+                site.stack.add(new Slot(slot, value.getType()));
+                slot += value.getSize();
+            }
+
+            frameSize = Math.max(frameSize, slot);
+            sites.add(site);
+        }
+
+        LabelNode start = new LabelNode();
+        InsnList dispatch = new InsnList();
+
+        if (!sites.isEmpty()) {
+            LabelNode[] labels = new LabelNode[sites.size()];
+            for (int i = 0; i < labels.length; i++) {
+                labels[i] = new LabelNode();
+            }
+
+            dispatch.add(new VarInsnNode(ALOAD, 0));
+            dispatch.add(new FieldInsnNode(GETFIELD, GENERATOR, "__state", "I"));
+            dispatch.add(new TableSwitchInsnNode(1, sites.size(), start, labels));
+
+            for (Site site : sites) {
+                dispatch.add(labels[site.state - 1]);
+                writeRestore(dispatch, site);
+            }
+        }
+
+        dispatch.add(start);
+        method.instructions.insert(dispatch);
+
+        for (Site site : sites) {
+            writeSuspend(method.instructions, site, frameSize);
+        }
+
+        return true;
+    }
+
+    protected void writeSuspend(InsnList instructions, Site site, int frameSize) {
+        InsnList code = new InsnList();
+        boolean delegate = "yieldFrom".equals(site.call.name);
+
+        String desc = Type.getMethodDescriptor(Type.VOID_TYPE, Type.getArgumentTypes(site.call.desc));
+        code.add(new MethodInsnNode(INVOKEVIRTUAL, GENERATOR, delegate ? "__delegate" : "__suspend", desc, false));
+
+        LabelNode loop = new LabelNode();
+        LabelNode done = new LabelNode();
+
+        if (delegate) {
+            code.add(loop);
+            code.add(new VarInsnNode(ALOAD, 0));
+            code.add(new MethodInsnNode(INVOKEVIRTUAL, GENERATOR, "__delegateNext", "()Z", false));
+            code.add(new JumpInsnNode(IFEQ, done));
+        }
+
+        for (int i = site.stack.size() - 1; i >= 0; i--) {
+            Slot slot = site.stack.get(i);
+
+            if (slot.isNull()) {
+                code.add(new InsnNode(POP));
+            } else {
+                code.add(new VarInsnNode(slot.type.getOpcode(ISTORE), slot.index));
+            }
+        }
+
+        code.add(new VarInsnNode(ALOAD, 0));
+        pushInt(code, frameSize);
+        code.add(new MethodInsnNode(INVOKEVIRTUAL, GENERATOR, "__allocFrame", "(I)V", false));
+
+        for (Slot slot : site.locals) {
+            writeSave(code, slot);
+        }
+
+        for (Slot slot : site.stack) {
+            writeSave(code, slot);
+        }
+
+        code.add(new VarInsnNode(ALOAD, 0));
+        pushInt(code, site.state);
+        code.add(new FieldInsnNode(PUTFIELD, GENERATOR, "__state", "I"));
+        code.add(new InsnNode(ACONST_NULL));
+        code.add(new InsnNode(ARETURN));
+
+        code.add(site.resume);
+        code.add(new VarInsnNode(ALOAD, 0));
+
+        if (delegate) {
+            code.add(new MethodInsnNode(INVOKEVIRTUAL, GENERATOR, "checkNewThrow", "()V", false));
+            code.add(new JumpInsnNode(GOTO, loop));
+            code.add(done);
+            code.add(new VarInsnNode(ALOAD, 0));
+            code.add(new MethodInsnNode(INVOKEVIRTUAL, GENERATOR, "__delegateResult", "()Lphp/runtime/Memory;", false));
+        } else {
+            code.add(new MethodInsnNode(INVOKEVIRTUAL, GENERATOR, "__resume", "()Lphp/runtime/Memory;", false));
+        }
+
+        instructions.insert(site.call, code);
+        instructions.remove(site.call);
+    }
+
+    protected void writeRestore(InsnList code, Site site) {
+        for (Slot slot : site.locals) {
+            writeLoad(code, slot);
+            code.add(new VarInsnNode(slot.type.getOpcode(ISTORE), slot.index));
+        }
+
+        for (Slot slot : site.stack) {
+            writeLoad(code, slot);
+        }
+
+        code.add(new JumpInsnNode(GOTO, site.resume));
+    }
+
+    protected void writeSave(InsnList code, Slot slot) {
+        if (slot.isNull()) {
+            return;
+        }
+
+        code.add(new VarInsnNode(ALOAD, 0));
+
+        switch (slot.type.getSort()) {
+            case Type.OBJECT:
+            case Type.ARRAY:
+                code.add(new FieldInsnNode(GETFIELD, GENERATOR, "__locals", "[Ljava/lang/Object;"));
+                pushInt(code, slot.index);
+                code.add(new VarInsnNode(ALOAD, slot.index));
+                code.add(new InsnNode(AASTORE));
+                return;
+
+            default:
+                code.add(new FieldInsnNode(GETFIELD, GENERATOR, "__primitives", "[J"));
+                pushInt(code, slot.index);
+                code.add(new VarInsnNode(slot.type.getOpcode(ILOAD), slot.index));
+
+                switch (slot.type.getSort()) {
+                    case Type.FLOAT:
+                        code.add(new MethodInsnNode(INVOKESTATIC, "java/lang/Float", "floatToRawIntBits", "(F)I", false));
+                        code.add(new InsnNode(I2L));
+                        break;
+                    case Type.DOUBLE:
+                        code.add(new MethodInsnNode(INVOKESTATIC, "java/lang/Double", "doubleToRawLongBits", "(D)J", false));
+                        break;
+                    case Type.LONG:
+                        break;
+                    default:
+                        code.add(new InsnNode(I2L));
+                }
+
+                code.add(new InsnNode(LASTORE));
+        }
+    }
+
+    protected void writeLoad(InsnList code, Slot slot) {
+        if (slot.isNull()) {
+            code.add(new InsnNode(ACONST_NULL));
+            return;
+        }
+
+        code.add(new VarInsnNode(ALOAD, 0));
+
+        switch (slot.type.getSort()) {
+            case Type.OBJECT:
+            case Type.ARRAY:
+                code.add(new FieldInsnNode(GETFIELD, GENERATOR, "__locals", "[Ljava/lang/Object;"));
+                pushInt(code, slot.index);
+                code.add(new InsnNode(AALOAD));
+
+                if (!"java/lang/Object".equals(slot.type.getInternalName())) {
+                    code.add(new TypeInsnNode(CHECKCAST, slot.type.getInternalName()));
+                }
+                return;
+
+            default:
+                code.add(new FieldInsnNode(GETFIELD, GENERATOR, "__primitives", "[J"));
+                pushInt(code, slot.index);
+                code.add(new InsnNode(LALOAD));
+
+                switch (slot.type.getSort()) {
+                    case Type.FLOAT:
+                        code.add(new InsnNode(L2I));
+                        code.add(new MethodInsnNode(INVOKESTATIC, "java/lang/Float", "intBitsToFloat", "(I)F", false));
+                        break;
+                    case Type.DOUBLE:
+                        code.add(new MethodInsnNode(INVOKESTATIC, "java/lang/Double", "longBitsToDouble", "(J)D", false));
+                        break;
+                    case Type.LONG:
+                        break;
+                    default:
+                        code.add(new InsnNode(L2I));
+                }
+        }
+    }
+
+    private boolean isYieldCall(AbstractInsnNode insn) {
+        if (insn.getOpcode() != INVOKEVIRTUAL) {
+            return false;
+        }
+
+        MethodInsnNode call = (MethodInsnNode) insn;
+
+        return ("yield".equals(call.name) || "yieldFrom".equals(call.name))
+                && (YIELD_DESC.equals(call.desc) || YIELD_VALUE_DESC.equals(call.desc))
+                && (GENERATOR.equals(call.owner) || node.name.equals(call.owner));
+    }
+
+    private static boolean isSaved(BasicValue value) {
+        return value != null && value != BasicValue.UNINITIALIZED_VALUE && value.getType() != null;
+    }
+
+    private static int computeMaxLocals(MethodNode method) {
+        int max = (Type.getArgumentsAndReturnSizes(method.desc) >> 2);
+
+        for (AbstractInsnNode insn : method.instructions.toArray()) {
+            if (insn instanceof VarInsnNode) {
+                int opcode = insn.getOpcode();
+                int size = opcode == LLOAD || opcode == DLOAD || opcode == LSTORE || opcode == DSTORE ? 2 : 1;
+
+                max = Math.max(max, ((VarInsnNode) insn).var + size);
+            } else if (insn instanceof IincInsnNode) {
+                max = Math.max(max, ((IincInsnNode) insn).var + 1);
+            }
+        }
+
+        return max;
+    }
+
+    private <V extends Value> Frame<V>[] analyze(MethodNode method, Interpreter<V> interpreter) throws AnalyzerException {
+        for (int maxStack = 32; ; maxStack *= 2) {
+            method.maxStack = maxStack;
+
+            try {
+                return new Analyzer<V>(interpreter).analyze(node.name, method);
+            } catch (AnalyzerException e) {
+                if (maxStack >= MAX_STACK) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private static void pushInt(InsnList code, int value) {
+        if (value >= -1 && value <= 5) {
+            code.add(new InsnNode(ICONST_0 + value));
+        } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            code.add(new IntInsnNode(BIPUSH, value));
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            code.add(new IntInsnNode(SIPUSH, value));
+        } else {
+            code.add(new LdcInsnNode(value));
+        }
+    }
+
+    protected static class Slot {
+        final int index;
+        final Type type;
+
+        Slot(int index, Type type) {
+            this.index = index;
+            this.type = type;
+        }
+
+        boolean isNull() {
+            return type.getSort() == Type.OBJECT && "null".equals(type.getInternalName());
+        }
+    }
+
+    protected static class Site {
+        final MethodInsnNode call;
+        final int state;
+        final LabelNode resume = new LabelNode();
+        final List<Slot> locals = new ArrayList<Slot>();
+        final List<Slot> stack = new ArrayList<Slot>();
+
+        Site(MethodInsnNode call, int state) {
+            this.call = call;
+            this.state = state;
+        }
+    }
+
+    /**
+     * Keeps exact types of values, the generated class itself is unknown for the class loader.
+     */
+    protected static class Verifier extends SimpleVerifier {
+        public Verifier(ClassNode node) {
+            super(Opcodes.ASM5, Type.getObjectType(node.name), Type.getObjectType(node.superName), null, false);
+            setClassLoader(Generator.class.getClassLoader());
+        }
+    }
+}
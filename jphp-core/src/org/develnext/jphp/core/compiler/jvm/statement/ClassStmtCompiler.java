@@ -5,6 +5,7 @@ import org.develnext.jphp.core.compiler.jvm.JPHPClassWriter;
 import org.develnext.jphp.core.compiler.jvm.JvmCompiler;
 import org.develnext.jphp.core.compiler.jvm.misc.LocalVariable;
 import org.develnext.jphp.core.compiler.jvm.node.ClassNodeImpl;
+import org.develnext.jphp.core.compiler.jvm.node.GeneratorStateMachine;
 import org.develnext.jphp.core.compiler.jvm.node.MethodNodeImpl;
 import org.develnext.jphp.core.tokenizer.token.Token;
 import org.develnext.jphp.core.tokenizer.token.expr.ValueExprToken;
@@ -53,11 +54,11 @@ public class ClassStmtCompiler extends StmtCompiler<ClassEntity> {
     private String functionName = "";
 
     private boolean initDynamicExists = false;
-    private int callFuncCount = 0;
     private int callClassCount = 0;
     private int callMethCount = 0;
     private int callConstCount = 0;
     private int callPropCount = 0;
+    private int callCallableCount = 0;
 
     private GeneratorEntity generatorEntity;
 
@@ -71,10 +72,6 @@ public class ClassStmtCompiler extends StmtCompiler<ClassEntity> {
         this.node = new ClassNodeImpl();
     }
 
-    public int getAndIncCallFuncCount() {
-        return callFuncCount++;
-    }
-
     public int getAndIncCallClassCount() {
         return callClassCount++;
     }
@@ -91,6 +88,10 @@ public class ClassStmtCompiler extends StmtCompiler<ClassEntity> {
         return callPropCount++;
     }
 
+    public int getAndIncCallCallableCount() {
+        return callCallableCount++;
+    }
+
     public boolean isInitDynamicExists() {
         return initDynamicExists;
     }
@@ -465,13 +466,6 @@ public class ClassStmtCompiler extends StmtCompiler<ClassEntity> {
                 null
         ));
 
-        node.fields.add(new FieldNode(
-                ACC_PUBLIC + ACC_STATIC, "$CALL_FUNC_CACHE",
-                Type.getDescriptor(FunctionCallCache.class),
-                null,
-                null
-        ));
-
         node.fields.add(new FieldNode(
                 ACC_PUBLIC + ACC_STATIC, "$CALL_METH_CACHE",
                 Type.getDescriptor(MethodCallCache.class),
@@ -500,6 +494,13 @@ public class ClassStmtCompiler extends StmtCompiler<ClassEntity> {
                 null
         ));
 
+        node.fields.add(new FieldNode(
+                ACC_PUBLIC + ACC_STATIC, "$CALL_CALLABLE_CACHE",
+                Type.getDescriptor(CallableCallCache.class),
+                null,
+                null
+        ));
+
         if (functionName != null) {
             node.fields.add(new FieldNode(
                     ACC_PUBLIC + ACC_FINAL + ACC_STATIC, "$CL",
@@ -691,9 +692,6 @@ public class ClassStmtCompiler extends StmtCompiler<ClassEntity> {
         expressionCompiler.writePutStatic("$AMEM", Memory[][].class);
 
         // cached calls
-        expressionCompiler.writePushNewObject(FunctionCallCache.class);
-        expressionCompiler.writePutStatic("$CALL_FUNC_CACHE", FunctionCallCache.class);
-
         expressionCompiler.writePushNewObject(MethodCallCache.class);
         expressionCompiler.writePutStatic("$CALL_METH_CACHE", MethodCallCache.class);
 
@@ -706,6 +704,9 @@ public class ClassStmtCompiler extends StmtCompiler<ClassEntity> {
         expressionCompiler.writePushNewObject(ClassCallCache.class);
         expressionCompiler.writePutStatic("$CALL_CLASS_CACHE", ClassCallCache.class);
 
+        expressionCompiler.writePushNewObject(CallableCallCache.class);
+        expressionCompiler.writePutStatic("$CALL_CALLABLE_CACHE", CallableCallCache.class);
+
         node.instructions.add(new InsnNode(RETURN));
         methodCompiler.writeFooter();
 
@@ -1182,14 +1183,38 @@ public class ClassStmtCompiler extends StmtCompiler<ClassEntity> {
             }
 
             writeInitStatic();
-            cw = new JPHPClassWriter(entity.isTrait());
-            node.accept(cw);
 
-            entity.setData(cw.toByteArray());
+            if (generatorEntity != null) {
+                writeGeneratorClass();
+            } else {
+                writeClass();
+            }
         }
         return entity;
     }
 
+    protected void writeClass() {
+        cw = new JPHPClassWriter(entity.isTrait());
+        node.accept(cw);
+
+        entity.setData(cw.toByteArray());
+    }
+
+    protected void writeGeneratorClass() {
+        GeneratorStateMachine stateMachine = new GeneratorStateMachine(node);
+
+        if (stateMachine.apply()) {
+            try {
+                writeClass();
+                return;
+            } catch (RuntimeException e) {
+                stateMachine.revert(); // e.g. method code too large
+            }
+        }
+
+        writeClass();
+    }
+
     public void setClassContext(ClassStmtToken classContext) {
         this.classContext = classContext;
     }
@@ -20,6 +20,7 @@ import org.develnext.jphp.core.tokenizer.token.expr.operator.*;
 import org.develnext.jphp.core.tokenizer.token.expr.value.*;
 import org.develnext.jphp.core.tokenizer.token.expr.value.macro.*;
 import org.develnext.jphp.core.tokenizer.token.stmt.*;
+import org.objectweb.asm.Handle;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.Type;
 import org.objectweb.asm.tree.*;
@@ -31,14 +32,16 @@ import php.runtime.common.Messages;
 import php.runtime.common.StringUtils;
 import php.runtime.env.Environment;
 import php.runtime.env.TraceInfo;
+import php.runtime.env.handler.TickHandler;
 import php.runtime.exceptions.CriticalException;
 import php.runtime.ext.support.compile.CompileClass;
 import php.runtime.ext.support.compile.CompileConstant;
 import php.runtime.ext.support.compile.CompileFunction;
 import php.runtime.invoke.InvokeHelper;
 import php.runtime.invoke.ObjectInvokeHelper;
-import php.runtime.invoke.cache.FunctionCallCache;
+import php.runtime.invoke.cache.CallableCallCache;
 import php.runtime.invoke.cache.MethodCallCache;
+import php.runtime.invoke.dynamic.DynamicLinker;
 import php.runtime.lang.ForeachIterator;
 import php.runtime.lang.IObject;
 import php.runtime.memory.*;
@@ -48,6 +51,9 @@ import php.runtime.reflection.*;
 import php.runtime.reflection.support.Entity;
 
 import java.io.File;
+import java.lang.invoke.CallSite;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.*;
@@ -1181,14 +1187,26 @@ public class ExpressionStmtCompiler extends StmtCompiler {
             unexpectedToken(access);
 
         writeLineNumber(function);
-        writeDynamicAccessPrepare(access, true);
-        writePushParameters(function.getParameters());
 
-        writeSysStaticCall(
-                ObjectInvokeHelper.class, "invokeMethod",
-                Memory.class,
-                Memory.class, String.class, String.class, Environment.class, TraceInfo.class, Memory[].class
-        );
+        if (access.getField() instanceof NameToken) {
+            writeDynamicAccessPrepare(access, false, false);
+            writePushParameters(function.getParameters());
+
+            writeLinkedCall(
+                    "bootstrapMethod", "invokeMethod", new String[]{((NameToken) access.getField()).getName()},
+                    Memory.class,
+                    Memory.class, Environment.class, TraceInfo.class, Memory[].class
+            );
+        } else {
+            writeDynamicAccessPrepare(access, true);
+            writePushParameters(function.getParameters());
+
+            writeSysStaticCall(
+                    ObjectInvokeHelper.class, "invokeMethod",
+                    Memory.class,
+                    Memory.class, String.class, String.class, Environment.class, TraceInfo.class, Memory[].class
+            );
+        }
         if (!returnValue)
             writePopAll(1);
 
@@ -1269,32 +1287,13 @@ public class ExpressionStmtCompiler extends StmtCompiler {
             else
                 className = ((NameToken) clazz).getName();
 
-            writePushString(className.toLowerCase());
-
             methodName = ((NameToken) access.getField()).getName();
-            writePushString(methodName.toLowerCase());
-
-            writePushString(className);
-            writePushString(methodName);
 
             writePushParameters(function.getParameters());
 
-            if (method.clazz.statement.isTrait()) {
-                writePushConstNull();
-                writePushConstInt(0);
-            } else {
-                int cacheIndex = method.clazz.getAndIncCallMethCount();
-                writeGetStatic("$CALL_METH_CACHE", MethodCallCache.class);
-                writePushConstInt(cacheIndex);
-            }
-
-            writeSysStaticCall(
-                    InvokeHelper.class, "callStatic", Memory.class,
-                    Environment.class, TraceInfo.class,
-                    String.class, String.class, // lower sign name
-                    String.class, String.class, // origin names
-                    Memory[].class,
-                    MethodCallCache.class, Integer.TYPE
+            writeLinkedCall(
+                    "bootstrapStaticMethod", "callStatic", new String[]{className, methodName}, Memory.class,
+                    Environment.class, TraceInfo.class, Memory[].class
             );
         } else {
             if (clazz instanceof NameToken) {
@@ -1382,21 +1381,14 @@ public class ExpressionStmtCompiler extends StmtCompiler {
                 if (!writeOpcode)
                     return null;
                 method.entity.setImmutable(false);
-                int index = method.clazz.getAndIncCallFuncCount();
 
                 writePushEnv();
                 writePushTraceInfo(function);
-                writePushString(realName.toLowerCase());
-                writePushString(realName);
                 writePushParameters(function.getParameters());
 
-                writeGetStatic("$CALL_FUNC_CACHE", FunctionCallCache.class);
-                writePushConstInt(index);
-
-                writeSysStaticCall(
-                        InvokeHelper.class, "call", Memory.class,
-                        Environment.class, TraceInfo.class, String.class, String.class, Memory[].class,
-                        FunctionCallCache.class, Integer.TYPE
+                writeLinkedCall(
+                        "bootstrapFunction", "call", new String[]{realName}, Memory.class,
+                        Environment.class, TraceInfo.class, Memory[].class
                 );
                 if (!returnValue)
                     writePopAll(1);
@@ -1422,10 +1414,12 @@ public class ExpressionStmtCompiler extends StmtCompiler {
 
             writePushEnv();
             writePushTraceInfo(function);
+            writePushCallableCache();
 
             writeSysStaticCall(
                     InvokeHelper.class, "callAny", Memory.class,
-                    Memory.class, Memory[].class, Environment.class, TraceInfo.class
+                    Memory.class, Memory[].class, Environment.class, TraceInfo.class,
+                    CallableCallCache.class, Integer.TYPE
             );
             if (!returnValue)
                 writePopAll(1);
@@ -1433,6 +1427,11 @@ public class ExpressionStmtCompiler extends StmtCompiler {
         return null;
     }
 
+    public void writePushCallableCache() {
+        writeGetStatic("$CALL_CALLABLE_CACHE", CallableCallCache.class);
+        writePushConstInt(method.clazz.getAndIncCallCallableCount());
+    }
+
     public void writeDefineVariables(Collection<VariableExprToken> values) {
         for (VariableExprToken value : values)
             writeDefineVariable(value);
@@ -2098,6 +2097,35 @@ public class ExpressionStmtCompiler extends StmtCompiler {
         }
     }
 
+    void writeLinkedCall(String bootstrap, String name, String[] bootstrapArgs, Class returnClazz, Class... paramClasses) {
+        Type[] args = new Type[paramClasses.length];
+        for (int i = 0; i < args.length; i++) {
+            args[i] = Type.getType(paramClasses[i]);
+            stackPop();
+        }
+
+        Type[] bootstrapTypes = new Type[3 + bootstrapArgs.length];
+        bootstrapTypes[0] = Type.getType(MethodHandles.Lookup.class);
+        bootstrapTypes[1] = Type.getType(String.class);
+        bootstrapTypes[2] = Type.getType(MethodType.class);
+        for (int i = 0; i < bootstrapArgs.length; i++) {
+            bootstrapTypes[3 + i] = Type.getType(String.class);
+        }
+
+        Handle handle = new Handle(
+                H_INVOKESTATIC, Type.getInternalName(DynamicLinker.class), bootstrap,
+                Type.getMethodDescriptor(Type.getType(CallSite.class), bootstrapTypes), false
+        );
+
+        code.add(new InvokeDynamicInsnNode(
+                name, Type.getMethodDescriptor(Type.getType(returnClazz), args), handle, (Object[]) bootstrapArgs
+        ));
+
+        if (returnClazz != void.class) {
+            stackPush(null, StackItem.Type.valueOf(returnClazz));
+        }
+    }
+
     public void writeTickTrigger(Token token) {
         writeTickTrigger(token.toTraceInfo(getCompiler().getContext()));
     }
@@ -2105,6 +2133,11 @@ public class ExpressionStmtCompiler extends StmtCompiler {
     public void writeTickTrigger(TraceInfo trace) {
         if (compiler.getScope().isDebugMode() && method.getLocalVariable("~local") != null) {
             int line = trace.getStartLine();
+            TickHandler tickHandler = compiler.getScope().getTickHandler();
+
+            if (tickHandler != null && !tickHandler.isTickLine(trace.getFileName(), line)) {
+                return;
+            }
 
             if (method.registerTickTrigger(line)) {
                 writePushEnv();
@@ -2525,31 +2558,41 @@ public class ExpressionStmtCompiler extends StmtCompiler {
     }
 
     public void writeDynamicAccessInfo(DynamicAccessExprToken dynamic, boolean addLowerName) {
-        if (dynamic.getField() != null) {
-            if (dynamic.getField() instanceof NameToken) {
-                String name = ((NameToken) dynamic.getField()).getName();
-                writePushString(name);
-                if (addLowerName)
-                    writePushString(name.toLowerCase());
+        writeDynamicAccessInfo(dynamic, true, addLowerName);
+    }
+
+    public void writeDynamicAccessInfo(DynamicAccessExprToken dynamic, boolean addName, boolean addLowerName) {
+        if (addName) {
+            if (dynamic.getField() != null) {
+                if (dynamic.getField() instanceof NameToken) {
+                    String name = ((NameToken) dynamic.getField()).getName();
+                    writePushString(name);
+                    if (addLowerName)
+                        writePushString(name.toLowerCase());
+                } else {
+                    writePush(dynamic.getField(), true, false);
+                    writePopString();
+                    if (addLowerName) {
+                        writePushDupLowerCase();
+                    }
+                }
             } else {
-                writePush(dynamic.getField(), true, false);
+                writeExpression(dynamic.getFieldExpr(), true, false);
                 writePopString();
                 if (addLowerName) {
                     writePushDupLowerCase();
                 }
             }
-        } else {
-            writeExpression(dynamic.getFieldExpr(), true, false);
-            writePopString();
-            if (addLowerName) {
-                writePushDupLowerCase();
-            }
         }
         writePushEnv();
         writePushTraceInfo(dynamic);
     }
 
     public void writeDynamicAccessPrepare(DynamicAccessExprToken dynamic, boolean addLowerName) {
+        writeDynamicAccessPrepare(dynamic, true, addLowerName);
+    }
+
+    public void writeDynamicAccessPrepare(DynamicAccessExprToken dynamic, boolean addName, boolean addLowerName) {
         if (stackEmpty(true))
             unexpectedToken(dynamic);
 
@@ -2567,7 +2610,7 @@ public class ExpressionStmtCompiler extends StmtCompiler {
             }
         }
 
-        writeDynamicAccessInfo(dynamic, addLowerName);
+        writeDynamicAccessInfo(dynamic, addName, addLowerName);
     }
 
     void writeArrayGet(ArrayGetExprToken operator, boolean returnValue) {
@@ -2798,10 +2841,12 @@ public class ExpressionStmtCompiler extends StmtCompiler {
             writePushParameters(call.getParameters());
             writePushEnv();
             writePushTraceInfo(operator);
+            writePushCallableCache();
 
             writeSysStaticCall(
                     InvokeHelper.class, "callAny", Memory.class,
-                    Memory.class, Memory[].class, Environment.class, TraceInfo.class
+                    Memory.class, Memory[].class, Environment.class, TraceInfo.class,
+                    CallableCallCache.class, Integer.TYPE
             );
             if (!returnValue)
                 writePopAll(1);
@@ -7,6 +7,7 @@ public class VariableStats {
     protected boolean reference; // variable is used with references, e.g: $var =& $var2;
     protected boolean unstable; // variable cannot store constant values, option for optimization
     protected boolean used;
+    protected boolean concat; // variable is appended, e.g: $var .= ..
 
     public VariableStats() {
     }
@@ -35,6 +36,10 @@ public class VariableStats {
         return used;
     }
 
+    public boolean isConcat() {
+        return concat;
+    }
+
     public VariableStats setMutable(boolean mutable) {
         this.mutable = mutable;
         return this;
@@ -65,7 +70,12 @@ public class VariableStats {
         return this;
     }
 
+    public VariableStats setConcat(boolean concat) {
+        this.concat = concat;
+        return this;
+    }
+
     public boolean isUnused() {
-        return !passed && !arrayAccess && !reference && !unstable && !mutable && !used;
+        return !passed && !arrayAccess && !reference && !unstable && !mutable && !used && !concat;
     }
 }
@@ -1014,6 +1014,11 @@ public class SimpleExprGenerator extends Generator<ExprStmtToken> {
             analyzer.getScope().typeInfoOf(previous).addTypes(info.getTypes());
         }
 
+        if (current instanceof AssignConcatExprToken && previous instanceof VariableExprToken
+                && analyzer.getFunction() != null) {
+            analyzer.getFunction().variable((VariableExprToken) previous).setConcat(true);
+        }
+
         if (current instanceof ValueIfElseToken){
             return processValueIfElse((ValueIfElseToken)current, next, iterator, closedBraceKind, braceOpened, separator);
         }
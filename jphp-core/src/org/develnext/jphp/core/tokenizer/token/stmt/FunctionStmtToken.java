@@ -203,7 +203,8 @@ public class FunctionStmtToken extends StmtToken {
     public boolean isReference(VariableExprToken variable){
         VariableStats stats = variable(variable);
 
-        return dynamicLocal || stats.isArrayAccess() || stats.isPassed() || stats.isReference();
+        // appended variables are stored in references to use StringBuilderMemory for `.=`
+        return dynamicLocal || stats.isArrayAccess() || stats.isPassed() || stats.isReference() || stats.isConcat();
     }
 
     public boolean isUnstableVariable(VariableExprToken variable){
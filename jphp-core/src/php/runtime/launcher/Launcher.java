@@ -15,12 +15,16 @@ import php.runtime.ext.core.classes.WrapPackageLoader;
 import php.runtime.ext.core.classes.lib.FsUtils;
 import php.runtime.ext.core.classes.stream.Stream;
 import php.runtime.ext.support.Extension;
+import php.runtime.loader.dump.ModuleDumpCache;
+import php.runtime.loader.dump.ModuleDumper;
+import php.runtime.loader.dump.StartupSnapshot;
 import php.runtime.memory.ArrayMemory;
 import php.runtime.memory.LongMemory;
 import php.runtime.memory.StringMemory;
 import php.runtime.reflection.ClassEntity;
 import php.runtime.reflection.ModuleEntity;
 import php.runtime.reflection.support.ReflectionUtils;
+import php.runtime.util.PatternCache;
 
 import java.io.*;
 import java.net.URL;
@@ -163,6 +167,101 @@ public class Launcher {
                 throw new LaunchException(e.getMessage());
             }
         }
+
+        compileScope.setVirtualThreads(getConfigValue("env.virtualThreads", Memory.FALSE).toBoolean());
+
+        Memory moduleCacheDir = getConfigValue("env.moduleCache.dir", Memory.NULL);
+
+        if (!moduleCacheDir.isNull() && !moduleCacheDir.toString().isEmpty()) {
+            compileScope.setModuleDumpCache(new ModuleDumpCache(
+                    new File(moduleCacheDir.toString()),
+                    getConfigValue("env.moduleCache.maxSize", LongMemory.valueOf(256 * 1024 * 1024)).toLong()
+            ));
+        }
+
+        compileScope.getPatternCache().setMaxSize(
+                getConfigValue("env.regexCache.size", LongMemory.valueOf(PatternCache.DEFAULT_MAX_SIZE)).toInteger()
+        );
+
+        String snapshot = config.getProperty("env.snapshot", System.getProperty("jphp.snapshot", ""));
+
+        if (!snapshot.isEmpty()) {
+            compileScope.setStartupSnapshot(loadSnapshot(snapshot));
+        }
+    }
+
+    /**
+     * @return null if the snapshot is not found or it's created by other jphp version
+     */
+    protected StartupSnapshot loadSnapshot(String name) {
+        try {
+            File file = new File(name);
+
+            if (file.isFile()) {
+                return StartupSnapshot.load(file);
+            }
+
+            InputStream resource = classLoader.getResourceAsStream(name);
+
+            if (resource != null) {
+                try {
+                    return StartupSnapshot.load(resource);
+                } finally {
+                    resource.close();
+                }
+            }
+        } catch (IOException e) {
+            if (Startup.isTracing()) {
+                Startup.trace("Unable to load the startup snapshot " + name + ", " + e.getMessage());
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Registers extensions as initExtensions() does and compiles the bootstrap modules without running them,
+     * the snapshot is used by next launches via the env.snapshot option.
+     */
+    public StartupSnapshot createSnapshot() throws Throwable {
+        readConfig();
+        compileScope.setStartupSnapshot(null);
+        initExtensions();
+
+        StartupSnapshot snapshot = new StartupSnapshot();
+
+        for (String name : compileScope.getExtensions()) {
+            snapshot.addExtension(compileScope.getExtension(name).getClass().getName());
+        }
+
+        List<String> files = new ArrayList<String>();
+        files.add(getBootstrapFile());
+        files.addAll(Arrays.asList(getBootstrapIncludes()));
+
+        for (String file : files) {
+            if (file.trim().isEmpty() || preferCompiled(file).endsWith(".phb")) {
+                continue;
+            }
+
+            Stream stream = Stream.create(environment, file, "r");
+            byte[] source;
+
+            try {
+                source = ModuleDumpCache.readAll(Stream.getInputStream(environment, stream));
+            } finally {
+                environment.invokeMethod(stream, "close");
+            }
+
+            Context context = new Context(new ByteArrayInputStream(source), file, environment.getDefaultCharset());
+            ModuleEntity module = compileScope.createCompiler(environment, context).compile(false);
+
+            ByteArrayOutputStream dump = new ByteArrayOutputStream();
+            new ModuleDumper(context, environment, true).save(module, dump);
+
+            snapshot.addModule(file, ModuleDumpCache.key(compileScope, file, source), dump.toByteArray());
+        }
+
+        return snapshot;
     }
 
     protected void loadExtensions() {
@@ -173,7 +272,38 @@ public class Launcher {
         }
     }
 
+    /**
+     * @return false if an extension of the snapshot is not found
+     */
+    @SuppressWarnings("unchecked")
+    protected boolean registerExtensions(StartupSnapshot snapshot) {
+        for (String className : snapshot.getExtensions()) {
+            try {
+                compileScope.registerExtension((Class<? extends Extension>) Class.forName(className));
+            } catch (ClassNotFoundException e) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
     protected void initExtensions() {
+        StartupSnapshot snapshot = compileScope.getStartupSnapshot();
+
+        if (snapshot == null || !registerExtensions(snapshot)) {
+            discoverExtensions();
+        }
+
+        this.environment = getConfigValue("env.concurrent", "1").toBoolean()
+                ? new ConcurrentEnvironment(compileScope, out)
+                : new Environment(compileScope, out);
+
+        environment.setErrorFlags(ErrorType.E_ALL.value ^ ErrorType.E_NOTICE.value);
+        environment.getDefaultBuffer().setImplicitFlush(true);
+    }
+
+    protected void discoverExtensions() {
         String tmp = getConfigValue("env.extensions", "spl").toString();
         String[] _extensions = StringUtils.split(tmp, ",");
 
@@ -214,13 +344,27 @@ public class Launcher {
 
             compileScope.registerExtension(className);
         }
+    }
 
-        this.environment = getConfigValue("env.concurrent", "1").toBoolean()
-                ? new ConcurrentEnvironment(compileScope, out)
-                : new Environment(compileScope, out);
+    protected String getBootstrapFile() {
+        return config.getProperty("bootstrap.file", System.getProperty("bootstrap.file", "res://JPHP-INF/.bootstrap.php"));
+    }
 
-        environment.setErrorFlags(ErrorType.E_ALL.value ^ ErrorType.E_NOTICE.value);
-        environment.getDefaultBuffer().setImplicitFlush(true);
+    protected String[] getBootstrapIncludes() {
+        return StringUtils.split(config.getProperty("bootstrap.files", System.getProperty("bootstrap.files", "")),'|');
+    }
+
+    /**
+     * @return path of the .phb dump if it exists near the .php file
+     */
+    protected String preferCompiled(String file) throws Throwable {
+        if ("php".equals(FsUtils.ext(file))) {
+            if (Stream.exists(environment, StringMemory.valueOf(file.substring(0, file.length() - 4) + ".phb")).toBoolean()) {
+                return file.substring(0, file.length() - 4) + ".phb";
+            }
+        }
+
+        return file;
     }
 
     public void printTrace(String name) {
@@ -255,18 +399,16 @@ public class Launcher {
             }
         }
 
+        if (getConfigValue("env.profiler", Memory.FALSE).toBoolean()) {
+            startProfiler();
+        }
+
         if (Startup.isShowInitDelay()) {
             long t = System.currentTimeMillis() - startTime;
             Startup.trace("Startup time = " + t + "ms");
         }
 
-        String file = config.getProperty("bootstrap.file", System.getProperty("bootstrap.file", "res://JPHP-INF/.bootstrap.php"));
-
-        if ("php".equals(FsUtils.ext(file))) {
-            if (Stream.exists(environment, StringMemory.valueOf(file.substring(0, file.length() - 4) + ".phb")).toBoolean()) {
-                file = file.substring(0, file.length() - 4) + ".phb";
-            }
-        }
+        String file = preferCompiled(getBootstrapFile());
 
         String classLoader = config.getProperty("env.classLoader", ReflectionUtils.getClassName(WrapClassLoader.WrapLauncherClassLoader.class));
         String pkgLoader = config.getProperty("env.packageLoader", ReflectionUtils.getClassName(WrapPackageLoader.WrapLauncherPackageLoader.class));
@@ -322,17 +464,13 @@ public class Launcher {
                 environment.getGlobals().put("argv", argv);
                 environment.getGlobals().put("argc", LongMemory.valueOf(argv.size()));
 
-                String[] includes = StringUtils.split(config.getProperty("bootstrap.files", System.getProperty("bootstrap.files", "")),'|');
+                String[] includes = getBootstrapIncludes();
 
                 if (includes.length > 0) {
                     for (String include : includes) {
                         if (include.trim().isEmpty()) continue;
 
-                        if ("php".equals(FsUtils.ext(include))) {
-                            if (Stream.exists(environment, StringMemory.valueOf(include.substring(0, include.length() - 4) + ".phb")).toBoolean()) {
-                                include = include.substring(0, include.length() - 4) + ".phb";
-                            }
-                        }
+                        include = preferCompiled(include);
 
                         ModuleEntity fetchModule = environment.getModuleManager().fetchModule(include);
 
@@ -372,6 +510,37 @@ public class Launcher {
             throw new LaunchException("Please set value of the `bootstrap.file` option in the launcher.conf file");
     }
 
+    /**
+     * env.profiler.interval - millis between samples, env.profiler.mode - cpu or wall,
+     * env.profiler.output - file to write the profile on exit, *.json for a json tree, else collapsed stacks.
+     */
+    protected void startProfiler() {
+        final SamplingProfiler profiler = SamplingProfiler.getInstance();
+
+        profiler.start(
+                getConfigValue("env.profiler.interval", LongMemory.valueOf(10)).toLong(),
+                !"wall".equalsIgnoreCase(getConfigValue("env.profiler.mode", "cpu").toString())
+        );
+
+        final String output = getConfigValue("env.profiler.output", "").toString();
+
+        if (!output.isEmpty()) {
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                profiler.stop();
+
+                try (Writer writer = new OutputStreamWriter(new FileOutputStream(output), "UTF-8")) {
+                    if (output.endsWith(".json")) {
+                        profiler.writeJson(writer);
+                    } else {
+                        profiler.writeCollapsed(writer);
+                    }
+                } catch (IOException e) {
+                    System.err.println("Unable to write the profile to " + output + ", " + e.getMessage());
+                }
+            }));
+        }
+    }
+
     public boolean isDebug() {
         return isDebug;
     }
@@ -412,6 +581,14 @@ public class Launcher {
 
         Launcher launcher = new Launcher(args);
         Launcher.current = launcher;
+
+        String snapshot = System.getProperty("jphp.snapshot.create");
+
+        if (snapshot != null) {
+            launcher.createSnapshot().save(new File(snapshot));
+            return;
+        }
+
         launcher.run();
     }
 }
@@ -142,4 +142,24 @@ public class ClassesTest extends JvmCompilerCase {
     public void testBug271() {
         check("classes/bug271.php");
     }
+
+    @Test
+    public void testCallSites() {
+        check("classes/call_sites.php");
+    }
+
+    @Test
+    public void testSlotProperties() {
+        check("classes/slot_properties.php");
+    }
+
+    @Test
+    public void testSlotReferences() {
+        check("classes/slot_references.php");
+    }
+
+    @Test
+    public void testSlotPolymorphic() {
+        check("classes/slot_polymorphic.php");
+    }
 }
@@ -45,4 +45,9 @@ public class ClosuresTest extends JvmCompilerCase {
     public void testBug266() {
         check("closures/bug266.php");
     }
+
+    @Test
+    public void testCallables() {
+        check("closures/callables.php");
+    }
 }
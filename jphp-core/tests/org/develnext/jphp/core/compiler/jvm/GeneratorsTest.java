@@ -213,4 +213,9 @@ public class GeneratorsTest extends JvmCompilerCase {
     public void testBug262() {
         check("generators/bug262.php");
     }
+
+    @Test
+    public void testResumableState() {
+        check("generators/resumable_state.php");
+    }
 }
@@ -0,0 +1,75 @@
+package org.develnext.jphp.core.compiler.jvm;
+
+import org.junit.Assert;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.junit.runners.MethodSorters;
+import php.runtime.env.CompileScope;
+import php.runtime.env.Environment;
+import php.runtime.env.TraceInfo;
+import php.runtime.env.handler.TickHandler;
+import php.runtime.memory.ArrayMemory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(JUnit4.class)
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class TickHandlerTest extends JvmCompilerCase {
+    protected TickHandler tickHandler;
+
+    @Override
+    protected CompileScope newScope() {
+        CompileScope scope = super.newScope();
+        scope.setTickHandler(tickHandler);
+        return scope;
+    }
+
+    static class LineHandler extends TickHandler {
+        final List<Integer> lines = new ArrayList<>();
+
+        @Override
+        public void onTick(Environment env, TraceInfo trace, ArrayMemory locals) {
+            lines.add(trace.getStartLine());
+        }
+    }
+
+    @Test
+    public void testTicks() {
+        LineHandler handler = new LineHandler();
+        tickHandler = handler;
+
+        runDynamic("$a = 1;\n$b = 2;\n$c = $a + $b", false);
+        Assert.assertEquals("[0, 1, 2]", handler.lines.toString());
+    }
+
+    @Test
+    public void testIsTick() {
+        LineHandler handler = new LineHandler() {
+            @Override
+            public boolean isTick(Environment env, TraceInfo trace) {
+                return trace.getStartLine() != 1;
+            }
+        };
+        tickHandler = handler;
+
+        runDynamic("$a = 1;\n$b = 2;\n$c = $a + $b", false);
+        Assert.assertEquals("[0, 2]", handler.lines.toString());
+    }
+
+    @Test
+    public void testIsTickLine() {
+        LineHandler handler = new LineHandler() {
+            @Override
+            public boolean isTickLine(String fileName, int line) {
+                return line == 2;
+            }
+        };
+        tickHandler = handler;
+
+        runDynamic("$a = 1;\n$b = 2;\n$c = $a + $b", false);
+        Assert.assertEquals("[2]", handler.lines.toString());
+    }
+}
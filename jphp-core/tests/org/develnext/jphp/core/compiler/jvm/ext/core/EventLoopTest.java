@@ -0,0 +1,23 @@
+package org.develnext.jphp.core.compiler.jvm.ext.core;
+
+import org.develnext.jphp.core.compiler.jvm.JvmCompilerCase;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.junit.runners.MethodSorters;
+
+@RunWith(JUnit4.class)
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class EventLoopTest extends JvmCompilerCase {
+
+    @Test
+    public void testTimers() {
+        check("ext/core/EventLoop_001.php");
+    }
+
+    @Test
+    public void testSockets() {
+        check("ext/core/EventLoop_002.php");
+    }
+}
@@ -22,5 +22,6 @@ public class RegexTest extends JvmCompilerCase {
         check("ext/standard/regex/basic_007.php");
         check("ext/standard/regex/basic_008.php");
         check("ext/standard/regex/basic_009.php");
+        check("ext/standard/regex/basic_010.php");
     }
 }
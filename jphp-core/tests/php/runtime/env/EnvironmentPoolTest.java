@@ -0,0 +1,136 @@
+package php.runtime.env;
+
+import org.junit.Before;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.junit.runners.MethodSorters;
+import php.runtime.common.LangMode;
+import php.runtime.ext.CoreExtension;
+import php.runtime.memory.StringMemory;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class EnvironmentPoolTest {
+    private ByteArrayOutputStream output;
+    private Environment parent;
+
+    @Before
+    public void setUp() throws Throwable {
+        CompileScope scope = new CompileScope();
+        scope.setLangMode(LangMode.DEFAULT);
+        scope.registerExtension(new CoreExtension());
+
+        output = new ByteArrayOutputStream();
+        parent = new Environment(scope, output);
+        parent.eval("function pool_counter() { static $i = 0; return ++$i; }");
+    }
+
+    @Test
+    public void testReuse() throws Throwable {
+        EnvironmentPool pool = new EnvironmentPool(parent, 2);
+
+        Environment env = pool.acquire();
+        env.eval("function pool_declared() { return 1; } $GLOBALS['pool_var'] = 1;");
+
+        assertNotNull(env.fetchFunction("pool_declared"));
+        assertTrue(env.getGlobals().containsKey("pool_var"));
+        assertEquals(1, pool.getActiveCount());
+
+        pool.release(env);
+
+        assertSame(env, pool.acquire());
+        assertNull(env.fetchFunction("pool_declared"));
+        assertFalse(env.getGlobals().containsKey("pool_var"));
+        assertTrue(env.getGlobals().containsKey("GLOBALS"));
+
+        // declared again without the redeclare error.
+        env.eval("function pool_declared() { return 2; }");
+        assertEquals(2, env.eval("return pool_declared();").toLong());
+
+        pool.release(env);
+
+        assertEquals(1, pool.getCreatedCount());
+        assertEquals(1, pool.getReusedCount());
+        assertEquals(1, pool.getIdleCount());
+        assertEquals(0, pool.getActiveCount());
+    }
+
+    @Test
+    public void testReset() throws Throwable {
+        EnvironmentPool pool = new EnvironmentPool(parent, 1);
+
+        Environment env = pool.acquire();
+        env.eval("pool_counter(); pool_counter(); register_shutdown_function(function() { echo 'shutdown'; }); ob_start(); echo 'buffered';");
+
+        pool.release(env);
+        assertEquals("bufferedshutdown", output.toString());
+
+        env = pool.acquire();
+        assertEquals(1, env.eval("return pool_counter();").toLong());
+
+        pool.release(env);
+        assertEquals("bufferedshutdown", output.toString());
+    }
+
+    @Test
+    public void testRestoreReplaced() throws Throwable {
+        parent.setConfigValue("pool_option", StringMemory.valueOf("initial"));
+        parent.setConfigValue("include_path", StringMemory.valueOf("initial"));
+
+        EnvironmentPool pool = new EnvironmentPool(parent, 1);
+
+        Environment env = pool.acquire();
+        env.eval("ini_set('pool_option', 'changed'); ini_set('include_path', 'changed'); ini_set('pool_added', '1');");
+
+        assertEquals("changed", env.getConfigValue("pool_option").toString());
+        pool.release(env);
+
+        env = pool.acquire();
+        assertEquals("initial", env.getConfigValue("pool_option").toString());
+        assertEquals("initial", env.getConfigValue("include_path").toString());
+        assertEquals(Collections.singleton("initial"), env.getIncludePaths());
+        assertNull(env.getConfigValue("pool_added"));
+
+        pool.release(env);
+    }
+
+    @Test
+    public void testMaxSize() throws Throwable {
+        final EnvironmentPool pool = new EnvironmentPool(parent, 1);
+        final CountDownLatch acquired = new CountDownLatch(1);
+
+        Environment env = pool.acquire();
+
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    pool.release(pool.acquire());
+                    acquired.countDown();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        thread.start();
+
+        assertFalse(acquired.await(100, TimeUnit.MILLISECONDS));
+
+        pool.release(env);
+
+        assertTrue(acquired.await(5, TimeUnit.SECONDS));
+        thread.join();
+
+        assertEquals(1, pool.getCreatedCount());
+        assertEquals(1, pool.getReusedCount());
+    }
+}
@@ -0,0 +1,166 @@
+package php.runtime.env;
+
+import org.junit.Before;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.junit.runners.MethodSorters;
+import php.runtime.common.LangMode;
+import php.runtime.ext.CoreExtension;
+import php.runtime.reflection.ModuleEntity;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class ModuleCacheTest {
+    private CompileScope scope;
+    private File source;
+
+    @Before
+    public void setUp() throws IOException {
+        scope = new CompileScope();
+        scope.setLangMode(LangMode.DEFAULT);
+        scope.registerExtension(new CoreExtension());
+
+        source = File.createTempFile("jphp-module-cache", ".php");
+        source.deleteOnExit();
+
+        write("<?php function module_cache_test() { return 42; } return module_cache_test();");
+    }
+
+    private void write(String content) throws IOException {
+        long lastModified = source.lastModified();
+
+        try (FileOutputStream output = new FileOutputStream(source)) {
+            output.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+
+        source.setLastModified(lastModified + 2000);
+    }
+
+    private ModuleEntity include(Environment env) throws Throwable {
+        ModuleEntity module = env.getModuleManager().fetchModule(source.getPath());
+        assertEquals(42, module.include(env).toLong());
+
+        return module;
+    }
+
+    @Test
+    public void testShared() throws Throwable {
+        ModuleCache cache = scope.getModuleCache();
+
+        ModuleEntity first = include(new Environment(scope));
+        ModuleEntity second = include(new Environment(scope));
+
+        assertSame(first, second);
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getHits());
+        assertTrue(cache.getCompileTime() > 0);
+    }
+
+    @Test
+    public void testModified() throws Throwable {
+        ModuleCache cache = scope.getModuleCache();
+        Environment env = new Environment(scope);
+
+        ModuleEntity first = include(env);
+
+        write("<?php return 42;");
+        ModuleEntity second = include(new Environment(scope));
+        ModuleEntity third = include(new Environment(scope));
+
+        assertNotSame(first, second);
+        assertSame(second, third);
+        assertEquals(2, cache.getMisses());
+        assertEquals(1, cache.getHits());
+
+        assertSame(first, env.getModuleManager().findModule(source.getPath()));
+    }
+
+    @Test
+    public void testSingleFlight() throws Throwable {
+        final ModuleCache cache = new ModuleCache();
+        final ModuleEntity module = new ModuleEntity(new Context(""));
+        final AtomicInteger loads = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        final ModuleEntity[] results = new ModuleEntity[8];
+
+        Thread[] threads = new Thread[results.length];
+
+        for (int i = 0; i < threads.length; i++) {
+            final int index = i;
+
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        results[index] = cache.fetch("module.php", 1, new ModuleCache.Loader() {
+                            @Override
+                            public ModuleEntity load() throws Throwable {
+                                loads.incrementAndGet();
+                                Thread.sleep(100);
+                                return module;
+                            }
+                        }, null);
+                    } catch (Throwable throwable) {
+                        throw new RuntimeException(throwable);
+                    }
+                }
+            });
+            threads[i].start();
+        }
+
+        start.countDown();
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.getMisses());
+        assertEquals(threads.length - 1, cache.getHits());
+
+        for (ModuleEntity result : results) {
+            assertSame(module, result);
+        }
+    }
+
+    @Test
+    public void testFailure() throws Throwable {
+        ModuleCache cache = new ModuleCache();
+        final ModuleEntity module = new ModuleEntity(new Context(""));
+
+        try {
+            cache.fetch("module.php", 1, new ModuleCache.Loader() {
+                @Override
+                public ModuleEntity load() throws Throwable {
+                    throw new IllegalStateException("syntax error");
+                }
+            }, null);
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals(0, cache.size());
+        }
+
+        boolean[] loaded = new boolean[1];
+        assertSame(module, cache.fetch("module.php", 1, new ModuleCache.Loader() {
+            @Override
+            public ModuleEntity load() throws Throwable {
+                return module;
+            }
+        }, loaded));
+
+        assertTrue(loaded[0]);
+        assertEquals(1, cache.size());
+    }
+}
@@ -0,0 +1,99 @@
+package php.runtime.env;
+
+import org.junit.After;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.junit.runners.MethodSorters;
+import php.runtime.memory.ArrayMemory;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class SamplingProfilerTest {
+    private final Environment env = new Environment();
+    private final SamplingProfiler profiler = new SamplingProfiler();
+
+    @After
+    public void tearDown() {
+        profiler.stop();
+
+        while (env.getCallStack().getTop() > 0) {
+            env.popCall();
+        }
+    }
+
+    private void push(String clazz, String function, int line) {
+        env.getCallStack().push(TraceInfo.valueOf("test.php", line, 0), null, null, function, clazz, null);
+    }
+
+    @Test
+    public void testCollapsed() {
+        push("Foo", "bar", 9);
+        push(null, "baz", 19);
+
+        profiler.sample();
+        profiler.sample();
+
+        env.popCall();
+        profiler.sample();
+
+        assertEquals(3, profiler.getSamples());
+
+        String[] lines = profiler.toCollapsed().split("\n");
+        Arrays.sort(lines);
+
+        assertArrayEquals(new String[]{
+                "{main} (test.php:10);Foo::bar (test.php:20);baz 2",
+                "{main} (test.php:10);Foo::bar 1"
+        }, lines);
+
+        profiler.reset();
+        assertEquals(0, profiler.getSamples());
+        assertEquals("", profiler.toCollapsed());
+    }
+
+    @Test
+    public void testTree() {
+        push("Foo", "bar", 0);
+        profiler.sample();
+
+        ArrayMemory tree = profiler.toArray();
+        assertEquals(1, tree.valueOfIndex("value").toLong());
+
+        ArrayMemory main = tree.valueOfIndex("children").toValue(ArrayMemory.class).valueOfIndex(0).toValue(ArrayMemory.class);
+        assertEquals("{main} (test.php:1)", main.valueOfIndex("name").toString());
+
+        assertEquals(
+                "{\"name\":\"all\",\"value\":1,\"children\":[{\"name\":\"{main} (test.php:1)\",\"value\":1,"
+                        + "\"children\":[{\"name\":\"Foo::bar\",\"value\":1}]}]}",
+                profiler.toJson()
+        );
+    }
+
+    @Test
+    public void testIdle() {
+        profiler.sample();
+        assertEquals(0, profiler.getSamples());
+    }
+
+    @Test
+    public void testThread() throws InterruptedException {
+        push("Foo", "bar", 0);
+
+        profiler.start(1, true);
+        long time = System.currentTimeMillis();
+
+        while (profiler.getSamples() == 0 && System.currentTimeMillis() - time < 5000) {
+            time += 0; // busy, the stack is sampled only while the thread is runnable
+        }
+
+        profiler.stop();
+        assertFalse(profiler.isRunning());
+        assertTrue(profiler.getSamples() > 0);
+    }
+}
@@ -0,0 +1,146 @@
+package php.runtime.invoke;
+
+import org.junit.Assert;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.junit.runners.MethodSorters;
+import php.runtime.Memory;
+import php.runtime.annotation.Runtime;
+import php.runtime.env.Environment;
+import php.runtime.env.TraceInfo;
+import php.runtime.ext.support.compile.CompileFunction;
+import php.runtime.memory.ArrayMemory;
+import php.runtime.memory.LongMemory;
+import php.runtime.memory.ReferenceMemory;
+import php.runtime.memory.StringMemory;
+import php.runtime.reflection.CompileMethodEntity;
+
+@RunWith(JUnit4.class)
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class NativeInvokerTest {
+    private final Environment env = new Environment();
+
+    public static class Natives {
+        protected final String prefix;
+
+        public Natives(String prefix) {
+            this.prefix = prefix;
+        }
+
+        public static long add(long a, long b) {
+            return a + b;
+        }
+
+        public static String format(Environment env, String s, double d, boolean b) {
+            return (env != null) + ":" + s + ":" + d + ":" + b;
+        }
+
+        public static void inc(@Runtime.Reference Memory value) {
+            value.assign(value.toLong() + 1);
+        }
+
+        public static Memory nothing() {
+            return null;
+        }
+
+        public static ArrayMemory pair(ArrayMemory array, Integer index) {
+            return new ArrayMemory(array.valueOfIndex(index), index);
+        }
+
+        public static int fail(String message) {
+            throw new IllegalStateException(message);
+        }
+
+        public static Memory sum(Memory... args) {
+            return Memory.NULL;
+        }
+
+        public String concat(String s, int count) {
+            StringBuilder sb = new StringBuilder(prefix);
+
+            for (int i = 0; i < count; i++) {
+                sb.append(s);
+            }
+
+            return sb.toString();
+        }
+    }
+
+    static class Hidden {
+        public static long one() {
+            return 1;
+        }
+    }
+
+    private static CompileFunction.Method method(Class<?> clazz, String name, Class<?>... types) throws Exception {
+        return new CompileFunction(name).addMethod(clazz.getMethod(name, types));
+    }
+
+    private Memory invoke(CompileFunction.Method method, Memory... args) throws Throwable {
+        NativeInvoker invoker = method.getInvoker();
+        Assert.assertNotNull(invoker);
+
+        return invoker.invoke(null, env, TraceInfo.UNKNOWN, args);
+    }
+
+    @Test
+    public void testFunctions() throws Throwable {
+        Assert.assertTrue(NativeInvoker.isAvailable());
+
+        CompileFunction.Method add = method(Natives.class, "add", long.class, long.class);
+        Assert.assertEquals(42, invoke(add, LongMemory.valueOf(40), StringMemory.valueOf("2")).toLong());
+        Assert.assertSame(add.getInvoker(), add.getInvoker());
+
+        CompileFunction.Method format = method(Natives.class, "format", Environment.class, String.class, double.class, boolean.class);
+        Assert.assertEquals("true:foo:1.5:true",
+                invoke(format, StringMemory.valueOf("foo"), StringMemory.valueOf("1.5"), LongMemory.valueOf(1)).toString());
+
+        Assert.assertSame(Memory.NULL, invoke(method(Natives.class, "nothing")));
+    }
+
+    @Test
+    public void testReference() throws Throwable {
+        ReferenceMemory value = new ReferenceMemory(LongMemory.valueOf(1));
+
+        Assert.assertSame(Memory.NULL, invoke(method(Natives.class, "inc", Memory.class), value));
+        Assert.assertEquals(2, value.toLong());
+    }
+
+    @Test
+    public void testMethods() throws Throwable {
+        CompileMethodEntity entity = new CompileMethodEntity(null);
+        entity.addMethod(Natives.class.getMethod("concat", String.class, int.class), false);
+
+        Memory result = entity.invokeDynamic((Object) new Natives(">"), env, TraceInfo.UNKNOWN,
+                StringMemory.valueOf("ab"), LongMemory.valueOf(3));
+        Assert.assertEquals(">ababab", result.toString());
+
+        entity = new CompileMethodEntity(null);
+        entity.addMethod(Natives.class.getMethod("pair", ArrayMemory.class, Integer.class), false);
+
+        result = entity.invokeDynamic((Object) null, env, TraceInfo.UNKNOWN,
+                new ArrayMemory(10, 20), LongMemory.valueOf(1));
+        Assert.assertEquals("20", result.valueOfIndex(0).toString());
+        Assert.assertEquals(1, result.valueOfIndex(1).toLong());
+    }
+
+    @Test
+    public void testException() throws Throwable {
+        try {
+            invoke(method(Natives.class, "fail", String.class), StringMemory.valueOf("error"));
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            Assert.fail("Must be converted as via reflection");
+        } catch (RuntimeException e) {
+            // php exception.
+        }
+    }
+
+    @Test
+    public void testUnsupported() throws Throwable {
+        Assert.assertNull(method(Natives.class, "sum", Memory[].class).getInvoker());
+        Assert.assertNull(method(Hidden.class, "one").getInvoker());
+    }
+}
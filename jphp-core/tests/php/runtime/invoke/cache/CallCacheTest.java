@@ -0,0 +1,101 @@
+package php.runtime.invoke.cache;
+
+import org.junit.Assert;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.junit.runners.MethodSorters;
+import php.runtime.env.ConcurrentEnvironment;
+import php.runtime.env.Context;
+import php.runtime.env.Environment;
+import php.runtime.reflection.FunctionEntity;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@RunWith(JUnit4.class)
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class CallCacheTest {
+    private final Context context = new Context(new File("unknown"));
+
+    private FunctionEntity entity(String name) {
+        FunctionEntity entity = new FunctionEntity(context);
+        entity.setName(name);
+        return entity;
+    }
+
+    @Test
+    public void testBasic() {
+        Environment env = new Environment();
+        Environment other = new Environment();
+        FunctionCallCache cache = new FunctionCallCache();
+
+        Assert.assertNull(cache.get(env, 0));
+
+        FunctionEntity foo = entity("foo");
+        cache.put(env, 0, foo);
+        cache.put(env, 100, foo);
+
+        Assert.assertSame(foo, cache.get(env, 0));
+        Assert.assertSame(foo, cache.get(env, 100));
+        Assert.assertNull(cache.get(env, 1));
+        Assert.assertNull(cache.get(other, 0));
+
+        FunctionEntity bar = entity("bar");
+        cache.put(other, 0, bar);
+
+        Assert.assertSame(foo, cache.get(env, 0));
+        Assert.assertSame(bar, cache.get(other, 0));
+    }
+
+    @Test
+    public void testConcurrent() throws InterruptedException {
+        final Environment env = new ConcurrentEnvironment(new Environment());
+        final FunctionCallCache cache = new FunctionCallCache();
+        final AtomicInteger wrong = new AtomicInteger();
+        final int size = 500;
+
+        final FunctionEntity[] entities = new FunctionEntity[size];
+        for (int i = 0; i < size; i++) {
+            entities[i] = entity("f" + i);
+        }
+
+        List<Thread> threads = new ArrayList<Thread>();
+
+        for (int t = 0; t < 4; t++) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int n = 0; n < 20; n++) {
+                        for (int i = 0; i < size; i++) {
+                            FunctionEntity entity = cache.get(env, i);
+
+                            if (entity == null) {
+                                cache.put(env, i, entities[i]);
+                            } else if (entity != entities[i]) {
+                                wrong.incrementAndGet();
+                            }
+                        }
+                    }
+                }
+            });
+
+            threads.add(thread);
+            thread.start();
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Assert.assertEquals(0, wrong.get());
+
+        for (int i = 0; i < size; i++) {
+            FunctionEntity entity = cache.get(env, i);
+            Assert.assertTrue(entity == null || entity == entities[i]);
+        }
+    }
+}
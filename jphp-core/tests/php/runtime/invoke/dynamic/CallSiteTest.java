@@ -0,0 +1,78 @@
+package php.runtime.invoke.dynamic;
+
+import org.junit.Before;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.junit.runners.MethodSorters;
+import php.runtime.Memory;
+import php.runtime.common.LangMode;
+import php.runtime.env.CompileScope;
+import php.runtime.env.Environment;
+import php.runtime.env.TraceInfo;
+import php.runtime.ext.CoreExtension;
+import php.runtime.memory.LongMemory;
+import php.runtime.memory.StringMemory;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodType;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class CallSiteTest {
+    private static final MethodType TYPE = MethodType.methodType(
+            Memory.class, Environment.class, TraceInfo.class, Memory[].class
+    );
+
+    private CompileScope scope;
+
+    @Before
+    public void setUp() {
+        scope = new CompileScope();
+        scope.setLangMode(LangMode.DEFAULT);
+        scope.registerExtension(new CoreExtension());
+    }
+
+    private static Memory call(MethodHandle invoker, Environment env, Memory... args) throws Throwable {
+        return (Memory) invoker.invokeExact(env, TraceInfo.UNKNOWN, args);
+    }
+
+    @Test
+    public void testManyEnvironments() throws Throwable {
+        FunctionCallSite site = (FunctionCallSite) DynamicLinker.bootstrapFunction(null, "call", TYPE, "gettype");
+        MethodHandle invoker = site.dynamicInvoker();
+
+        for (int i = 0; i < InlineCacheCallSite.MAX_DEPTH * 4; i++) {
+            Environment env = new Environment(scope);
+
+            assertEquals("string", call(invoker, env, new StringMemory("foo")).toString());
+            assertEquals("integer", call(invoker, env, LongMemory.valueOf(i)).toString());
+        }
+
+        assertFalse(site.isMegamorphic());
+    }
+
+    @Test
+    public void testManyEntities() throws Throwable {
+        FunctionCallSite site = (FunctionCallSite) DynamicLinker.bootstrapFunction(null, "call", TYPE, "call_site_test");
+        MethodHandle invoker = site.dynamicInvoker();
+
+        Environment[] environments = new Environment[InlineCacheCallSite.MAX_DEPTH + 2];
+
+        for (int i = 0; i < environments.length; i++) {
+            environments[i] = new Environment(scope);
+            environments[i].eval("function call_site_test() { return " + i + "; }");
+        }
+
+        for (int k = 0; k < 2; k++) {
+            for (int i = 0; i < environments.length; i++) {
+                assertEquals(i, call(invoker, environments[i]).toLong());
+            }
+        }
+
+        assertTrue(site.isMegamorphic());
+    }
+}
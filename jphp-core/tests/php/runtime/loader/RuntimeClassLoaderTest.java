@@ -0,0 +1,172 @@
+package php.runtime.loader;
+
+import org.junit.Before;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.junit.runners.MethodSorters;
+import php.runtime.common.LangMode;
+import php.runtime.env.CompileScope;
+import php.runtime.env.Environment;
+import php.runtime.ext.CoreExtension;
+import php.runtime.memory.ObjectMemory;
+import php.runtime.reflection.ModuleEntity;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class RuntimeClassLoaderTest {
+    private static final String SOURCE = "<?php class soak_class { function get() { return %d; } } "
+            + "function soak_function() { return new soak_class(); } "
+            + "$f = function() { return soak_function()->get(); }; return $f();";
+
+    private CompileScope scope;
+    private File source;
+    private int version;
+
+    @Before
+    public void setUp() throws IOException {
+        scope = new CompileScope();
+        scope.setLangMode(LangMode.DEFAULT);
+        scope.registerExtension(new CoreExtension());
+
+        source = File.createTempFile("jphp-class-loader", ".php");
+        source.deleteOnExit();
+    }
+
+    private void write() throws IOException {
+        version++;
+        long lastModified = source.lastModified();
+
+        try (FileOutputStream output = new FileOutputStream(source)) {
+            output.write(String.format(SOURCE, version).getBytes(StandardCharsets.UTF_8));
+        }
+
+        source.setLastModified(lastModified + 2000);
+    }
+
+    private WeakReference<Class<?>> reload() throws Throwable {
+        write();
+
+        Environment env = new Environment(scope);
+        ModuleEntity module = env.getModuleManager().fetchModule(source.getPath());
+
+        assertEquals(version, module.include(env).toLong());
+        return new WeakReference<Class<?>>(module.findClass("soak_class").getNativeClass());
+    }
+
+    private static boolean collect(WeakReference<?> ref) throws InterruptedException {
+        for (int i = 0; i < 20 && ref.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+
+        return ref.get() == null;
+    }
+
+    private static long metaspaceUsed() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+
+        long result = 0;
+
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if ("Metaspace".equals(pool.getName())) {
+                result += pool.getUsage().getUsed();
+            }
+        }
+
+        return result;
+    }
+
+    @Test
+    public void testModuleLoader() throws Throwable {
+        reload();
+
+        ModuleEntity module = scope.findUserModule(source.getPath());
+        Class<?> clazz = module.findClass("soak_class").getNativeClass();
+
+        assertTrue(clazz.getClassLoader() instanceof ModuleClassLoader);
+        assertSame(module, ((ModuleClassLoader) clazz.getClassLoader()).getOwner());
+        assertSame(module, scope.getClassLoader().getModule(module.getInternalName()));
+        assertSame(clazz, scope.getClassLoader().loadClass(clazz.getName()));
+    }
+
+    @Test
+    public void testRemoveUserModule() throws Throwable {
+        WeakReference<Class<?>> first = reload();
+        ModuleEntity module = scope.findUserModule(source.getPath());
+        String className = module.findClass("soak_class").getNativeClass().getName();
+
+        assertSame(module, scope.removeUserModule(source.getPath()));
+
+        try {
+            scope.getClassLoader().loadClass(className);
+            fail();
+        } catch (ClassNotFoundException e) {
+            // ok.
+        }
+
+        module = null;
+        new Environment(scope); // the last environment is kept by the thread's exception handler
+        assertTrue(collect(first));
+    }
+
+    @Test
+    public void testReloadUnloads() throws Throwable {
+        WeakReference<Class<?>> first = reload();
+        reload();
+
+        assertTrue(collect(first));
+    }
+
+    @Test
+    public void testEvalUnloads() throws Throwable {
+        Environment env = new Environment(scope);
+
+        assertEquals(42, env.eval("$f = function() { return 42; }; return $f();").toLong());
+
+        WeakReference<Class<?>> ref = new WeakReference<Class<?>>(env.getGlobals().valueOfIndex("f").toValue(ObjectMemory.class).value.getClass());
+        assertTrue(ref.get().getClassLoader() instanceof ModuleClassLoader);
+
+        String internalName = ((ModuleEntity) ((ModuleClassLoader) ref.get().getClassLoader()).getOwner()).getInternalName();
+        assertNotNull(scope.findModuleByInternalName(internalName));
+
+        env.getGlobals().removeByScalar("f");
+        assertTrue(collect(ref));
+
+        assertNull(scope.findModuleByInternalName(internalName));
+    }
+
+    @Test
+    public void testSoak() throws Throwable {
+        int count = Integer.getInteger("jphp.test.reloads", 2000);
+
+        for (int i = 0; i < 200; i++) {
+            reload();
+        }
+
+        long before = metaspaceUsed();
+
+        for (int i = 0; i < count; i++) {
+            reload();
+        }
+
+        long after = metaspaceUsed();
+
+        // a leaked module takes more than 5 kb of metaspace
+        assertTrue("Metaspace grew from " + before + " to " + after, after - before < 4 * 1024 * 1024);
+    }
+}
@@ -0,0 +1,173 @@
+package php.runtime.loader.dump;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.junit.runners.MethodSorters;
+import php.runtime.common.LangMode;
+import php.runtime.env.CompileScope;
+import php.runtime.env.Environment;
+import php.runtime.ext.CoreExtension;
+import php.runtime.reflection.ModuleEntity;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class ModuleDumpCacheTest {
+    private File directory;
+    private File source;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("jphp-module-cache", "");
+        directory.delete();
+        directory.mkdirs();
+
+        source = new File(directory, "module.php");
+        write(source, "<?php function module_cache_test() { return 42; } return module_cache_test();");
+    }
+
+    @After
+    public void tearDown() {
+        delete(directory);
+        assertFalse(directory.exists());
+    }
+
+    private static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File one : files) {
+                delete(one);
+            }
+        }
+
+        assertTrue("Unable to delete " + file, file.delete());
+    }
+
+    private static void write(File file, String content) throws IOException {
+        try (FileOutputStream output = new FileOutputStream(file)) {
+            output.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private CompileScope newScope(long maxSize) {
+        CompileScope scope = new CompileScope();
+        scope.setLangMode(LangMode.DEFAULT);
+        scope.registerExtension(new CoreExtension());
+        scope.setModuleDumpCache(new ModuleDumpCache(new File(directory, "cache"), maxSize));
+
+        return scope;
+    }
+
+    private int countDumps() {
+        File[] files = new File(directory, "cache").listFiles();
+        int count = 0;
+
+        if (files != null) {
+            for (File file : files) {
+                if (file.getName().endsWith(ModuleDumpCache.EXTENSION)) {
+                    count++;
+                } else {
+                    fail("Unexpected file in the cache: " + file.getName());
+                }
+            }
+        }
+
+        return count;
+    }
+
+    private ModuleEntity include(Environment env) throws Throwable {
+        ModuleEntity module = env.getModuleManager().fetchModule(source.getPath());
+        assertEquals(42, module.include(env).toLong());
+
+        return module;
+    }
+
+    @Test
+    public void testCompileAndLoad() throws Throwable {
+        ModuleEntity compiled = include(new Environment(newScope(0)));
+        assertEquals(1, countDumps());
+
+        // a new scope is like a new process, the module is loaded from the dump.
+        ModuleEntity loaded = include(new Environment(newScope(0)));
+        assertEquals(1, countDumps());
+
+        assertNotSame(compiled, loaded);
+        assertEquals(compiled.getInternalName(), loaded.getInternalName());
+        assertEquals(compiled.getName(), loaded.getName());
+    }
+
+    @Test
+    public void testSameScope() throws Throwable {
+        CompileScope scope = newScope(0);
+
+        ModuleEntity first = include(new Environment(scope));
+        ModuleEntity second = include(new Environment(scope));
+
+        assertSame(first, second);
+        assertEquals(1, countDumps());
+    }
+
+    @Test
+    public void testScopes() throws Throwable {
+        CompileScope scope = newScope(0);
+        ModuleEntity module = include(new Environment(scope));
+
+        // a child scope uses the class loader of its parent, so the module is shared.
+        CompileScope child = new CompileScope(scope);
+        assertSame(module, include(new Environment(child)));
+
+        CompileScope other = new CompileScope(scope);
+        other.setNativeClassLoader(Thread.currentThread().getContextClassLoader());
+
+        ModuleEntity otherModule = include(new Environment(other));
+        assertNotSame(module, otherModule);
+        assertSame(otherModule, other.getClassLoader().getModule(otherModule.getInternalName()));
+        assertSame(module, scope.getClassLoader().getModule(module.getInternalName()));
+    }
+
+    @Test
+    public void testChangedSource() throws Throwable {
+        ModuleEntity first = include(new Environment(newScope(0)));
+
+        write(source, "<?php return 42;");
+        ModuleEntity second = include(new Environment(newScope(0)));
+
+        assertNotEquals(first.getInternalName(), second.getInternalName());
+        assertEquals(2, countDumps());
+    }
+
+    @Test
+    public void testBrokenDump() throws Throwable {
+        include(new Environment(newScope(0)));
+
+        File[] dumps = new File(directory, "cache").listFiles();
+        assertEquals(1, dumps.length);
+        write(dumps[0], "broken");
+
+        include(new Environment(newScope(0)));
+        assertEquals(1, countDumps());
+        assertTrue(dumps[0].length() > "broken".length());
+    }
+
+    @Test
+    public void testEvict() throws Throwable {
+        include(new Environment(newScope(1)));
+        write(source, "<?php return 42;");
+        include(new Environment(newScope(1)));
+
+        assertEquals(0, countDumps());
+
+        include(new Environment(newScope(1024 * 1024)));
+        assertEquals(1, countDumps());
+    }
+}
@@ -0,0 +1,157 @@
+package php.runtime.loader.dump;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.junit.runners.MethodSorters;
+import php.runtime.common.LangMode;
+import php.runtime.env.CompileScope;
+import php.runtime.env.Context;
+import php.runtime.env.Environment;
+import php.runtime.ext.CoreExtension;
+import php.runtime.loader.dump.io.DumpException;
+import php.runtime.reflection.ModuleEntity;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class StartupSnapshotTest {
+    private static final String SOURCE = "<?php class snapshot_class { function get() { return 42; } } "
+            + "$f = function() { return (new snapshot_class())->get(); }; return $f();";
+
+    private File file;
+    private File source;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("jphp-startup", ".snapshot");
+        source = File.createTempFile("jphp-startup", ".php");
+
+        write(source, SOURCE);
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+        source.delete();
+    }
+
+    private static void write(File file, String content) throws IOException {
+        try (FileOutputStream output = new FileOutputStream(file)) {
+            output.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static CompileScope newScope() {
+        CompileScope scope = new CompileScope();
+        scope.setLangMode(LangMode.DEFAULT);
+        scope.registerExtension(new CoreExtension());
+
+        return scope;
+    }
+
+    private ModuleEntity createSnapshot() throws Throwable {
+        CompileScope scope = newScope();
+        Environment env = new Environment(scope);
+
+        byte[] data = SOURCE.getBytes(StandardCharsets.UTF_8);
+        Context context = new Context(new ByteArrayInputStream(data), source.getPath(), env.getDefaultCharset());
+        ModuleEntity module = scope.createCompiler(env, context).compile(false);
+
+        ByteArrayOutputStream dump = new ByteArrayOutputStream();
+        new ModuleDumper(context, env, true).save(module, dump);
+
+        StartupSnapshot snapshot = new StartupSnapshot();
+        snapshot.addExtension(CoreExtension.class.getName());
+        snapshot.addModule(source.getPath(), ModuleDumpCache.key(scope, source.getPath(), data), dump.toByteArray());
+        snapshot.save(file);
+
+        return module;
+    }
+
+    private ModuleEntity include(CompileScope scope) throws Throwable {
+        Environment env = new Environment(scope);
+        ModuleEntity module = env.getModuleManager().fetchModule(source.getPath());
+
+        assertEquals(42, module.include(env).toLong());
+        return module;
+    }
+
+    @Test
+    public void testLoad() throws Throwable {
+        ModuleEntity compiled = createSnapshot();
+        StartupSnapshot snapshot = StartupSnapshot.load(file);
+
+        assertEquals(Arrays.asList(CoreExtension.class.getName()), snapshot.getExtensions());
+        assertTrue(snapshot.hasModule(source.getPath()));
+
+        CompileScope scope = newScope();
+        scope.setStartupSnapshot(snapshot);
+
+        ModuleEntity loaded = include(scope);
+
+        assertNotSame(compiled, loaded);
+        assertEquals(compiled.getInternalName(), loaded.getInternalName());
+        assertSame(loaded, include(scope));
+    }
+
+    @Test
+    public void testLoadFromStream() throws Throwable {
+        createSnapshot();
+
+        StartupSnapshot snapshot;
+        try (InputStream input = new FileInputStream(file)) {
+            snapshot = StartupSnapshot.load(input);
+        }
+
+        CompileScope scope = newScope();
+        scope.setStartupSnapshot(snapshot);
+
+        include(scope);
+    }
+
+    @Test
+    public void testChangedSource() throws Throwable {
+        ModuleEntity compiled = createSnapshot();
+        write(source, SOURCE + " // changed");
+
+        CompileScope scope = newScope();
+        scope.setStartupSnapshot(StartupSnapshot.load(file));
+
+        assertNotEquals(compiled.getInternalName(), include(scope).getInternalName());
+    }
+
+    @Test
+    public void testBrokenSnapshot() throws Throwable {
+        createSnapshot();
+
+        byte[] data;
+        try (InputStream input = new FileInputStream(file)) {
+            data = ModuleDumpCache.readAll(input);
+        }
+
+        try {
+            StartupSnapshot.load(new ByteArrayInputStream(Arrays.copyOf(data, data.length / 2)));
+            fail();
+        } catch (DumpException e) {
+            // ok.
+        }
+
+        data[0]++;
+
+        try {
+            StartupSnapshot.load(new ByteArrayInputStream(data));
+            fail();
+        } catch (DumpException e) {
+            // ok.
+        }
+    }
+}
@@ -81,8 +81,8 @@ public class StringMemoryTest {
         memory.append(false);
         memory.append(123.0);
 
-        Assert.assertEquals("foobar1231123.0", memory.toString());
-        Assert.assertEquals("foobar1231123.0foobar", memory.concat("foobar"));
+        Assert.assertEquals("foobar1231123", memory.toString());
+        Assert.assertEquals("foobar1231123foobar", memory.concat("foobar"));
     }
 
     @Test
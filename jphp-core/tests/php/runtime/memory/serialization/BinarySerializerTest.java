@@ -0,0 +1,183 @@
+package php.runtime.memory.serialization;
+
+import org.junit.Assert;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.junit.runners.MethodSorters;
+import php.runtime.Memory;
+import php.runtime.common.collections.map.LinkedMap;
+import php.runtime.env.Environment;
+import php.runtime.env.TraceInfo;
+import php.runtime.lang.StdClass;
+import php.runtime.memory.*;
+import php.runtime.memory.output.serialization.BinaryDeserializer;
+import php.runtime.memory.output.serialization.BinarySerializer;
+import php.runtime.memory.output.serialization.Serializer;
+
+import java.util.Arrays;
+
+@RunWith(JUnit4.class)
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class BinarySerializerTest {
+
+    private final Environment environment = new Environment();
+
+    private byte[] serialize(Memory value){
+        return new BinarySerializer(environment, TraceInfo.UNKNOWN).serialize(value);
+    }
+
+    private Memory unserialize(byte[] value){
+        return new BinaryDeserializer(environment, TraceInfo.UNKNOWN).read(value);
+    }
+
+    private Memory roundTrip(Memory value){
+        return unserialize(serialize(value));
+    }
+
+    private String serializeText(Memory value){
+        StringBuilder sb = new StringBuilder();
+        new Serializer(environment, TraceInfo.UNKNOWN, sb).write(value);
+        return sb.toString();
+    }
+
+    @Test
+    public void testScalar(){
+        Assert.assertEquals(Memory.NULL, roundTrip(Memory.NULL));
+        Assert.assertEquals(Memory.NULL, roundTrip(Memory.UNDEFINED));
+        Assert.assertEquals(Memory.TRUE, roundTrip(Memory.TRUE));
+        Assert.assertEquals(Memory.FALSE, roundTrip(Memory.FALSE));
+
+        for (long value : new long[]{0, 1, -1, 63, 64, -64, -65, 100500, Long.MAX_VALUE, Long.MIN_VALUE}) {
+            Assert.assertEquals(value, roundTrip(LongMemory.valueOf(value)).toLong());
+        }
+
+        Assert.assertEquals(3.14, roundTrip(DoubleMemory.valueOf(3.14)).toDouble(), 0.0);
+        Assert.assertTrue(Double.isNaN(roundTrip(DoubleMemory.valueOf(Double.NaN)).toDouble()));
+
+        Assert.assertEquals("foobar", roundTrip(new StringMemory("foobar")).toString());
+        Assert.assertEquals("foo\0bar", roundTrip(new StringBuilderMemory("foo\0bar")).toString());
+        Assert.assertEquals("фу", roundTrip(new StringMemory("фу")).toString());
+        Assert.assertEquals("", roundTrip(new StringMemory("")).toString());
+    }
+
+    @Test
+    public void testBinary(){
+        byte[] bytes = {0, (byte) 0xFF, (byte) 0xC3, 10};
+        Memory result = roundTrip(new BinaryMemory(bytes));
+
+        Assert.assertTrue(result instanceof BinaryMemory);
+        Assert.assertArrayEquals(bytes, result.getBinaryBytes());
+    }
+
+    @Test
+    public void testArrays(){
+        Assert.assertEquals("a:0:{}", serializeText(roundTrip(new ArrayMemory())));
+        Assert.assertEquals("a:2:{i:0;i:100;i:1;i:500;}", serializeText(roundTrip(new ArrayMemory(100, 500))));
+        Assert.assertEquals("a:2:{s:1:\"x\";i:100;i:5;s:1:\"x\";}", serializeText(roundTrip(new ArrayMemory(new LinkedMap(){{
+            put("x", 100);
+            put(5L, "x");
+        }}))));
+
+        Assert.assertEquals("a:2:{i:0;a:2:{i:0;i:100;i:1;i:500;}i:1;a:2:{i:0;i:200;i:1;i:600;}}",
+                serializeText(roundTrip(new ArrayMemory(new ArrayMemory(100, 500), new ArrayMemory(200, 600)))));
+    }
+
+    @Test
+    public void testObjects(){
+        StdClass stdClass = new StdClass(environment);
+        stdClass.getProperties().refOfIndex("x").assign("foo");
+        stdClass.getProperties().refOfIndex("y").assign(new ArrayMemory(1, 2));
+
+        Assert.assertEquals("O:8:\"stdClass\":2:{s:1:\"x\";s:3:\"foo\";s:1:\"y\";a:2:{i:0;i:1;i:1;i:2;}}",
+                serializeText(roundTrip(new ObjectMemory(stdClass))));
+    }
+
+    @Test
+    public void testRepeatedObjects() throws Throwable {
+        StdClass stdClass = new StdClass(environment);
+        stdClass.getProperties().refOfIndex("x").assign("foo");
+
+        ObjectMemory object = new ObjectMemory(stdClass);
+        Assert.assertEquals(serializeText(new ArrayMemory(object, object)),
+                serializeText(roundTrip(new ArrayMemory(object, object))));
+
+        Memory serializable = environment.eval(
+                "class BinarySerializerTest_Item implements Serializable {" +
+                "   public $x = 'foo';" +
+                "   function serialize() { return $this->x; }" +
+                "   function unserialize($data) { $this->x = $data; }" +
+                "}" +
+                "$item = new BinarySerializerTest_Item(); return [$item, $item];"
+        );
+
+        Memory result = roundTrip(serializable);
+        Assert.assertEquals(serializeText(serializable), serializeText(result));
+        Assert.assertTrue(result.valueOfIndex(1).isObject());
+    }
+
+    @Test
+    public void testRecursion(){
+        StdClass stdClass = new StdClass(environment);
+        ObjectMemory object = new ObjectMemory(stdClass);
+        stdClass.getProperties().refOfIndex("self").assign(object);
+
+        // only a real cycle is written as null.
+        Assert.assertEquals("O:8:\"stdClass\":1:{s:4:\"self\";N;}", serializeText(roundTrip(object)));
+    }
+
+    @Test
+    public void testStringTable(){
+        ArrayMemory list = new ArrayMemory();
+        for (int i = 0; i < 100; i++) {
+            ArrayMemory item = new ArrayMemory();
+            item.refOfIndex("identifier").assign(i);
+            item.refOfIndex("description").assign("same value");
+            list.add(item);
+        }
+
+        byte[] bytes = serialize(list);
+
+        Assert.assertEquals(serializeText(list), serializeText(unserialize(bytes)));
+        Assert.assertTrue(bytes.length * 5 < serializeText(list).length());
+    }
+
+    @Test
+    public void testInvalid(){
+        byte[] bytes = serialize(new ArrayMemory(new ArrayMemory(100, 500), new StringMemory("foobar")));
+
+        Assert.assertEquals(Memory.NULL, unserialize(new byte[0]));
+        Assert.assertEquals(Memory.NULL, unserialize("s:6:\"foobar\";".getBytes()));
+
+        for (int i = 0; i < bytes.length; i++) {
+            Assert.assertEquals(Memory.NULL, unserialize(Arrays.copyOf(bytes, i)));
+        }
+
+        byte[] tail = Arrays.copyOf(bytes, bytes.length + 1);
+        Assert.assertEquals(Memory.NULL, unserialize(tail));
+    }
+
+    @Test
+    public void testNegativeSize(){
+        int[] tags = {
+                BinarySerializer.TAG_STRING, BinarySerializer.TAG_STRING_REF, BinarySerializer.TAG_BINARY,
+                BinarySerializer.TAG_LIST, BinarySerializer.TAG_ARRAY
+        };
+
+        for (int tag : tags) {
+            byte[] bytes = Arrays.copyOf(BinarySerializer.HEADER, BinarySerializer.HEADER.length + 11);
+            int pos = BinarySerializer.HEADER.length;
+
+            bytes[pos++] = (byte) tag;
+
+            // varint of -1
+            for (int i = 0; i < 9; i++) {
+                bytes[pos++] = (byte) 0xFF;
+            }
+            bytes[pos] = 1;
+
+            Assert.assertEquals(Memory.NULL, unserialize(bytes));
+        }
+    }
+}
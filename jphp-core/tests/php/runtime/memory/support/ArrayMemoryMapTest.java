@@ -0,0 +1,153 @@
+package php.runtime.memory.support;
+
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.junit.runners.MethodSorters;
+import php.runtime.Memory;
+import php.runtime.common.collections.OrderedMapIterator;
+import php.runtime.memory.LongMemory;
+import php.runtime.memory.StringMemory;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class ArrayMemoryMapTest {
+
+    @Test
+    public void testKeys() {
+        ArrayMemoryMap map = new ArrayMemoryMap();
+        map.put(LongMemory.valueOf(1), StringMemory.valueOf("int"));
+        map.put("1", StringMemory.valueOf("string"));
+        map.put(LongMemory.valueOf(100000), StringMemory.valueOf("big"));
+
+        assertEquals(3, map.size());
+        assertEquals("int", map.get(LongMemory.valueOf(1)).toString());
+        assertEquals("string", map.get("1").toString());
+        assertEquals("big", map.get(new LongMemory(100000)).toString());
+        assertNull(map.get(LongMemory.valueOf(2)));
+
+        assertEquals(LongMemory.valueOf(1), map.firstKey());
+        assertEquals(LongMemory.valueOf(100000), map.lastKey());
+        assertEquals("1", map.nextKey(LongMemory.valueOf(1)));
+        assertEquals("1", map.previousKey(LongMemory.valueOf(100000)));
+        assertSame(map.lastKey(), map.lastKey());
+    }
+
+    @Test
+    public void testOrder() {
+        ArrayMemoryMap map = new ArrayMemoryMap();
+        Map<Object, Memory> expected = new LinkedHashMap<Object, Memory>();
+        Random random = new Random(42);
+
+        for (int i = 0; i < 20000; i++) {
+            Object key = random.nextBoolean() ? LongMemory.valueOf(random.nextInt(5000)) : "k" + random.nextInt(5000);
+
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), map.remove(key));
+            } else {
+                Memory value = LongMemory.valueOf(i);
+                assertEquals(expected.put(key, value), map.put(key, value));
+            }
+        }
+
+        assertEquals(expected.size(), map.size());
+        assertEquals(new ArrayList<Object>(expected.keySet()), new ArrayList<Object>(map.keySet()));
+        assertEquals(new ArrayList<Memory>(expected.values()), new ArrayList<Memory>(map.values()));
+
+        int index = 0;
+        for (Object key : expected.keySet()) {
+            assertEquals(key, map.get(index));
+            assertEquals(index, map.indexOf(key));
+            index++;
+        }
+    }
+
+    @Test
+    public void testShiftAndPop() {
+        ArrayMemoryMap map = new ArrayMemoryMap();
+
+        for (int i = 0; i < 1000; i++) {
+            map.put("k" + i, LongMemory.valueOf(i));
+        }
+
+        for (int i = 0; i < 400; i++) {
+            assertEquals(i, map.remove(map.firstKey()).toLong());
+            assertEquals(999 - i, map.remove(map.lastKey()).toLong());
+        }
+
+        assertEquals(200, map.size());
+        assertEquals("k400", map.firstKey());
+        assertEquals("k599", map.lastKey());
+
+        map.put("new", Memory.NULL);
+        assertEquals("new", map.lastKey());
+
+        for (int i = 0; i < 1000; i++) {
+            map.put(LongMemory.valueOf(i), Memory.TRUE);
+        }
+
+        assertEquals(1201, map.size());
+        assertEquals("k400", map.firstKey());
+        assertEquals(LongMemory.valueOf(999), map.lastKey());
+    }
+
+    @Test
+    public void testIterator() {
+        ArrayMemoryMap map = new ArrayMemoryMap();
+
+        for (int i = 0; i < 10; i++) {
+            map.put(LongMemory.valueOf(i), LongMemory.valueOf(i * 10));
+        }
+
+        map.remove(LongMemory.valueOf(0));
+        map.remove(LongMemory.valueOf(5));
+
+        OrderedMapIterator<Object, Memory> iterator = map.orderedMapIterator();
+        assertFalse(iterator.hasPrevious());
+        assertEquals(LongMemory.valueOf(1), iterator.next());
+        assertEquals(LongMemory.valueOf(2), iterator.next());
+        assertEquals(LongMemory.valueOf(2), iterator.previous());
+        assertEquals(20, iterator.getValue().toLong());
+
+        iterator.next();
+        iterator.remove();
+        assertFalse(map.containsKey(LongMemory.valueOf(2)));
+
+        int count = 0;
+        while (iterator.hasNext()) {
+            iterator.next();
+            count++;
+        }
+
+        assertEquals(6, count);
+        assertEquals(7, map.size());
+    }
+
+    @Test
+    public void testDuplicate() {
+        ArrayMemoryMap map = new ArrayMemoryMap();
+
+        for (int i = 0; i < 100; i++) {
+            map.put("k" + i, LongMemory.valueOf(i));
+        }
+
+        for (int i = 0; i < 100; i += 2) {
+            map.remove("k" + i);
+        }
+
+        ArrayMemoryMap copy = map.duplicate();
+        assertEquals(new ArrayList<Object>(map.keySet()), new ArrayList<Object>(copy.keySet()));
+
+        copy.put("k1", Memory.NULL);
+        copy.put("extra", Memory.NULL);
+
+        assertEquals(1, map.get("k1").toLong());
+        assertFalse(map.containsKey("extra"));
+        assertEquals(51, copy.size());
+    }
+}
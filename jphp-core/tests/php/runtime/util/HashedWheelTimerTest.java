@@ -0,0 +1,145 @@
+package php.runtime.util;
+
+import org.junit.After;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.junit.runners.MethodSorters;
+
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class HashedWheelTimerTest {
+    private final HashedWheelTimer timer = new HashedWheelTimer("test", 1, 8, null);
+
+    @After
+    public void tearDown() {
+        timer.stop();
+    }
+
+    static class CountTask extends HashedWheelTimer.Task {
+        final CountDownLatch latch;
+        final AtomicInteger count = new AtomicInteger();
+
+        CountTask(CountDownLatch latch) {
+            this.latch = latch;
+        }
+
+        @Override
+        public void run() {
+            count.incrementAndGet();
+            latch.countDown();
+        }
+    }
+
+    @Test
+    public void testSchedule() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1000);
+        long time = System.nanoTime();
+
+        // more rounds than buckets
+        for (int i = 0; i < 1000; i++) {
+            timer.schedule(new CountTask(latch), i % 50);
+        }
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - time) >= 49);
+
+        assertEquals(1000, timer.getExecuted());
+        assertEquals(0, timer.getPending());
+        assertTrue(timer.getMaxLag() >= 0);
+    }
+
+    @Test
+    public void testCancel() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        CountTask cancelled = new CountTask(new CountDownLatch(1));
+        CountTask task = new CountTask(latch);
+
+        timer.schedule(cancelled, 20);
+        timer.schedule(task, 40);
+
+        assertTrue(cancelled.cancel());
+        assertFalse(cancelled.cancel());
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        Thread.sleep(20);
+
+        assertEquals(0, cancelled.count.get());
+        assertEquals(1, task.count.get());
+        assertFalse(task.cancel());
+        assertEquals(0, timer.getPending());
+    }
+
+    @Test
+    public void testPeriod() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(5);
+        CountTask task = new CountTask(latch);
+
+        timer.schedule(task, 0, 2);
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertTrue(task.cancel());
+
+        int count = task.count.get();
+        Thread.sleep(30);
+
+        assertTrue(task.count.get() <= count + 1);
+        assertTrue(task.scheduledExecutionTime() > 0);
+    }
+
+    @Test
+    public void testExecutor() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        try {
+            timer.setExecutor(executor);
+
+            final CountDownLatch slow = new CountDownLatch(1);
+            final CountDownLatch latch = new CountDownLatch(1);
+
+            timer.schedule(new HashedWheelTimer.Task() {
+                @Override
+                public void run() {
+                    try {
+                        slow.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }, 0);
+            timer.schedule(new CountTask(latch), 10);
+
+            // the slow task does not block the other one
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+            slow.countDown();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testStop() {
+        CountTask task = new CountTask(new CountDownLatch(1));
+        timer.schedule(task, 10000);
+
+        List<HashedWheelTimer.Task> tasks = timer.stop();
+
+        assertEquals(1, tasks.size());
+        assertTrue(task.isCancelled());
+        assertTrue(timer.isStopped());
+
+        try {
+            timer.schedule(new CountTask(new CountDownLatch(1)), 0);
+            fail();
+        } catch (IllegalStateException e) {
+            // ok
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package php.runtime.util;
+
+import org.junit.Assert;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.junit.runners.MethodSorters;
+
+import java.util.regex.Pattern;
+
+@RunWith(JUnit4.class)
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class PatternCacheTest {
+
+    @Test
+    public void testHitsAndMisses() {
+        PatternCache cache = new PatternCache(10);
+
+        Pattern pattern = cache.compile("[a-z]+", 0);
+
+        Assert.assertSame(pattern, cache.compile("[a-z]+", 0));
+        Assert.assertNotSame(pattern, cache.compile("[a-z]+", Pattern.CASE_INSENSITIVE));
+        Assert.assertEquals(Pattern.CASE_INSENSITIVE, cache.compile("[a-z]+", Pattern.CASE_INSENSITIVE).flags());
+
+        Assert.assertEquals(2, cache.getHits());
+        Assert.assertEquals(2, cache.getMisses());
+        Assert.assertEquals(2, cache.size());
+
+        cache.resetStatistics();
+        Assert.assertEquals(0, cache.getHits());
+        Assert.assertEquals(0, cache.getMisses());
+    }
+
+    @Test
+    public void testEviction() {
+        PatternCache cache = new PatternCache(10);
+
+        for (int i = 0; i < 10; i++) {
+            cache.compile("x" + i, 0);
+        }
+
+        cache.compile("x0", 0); // the most recent now
+        cache.compile("y", 0);
+
+        Assert.assertTrue(cache.size() <= 10);
+        Assert.assertTrue(cache.getEvictions() > 0);
+
+        long misses = cache.getMisses();
+        cache.compile("x0", 0);
+        cache.compile("y", 0);
+        Assert.assertEquals(misses, cache.getMisses());
+
+        cache.compile("x1", 0);
+        Assert.assertEquals(misses + 1, cache.getMisses());
+    }
+
+    @Test
+    public void testDisabled() {
+        PatternCache cache = new PatternCache(0);
+
+        Assert.assertNotSame(cache.compile("foo", 0), cache.compile("foo", 0));
+        Assert.assertEquals(0, cache.size());
+        Assert.assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void testLiteral() {
+        Assert.assertEquals("foo bar", PatternCache.toLiteral("foo bar", 0));
+        Assert.assertEquals("foo", PatternCache.toLiteral("foo", Pattern.MULTILINE | Pattern.DOTALL));
+        Assert.assertEquals("a.c", PatternCache.toLiteral("a.c", Pattern.LITERAL));
+
+        Assert.assertNull(PatternCache.toLiteral("a.c", 0));
+        Assert.assertNull(PatternCache.toLiteral("\\d", 0));
+        Assert.assertNull(PatternCache.toLiteral("a|b", 0));
+        Assert.assertNull(PatternCache.toLiteral("foo", Pattern.CASE_INSENSITIVE));
+        Assert.assertNull(PatternCache.toLiteral("foo bar", Pattern.COMMENTS));
+
+        PatternCache cache = new PatternCache();
+        Assert.assertEquals("foo", cache.get("foo", 0).getLiteral());
+        Assert.assertNull(cache.get("fo+", 0).getLiteral());
+    }
+}
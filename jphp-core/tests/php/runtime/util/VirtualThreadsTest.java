@@ -0,0 +1,94 @@
+package php.runtime.util;
+
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.junit.runners.MethodSorters;
+import php.runtime.env.CompileScope;
+import php.runtime.env.Environment;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class VirtualThreadsTest {
+    @Test
+    public void testExecutor() throws Exception {
+        ExecutorService executor = VirtualThreads.newExecutor("test");
+
+        try {
+            Thread thread = executor.submit(new Callable<Thread>() {
+                @Override
+                public Thread call() throws Exception {
+                    return Thread.currentThread();
+                }
+            }).get(5, TimeUnit.SECONDS);
+
+            assertNotSame(Thread.currentThread(), thread);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testExecutorThreadPerTask() throws Exception {
+        final ThreadLocal<String> local = new ThreadLocal<String>();
+        ThreadPerTaskExecutor executor = VirtualThreads.newExecutor("test");
+
+        Callable<String> task = new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                String value = local.get();
+                local.set("used");
+
+                return value;
+            }
+        };
+
+        try {
+            for (int i = 0; i < 3; i++) {
+                assertNull(executor.submit(task).get(5, TimeUnit.SECONDS));
+            }
+
+            assertEquals(3, executor.getTaskCount());
+        } finally {
+            executor.shutdown();
+        }
+
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(0, executor.getActiveCount());
+    }
+
+    @Test
+    public void testThreadFactory() {
+        Thread thread = VirtualThreads.newThreadFactory("test").newThread(new Runnable() {
+            @Override
+            public void run() {
+            }
+        });
+
+        assertEquals("test-1", thread.getName());
+        assertTrue(thread.isDaemon());
+    }
+
+    @Test
+    public void testBindCurrent() {
+        Environment env = new Environment(new CompileScope());
+        Environment other = new Environment(new CompileScope());
+
+        assertSame(other, Environment.current());
+
+        assertSame(other, Environment.bindCurrent(env));
+        assertSame(env, Environment.current());
+
+        assertSame(env, Environment.bindCurrent(null));
+        assertNull(Environment.current());
+
+        Environment.bindCurrent(other);
+    }
+}
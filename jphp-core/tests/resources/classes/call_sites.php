@@ -0,0 +1,48 @@
+--TEST--
+Linked call sites
+--FILE--
+<?php
+
+function sum($a, $b = 10) {
+    return $a + $b;
+}
+
+class A {
+    protected $name = 'A';
+
+    function name() { return $this->name; }
+    function call() { return $this->hidden(); }
+    private function hidden() { return 'hidden ' . $this->name; }
+    static function create($x) { return $x * 2; }
+}
+
+class B extends A { protected $name = 'B'; }
+class C extends A { protected $name = 'C'; }
+class D extends A { protected $name = 'D'; }
+class E extends A { function name() { return 'E!'; } }
+class F extends A { protected $name = 'F'; }
+
+class M {
+    function __call($name, $args) { return "__call $name"; }
+}
+
+$result = '';
+$objects = [new A, new B, new C, new D, new E, new F, new A, new E];
+
+for ($i = 0; $i < 3; $i++) {
+    foreach ($objects as $object) {
+        $result .= $object->name();
+    }
+    $result .= '|';
+}
+
+echo $result, "\n";
+echo (new B)->call(), "\n";
+echo (new M)->name(), "\n";
+echo sum(1), " ", sum(1, 2), " ", A::create(21), "\n";
+?>
+--EXPECT--
+ABCDE!FAE!|ABCDE!FAE!|ABCDE!FAE!|
+hidden B
+__call name
+11 3 42
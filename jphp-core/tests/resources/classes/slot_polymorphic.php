@@ -0,0 +1,43 @@
+--TEST--
+Declared properties in slots of different classes at the same access
+--FILE--
+<?php
+
+class PolyBase {
+    public $id = 0;
+
+    function inc() { return ++$this->id; }
+}
+
+class PolyA extends PolyBase { public $a = 'a'; }
+class PolyB extends PolyBase { public $a = 'a'; public $b = 'b'; }
+class PolyC extends PolyBase { public $a = 'a'; public $b = 'b'; public $c = 'c'; }
+class PolyD extends PolyC { public $d = 'd'; }
+class PolyE extends PolyD { public $e = 'e'; }
+class PolyF extends PolyE { public $f = 'f'; }
+class PolyG extends PolyF { public $g = 'g'; }
+class PolyH extends PolyG { public $h = 'h'; }
+class PolyI extends PolyH { public $i = 'i'; }
+
+$objects = [];
+foreach (['PolyBase', 'PolyA', 'PolyB', 'PolyC', 'PolyD', 'PolyE', 'PolyF', 'PolyG', 'PolyH', 'PolyI'] as $class) {
+    $objects[] = new $class();
+}
+
+for ($k = 0; $k < 3; $k++) {
+    foreach ($objects as $i => $object) {
+        $object->inc();
+        $object->id += $i;
+    }
+}
+
+foreach ($objects as $object) {
+    echo get_class($object), ':', $object->id, ':', count((array) $object), ' ';
+}
+
+echo "\n";
+var_dump($objects[9]->a, $objects[9]->i);
+--EXPECT--
+PolyBase:3:1 PolyA:6:2 PolyB:9:3 PolyC:12:4 PolyD:15:5 PolyE:18:6 PolyF:21:7 PolyG:24:8 PolyH:27:9 PolyI:30:10 
+string(1) "a"
+string(1) "i"
@@ -0,0 +1,149 @@
+--TEST--
+Declared properties in slots
+--FILE--
+<?php
+
+class Base {
+    private $secret = 'base';
+    protected $kind = 'base';
+    public $id = 0;
+
+    function secret() { return $this->secret; }
+    function setSecret($v) { $this->secret = $v; }
+}
+
+class Entity extends Base {
+    public $kind = 'entity';
+    private $secret = 'entity';
+    public $name;
+    public $tags = [];
+
+    function mySecret() { return $this->secret; }
+}
+
+class Magic {
+    public $x = 1;
+
+    function __get($name) { return "magic $name"; }
+}
+
+$e = new Entity();
+var_dump($e);
+
+$e->id = 10;
+$e->id += 5;
+$e->id++;
+$e->name = 'foo';
+$e->name .= 'bar';
+var_dump($e->id, $e->name, $e->kind, $e->secret(), $e->mySecret());
+var_dump(isset($e->name), isset($e->undefined), empty($e->id), empty($e->tags));
+
+$e->setSecret('changed');
+var_dump($e->secret(), $e->mySecret());
+
+$c = clone $e;
+$c->id = 99;
+$c->setSecret('cloned');
+var_dump($e->id, $c->id, $e->secret(), $c->secret());
+
+foreach ($e as $key => $value) {
+    echo $key, ' => ', is_array($value) ? 'array' : $value, "\n";
+}
+
+$e->tags[] = 'a';
+$e->tags[] = 'b';
+var_dump($e->tags);
+
+$ref = &$e->name;
+$ref = 'by reference';
+var_dump($e->name);
+
+$e->dynamic = 'dyn';
+unset($e->id);
+var_dump(isset($e->id), $e->dynamic);
+$e->id = 1;
+var_dump($e);
+
+$m = new Magic();
+var_dump($m->x, $m->y);
+$m->x = 2;
+var_dump((array) $m);
+
+$a = new Entity();
+$b = new Entity();
+var_dump($a == $b);
+$b->name = 'x';
+var_dump($a == $b);
+--EXPECTF--
+object(Entity)#%d (6) {
+  ["secret":"Entity":private]=>
+  string(6) "entity"
+  ["kind"]=>
+  string(6) "entity"
+  ["name"]=>
+  NULL
+  ["tags"]=>
+  array(0) {
+  }
+  ["secret":"Base":private]=>
+  string(4) "base"
+  ["id"]=>
+  int(0)
+}
+int(16)
+string(6) "foobar"
+string(6) "entity"
+string(4) "base"
+string(6) "entity"
+bool(true)
+bool(false)
+bool(false)
+bool(true)
+string(7) "changed"
+string(6) "entity"
+int(16)
+int(99)
+string(7) "changed"
+string(6) "cloned"
+kind => entity
+name => foobar
+tags => array
+id => 16
+array(2) {
+  [0]=>
+  string(1) "a"
+  [1]=>
+  string(1) "b"
+}
+string(12) "by reference"
+bool(false)
+string(3) "dyn"
+object(Entity)#%d (7) {
+  ["secret":"Entity":private]=>
+  string(6) "entity"
+  ["kind"]=>
+  string(6) "entity"
+  ["name"]=>
+  string(12) "by reference"
+  ["tags"]=>
+  array(2) {
+    [0]=>
+    string(1) "a"
+    [1]=>
+    string(1) "b"
+  }
+  ["secret":"Base":private]=>
+  string(7) "changed"
+  ["dynamic"]=>
+  string(3) "dyn"
+  ["id"]=>
+  int(1)
+}
+int(1)
+string(7) "magic y"
+array(1) {
+  ["x"]=>
+  int(2)
+}
+bool(true)
+bool(false)
@@ -0,0 +1,47 @@
+--TEST--
+References to declared properties
+--FILE--
+<?php
+
+class Point {
+    public $x = 1;
+    public $y = 2;
+}
+
+$cases = [
+    'dynamic' => function ($o) { $o->z = 3; },
+    'foreach' => function ($o) { foreach ($o as $k => $v) { } },
+    'print_r' => function ($o) { print_r($o, true); },
+    'var_dump' => function ($o) { ob_start(); var_dump($o); ob_end_clean(); },
+    'serialize' => function ($o) { serialize($o); },
+    'cast' => function ($o) { (array) $o; },
+];
+
+foreach ($cases as $name => $force) {
+    $o = new Point();
+    $q = &$o->x;
+    $q = 5;
+
+    $force($o);
+
+    $q = 9;
+    $o->y = 7;
+
+    echo $name, ": ", $o->x, " ", $o->y, "\n";
+}
+
+$o = new Point();
+$q = &$o->x;
+$o->z = 3;
+
+$o->x = 4;
+echo "back: ", $q, "\n";
+?>
+--EXPECT--
+dynamic: 9 7
+foreach: 9 7
+print_r: 9 7
+var_dump: 9 7
+serialize: 9 7
+cast: 9 7
+back: 4
@@ -0,0 +1,82 @@
+--TEST--
+Callables of one call site
+--FILE--
+<?php
+
+function plain($x) { return "plain $x"; }
+
+class A {
+    function get($x) { return "A::get $x"; }
+    static function make($x) { return static::class . "::make $x"; }
+    static function who($x) { return "A::who $x"; }
+    private function secret($x) { return "A::secret $x"; }
+
+    function callSecret($f, $x) {
+        return $f($x);
+    }
+}
+
+class B extends A {
+    function get($x) { return "B::get $x"; }
+    static function who($x) { return "B::who $x"; }
+
+    function viaSelf($x) {
+        $f = ['self', 'who'];
+        return $f($x);
+    }
+}
+
+class M {
+    function __call($name, $args) { return "M::__call $name " . $args[0]; }
+    static function __callStatic($name, $args) { return "M::__callStatic $name " . $args[0]; }
+}
+
+function call($f, $x) {
+    return $f($x);
+}
+
+$a = new A;
+$b = new B;
+
+$callables = [
+    'plain', 'PLAIN', [$a, 'get'], [$b, 'get'], [$a, 'GET'], [new A, 'get'],
+    'A::make', 'B::make', ['A', 'make'], ['B', 'make'], ['b', 'make'],
+    [$b, 'make'], [$m = new M, 'foo'], [$m, 'bar'], 'M::baz', ['M', 'baz'],
+    'plain', [$a, 'get'], ['x' => $b, 'y' => 'get'], ['A', 'make'],
+];
+
+foreach ($callables as $i => $f) {
+    echo call($f, $i), "\n";
+}
+
+for ($i = 0; $i < 3; $i++) {
+    echo $b->viaSelf($i), "\n";
+}
+
+echo $a->callSecret([$a, 'secret'], 1), "\n";
+?>
+--EXPECT--
+plain 0
+plain 1
+A::get 2
+B::get 3
+A::get 4
+A::get 5
+A::make 6
+B::make 7
+A::make 8
+B::make 9
+B::make 10
+B::make 11
+M::__call foo 12
+M::__call bar 13
+M::__callStatic baz 14
+M::__callStatic baz 15
+plain 16
+A::get 17
+B::get 18
+A::make 19
+B::who 0
+B::who 1
+B::who 2
+A::secret 1
@@ -0,0 +1,118 @@
+--TEST--
+Assign concat
+--FILE--
+<?php
+use php\lib\str;
+
+function build($count) {
+    $html = '';
+    for ($i = 0; $i < $count; $i++) {
+        $html .= '<li>' . $i . '</li>';
+    }
+
+    $copy = $html;
+    $list = [$html];
+    $html .= '!';
+
+    var_dump(str::length($copy), str::length($list[0]), $html === $copy . '!');
+
+    $html .= $html;
+    $html .= 1 . $html;
+    var_dump(str::length($html));
+}
+
+function append($value) {
+    $value .= 'bar';
+    return $value;
+}
+
+build(1000);
+
+$foo = 'foo';
+var_dump(append($foo), $foo);
+
+$global = 'a';
+$global .= 'b';
+$before = $global;
+$global .= 'c';
+var_dump($before, $global);
+
+// appended before passing, the receiver must not append to the caller's builder
+$param = 'a';
+$param .= 'b';
+append($param);
+var_dump($param);
+
+$array = ['v'];
+$array[0] .= 'w';
+append($array[0]);
+var_dump($array[0]);
+
+function appendGlobal() {
+    global $shared;
+    $copy = $shared;
+    $copy .= 'X';
+    $shared .= 'Y';
+    return $copy;
+}
+
+$shared = 'g';
+$shared .= 'h';
+var_dump(appendGlobal(), $shared);
+
+$used = 's';
+$used .= 't';
+$closure = function () use ($used) {
+    $used .= 'U';
+    return $used;
+};
+var_dump($closure(), $used);
+
+function passTwice() {
+    $local = 'a';
+    $local .= 'b';
+    $result = append($local);
+    $local .= 'c';
+    return [$result, $local];
+}
+
+var_dump(passTwice() === ['abbar', 'abc']);
+
+function appendFloats() {
+    $s = '';
+    $t = '';
+    foreach ([1.0, 0.1 + 0.2, 1e20, 5.0, -0.0, -2.5, 1.5e-7] as $x) {
+        $s .= $x;
+        $s .= '|';
+        $t = $t . $x . '|';
+    }
+    $u = '';
+    $u .= 1.0;
+    $u .= -0.0;
+    $u .= 1e20;
+    return [$s, $t, $u];
+}
+
+list($s, $t, $u) = appendFloats();
+var_dump($s, $s === $t, $u);
+
+?>
+--EXPECT--
+int(11890)
+int(11890)
+bool(true)
+int(47565)
+string(6) "foobar"
+string(3) "foo"
+string(2) "ab"
+string(3) "abc"
+string(2) "ab"
+string(2) "vw"
+string(3) "ghX"
+string(3) "ghY"
+string(3) "stU"
+string(2) "st"
+bool(true)
+string(55) "1|0.3|1.0000000000000E+20|5|0|-2.5|1.5000000000000E-07|"
+bool(true)
+string(21) "101.0000000000000E+20"
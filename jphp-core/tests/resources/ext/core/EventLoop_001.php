@@ -0,0 +1,42 @@
+--TEST--
+EventLoop timers
+--FILE--
+<?php
+use php\concurrent\EventLoop;
+
+$loop = new EventLoop();
+$loop->setTimeout(function () { echo "timeout 60\n"; }, 60);
+$loop->setTimeout(function () { echo "timeout 30\n"; }, 30);
+
+$cancelled = $loop->setTimeout(function () { echo "cancelled\n"; }, 5);
+var_dump($loop->cancelTimer($cancelled));
+var_dump($loop->cancelTimer($cancelled));
+
+$count = 0;
+$loop->setInterval(function ($id) use (&$count, $loop) {
+    if (++$count == 3) {
+        $loop->cancelTimer($id);
+    }
+}, 1);
+
+$loop->delay(90)->then(function () use ($loop) {
+    echo "delay\n";
+    $loop->setTimeout(function () use ($loop) { echo "stop\n"; $loop->stop(); }, 0);
+    $loop->setTimeout(function () { echo "after stop\n"; }, 10);
+});
+
+$loop->post(function () { echo "post\n"; });
+$loop->run();
+
+var_dump($count, $loop->isRunning());
+?>
+--EXPECT--
+bool(true)
+bool(false)
+post
+timeout 30
+timeout 60
+delay
+stop
+int(3)
+bool(false)
@@ -0,0 +1,64 @@
+--TEST--
+EventLoop sockets
+--FILE--
+<?php
+use php\concurrent\EventLoop;
+use php\concurrent\AsyncSocket;
+use php\lib\arr;
+use php\lib\str;
+
+function serve($server) {
+    $server->accept()->then(function (AsyncSocket $client) use ($server) {
+        echoBack($client);
+        serve($server);
+    });
+}
+
+function echoBack(AsyncSocket $client) {
+    $client->read()->then(function ($data) use ($client) {
+        if ($data === null) {
+            $client->close();
+            return;
+        }
+
+        $client->write(str::upper($data))->then(function () use ($client) { echoBack($client); });
+    });
+}
+
+$loop = new EventLoop();
+$server = $loop->listen('127.0.0.1', 0);
+serve($server);
+
+$result = [];
+
+for ($i = 0; $i < 10; $i++) {
+    $loop->connect('127.0.0.1', $server->getLocalPort())->then(function (AsyncSocket $socket) use ($i) {
+        return $socket->write("hello $i")->then(function ($length) use ($socket) {
+            return $socket->read();
+        })->then(function ($data) use ($socket) {
+            $socket->close();
+            return $data;
+        });
+    })->then(function ($data) use ($server, &$result) {
+        $result[] = $data;
+
+        if (sizeof($result) == 10) {
+            $server->close();
+        }
+    });
+}
+
+$loop->connect('127.0.0.1', 1)->catch(function ($e) {
+    echo "refused\n";
+});
+
+$loop->run();
+
+$result = arr::sort($result);
+echo str::join($result, ', '), "\n";
+var_dump($server->isOpen());
+?>
+--EXPECT--
+refused
+HELLO 0, HELLO 1, HELLO 2, HELLO 3, HELLO 4, HELLO 5, HELLO 6, HELLO 7, HELLO 8, HELLO 9
+bool(false)
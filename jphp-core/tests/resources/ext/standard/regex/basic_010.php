@@ -0,0 +1,60 @@
+--TEST--
+Basic regex test - literal patterns
+--FILE--
+<?php
+
+use php\lib\str;
+use php\util\Regex;
+
+var_dump(Regex::match('foo', 'xfoox'));
+var_dump(Regex::match('foo', 'xFOOx'));
+var_dump(Regex::match('foo', 'xFOOx', 'i'));
+var_dump(Regex::match('a.c', 'abc'));
+var_dump(Regex::match('a.c', 'abc', 'L'));
+
+echo str::join(Regex::split(',', 'a,b,,c,,'), '|'), "\n";
+echo str::join(Regex::split(',', 'a,b,,c,,', 2), '|'), "\n";
+echo str::join(Regex::split(',', 'a,b,,c,,', -1), '|'), "\n";
+echo str::join(Regex::split('::', '::a::b'), '|'), "\n";
+echo sizeof(Regex::split(',', ',,,')), "\n";
+echo sizeof(Regex::split(',', '')), "\n";
+echo str::join(Regex::split('[,;]', 'a,b;c'), '|'), "\n";
+
+$regex = Regex::of('o', 0, 'foo boo');
+echo $regex->replace('0'), "\n";
+echo $regex->replace('[$0]'), "\n";
+
+$regex->reset('zoo');
+echo $regex->replace('0'), "\n";
+echo $regex->with('moo')->replace('0'), "\n";
+echo $regex->getInput(), "\n";
+
+$before = Regex::cacheStats();
+Regex::match('cached', 'cached');
+Regex::match('cached', 'cached');
+$after = Regex::cacheStats();
+
+var_dump($after['hits'] - $before['hits'] >= 1);
+var_dump($after['size'] > 0);
+
+?>
+--EXPECT--
+bool(true)
+bool(false)
+bool(true)
+bool(true)
+bool(false)
+a|b||c
+a|b,,c,,
+a|b||c
+|a|b
+0
+1
+a|b|c
+f00 b00
+f[o][o] b[o][o]
+z00
+m00
+zoo
+bool(true)
+bool(true)
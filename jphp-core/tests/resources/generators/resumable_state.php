@@ -0,0 +1,100 @@
+--TEST--
+Locals, operand stack and try blocks are restored after each yield
+--FILE--
+<?php
+
+function matrix($rows, $cols) {
+    $total = 0;
+    for ($i = 0; $i < $rows; $i++) {
+        foreach (range(1, $cols) as $j) {
+            $total += $i * $j;
+            $sent = yield "$i:$j" => $total;
+            if ($sent !== null) {
+                $total = $sent;
+            }
+        }
+    }
+    return $total;
+}
+
+function expr() {
+    $a = 10;
+    $b = 3.5;
+    $result = $a + (yield $b) * 2 + strlen(yield 'x');
+    return $result;
+}
+
+function guarded() {
+    for ($i = 0; $i < 3; $i++) {
+        try {
+            yield $i;
+        } catch (Exception $e) {
+            echo "caught ", $e->getMessage(), " at $i\n";
+        } finally {
+            echo "finally $i\n";
+        }
+    }
+}
+
+function outer() {
+    $x = yield from matrix(1, 2);
+    yield 'x' => $x;
+}
+
+$gen = matrix(2, 2);
+foreach ($gen as $key => $value) {
+    echo "$key = $value\n";
+}
+var_dump($gen->getReturn());
+
+$gen = matrix(2, 2);
+$gen->current();
+$gen->send(100);
+echo $gen->key(), ' = ', $gen->current(), "\n";
+
+$gen = expr();
+var_dump($gen->current());
+$gen->send(4);
+$gen->send('abc');
+var_dump($gen->getReturn());
+
+$gen = guarded();
+$gen->current();
+$gen->throw(new Exception('error'));
+while ($gen->valid()) {
+    $gen->next();
+}
+
+foreach (outer() as $value) {
+    echo "$value\n";
+}
+
+$gens = [];
+for ($i = 0; $i < 5000; $i++) {
+    $gens[] = $g = matrix(1, 1);
+    $g->current();
+}
+$sum = 0;
+foreach ($gens as $g) {
+    $sum += $g->current();
+}
+var_dump($sum);
+
+?>
+--EXPECT--
+0:1 = 0
+0:2 = 0
+1:1 = 1
+1:2 = 3
+int(3)
+0:2 = 100
+float(3.5)
+int(21)
+caught error at 0
+finally 0
+finally 1
+finally 2
+0
+0
+0
+int(0)
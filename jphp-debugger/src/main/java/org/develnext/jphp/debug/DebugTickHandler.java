@@ -27,6 +27,16 @@ public class DebugTickHandler extends TickHandler {
         }
     }
 
+    @Override
+    public boolean isTick(Environment env, TraceInfo trace) {
+        if (!init || debugger == null || debugger.isWorking() || debugger.getWaitStep() != Debugger.Step.RUN) {
+            return true;
+        }
+
+        // running to a breakpoint, skip lines without breakpoints before the locals are touched
+        return debugger.breakpointManager.hasLine(trace.getStartLine());
+    }
+
     @Override
     public void onTick(Environment env, TraceInfo trace, ArrayMemory locals) {
         waitDebugger();
@@ -5,19 +5,35 @@ import php.runtime.env.Environment;
 import php.runtime.env.TraceInfo;
 
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
 
 public class BreakpointManager {
     protected final Debugger debugger;
     protected Map<String, Breakpoint> breakpoints;
 
+    // lines of all breakpoints, is replaced on each change, so ticks can read it without locks
+    protected volatile Set<Integer> lines = new HashSet<>();
+
     public BreakpointManager(Debugger debugger) {
         this.debugger = debugger;
         breakpoints = new LinkedHashMap<>();
     }
 
+    /**
+     * @param line zero-based line of a trace
+     */
+    public boolean hasLine(int line) {
+        return lines.contains(line + 1);
+    }
+
     public Breakpoint findFor(Environment env, TraceInfo trace) {
+        if (!hasLine(trace.getStartLine())) {
+            return null;
+        }
+
         String fileName = trace.getFileName();
 
         if (!fileName.startsWith("/") && !fileName.matches("^[A-Za-z](\\\\:)(.+?)")) {
@@ -43,11 +59,25 @@ public class BreakpointManager {
         return breakpoints.get(id);
     }
 
-    public Breakpoint remove(String id) {
-        return breakpoints.remove(id);
+    public synchronized Breakpoint remove(String id) {
+        Breakpoint breakpoint = breakpoints.remove(id);
+        updateLines();
+
+        return breakpoint;
     }
 
-    public void set(Breakpoint breakpoint) {
+    public synchronized void set(Breakpoint breakpoint) {
         breakpoints.put(String.valueOf(breakpoint.getId()), breakpoint);
+        updateLines();
+    }
+
+    protected void updateLines() {
+        Set<Integer> lines = new HashSet<>();
+
+        for (Breakpoint breakpoint : breakpoints.values()) {
+            lines.add(breakpoint.line);
+        }
+
+        this.lines = lines;
     }
 }
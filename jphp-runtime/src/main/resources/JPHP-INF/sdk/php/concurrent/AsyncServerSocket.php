@@ -0,0 +1,45 @@
+<?php
+namespace php\concurrent;
+
+/**
+ * Non-blocking tcp server socket of EventLoop.
+ *
+ * Class AsyncServerSocket
+ * @package php\concurrent
+ *
+ * @packages std, core
+ */
+class AsyncServerSocket
+{
+    private function __construct()
+    {
+    }
+
+    /**
+     * @return Promise of AsyncSocket of the next connection
+     */
+    function accept(): Promise
+    {
+    }
+
+    /**
+     * @return bool
+     */
+    function isOpen(): bool
+    {
+    }
+
+    /**
+     * @return int
+     */
+    function getLocalPort(): int
+    {
+    }
+
+    /**
+     * Closes the socket, pending accepts are rejected.
+     */
+    function close()
+    {
+    }
+}
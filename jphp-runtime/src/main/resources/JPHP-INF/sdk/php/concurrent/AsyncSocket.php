@@ -0,0 +1,61 @@
+<?php
+namespace php\concurrent;
+
+/**
+ * Non-blocking tcp socket of EventLoop.
+ *
+ * Class AsyncSocket
+ * @package php\concurrent
+ *
+ * @packages std, core
+ */
+class AsyncSocket
+{
+    private function __construct()
+    {
+    }
+
+    /**
+     * @param int $length max length of data
+     * @return Promise of a binary string, null on the end of the stream
+     */
+    function read(int $length = 8192): Promise
+    {
+    }
+
+    /**
+     * @param string $data
+     * @return Promise of the written length, fulfilled when all data is written
+     */
+    function write(string $data): Promise
+    {
+    }
+
+    /**
+     * @return bool
+     */
+    function isOpen(): bool
+    {
+    }
+
+    /**
+     * @return string|null host:port
+     */
+    function getRemoteAddress(): ?string
+    {
+    }
+
+    /**
+     * @return int
+     */
+    function getLocalPort(): int
+    {
+    }
+
+    /**
+     * Closes the socket, pending reads get null, pending writes are rejected.
+     */
+    function close()
+    {
+    }
+}
@@ -0,0 +1,102 @@
+<?php
+namespace php\concurrent;
+
+/**
+ * Single thread event loop: non-blocking sockets, timers and tasks posted from other threads.
+ * Callbacks and promises are resolved in the thread of run().
+ *
+ * Class EventLoop
+ * @package php\concurrent
+ *
+ * @packages std, core
+ */
+class EventLoop
+{
+    function __construct()
+    {
+    }
+
+    /**
+     * Runs the loop until stop() is called or there is nothing to wait:
+     * no timers, tasks and pending socket operations.
+     */
+    function run()
+    {
+    }
+
+    /**
+     * Stops the loop after the current callback, can be called from any thread.
+     */
+    function stop()
+    {
+    }
+
+    /**
+     * @return bool
+     */
+    function isRunning(): bool
+    {
+    }
+
+    /**
+     * Runs the callback in the loop thread, can be called from any thread.
+     * @param callable $callback
+     */
+    function post(callable $callback)
+    {
+    }
+
+    /**
+     * @param callable $callback (int $timerId)
+     * @param int $millis
+     * @return int timer id
+     */
+    function setTimeout(callable $callback, int $millis): int
+    {
+    }
+
+    /**
+     * @param callable $callback (int $timerId)
+     * @param int $millis
+     * @return int timer id
+     */
+    function setInterval(callable $callback, int $millis): int
+    {
+    }
+
+    /**
+     * @param int $id
+     * @return bool false if the timer is not found or is already done
+     */
+    function cancelTimer(int $id): bool
+    {
+    }
+
+    /**
+     * @param int $millis
+     * @return Promise fulfilled after the delay
+     */
+    function delay(int $millis): Promise
+    {
+    }
+
+    /**
+     * @param string $host
+     * @param int $port
+     * @return Promise of AsyncSocket
+     */
+    function connect(string $host, int $port): Promise
+    {
+    }
+
+    /**
+     * @param string $host
+     * @param int $port 0 for any free port
+     * @param int $backlog
+     * @return AsyncServerSocket
+     * @throws \php\io\IOException
+     */
+    function listen(string $host, int $port, int $backlog = 0): AsyncServerSocket
+    {
+    }
+}
@@ -0,0 +1,51 @@
+<?php
+namespace php\format;
+
+
+use php\io\Stream;
+
+/**
+ * Format of serialize() and unserialize(), with the BINARY flag - the compact binary format
+ * of serialize_binary() (varint numbers, strings are written once, repeated keys and class names are references).
+ *
+ * Class SerializeProcessor
+ * @package php\format
+ *
+ * @packages std, core
+ */
+class SerializeProcessor extends Processor
+{
+    const BINARY = 1;
+
+    /**
+     * @param int $flags
+     */
+    public function __construct(int $flags = 0)
+    {
+    }
+
+    /**
+     * @param $value
+     * @return string binary string for the BINARY flag
+     */
+    public function format($value)
+    {
+    }
+
+    /**
+     * @param $value
+     * @param Stream $output
+     * @return mixed
+     */
+    public function formatTo($value, Stream $output)
+    {
+    }
+
+    /**
+     * @param string|Stream $source
+     * @return mixed
+     */
+    public function parse($source)
+    {
+    }
+}
@@ -61,6 +61,30 @@ final class System
     {
     }
 
+    /**
+     * Starts the sampling profiler of php code for all environments.
+     * @param int $interval millis between samples
+     * @param bool $cpu only running threads are sampled, false - also sleeping and waiting threads
+     */
+    public static function startProfiler(int $interval = 10, bool $cpu = true) { }
+
+    /**
+     * Stops the profiler, collected samples are kept.
+     */
+    public static function stopProfiler() { }
+
+    /**
+     * Clears collected samples of the profiler.
+     */
+    public static function resetProfiler() { }
+
+    /**
+     * Returns collected samples of the profiler.
+     * @param string $format collapsed (for flamegraph.pl, speedscope), json (for d3-flame-graph) or array
+     * @return string|array
+     */
+    public static function getProfile(string $format = 'collapsed') { }
+
     /**
      * @return Stream
      */
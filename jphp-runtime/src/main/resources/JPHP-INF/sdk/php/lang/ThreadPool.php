@@ -163,6 +163,26 @@ class ThreadPool
     {
     }
 
+    /**
+     * Creates an Executor that runs each task in a new virtual thread,
+     * works as createCached() if the JVM does not support virtual threads.
+     * --RU--
+     * Создает Executor, который запускает каждое задание в новом виртуальном потоке,
+     * работает как createCached(), если JVM не поддерживает виртуальные потоки.
+     *
+     * @return ThreadPool
+     */
+    public static function createVirtual()
+    {
+    }
+
+    /**
+     * @return bool
+     */
+    public static function isVirtualSupported()
+    {
+    }
+
     /**
      * Creates an Executor that uses a single worker thread operating
      * off an unbounded queue.
@@ -100,6 +100,30 @@ class Timer
     {
     }
 
+    /**
+     * Sets a thread pool to run callbacks, by default all callbacks are run in one thread.
+     * @param \php\lang\ThreadPool|null $pool null to reset
+     */
+    static function setExecutor(?\php\lang\ThreadPool $pool)
+    {
+    }
+
+    /**
+     * Returns stats of the timers: pending - scheduled tasks, executed - count of runs,
+     * lagAvg and lagMax - millis between the scheduled time and the start of a callback.
+     * @return array
+     */
+    static function stats(): array
+    {
+    }
+
+    /**
+     * Resets executed and lag stats.
+     */
+    static function resetStats()
+    {
+    }
+
     /**
      * Converts a string period to amount of millis.
      * 
@@ -359,6 +359,14 @@ class Regex implements \Iterator
      */
     public static function split($pattern, $string, $limit = 0) { return []; }
 
+    /**
+     * Returns statistics of the cache of compiled patterns shared by all environments,
+     * the size of the cache is set by the ``env.regexCache.size`` option (1024 by default).
+     *
+     * @return array [hits => int, misses => int, evictions => int, size => int, maxSize => int]
+     */
+    public static function cacheStats() { return []; }
+
     /**
      * Returns a literal pattern ``String`` for the specified
      * ``String``.
@@ -552,7 +552,7 @@ abstract public class Memory implements Comparable<Memory> {
     public Memory assignConcat(double memory) { return assign(concat(memory)); }
     public Memory assignConcat(boolean memory) { return assign(concat(memory)); }
     public Memory assignConcat(String memory) { return assign(concat(memory)); }
-    public Memory assignConcatRight(Memory memory) { return memory.assign(memory.concat(this)); }
+    public Memory assignConcatRight(Memory memory) { return memory.assignConcat(this); }
 
     public Memory assignPlus(Memory memory) { return assign(plus(memory)); }
     public Memory assignPlus(long memory) { return assign(plus(memory)); }
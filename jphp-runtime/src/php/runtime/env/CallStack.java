@@ -14,8 +14,19 @@ public class CallStack {
 
     protected final Environment env;
 
+    // thread of the last call from the top level, is read by SamplingProfiler
+    protected Thread owner;
+
     public CallStack(Environment env) {
+        this(env, true);
+    }
+
+    private CallStack(Environment env, boolean live) {
         this.env = env;
+
+        if (live) {
+            SamplingProfiler.register(this);
+        }
     }
 
     public int getTop(){
@@ -23,6 +34,10 @@ public class CallStack {
     }
 
     public CallStackItem push(CallStackItem stackItem) {
+        if (callStackTop == 0) {
+            owner = Thread.currentThread();
+        }
+
         if (callStackTop >= callStack.length){
             CallStackItem[] newCallStack = new CallStackItem[callStack.length * 2];
             System.arraycopy(callStack, 0, newCallStack, 0, callStack.length);
@@ -35,6 +50,10 @@ public class CallStack {
     }
 
     public CallStackItem push(TraceInfo trace, IObject self, Memory[] args, String function, String clazz, String staticClazz) {
+        if (callStackTop == 0) {
+            owner = Thread.currentThread();
+        }
+
         if (callStackTop >= callStack.length){
             CallStackItem[] newCallStack = new CallStackItem[callStack.length * 2];
             System.arraycopy(callStack, 0, newCallStack, 0, callStack.length);
@@ -82,7 +101,7 @@ public class CallStack {
     }
 
     public CallStack getSnapshotAsCallStack() {
-        CallStack stack = new CallStack(env);
+        CallStack stack = new CallStack(env, false);
 
         stack.callStack = new CallStackItem[callStack.length];
 
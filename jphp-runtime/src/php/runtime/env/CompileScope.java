@@ -20,6 +20,7 @@ import php.runtime.ext.support.compile.CompileClass;
 import php.runtime.ext.support.compile.CompileConstant;
 import php.runtime.ext.support.compile.CompileFunction;
 import php.runtime.ext.support.compile.CompileFunctionSpec;
+import php.runtime.invoke.dynamic.DynamicLinker;
 import php.runtime.lang.*;
 import php.runtime.lang.exception.*;
 import php.runtime.lang.spl.ArrayAccess;
@@ -28,9 +29,12 @@ import php.runtime.lang.spl.Serializable;
 import php.runtime.lang.spl.Traversable;
 import php.runtime.lang.spl.iterator.IteratorAggregate;
 import php.runtime.loader.RuntimeClassLoader;
+import php.runtime.loader.dump.ModuleDumpCache;
+import php.runtime.loader.dump.StartupSnapshot;
 import php.runtime.reflection.*;
 import php.runtime.reflection.support.ReflectionUtils;
 import php.runtime.util.JVMStackTracer;
+import php.runtime.util.PatternCache;
 import php.runtime.wrap.ClassWrapper;
 
 import java.lang.reflect.Constructor;
@@ -81,11 +85,21 @@ public class CompileScope {
     // flags
     public boolean debugMode = false;
     protected LangMode langMode = LangMode.MODERN;
+    protected boolean virtualThreads = false;
+
+    protected ModuleDumpCache moduleDumpCache;
+    protected StartupSnapshot startupSnapshot;
+    protected final ModuleCache moduleCache = new ModuleCache();
+    protected PatternCache patternCache = new PatternCache();
 
     public CompileScope(CompileScope parent) {
         id = scopeCount.getAndIncrement();
         classLoader = parent.classLoader;
         langMode = parent.langMode;
+        moduleDumpCache = parent.moduleDumpCache;
+        startupSnapshot = parent.startupSnapshot;
+        patternCache = parent.patternCache;
+        virtualThreads = parent.virtualThreads;
 
         moduleMap = new ConcurrentHashMap<>();
         moduleIndexMap = new ConcurrentHashMap<>();
@@ -240,6 +254,57 @@ public class CompileScope {
         this.langMode = langMode;
     }
 
+    /**
+     * Modules of included files shared by environments of the scope.
+     */
+    public ModuleCache getModuleCache() {
+        return moduleCache;
+    }
+
+    /**
+     * Compiled patterns of Regex shared by environments of the scope.
+     */
+    public PatternCache getPatternCache() {
+        return patternCache;
+    }
+
+    public void setPatternCache(PatternCache patternCache) {
+        this.patternCache = patternCache;
+    }
+
+    public ModuleDumpCache getModuleDumpCache() {
+        return moduleDumpCache;
+    }
+
+    /**
+     * Enables the on-disk cache of compiled modules for included files, null disables it.
+     */
+    public void setModuleDumpCache(ModuleDumpCache moduleDumpCache) {
+        this.moduleDumpCache = moduleDumpCache;
+    }
+
+    public StartupSnapshot getStartupSnapshot() {
+        return startupSnapshot;
+    }
+
+    /**
+     * Modules of the snapshot are imported from its dumps instead of compilation, null disables it.
+     */
+    public void setStartupSnapshot(StartupSnapshot startupSnapshot) {
+        this.startupSnapshot = startupSnapshot;
+    }
+
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * Runs tasks of cached thread pools and requests of http servers on virtual threads when the JVM supports them.
+     */
+    public void setVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+
     public boolean isDebugMode() {
         return debugMode;
     }
@@ -444,12 +509,24 @@ public class CompileScope {
         return moduleMap.get(name);
     }
 
+    /**
+     * Finds a user module or a module loaded without registration (eval) by its internal name.
+     */
+    public ModuleEntity findModuleByInternalName(String internalName) {
+        ModuleEntity module = moduleIndexMap.get(internalName);
+        return module != null ? module : classLoader.getModule(internalName);
+    }
+
     public ModuleEntity removeUserModule(String name) {
         ModuleEntity userModule = findUserModule(name);
 
         if (userModule != null) {
             moduleMap.remove(name);
             moduleIndexMap.remove(userModule.getInternalName());
+            moduleCache.remove(name, userModule);
+            classLoader.unloadModule(userModule);
+
+            DynamicLinker.invalidate();
         }
 
         return userModule;
@@ -19,6 +19,7 @@ import php.runtime.ext.support.compile.CompileFunctionSpec;
 import php.runtime.invoke.Invoker;
 import php.runtime.invoke.ObjectInvokeHelper;
 import php.runtime.invoke.cache.ClassCallCache;
+import php.runtime.invoke.dynamic.DynamicLinker;
 import php.runtime.lang.*;
 import php.runtime.lang.exception.BaseBaseException;
 import php.runtime.lang.exception.BaseError;
@@ -110,6 +111,24 @@ public class Environment {
         return environment.get();
     }
 
+    /**
+     * Sets Environment of current thread context for a task running on a pooled or virtual thread,
+     * null removes it.
+     *
+     * @return previous environment to set it back after the task
+     */
+    public static Environment bindCurrent(Environment env) {
+        Environment previous = environment.get();
+
+        if (env == null) {
+            environment.remove();
+        } else {
+            environment.set(env);
+        }
+
+        return previous;
+    }
+
     private final ReferenceQueue<IObject> gcObjectRefQueue = new ReferenceQueue<IObject>();
     private final Set<WeakReference<IObject>> gcObjects = new HashSet<WeakReference<IObject>>();
     private static final AtomicInteger ids = new AtomicInteger();
@@ -195,7 +214,7 @@ public class Environment {
             if (freeIds.empty()) {
                 this.id = ids.getAndIncrement();
             } else {
-                this.id = freeIds.peek();
+                this.id = freeIds.pop();
             }
         }
 
@@ -293,6 +312,14 @@ public class Environment {
     }
 
     public void doFinal() throws Throwable {
+        callShutdownFunctions();
+
+        finalizeObjects();
+        flushAll();
+        lastMessage = null;
+    }
+
+    private void callShutdownFunctions() throws Throwable {
         for (ShutdownHandler handler : shutdownFunctions) {
             try {
                 handler.call();
@@ -308,10 +335,23 @@ public class Environment {
                 break;
             }
         }
+    }
 
-        finalizeObjects();
-        flushAll();
-        lastMessage = null;
+    /**
+     * Ends a script run to reuse the environment for the next one: calls and removes shutdown functions,
+     * flushes output buffers, removes static variables of functions and restores error flags changed by @.
+     * Globals, classes, functions and constants are kept.
+     */
+    public void reset() throws Throwable {
+        try {
+            callShutdownFunctions();
+            flushAll();
+        } finally {
+            shutdownFunctions.clear();
+            statics.clear();
+            __clearSilent();
+            lastMessage = null;
+        }
     }
 
     @Override
@@ -1193,7 +1233,7 @@ public class Environment {
         Context context = new Context(code);
         AbstractCompiler compiler = scope.createCompiler(this, context);
         
-        ModuleEntity module = compiler.compile();
+        ModuleEntity module = compiler.compile(false);
         scope.loadModule(module);
         registerModule(module);
 
@@ -1217,8 +1257,14 @@ public class Environment {
             if (entity.isStatic()) {
                 entity.setModule(module);
 
-                if (classMap.put(entity.getLowerName(), entity) != null && !ignoreErrors) {
-                    error(entity.getTrace(), Messages.ERR_CANNOT_REDECLARE_CLASS.fetch(entity.getName()));
+                ClassEntity old = classMap.put(entity.getLowerName(), entity);
+
+                if (old != null) {
+                    if (old != entity)
+                        DynamicLinker.invalidate();
+
+                    if (!ignoreErrors)
+                        error(entity.getTrace(), Messages.ERR_CANNOT_REDECLARE_CLASS.fetch(entity.getName()));
                 }
 
                 entity.register(this);
@@ -1229,8 +1275,14 @@ public class Environment {
             if (entity.isStatic()) {
                 entity.setModule(module);
 
-                if (functionMap.put(entity.getLowerName(), entity) != null && !ignoreErrors) {
-                    error(entity.getTrace(), Messages.ERR_CANNOT_REDECLARE_FUNCTION.fetch(entity.getName()));
+                FunctionEntity old = functionMap.put(entity.getLowerName(), entity);
+
+                if (old != null) {
+                    if (old != entity)
+                        DynamicLinker.invalidate();
+
+                    if (!ignoreErrors)
+                        error(entity.getTrace(), Messages.ERR_CANNOT_REDECLARE_FUNCTION.fetch(entity.getName()));
                 }
 
                 entity.register(this);
@@ -1252,7 +1304,7 @@ public class Environment {
     public void __tick(TraceInfo trace, ArrayMemory locals) {
         TickHandler tickHandler = scope.getTickHandler();
 
-        if (tickHandler != null) {
+        if (tickHandler != null && tickHandler.isTick(this, trace)) {
             IObject $this = this.getLateObject();
 
             if ($this != null) {
@@ -1471,7 +1523,7 @@ public class Environment {
     }
 
     public ClassEntity __getGenerator(String moduleIndex, int index) {
-        ModuleEntity moduleEntity = scope.moduleIndexMap.get(moduleIndex);
+        ModuleEntity moduleEntity = scope.findModuleByInternalName(moduleIndex);
         if (moduleEntity == null)
             throw new CriticalException("Cannot find the module (" + moduleIndex + ") for getting a generator object");
 
@@ -1479,7 +1531,7 @@ public class Environment {
     }
 
     public ClassEntity __getClosure(String moduleIndex, int index) {
-        ModuleEntity moduleEntity = scope.moduleIndexMap.get(moduleIndex);
+        ModuleEntity moduleEntity = scope.findModuleByInternalName(moduleIndex);
         if (moduleEntity == null) {
             throw new CriticalException("Cannot find the module (" + moduleIndex + ") for getting a closure object");
         }
@@ -1488,7 +1540,7 @@ public class Environment {
     }
 
     public Memory __getSingletonClosure(String moduleIndex, int index, String selfContextClass) {
-        Memory result = scope.moduleIndexMap.get(moduleIndex)
+        Memory result = scope.findModuleByInternalName(moduleIndex)
                 .findClosure(index)
                 .getSingleton(selfContextClass);
 
@@ -1498,7 +1550,10 @@ public class Environment {
     }
 
     public Memory __throwException(InvocationTargetException e) {
-        Throwable throwable = e.getTargetException();
+        return __throwTargetException(e.getTargetException());
+    }
+
+    public Memory __throwTargetException(Throwable throwable) {
         if (throwable instanceof FinallyException) {
             return Memory.NULL;
         }
@@ -1605,13 +1660,14 @@ public class Environment {
     }
 
     public void __defineFunction(TraceInfo trace, String moduleInternalName, int index) {
-        ModuleEntity module = scope.moduleIndexMap.get(moduleInternalName);
+        ModuleEntity module = scope.findModuleByInternalName(moduleInternalName);
         if (module == null)
             throw new CriticalException("Cannot find module: " + moduleInternalName);
 
         FunctionEntity function = module.findFunction(index);
 
         if (functionMap.put(function.getLowerName(), function) != null) {
+            DynamicLinker.invalidate();
             triggerError(new FatalException(
                     Messages.ERR_CANNOT_REDECLARE_FUNCTION.fetch(function.getName()),
                     trace
@@ -0,0 +1,207 @@
+package php.runtime.env;
+
+import php.runtime.Memory;
+import php.runtime.lang.ForeachIterator;
+import php.runtime.memory.ArrayMemory;
+import php.runtime.reflection.ClassEntity;
+import php.runtime.reflection.ConstantEntity;
+import php.runtime.reflection.FunctionEntity;
+import php.runtime.reflection.ModuleEntity;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded pool of environments created from a prepared parent, an environment is used by one thread at a time.
+ *
+ * A released environment is reset to its initial state: shutdown functions are called, output buffers are flushed,
+ * globals, configuration values, classes, functions, constants and included modules are restored to the state
+ * they had when the environment was created.
+ * If the reset fails the environment is dropped.
+ */
+public class EnvironmentPool {
+    protected final Environment parent;
+    protected final int maxSize;
+
+    protected final Semaphore permits;
+    protected final ConcurrentLinkedQueue<Environment> idle = new ConcurrentLinkedQueue<Environment>();
+    protected final Map<Environment, Snapshot> snapshots = new ConcurrentHashMap<Environment, Snapshot>();
+
+    protected final AtomicLong created = new AtomicLong();
+    protected final AtomicLong reused = new AtomicLong();
+    protected final AtomicLong dropped = new AtomicLong();
+
+    public EnvironmentPool(Environment parent, int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be greater than zero");
+        }
+
+        this.parent = parent;
+        this.maxSize = maxSize;
+        this.permits = new Semaphore(maxSize, true);
+    }
+
+    public Environment getParent() {
+        return parent;
+    }
+
+    /**
+     * Takes an idle environment or creates a new one, waits while all environments are in use.
+     */
+    public Environment acquire() throws InterruptedException {
+        permits.acquire();
+
+        Environment env = idle.poll();
+
+        if (env != null) {
+            reused.incrementAndGet();
+            return env;
+        }
+
+        try {
+            env = createEnvironment();
+            snapshots.put(env, new Snapshot(env));
+        } catch (RuntimeException | Error e) {
+            permits.release();
+            throw e;
+        }
+
+        created.incrementAndGet();
+        return env;
+    }
+
+    public void release(Environment env) {
+        Snapshot snapshot = snapshots.get(env);
+
+        if (snapshot == null) {
+            throw new IllegalArgumentException("Environment is not from the pool");
+        }
+
+        try {
+            env.reset();
+            snapshot.restore(env);
+
+            idle.offer(env);
+        } catch (Throwable e) {
+            snapshots.remove(env);
+            dropped.incrementAndGet();
+        } finally {
+            permits.release();
+        }
+    }
+
+    protected Environment createEnvironment() {
+        return new Environment(parent);
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    public int getActiveCount() {
+        return maxSize - permits.availablePermits();
+    }
+
+    public long getCreatedCount() {
+        return created.get();
+    }
+
+    public long getReusedCount() {
+        return reused.get();
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    protected static class Snapshot {
+        final Map<Object, Memory> globals = new LinkedHashMap<Object, Memory>();
+        final Map<String, Memory> configuration;
+        final Map<String, ClassEntity> classes;
+        final Map<String, FunctionEntity> functions;
+        final Map<String, ConstantEntity> constants;
+        final Map<String, ModuleEntity> modules;
+
+        Snapshot(Environment env) {
+            ForeachIterator iterator = env.globals.foreachIterator(false, false);
+            while (iterator.next()) {
+                globals.put(iterator.getKey(), iterator.getValue().toValue());
+            }
+
+            configuration = new HashMap<String, Memory>(env.configuration);
+            classes = new LinkedHashMap<String, ClassEntity>(env.classMap);
+            functions = new LinkedHashMap<String, FunctionEntity>(env.functionMap);
+            constants = new LinkedHashMap<String, ConstantEntity>(env.constantMap);
+            modules = new LinkedHashMap<String, ModuleEntity>(env.moduleManager.modules);
+        }
+
+        void restore(Environment env) {
+            ArrayMemory globals = env.globals;
+            globals.clear();
+
+            for (Map.Entry<Object, Memory> entry : this.globals.entrySet()) {
+                globals.put(entry.getKey(), entry.getValue());
+            }
+
+            restoreConfiguration(env);
+
+            restore(env.classMap, classes);
+            restore(env.functionMap, functions);
+            restore(env.constantMap, constants);
+            restore(env.moduleManager.modules, modules);
+        }
+
+        // via setConfigValue() and restoreConfigValue() to call the change handlers (e.g. of include_path).
+        void restoreConfiguration(Environment env) {
+            if (same(env.configuration, configuration)) {
+                return;
+            }
+
+            for (String name : new ArrayList<String>(env.configuration.keySet())) {
+                if (!configuration.containsKey(name)) {
+                    env.restoreConfigValue(name);
+                }
+            }
+
+            for (Map.Entry<String, Memory> entry : configuration.entrySet()) {
+                Memory value = env.configuration.get(entry.getKey());
+
+                if (value != entry.getValue()) {
+                    env.setConfigValue(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+
+        static <T> void restore(Map<String, T> map, Map<String, T> initial) {
+            if (!same(map, initial)) {
+                map.clear();
+                map.putAll(initial);
+            }
+        }
+
+        // entries are compared by identity, entities are equal by name and a redeclared one must be restored too.
+        static <T> boolean same(Map<String, T> map, Map<String, T> initial) {
+            if (map.size() != initial.size()) {
+                return false;
+            }
+
+            for (Map.Entry<String, T> entry : initial.entrySet()) {
+                if (map.get(entry.getKey()) != entry.getValue()) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+    }
+}
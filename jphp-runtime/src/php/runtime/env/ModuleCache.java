@@ -0,0 +1,145 @@
+package php.runtime.env;
+
+import php.runtime.reflection.ModuleEntity;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Modules of included files shared by all environments of a scope.
+ *
+ * An entry is valid while the last modified time of the file is not changed. Only one thread loads a path,
+ * other threads wait for its result; a failed or missing module is not cached and each waiter tries again.
+ */
+public class ModuleCache {
+    public interface Loader {
+        ModuleEntity load() throws Throwable;
+    }
+
+    protected final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+    protected final AtomicLong hits = new AtomicLong();
+    protected final AtomicLong misses = new AtomicLong();
+    protected final AtomicLong compileTime = new AtomicLong();
+
+    /**
+     * Returns the cached module or loads it via the loader in the current thread.
+     *
+     * @param loaded receives true if the module was loaded by the current thread
+     */
+    public ModuleEntity fetch(String path, long lastModified, Loader loader, boolean[] loaded) throws Throwable {
+        while (true) {
+            Entry entry = entries.get(path);
+
+            if (entry != null && entry.lastModified == lastModified) {
+                ModuleEntity module = entry.await();
+
+                if (module != null) {
+                    hits.incrementAndGet();
+                    return module;
+                }
+
+                // failed in other thread, try again.
+                entries.remove(path, entry);
+                continue;
+            }
+
+            Entry created = new Entry(lastModified);
+
+            if (entry == null ? entries.putIfAbsent(path, created) != null : !entries.replace(path, entry, created)) {
+                continue;
+            }
+
+            misses.incrementAndGet();
+            long time = System.nanoTime();
+
+            ModuleEntity module = null;
+            try {
+                module = loader.load();
+
+                if (loaded != null) {
+                    loaded[0] = true;
+                }
+
+                return module;
+            } finally {
+                compileTime.addAndGet(System.nanoTime() - time);
+
+                if (module == null) {
+                    entries.remove(path, created);
+                }
+
+                created.complete(module);
+            }
+        }
+    }
+
+    public ModuleEntity remove(String path) {
+        Entry entry = entries.remove(path);
+        return entry == null ? null : entry.module;
+    }
+
+    /**
+     * Removes the entry of the path only if it holds the module.
+     */
+    public boolean remove(String path, ModuleEntity module) {
+        Entry entry = entries.get(path);
+        return entry != null && entry.module == module && entries.remove(path, entry);
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public Collection<String> getPaths() {
+        return entries.keySet();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return total time of loading modules in nanoseconds
+     */
+    public long getCompileTime() {
+        return compileTime.get();
+    }
+
+    public void resetStatistics() {
+        hits.set(0);
+        misses.set(0);
+        compileTime.set(0);
+    }
+
+    protected static class Entry {
+        final long lastModified;
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        volatile ModuleEntity module;
+
+        Entry(long lastModified) {
+            this.lastModified = lastModified;
+        }
+
+        void complete(ModuleEntity module) {
+            this.module = module;
+            latch.countDown();
+        }
+
+        ModuleEntity await() throws InterruptedException {
+            latch.await();
+            return module;
+        }
+    }
+}
@@ -3,9 +3,12 @@ package php.runtime.env;
 import php.runtime.ext.core.classes.stream.FileStream;
 import php.runtime.ext.core.classes.stream.Stream;
 import php.runtime.ext.core.classes.stream.WrapIOException;
+import php.runtime.loader.dump.ModuleDumpCache;
+import php.runtime.loader.dump.StartupSnapshot;
 import php.runtime.reflection.ModuleEntity;
 
 import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.util.Collection;
 import java.util.LinkedHashMap;
@@ -27,23 +30,36 @@ public class ModuleManager {
         return fetchModule(path, path.endsWith(".phb"));
     }
 
-    public ModuleEntity fetchModule(String path, boolean compiled) throws Throwable {
+    public ModuleEntity fetchModule(final String path, final boolean compiled) throws Throwable {
         ModuleEntity moduleEntity = modules.get(path);
+        long lastModified = new File(path).lastModified();
 
         if (moduleEntity != null &&
                 (moduleEntity.getContext().getLastModified() == 0
-                        || moduleEntity.getContext().getLastModified() == new File(path).lastModified())) {
+                        || moduleEntity.getContext().getLastModified() == lastModified)) {
 
             return moduleEntity;
         } else {
-            env.scope.removeUserModule(path);
+            boolean[] loaded = new boolean[1];
 
-            moduleEntity = fetchTemporaryModule(path, compiled);
+            moduleEntity = env.scope.getModuleCache().fetch(path, lastModified, new ModuleCache.Loader() {
+                @Override
+                public ModuleEntity load() throws Throwable {
+                    env.scope.removeUserModule(path);
+
+                    return fetchTemporaryModule(path, compiled);
+                }
+            }, loaded);
 
             if (moduleEntity == null) {
                 return null;
             }
 
+            if (!loaded[0]) {
+                // compiled by other environment, only registration is needed.
+                env.registerModule(moduleEntity);
+            }
+
             modules.put(path, moduleEntity);
 
             return moduleEntity;
@@ -62,11 +78,32 @@ public class ModuleManager {
                 env.exception("Cannot import module form external stream: " + stream.getPath());
                 return null;
             } else {
-                ModuleEntity module;
+                ModuleEntity module = null;
                 Context context = fetchContext(stream);
 
-                if (compiled) {
+                ModuleDumpCache dumpCache = env.scope.getModuleDumpCache();
+                StartupSnapshot snapshot = env.scope.getStartupSnapshot();
+
+                if (!compiled && snapshot != null && snapshot.hasModule(path)) {
+                    byte[] source = ModuleDumpCache.readAll(context.getInputStream(env.getDefaultCharset()));
+                    module = snapshot.importModule(env, path, source);
+
+                    if (module == null) {
+                        // the source is changed since the snapshot.
+                        context = new Context(new ByteArrayInputStream(source), context.getModuleName(), env.getDefaultCharset());
+                    }
+                }
+
+                if (module != null) {
+                    env.registerModule(module);
+                    env.scope.addUserModule(module);
+                } else if (compiled) {
                     module = env.importCompiledModule(context, true);
+                } else if (dumpCache != null && stream instanceof FileStream) {
+                    module = dumpCache.importModule(env, context);
+
+                    env.registerModule(module);
+                    env.scope.addUserModule(module);
                 } else {
                     module = env.importModule(context);
                 }
@@ -0,0 +1,396 @@
+package php.runtime.env;
+
+import php.runtime.memory.ArrayMemory;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.*;
+
+/**
+ * Sampling profiler of php code, a daemon thread periodically reads call stacks of all live environments
+ * and aggregates them to a tree of frames (function and the line where it's executing).
+ *
+ * The call stacks are read without locks, so a sample can be inaccurate if a call is pushed or popped at the moment,
+ * the running code is not slowed down. In the cpu mode only stacks of runnable threads are sampled.
+ *
+ * Results: collapsed stacks (flamegraph.pl, speedscope) or a json tree (d3-flame-graph).
+ */
+public class SamplingProfiler {
+    public static final String MAIN = "{main}";
+
+    private static final Map<CallStack, Boolean> callStacks = new WeakHashMap<>();
+    private static final SamplingProfiler instance = new SamplingProfiler();
+
+    protected final Node root = new Node(null, "all", null, -1);
+    protected final Node probe = new Node(null, null, null, -1);
+
+    protected volatile Thread thread;
+    protected long interval = 10;
+    protected boolean cpu = true;
+    protected long samples = 0;
+
+    public static SamplingProfiler getInstance() {
+        return instance;
+    }
+
+    static void register(CallStack callStack) {
+        synchronized (callStacks) {
+            callStacks.put(callStack, Boolean.TRUE);
+        }
+    }
+
+    /**
+     * @param interval in millis between samples
+     * @param cpu if true, only stacks of runnable threads are sampled, else the wall time is sampled
+     */
+    public synchronized void start(long interval, boolean cpu) {
+        if (interval < 1) {
+            throw new IllegalArgumentException("interval must be greater than 0");
+        }
+
+        this.interval = interval;
+        this.cpu = cpu;
+
+        if (thread != null) {
+            return;
+        }
+
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                loop();
+            }
+        }, "jphp-profiler");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public synchronized void stop() {
+        Thread thread = this.thread;
+        this.thread = null;
+
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    public boolean isRunning() {
+        return thread != null;
+    }
+
+    public synchronized long getSamples() {
+        return samples;
+    }
+
+    public synchronized void reset() {
+        root.clear();
+        samples = 0;
+    }
+
+    protected void loop() {
+        Thread current = Thread.currentThread();
+
+        while (thread == current) {
+            try {
+                Thread.sleep(interval);
+            } catch (InterruptedException e) {
+                break;
+            }
+
+            sample();
+        }
+    }
+
+    public void sample() {
+        CallStack[] stacks;
+
+        synchronized (callStacks) {
+            stacks = callStacks.keySet().toArray(new CallStack[callStacks.size()]);
+        }
+
+        synchronized (this) {
+            for (CallStack stack : stacks) {
+                try {
+                    sample(stack);
+                } catch (RuntimeException e) {
+                    // the stack was changed while reading, skip it
+                }
+            }
+        }
+    }
+
+    protected void sample(CallStack stack) {
+        int top = stack.callStackTop;
+        CallStackItem[] items = stack.callStack;
+
+        if (top <= 0) {
+            return;
+        }
+
+        if (cpu) {
+            Thread owner = stack.owner;
+
+            if (owner == null || owner.getState() != Thread.State.RUNNABLE) {
+                return;
+            }
+        }
+
+        top = Math.min(top, items.length);
+
+        Node node = root;
+        node.total++;
+
+        // a frame is added with the line of the next call in it, the top frame has no line
+        String clazz = null;
+        String function = MAIN;
+
+        for (int i = 0; i < top; i++) {
+            CallStackItem item = items[i];
+
+            if (item == null) {
+                break;
+            }
+
+            if (item.function == null) { // include, bootstrap
+                continue;
+            }
+
+            node = node.child(clazz, function, stack.env, item.trace);
+            node.total++;
+
+            clazz = item.clazz;
+            function = item.function;
+        }
+
+        node = node.child(clazz, function, stack.env, null);
+        node.total++;
+        node.self++;
+        samples++;
+    }
+
+    /**
+     * Writes lines in the format of `frame;frame;frame count`.
+     */
+    public synchronized void writeCollapsed(Writer writer) throws IOException {
+        StringBuilder path = new StringBuilder();
+
+        for (Node child : root.children()) {
+            child.writeCollapsed(writer, path);
+        }
+    }
+
+    public String toCollapsed() {
+        StringWriter writer = new StringWriter();
+
+        try {
+            writeCollapsed(writer);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        return writer.toString();
+    }
+
+    /**
+     * Writes the tree as json: {"name": "...", "value": 10, "children": [...]}.
+     */
+    public synchronized void writeJson(Writer writer) throws IOException {
+        root.writeJson(writer);
+    }
+
+    public String toJson() {
+        StringWriter writer = new StringWriter();
+
+        try {
+            writeJson(writer);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        return writer.toString();
+    }
+
+    /**
+     * @return [name => ..., value => ..., children => [...]]
+     */
+    public synchronized ArrayMemory toArray() {
+        return root.toArray();
+    }
+
+    protected class Node {
+        protected String clazz;
+        protected String function;
+        protected String file;
+        protected int line;
+
+        protected long self;
+        protected long total;
+
+        protected Map<Node, Node> children;
+
+        Node(String clazz, String function, String file, int line) {
+            this.clazz = clazz;
+            this.function = function;
+            this.file = file;
+            this.line = line;
+        }
+
+        Node child(String clazz, String function, Environment env, TraceInfo trace) {
+            if (trace != null && !env.sourceMaps.isEmpty()) {
+                trace = env.getTraceAppliedSourceMap(trace);
+            }
+
+            probe.clazz = clazz;
+            probe.function = function;
+            probe.file = trace == null ? null : trace.getFileName();
+            probe.line = trace == null ? -1 : trace.getStartLine();
+
+            if (children == null) {
+                children = new HashMap<>();
+            }
+
+            Node node = children.get(probe);
+
+            if (node == null) {
+                node = new Node(probe.clazz, probe.function, probe.file, probe.line);
+                children.put(node, node);
+            }
+
+            return node;
+        }
+
+        Collection<Node> children() {
+            return children == null ? Collections.<Node>emptyList() : children.values();
+        }
+
+        void clear() {
+            children = null;
+            self = 0;
+            total = 0;
+        }
+
+        String getName() {
+            StringBuilder sb = new StringBuilder();
+
+            if (clazz != null && !clazz.isEmpty()) {
+                sb.append(clazz).append("::");
+            }
+
+            sb.append(function);
+
+            if (file != null) {
+                sb.append(" (").append(file).append(':').append(line + 1).append(')');
+            }
+
+            return sb.toString();
+        }
+
+        void writeCollapsed(Writer writer, StringBuilder path) throws IOException {
+            int length = path.length();
+
+            if (length > 0) {
+                path.append(';');
+            }
+
+            path.append(getName().replace(';', ','));
+
+            if (self > 0) {
+                writer.append(path).append(' ').append(String.valueOf(self)).append('\n');
+            }
+
+            for (Node child : children()) {
+                child.writeCollapsed(writer, path);
+            }
+
+            path.setLength(length);
+        }
+
+        void writeJson(Writer writer) throws IOException {
+            writer.write("{\"name\":");
+            writeJsonString(writer, getName());
+            writer.write(",\"value\":");
+            writer.write(String.valueOf(total));
+
+            if (children != null) {
+                writer.write(",\"children\":[");
+
+                boolean first = true;
+
+                for (Node child : children()) {
+                    if (!first) {
+                        writer.write(',');
+                    }
+
+                    child.writeJson(writer);
+                    first = false;
+                }
+
+                writer.write(']');
+            }
+
+            writer.write('}');
+        }
+
+        ArrayMemory toArray() {
+            ArrayMemory result = new ArrayMemory();
+            result.refOfIndex("name").assign(getName());
+            result.refOfIndex("value").assign(total);
+
+            ArrayMemory items = new ArrayMemory();
+
+            for (Node child : children()) {
+                items.add(child.toArray());
+            }
+
+            result.refOfIndex("children").assign(items);
+            return result;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Node)) return false;
+
+            Node node = (Node) o;
+
+            return line == node.line
+                    && Objects.equals(function, node.function)
+                    && Objects.equals(clazz, node.clazz)
+                    && Objects.equals(file, node.file);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = clazz != null ? clazz.hashCode() : 0;
+            result = 31 * result + (function != null ? function.hashCode() : 0);
+            result = 31 * result + (file != null ? file.hashCode() : 0);
+            result = 31 * result + line;
+            return result;
+        }
+    }
+
+    protected static void writeJsonString(Writer writer, String value) throws IOException {
+        writer.write('"');
+
+        for (int i = 0; i < value.length(); i++) {
+            char ch = value.charAt(i);
+
+            switch (ch) {
+                case '"': writer.write("\\\""); break;
+                case '\\': writer.write("\\\\"); break;
+                case '\n': writer.write("\\n"); break;
+                case '\r': writer.write("\\r"); break;
+                case '\t': writer.write("\\t"); break;
+                default:
+                    if (ch < 0x20) {
+                        writer.write(String.format("\\u%04x", (int) ch));
+                    } else {
+                        writer.write(ch);
+                    }
+            }
+        }
+
+        writer.write('"');
+    }
+}
@@ -5,5 +5,26 @@ import php.runtime.env.TraceInfo;
 import php.runtime.memory.ArrayMemory;
 
 abstract public class TickHandler {
+    /**
+     * Compile-time filter, ticks are not emitted for lines it returns false,
+     * modules compiled before a change of the filter keep their ticks.
+     *
+     * @param line zero-based line
+     */
+    public boolean isTickLine(String fileName, int line) {
+        return true;
+    }
+
+    /**
+     * Called on each tick before onTick(), if it returns false the tick is skipped
+     * and the locals are not touched (e.g. no breakpoint on the line).
+     */
+    public boolean isTick(Environment env, TraceInfo trace) {
+        return true;
+    }
+
+    /**
+     * @param locals local variables of the current frame (not a copy), with $this
+     */
     abstract public void onTick(Environment env, TraceInfo trace, ArrayMemory locals);
 }
@@ -7,6 +7,7 @@ import php.runtime.exceptions.support.ErrorType;
 import php.runtime.ext.core.*;
 import php.runtime.ext.core.classes.*;
 import php.runtime.ext.core.classes.format.IniProcessor;
+import php.runtime.ext.core.classes.format.SerializeProcessor;
 import php.runtime.ext.core.classes.format.WrapProcessor;
 import php.runtime.ext.core.classes.lib.*;
 import php.runtime.ext.core.classes.lib.legacy.OldBinUtils;
@@ -131,15 +132,17 @@ public class CoreExtension extends Extension implements ProgramShutdownHandler {
         registerJavaException(scope, WrapSocketException.class, SocketException.class);
 
         registerClass(scope, WrapThreadPool.class, WrapFuture.class, WrapPromise.class);
+        registerClass(scope, WrapEventLoop.class, WrapAsyncSocket.class, WrapAsyncServerSocket.class);
         registerJavaException(scope, WrapJavaExceptions.TimeoutException.class, TimeoutException.class);
 
-        registerClass(scope, WrapProcessor.class, IniProcessor.class, WrapProcessor.ProcessorException.class, WrapProcess.class);
+        registerClass(scope, WrapProcessor.class, IniProcessor.class, SerializeProcessor.class, WrapProcessor.ProcessorException.class, WrapProcess.class);
     }
 
     @Override
     public void onLoad(Environment env) {
         Stream.initEnvironment(env);
         WrapProcessor.registerCode(env, "ini", IniProcessor.class);
+        WrapProcessor.registerCode(env, "serialize", SerializeProcessor.class);
     }
 
     @Override
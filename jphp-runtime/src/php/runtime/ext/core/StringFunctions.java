@@ -5,6 +5,9 @@ import php.runtime.annotation.Runtime;
 import php.runtime.env.Environment;
 import php.runtime.env.TraceInfo;
 import php.runtime.ext.support.compile.FunctionsContainer;
+import php.runtime.memory.BinaryMemory;
+import php.runtime.memory.output.serialization.BinaryDeserializer;
+import php.runtime.memory.output.serialization.BinarySerializer;
 import php.runtime.memory.output.serialization.Deserializer;
 import php.runtime.memory.output.serialization.Serializer;
 
@@ -31,4 +34,13 @@ public class StringFunctions extends FunctionsContainer {
         Deserializer deserializer = new Deserializer(env, trace);
         return deserializer.read(value);
     }
+
+    public static Memory serialize_binary(Environment env, TraceInfo trace, Memory value){
+        return new BinaryMemory(new BinarySerializer(env, trace).serialize(value));
+    }
+
+    public static Memory unserialize_binary(Environment env, TraceInfo trace, Memory value){
+        BinaryDeserializer deserializer = new BinaryDeserializer(env, trace);
+        return deserializer.read(value.getBinaryBytes(env.getDefaultCharset()));
+    }
 }
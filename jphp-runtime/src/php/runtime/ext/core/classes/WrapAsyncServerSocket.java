@@ -0,0 +1,130 @@
+package php.runtime.ext.core.classes;
+
+import php.runtime.env.Environment;
+import php.runtime.lang.BaseObject;
+import php.runtime.memory.ObjectMemory;
+import php.runtime.reflection.ClassEntity;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import static php.runtime.annotation.Reflection.*;
+
+/**
+ * Non-blocking tcp server socket of EventLoop.
+ */
+@Name("php\\concurrent\\AsyncServerSocket")
+public class WrapAsyncServerSocket extends BaseObject implements WrapEventLoop.Handler {
+    protected WrapEventLoop loop;
+    protected ServerSocketChannel channel;
+    protected SelectionKey key;
+
+    protected final Deque<WrapPromise> accepts = new ArrayDeque<>();
+
+    public WrapAsyncServerSocket(Environment env, WrapEventLoop loop, ServerSocketChannel channel)
+            throws ClosedChannelException {
+        super(env);
+        this.loop = loop;
+        this.channel = channel;
+        this.key = loop.register(channel, this);
+    }
+
+    public WrapAsyncServerSocket(Environment env, ClassEntity clazz) {
+        super(env, clazz);
+    }
+
+    @Signature
+    private void __construct() {
+    }
+
+    public ServerSocketChannel getChannel() {
+        return channel;
+    }
+
+    /**
+     * @return promise of AsyncSocket of the next connection
+     */
+    @Signature
+    public WrapPromise accept(Environment env) {
+        WrapPromise promise = new WrapPromise(env);
+
+        if (!channel.isOpen()) {
+            promise.reject(env, new ClosedChannelException());
+        } else {
+            accepts.add(promise);
+            key.interestOps(SelectionKey.OP_ACCEPT);
+        }
+
+        return promise;
+    }
+
+    @Signature
+    public boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    @Signature
+    public int getLocalPort() throws IOException {
+        InetSocketAddress address = (InetSocketAddress) channel.getLocalAddress();
+        return address == null ? -1 : address.getPort();
+    }
+
+    /**
+     * Closes the socket, pending accepts are rejected.
+     */
+    @Signature
+    public void close() throws IOException {
+        key.cancel();
+        channel.close();
+
+        ClosedChannelException exception = new ClosedChannelException();
+        WrapPromise promise;
+
+        while ((promise = accepts.poll()) != null) {
+            promise.reject(getEnvironment(), exception);
+        }
+    }
+
+    @Override
+    public void handle(SelectionKey key) {
+        Environment env = getEnvironment();
+
+        while (!accepts.isEmpty() && channel.isOpen()) {
+            SocketChannel client = null;
+            WrapAsyncSocket socket;
+
+            try {
+                client = channel.accept();
+
+                if (client == null) {
+                    break;
+                }
+
+                client.configureBlocking(false);
+                socket = new WrapAsyncSocket(env, loop, client);
+            } catch (IOException | RuntimeException e) {
+                if (client != null) {
+                    try {
+                        client.close();
+                    } catch (IOException ignore) {
+                    }
+                }
+
+                accepts.poll().reject(env, e);
+                continue;
+            }
+
+            accepts.poll().fulfill(env, ObjectMemory.valueOf(socket));
+        }
+
+        if (key.isValid() && accepts.isEmpty()) {
+            key.interestOps(0);
+        }
+    }
+}
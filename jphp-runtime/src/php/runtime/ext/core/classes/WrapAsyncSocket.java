@@ -0,0 +1,315 @@
+package php.runtime.ext.core.classes;
+
+import php.runtime.Memory;
+import php.runtime.env.Environment;
+import php.runtime.lang.BaseObject;
+import php.runtime.memory.BinaryMemory;
+import php.runtime.memory.LongMemory;
+import php.runtime.memory.ObjectMemory;
+import php.runtime.memory.StringMemory;
+import php.runtime.reflection.ClassEntity;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+import static php.runtime.annotation.Reflection.*;
+
+/**
+ * Non-blocking tcp socket of EventLoop, operations return promises resolved in the loop thread.
+ */
+@Name("php\\concurrent\\AsyncSocket")
+public class WrapAsyncSocket extends BaseObject implements WrapEventLoop.Handler {
+    static class Operation {
+        final WrapPromise promise;
+        final ByteBuffer buffer; // data of a write
+        final int length; // max length of a read
+
+        Operation(WrapPromise promise, ByteBuffer buffer, int length) {
+            this.promise = promise;
+            this.buffer = buffer;
+            this.length = length;
+        }
+    }
+
+    protected SocketChannel channel;
+    protected SelectionKey key;
+
+    protected WrapPromise connecting;
+    protected final Deque<Operation> reads = new ArrayDeque<>();
+    protected final Deque<Operation> writes = new ArrayDeque<>();
+    protected ByteBuffer readBuffer;
+    protected boolean eof;
+
+    public WrapAsyncSocket(Environment env, WrapEventLoop loop, SocketChannel channel) throws ClosedChannelException {
+        super(env);
+        this.channel = channel;
+        this.key = loop.register(channel, this);
+    }
+
+    public WrapAsyncSocket(Environment env, ClassEntity clazz) {
+        super(env, clazz);
+    }
+
+    @Signature
+    private void __construct() {
+    }
+
+    public SocketChannel getChannel() {
+        return channel;
+    }
+
+    /**
+     * @return true if connected at once, otherwise the promise is fulfilled by the loop
+     */
+    boolean connect(InetSocketAddress address, WrapPromise promise) throws IOException {
+        if (channel.connect(address)) {
+            return true;
+        }
+
+        connecting = promise;
+        updateInterest();
+        return false;
+    }
+
+    /**
+     * @return promise of a binary string, null on the end of the stream
+     */
+    @Signature
+    public WrapPromise read(Environment env) {
+        return read(env, 8192);
+    }
+
+    @Signature
+    public WrapPromise read(Environment env, int length) {
+        if (length < 1) {
+            throw new IllegalArgumentException("Length must be greater than 0");
+        }
+
+        WrapPromise promise = new WrapPromise(env);
+
+        if (eof || !channel.isOpen()) {
+            promise.fulfill(env, Memory.NULL);
+        } else {
+            reads.add(new Operation(promise, null, length));
+            updateInterest();
+        }
+
+        return promise;
+    }
+
+    /**
+     * @return promise of the written length, it's fulfilled when all data is written
+     */
+    @Signature
+    public WrapPromise write(Environment env, Memory data) {
+        WrapPromise promise = new WrapPromise(env);
+        byte[] bytes = data.getBinaryBytes(env.getDefaultCharset());
+        Operation operation = new Operation(promise, ByteBuffer.wrap(bytes), bytes.length);
+
+        if (!channel.isOpen()) {
+            promise.reject(env, new ClosedChannelException());
+            return promise;
+        }
+
+        if (writes.isEmpty() && connecting == null) {
+            try {
+                channel.write(operation.buffer);
+            } catch (IOException e) {
+                promise.reject(env, e);
+                fail(e);
+                return promise;
+            }
+
+            if (!operation.buffer.hasRemaining()) {
+                promise.fulfill(env, LongMemory.valueOf(bytes.length));
+                return promise;
+            }
+        }
+
+        writes.add(operation);
+        updateInterest();
+
+        return promise;
+    }
+
+    @Signature
+    public boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    @Signature
+    public Memory getRemoteAddress() throws IOException {
+        InetSocketAddress address = (InetSocketAddress) channel.getRemoteAddress();
+        return address == null ? Memory.NULL : StringMemory.valueOf(address.getHostString() + ":" + address.getPort());
+    }
+
+    @Signature
+    public int getLocalPort() throws IOException {
+        InetSocketAddress address = (InetSocketAddress) channel.getLocalAddress();
+        return address == null ? -1 : address.getPort();
+    }
+
+    /**
+     * Closes the socket, pending reads get null, pending writes are rejected.
+     */
+    @Signature
+    public void close() throws IOException {
+        key.cancel();
+        channel.close();
+
+        Environment env = getEnvironment();
+        ClosedChannelException exception = new ClosedChannelException();
+
+        if (connecting != null) {
+            WrapPromise promise = connecting;
+            connecting = null;
+            promise.reject(env, exception);
+        }
+
+        Operation operation;
+
+        while ((operation = reads.poll()) != null) {
+            operation.promise.fulfill(env, Memory.NULL);
+        }
+
+        while ((operation = writes.poll()) != null) {
+            operation.promise.reject(env, exception);
+        }
+    }
+
+    @Override
+    public void handle(SelectionKey key) {
+        int ready = key.readyOps();
+
+        try {
+            if ((ready & SelectionKey.OP_CONNECT) != 0 && connecting != null) {
+                channel.finishConnect();
+
+                WrapPromise promise = connecting;
+                connecting = null;
+                updateInterest();
+
+                promise.fulfill(getEnvironment(), ObjectMemory.valueOf(this));
+            }
+
+            if ((ready & SelectionKey.OP_READ) != 0 && key.isValid()) {
+                handleRead();
+            }
+
+            if ((ready & SelectionKey.OP_WRITE) != 0 && key.isValid()) {
+                handleWrite();
+            }
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    protected void handleRead() throws IOException {
+        Environment env = getEnvironment();
+        Operation operation;
+
+        while ((operation = reads.peek()) != null && channel.isOpen()) {
+            if (readBuffer == null || readBuffer.capacity() < operation.length) {
+                readBuffer = ByteBuffer.allocate(Math.max(operation.length, 8192));
+            }
+
+            readBuffer.clear();
+            readBuffer.limit(operation.length);
+
+            int length = channel.read(readBuffer);
+
+            if (length == 0) {
+                break;
+            }
+
+            reads.poll();
+
+            if (length < 0) {
+                eof = true;
+                operation.promise.fulfill(env, Memory.NULL);
+
+                while ((operation = reads.poll()) != null) {
+                    operation.promise.fulfill(env, Memory.NULL);
+                }
+            } else {
+                operation.promise.fulfill(env, new BinaryMemory(Arrays.copyOf(readBuffer.array(), length)));
+            }
+        }
+
+        updateInterest();
+    }
+
+    protected void handleWrite() throws IOException {
+        Environment env = getEnvironment();
+        Operation operation;
+
+        while ((operation = writes.peek()) != null && channel.isOpen()) {
+            channel.write(operation.buffer);
+
+            if (operation.buffer.hasRemaining()) {
+                break;
+            }
+
+            writes.poll();
+            operation.promise.fulfill(env, LongMemory.valueOf(operation.length));
+        }
+
+        updateInterest();
+    }
+
+    protected void fail(IOException e) {
+        Environment env = getEnvironment();
+
+        key.cancel();
+
+        try {
+            channel.close();
+        } catch (IOException ignore) {
+        }
+
+        if (connecting != null) {
+            WrapPromise promise = connecting;
+            connecting = null;
+            promise.reject(env, e);
+        }
+
+        Operation operation;
+
+        while ((operation = reads.poll()) != null) {
+            operation.promise.reject(env, e);
+        }
+
+        while ((operation = writes.poll()) != null) {
+            operation.promise.reject(env, e);
+        }
+    }
+
+    protected void updateInterest() {
+        if (!key.isValid()) {
+            return;
+        }
+
+        int ops = 0;
+
+        if (connecting != null) {
+            ops = SelectionKey.OP_CONNECT;
+        } else {
+            if (!reads.isEmpty()) {
+                ops |= SelectionKey.OP_READ;
+            }
+
+            if (!writes.isEmpty()) {
+                ops |= SelectionKey.OP_WRITE;
+            }
+        }
+
+        key.interestOps(ops);
+    }
+}
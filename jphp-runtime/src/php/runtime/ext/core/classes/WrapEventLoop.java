@@ -0,0 +1,319 @@
+package php.runtime.ext.core.classes;
+
+import php.runtime.Memory;
+import php.runtime.common.Callback;
+import php.runtime.env.Environment;
+import php.runtime.invoke.Invoker;
+import php.runtime.invoke.RunnableInvoker;
+import php.runtime.lang.BaseObject;
+import php.runtime.memory.LongMemory;
+import php.runtime.memory.ObjectMemory;
+import php.runtime.reflection.ClassEntity;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static php.runtime.annotation.Reflection.*;
+
+/**
+ * Single thread event loop: non-blocking sockets on a selector, timers and tasks posted from other threads.
+ * All callbacks and promises are resolved in the thread of run(), methods except post() and stop()
+ * must be called from it or before run().
+ */
+@Name("php\\concurrent\\EventLoop")
+public class WrapEventLoop extends BaseObject {
+    /**
+     * Handler of a channel registered in the selector (attachment of a key).
+     */
+    interface Handler {
+        void handle(SelectionKey key);
+    }
+
+    static class Timer implements Comparable<Timer> {
+        final long id;
+        final Invoker callback;
+        final long interval;
+
+        long time;
+        boolean cancelled;
+
+        Timer(long id, Invoker callback, long time, long interval) {
+            this.id = id;
+            this.callback = callback;
+            this.time = time;
+            this.interval = interval;
+        }
+
+        @Override
+        public int compareTo(Timer o) {
+            int result = Long.compare(time, o.time);
+            return result == 0 ? Long.compare(id, o.id) : result;
+        }
+    }
+
+    protected Selector selector;
+
+    protected final PriorityQueue<Timer> timers = new PriorityQueue<>();
+    protected final Map<Long, Timer> timerIds = new HashMap<>();
+    protected long timerId = 0;
+
+    protected final Queue<Invoker> tasks = new ConcurrentLinkedQueue<>();
+
+    protected volatile boolean running;
+
+    public WrapEventLoop(Environment env) {
+        super(env);
+    }
+
+    public WrapEventLoop(Environment env, ClassEntity clazz) {
+        super(env, clazz);
+    }
+
+    @Signature
+    public void __construct() throws IOException {
+        selector = Selector.open();
+    }
+
+    /**
+     * Runs the loop until stop() is called or there is nothing to wait: no timers, tasks and pending socket operations.
+     */
+    @Signature
+    public void run(Environment env) throws Throwable {
+        running = true;
+
+        try {
+            while (running) {
+                runTasks();
+                long timeout = runTimers();
+
+                if (!running) {
+                    break;
+                }
+
+                if (!tasks.isEmpty()) {
+                    selector.selectNow();
+                } else if (timeout < 0) {
+                    if (!hasPendingKeys()) {
+                        break;
+                    }
+
+                    selector.select();
+                } else {
+                    selector.select(timeout);
+                }
+
+                Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+
+                while (iterator.hasNext()) {
+                    SelectionKey key = iterator.next();
+                    iterator.remove();
+
+                    if (key.isValid()) {
+                        ((Handler) key.attachment()).handle(key);
+                    }
+                }
+            }
+        } finally {
+            running = false;
+        }
+    }
+
+    /**
+     * Stops the loop after the current callback, can be called from any thread.
+     */
+    @Signature
+    public void stop() {
+        running = false;
+        selector.wakeup();
+    }
+
+    @Signature
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Runs the callback in the loop thread, can be called from any thread.
+     */
+    @Signature
+    public void post(Invoker callback) {
+        tasks.add(callback);
+        selector.wakeup();
+    }
+
+    /**
+     * @return id of the timer for cancelTimer()
+     */
+    @Signature
+    public long setTimeout(Invoker callback, long millis) {
+        return addTimer(callback, millis, -1);
+    }
+
+    /**
+     * @return id of the timer for cancelTimer()
+     */
+    @Signature
+    public long setInterval(Invoker callback, long millis) {
+        if (millis < 1) {
+            throw new IllegalArgumentException("Interval must be greater than 0");
+        }
+
+        return addTimer(callback, millis, millis);
+    }
+
+    @Signature
+    public boolean cancelTimer(long id) {
+        Timer timer = timerIds.remove(id);
+
+        if (timer != null) {
+            timer.cancelled = true;
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * @return promise fulfilled after the delay
+     */
+    @Signature
+    public WrapPromise delay(Environment env, long millis) {
+        final WrapPromise promise = new WrapPromise(env);
+
+        addTimer(new RunnableInvoker(env, new Callback<Memory, Memory[]>() {
+            @Override
+            public Memory call(Memory[] args) {
+                promise.fulfill(env, Memory.NULL);
+                return Memory.NULL;
+            }
+        }), millis, -1);
+
+        return promise;
+    }
+
+    /**
+     * @return promise of AsyncSocket
+     */
+    @Signature
+    public WrapPromise connect(Environment env, String host, int port) {
+        WrapPromise promise = new WrapPromise(env);
+
+        SocketChannel channel = null;
+        WrapAsyncSocket socket;
+
+        try {
+            channel = SocketChannel.open();
+            channel.configureBlocking(false);
+
+            socket = new WrapAsyncSocket(env, this, channel);
+
+            if (!socket.connect(new InetSocketAddress(host, port), promise)) {
+                return promise;
+            }
+        } catch (IOException | RuntimeException e) {
+            if (channel != null) { // its key is cancelled by close()
+                try {
+                    channel.close();
+                } catch (IOException ignore) {
+                }
+            }
+
+            promise.reject(env, e);
+            return promise;
+        }
+
+        promise.fulfill(env, ObjectMemory.valueOf(socket));
+        return promise;
+    }
+
+    @Signature
+    public WrapAsyncServerSocket listen(Environment env, String host, int port) throws IOException {
+        return listen(env, host, port, 0);
+    }
+
+    @Signature
+    public WrapAsyncServerSocket listen(Environment env, String host, int port, int backlog) throws IOException {
+        ServerSocketChannel channel = ServerSocketChannel.open();
+
+        try {
+            channel.configureBlocking(false);
+            channel.bind(new InetSocketAddress(host, port), backlog);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+
+        return new WrapAsyncServerSocket(env, this, channel);
+    }
+
+    SelectionKey register(SelectableChannel channel, Handler handler) throws ClosedChannelException {
+        return channel.register(selector, 0, handler);
+    }
+
+    protected boolean hasPendingKeys() {
+        for (SelectionKey key : selector.keys()) {
+            if (key.isValid() && key.interestOps() != 0) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    protected static long now() {
+        return System.nanoTime() / 1000000L;
+    }
+
+    protected long addTimer(Invoker callback, long millis, long interval) {
+        Timer timer = new Timer(++timerId, callback, now() + Math.max(0, millis), interval);
+
+        timers.add(timer);
+        timerIds.put(timer.id, timer);
+
+        return timer.id;
+    }
+
+    protected void runTasks() throws Throwable {
+        Invoker task;
+
+        while (running && (task = tasks.poll()) != null) {
+            task.call();
+        }
+    }
+
+    /**
+     * @return millis to the next timer or -1 if there are no timers
+     */
+    protected long runTimers() throws Throwable {
+        while (running && !timers.isEmpty()) {
+            Timer timer = timers.peek();
+
+            if (timer.cancelled) {
+                timers.poll();
+                continue;
+            }
+
+            long now = now();
+
+            if (timer.time > now) {
+                return timer.time - now;
+            }
+
+            timers.poll();
+
+            if (timer.interval > 0) {
+                timer.time = now + timer.interval;
+                timers.add(timer);
+            } else {
+                timerIds.remove(timer.id);
+            }
+
+            timer.callback.call(LongMemory.valueOf(timer.id));
+        }
+
+        return -1;
+    }
+}
@@ -114,6 +114,36 @@ public class WrapPromise extends BaseObject {
         }
     }
 
+    /**
+     * Fulfills this pending promise from java code.
+     */
+    public void fulfill(Environment env, Memory result) {
+        try {
+            makeFulfill(env, result);
+        } catch (Exception e) {
+            env.forwardThrow(e);
+        }
+    }
+
+    /**
+     * Rejects this pending promise from java code, a java exception is wrapped to JavaException.
+     */
+    public void reject(Environment env, Throwable error) {
+        try {
+            if (error instanceof IObject) {
+                makeReject(env, ObjectMemory.valueOf((IObject) error));
+            } else {
+                makeReject(env, ObjectMemory.valueOf(new JavaException(env, error)));
+            }
+        } catch (Exception e) {
+            env.forwardThrow(e);
+        }
+    }
+
+    public boolean isPending() {
+        return state == State.PENDING;
+    }
+
     private void invokeCallback(Environment env, WrapPromise subPromise, Invoker callback) throws Exception {
         if (callback != null) {
             try {
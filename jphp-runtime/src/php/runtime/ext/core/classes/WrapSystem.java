@@ -2,6 +2,7 @@ package php.runtime.ext.core.classes;
 
 import php.runtime.Memory;
 import php.runtime.env.Environment;
+import php.runtime.env.SamplingProfiler;
 import php.runtime.ext.core.classes.stream.Stream;
 import php.runtime.lang.BaseObject;
 import php.runtime.loader.RuntimeClassLoader;
@@ -67,6 +68,43 @@ final public class WrapSystem extends BaseObject {
         return Memory.NULL;
     }
 
+    @Signature({
+            @Arg(value = "interval", optional = @Optional("10")),
+            @Arg(value = "cpu", optional = @Optional("true"))
+    })
+    public static Memory startProfiler(Environment env, Memory... args) {
+        SamplingProfiler.getInstance().start(args[0].toLong(), args[1].toBoolean());
+        return Memory.NULL;
+    }
+
+    @Signature
+    public static void stopProfiler() {
+        SamplingProfiler.getInstance().stop();
+    }
+
+    @Signature
+    public static void resetProfiler() {
+        SamplingProfiler.getInstance().reset();
+    }
+
+    @Signature(@Arg(value = "format", optional = @Optional("collapsed")))
+    public static Memory getProfile(Environment env, Memory... args) {
+        SamplingProfiler profiler = SamplingProfiler.getInstance();
+        String format = args[0].toString();
+
+        switch (format) {
+            case "collapsed":
+                return StringMemory.valueOf(profiler.toCollapsed());
+            case "json":
+                return StringMemory.valueOf(profiler.toJson());
+            case "array":
+                return profiler.toArray();
+            default:
+                env.exception("Invalid profile format '%s', use collapsed, json or array", format);
+                return Memory.NULL;
+        }
+    }
+
     @Signature
     public static InputStream in() {
         return System.in;
@@ -10,6 +10,8 @@ import php.runtime.lang.BaseObject;
 import php.runtime.memory.LongMemory;
 import php.runtime.memory.ObjectMemory;
 import php.runtime.reflection.ClassEntity;
+import php.runtime.util.ThreadPerTaskExecutor;
+import php.runtime.util.VirtualThreads;
 
 import java.util.concurrent.*;
 
@@ -55,7 +57,13 @@ public class WrapThreadPool extends BaseObject {
 
         service.execute(() -> {
             Environment.addThreadSupport(final_env);
-            invoker.callNoThrow();
+            Environment previous = Environment.bindCurrent(final_env);
+
+            try {
+                invoker.callNoThrow();
+            } finally {
+                Environment.bindCurrent(previous);
+            }
         });
 
         return Memory.NULL;
@@ -76,6 +84,8 @@ public class WrapThreadPool extends BaseObject {
 
     private Callable<Memory> makeCallable(Environment env, Invoker invoker) {
         return () -> {
+            Environment previous = Environment.bindCurrent(env);
+
             try {
                 Environment.addThreadSupport(env);
 
@@ -96,6 +106,8 @@ public class WrapThreadPool extends BaseObject {
             } catch (Throwable throwable) {
                 env.wrapThrow(throwable);
                 return Memory.NULL;
+            } finally {
+                Environment.bindCurrent(previous);
             }
         };
     }
@@ -162,6 +174,10 @@ public class WrapThreadPool extends BaseObject {
             return LongMemory.valueOf(((ThreadPoolExecutor) service).getActiveCount());
         }
 
+        if (service instanceof ThreadPerTaskExecutor) {
+            return LongMemory.valueOf(((ThreadPerTaskExecutor) service).getActiveCount());
+        }
+
         return Memory.NULL;
     }
 
@@ -171,6 +187,10 @@ public class WrapThreadPool extends BaseObject {
             return LongMemory.valueOf(((ThreadPoolExecutor) service).getTaskCount());
         }
 
+        if (service instanceof ThreadPerTaskExecutor) {
+            return LongMemory.valueOf(((ThreadPerTaskExecutor) service).getTaskCount());
+        }
+
         return Memory.NULL;
     }
 
@@ -205,11 +225,27 @@ public class WrapThreadPool extends BaseObject {
 
     @Signature
     public static Memory createCached(Environment env, Memory... args){
+        if (env.getScope().isVirtualThreads()) {
+            return createVirtual(env, args);
+        }
+
         return new ObjectMemory(new WrapThreadPool(env,
                 Executors.newCachedThreadPool()
         ));
     }
 
+    @Signature
+    public static Memory createVirtual(Environment env, Memory... args){
+        return new ObjectMemory(new WrapThreadPool(env,
+                VirtualThreads.newExecutor("jphp-virtual")
+        ));
+    }
+
+    @Signature
+    public static Memory isVirtualSupported(Environment env, Memory... args){
+        return VirtualThreads.isSupported() ? Memory.TRUE : Memory.FALSE;
+    }
+
     @Signature
     public static Memory createSingle(Environment env, Memory... args){
         return new ObjectMemory(new WrapThreadPool(env,
@@ -0,0 +1,84 @@
+package php.runtime.ext.core.classes.format;
+
+import php.runtime.Memory;
+import php.runtime.annotation.Reflection;
+import php.runtime.annotation.Reflection.Arg;
+import php.runtime.annotation.Reflection.Optional;
+import php.runtime.annotation.Reflection.Signature;
+import php.runtime.env.Environment;
+import php.runtime.ext.core.classes.stream.Stream;
+import php.runtime.memory.BinaryMemory;
+import php.runtime.memory.StringMemory;
+import php.runtime.memory.output.serialization.BinaryDeserializer;
+import php.runtime.memory.output.serialization.BinarySerializer;
+import php.runtime.memory.output.serialization.Deserializer;
+import php.runtime.memory.output.serialization.Serializer;
+import php.runtime.reflection.ClassEntity;
+
+import java.io.IOException;
+
+@Reflection.Name("php\\format\\SerializeProcessor")
+public class SerializeProcessor extends WrapProcessor {
+    public static final int BINARY = 1;
+
+    protected boolean binary;
+
+    public SerializeProcessor(Environment env) {
+        super(env);
+    }
+
+    public SerializeProcessor(Environment env, ClassEntity clazz) {
+        super(env, clazz);
+    }
+
+    @Signature(@Arg(value = "flags", optional = @Optional("0")))
+    public Memory __construct(Environment env, Memory... args) {
+        binary = (args[0].toInteger() & BINARY) == BINARY;
+        return Memory.NULL;
+    }
+
+    @Override
+    @Signature
+    public Memory parse(Environment env, Memory... args) {
+        Memory source = args[0];
+
+        if (source.instanceOf(Stream.class)) {
+            try {
+                source = env.invokeMethod(source.toObject(Stream.class), "readFully");
+            } catch (Throwable throwable) {
+                env.forwardThrow(throwable);
+            }
+        }
+
+        if (binary) {
+            return new BinaryDeserializer(env, env.trace()).read(source.getBinaryBytes(env.getDefaultCharset()));
+        } else {
+            return new Deserializer(env, env.trace()).read(source.toString());
+        }
+    }
+
+    @Override
+    @Signature
+    public Memory format(Environment env, Memory... args) {
+        if (binary) {
+            return new BinaryMemory(new BinarySerializer(env, env.trace()).serialize(args[0]));
+        } else {
+            StringBuilder sb = new StringBuilder();
+            new Serializer(env, env.trace(), sb).write(args[0]);
+
+            return StringMemory.valueOf(sb.toString());
+        }
+    }
+
+    @Override
+    @Signature
+    public Memory formatTo(Environment env, Memory... args) {
+        try {
+            args[1].toObject(Stream.class).write(env, format(env, args), Memory.NULL);
+        } catch (IOException e) {
+            env.forwardThrow(e);
+        }
+
+        return Memory.NULL;
+    }
+}
@@ -6,19 +6,23 @@ import php.runtime.annotation.Reflection.Getter;
 import php.runtime.annotation.Reflection.Name;
 import php.runtime.annotation.Reflection.Signature;
 import php.runtime.env.Environment;
+import php.runtime.ext.core.classes.WrapThreadPool;
 import php.runtime.invoke.Invoker;
-import php.runtime.lang.BaseObject;
 import php.runtime.lang.BaseWrapper;
+import php.runtime.memory.ArrayMemory;
+import php.runtime.memory.DoubleMemory;
+import php.runtime.memory.LongMemory;
+import php.runtime.memory.ObjectMemory;
 import php.runtime.reflection.ClassEntity;
+import php.runtime.util.HashedWheelTimer;
 
 import java.util.HashSet;
 import java.util.Set;
-import java.util.Timer;
 import java.util.TimerTask;
 
 @Name("php\\time\\Timer")
 public class WrapTimer extends BaseWrapper<TimerTask> {
-    private static Timer timer = new Timer("php\\time\\Timer");
+    private static HashedWheelTimer timer;
 
     public WrapTimer(Environment env, TimerTask wrappedObject) {
         super(env, wrappedObject);
@@ -52,15 +56,45 @@ public class WrapTimer extends BaseWrapper<TimerTask> {
         Thread.sleep(parsePeriod(period));
     }
 
-    private synchronized static Timer timer() {
+    private synchronized static HashedWheelTimer timer() {
         if (timer != null) {
             return timer;
         }
 
-        timer = new Timer("php\\time\\Timer");
+        timer = new HashedWheelTimer("php\\time\\Timer");
         return timer;
     }
 
+    /**
+     * Sets a thread pool to run callbacks, null - one thread for all callbacks.
+     */
+    @Signature
+    public static void setExecutor(Environment env,
+                                   @Reflection.Arg(typeClass = "php\\lang\\ThreadPool", nullable = true) Memory pool) {
+        timer().setExecutor(pool.isNull() ? null : pool.toObject(WrapThreadPool.class).getService());
+    }
+
+    /**
+     * @return [pending, executed, lagAvg, lagMax], lag is millis between the scheduled time and the start of a callback
+     */
+    @Signature
+    public static Memory stats(Environment env) {
+        HashedWheelTimer timer = timer();
+
+        ArrayMemory result = new ArrayMemory();
+        result.refOfIndex("pending").assign(LongMemory.valueOf(timer.getPending()));
+        result.refOfIndex("executed").assign(LongMemory.valueOf(timer.getExecuted()));
+        result.refOfIndex("lagAvg").assign(new DoubleMemory(timer.getAverageLag()));
+        result.refOfIndex("lagMax").assign(LongMemory.valueOf(timer.getMaxLag()));
+
+        return result;
+    }
+
+    @Signature
+    public static void resetStats() {
+        timer().resetStats();
+    }
+
     @Signature
     public static long parsePeriod(String period) {
         if (period == null || period.trim().isEmpty()) {
@@ -134,13 +168,13 @@ public class WrapTimer extends BaseWrapper<TimerTask> {
 
     @Signature
     public static TimerTask trigger(Environment env, Invoker trigger, Invoker invoker, String period) {
-        TimerTask task = new TimerTask() {
+        HashedWheelTimer.Task task = new HashedWheelTimer.Task() {
             @Override
             public void run() {
                 try {
-                    if (trigger.callAny(this).toBoolean()) {
+                    if (trigger.callNoThrow(ObjectMemory.valueOf(new WrapTimer(env, this))).toBoolean()) {
                         this.cancel();
-                        invoker.callAny(this);
+                        invoker.callNoThrow(ObjectMemory.valueOf(new WrapTimer(env, this)));
                     }
                 } catch (Exception e) {
                     env.catchUncaught(e);
@@ -156,11 +190,11 @@ public class WrapTimer extends BaseWrapper<TimerTask> {
 
     @Signature
     public static TimerTask setTimeout(Environment env, final Invoker invoker, long millis) {
-        TimerTask task = new TimerTask() {
+        HashedWheelTimer.Task task = new HashedWheelTimer.Task() {
             @Override
             public void run() {
                 try {
-                    invoker.callAny(this);
+                    invoker.callNoThrow(ObjectMemory.valueOf(new WrapTimer(env, this)));
                 } catch (Exception e) {
                     env.catchUncaught(e);
                 }
@@ -173,11 +207,11 @@ public class WrapTimer extends BaseWrapper<TimerTask> {
 
     @Signature
     public static TimerTask setInterval(Environment env, final Invoker invoker, long millis) {
-        TimerTask task = new TimerTask() {
+        HashedWheelTimer.Task task = new HashedWheelTimer.Task() {
             @Override
             public void run() {
                 try {
-                    invoker.callAny(this);
+                    invoker.callNoThrow(ObjectMemory.valueOf(new WrapTimer(env, this)));
                 } catch (Exception e) {
                     env.catchUncaught(e);
                 }
@@ -189,16 +223,13 @@ public class WrapTimer extends BaseWrapper<TimerTask> {
     }
 
     @Signature
-    public static void cancelAll() {
-        timer().cancel();
-        timer().purge();
-
-        timer = new Timer("php\\time\\Timer");
+    public synchronized static void cancelAll() {
+        timer().stop();
+        timer = new HashedWheelTimer("php\\time\\Timer");
     }
 
     @Signature
-    public static void shutdownAll() {
-        timer().cancel();
-        timer().purge();
+    public synchronized static void shutdownAll() {
+        timer().stop();
     }
 }
@@ -11,9 +11,12 @@ import php.runtime.lang.ForeachIterator;
 import php.runtime.lang.spl.iterator.Iterator;
 import php.runtime.memory.*;
 import php.runtime.reflection.ClassEntity;
+import php.runtime.util.PatternCache;
 
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -35,6 +38,7 @@ final public class WrapRegex extends BaseObject implements Iterator {
 
     protected Matcher matcher;
     protected String input;
+    protected String literal; // source of the pattern if it's a literal, see PatternCache.toLiteral
     protected Memory current;
     protected Memory key;
     protected boolean valid = true;
@@ -55,9 +59,9 @@ final public class WrapRegex extends BaseObject implements Iterator {
             @Arg(value = "string", optional = @Reflection.Optional(""))
     })
     public Memory __construct(Environment env, Memory... args) {
-        int flags = convertFlags(args[1]);
-        Pattern pattern = Pattern.compile(args[0].toString(), flags);
-        matcher = pattern.matcher(input = args[2].toString());
+        PatternCache.Entry entry = compile(env, args[0].toString(), convertFlags(args[1]));
+        matcher = entry.getPattern().matcher(input = args[2].toString());
+        literal = entry.getLiteral();
 
         return Memory.NULL;
     }
@@ -82,7 +86,10 @@ final public class WrapRegex extends BaseObject implements Iterator {
     @Signature(@Arg("string"))
     public Memory with(Environment env, Memory... args) {
         Matcher matcher1 = matcher.pattern().matcher(args[0].toString());
-        return new ObjectMemory(new WrapRegex(env, matcher1, args[0].toString()));
+        WrapRegex regex = new WrapRegex(env, matcher1, args[0].toString());
+        regex.literal = literal;
+
+        return new ObjectMemory(regex);
     }
 
     @Signature(@Arg(value = "start", optional = @Reflection.Optional("null")))
@@ -110,7 +117,7 @@ final public class WrapRegex extends BaseObject implements Iterator {
         if (args[0].isNull())
             matcher.reset();
         else
-            matcher.reset(args[0].toString());
+            matcher.reset(input = args[0].toString());
 
         return new ObjectMemory(this);
     }
@@ -290,8 +297,15 @@ final public class WrapRegex extends BaseObject implements Iterator {
 
     @Signature(@Arg("replacement"))
     public Memory replace(Environment env, Memory... args) {
+        String replacement = args[0].toString();
+
+        if (literal != null && !literal.isEmpty()
+                && replacement.indexOf('$') == -1 && replacement.indexOf('\\') == -1) {
+            return StringMemory.valueOf(input.replace(literal, replacement));
+        }
+
         try {
-            return StringMemory.valueOf(matcher.replaceAll(args[0].toString()));
+            return StringMemory.valueOf(matcher.replaceAll(replacement));
         } catch (IllegalStateException | IndexOutOfBoundsException e) {
             throw new RegexException(env, e);
         }
@@ -357,20 +371,23 @@ final public class WrapRegex extends BaseObject implements Iterator {
             @Arg(value = "string", optional = @Reflection.Optional(""))
     })
     public static Memory of(Environment env, Memory... args) {
-        int flags = convertFlags(args[1]);
-        Pattern pattern = Pattern.compile(args[0].toString(), flags);
-        Matcher matcher = pattern.matcher(args[2].toString());
+        PatternCache.Entry entry = compile(env, args[0].toString(), convertFlags(args[1]));
+        String input = args[2].toString();
 
-        return ObjectMemory.valueOf(new WrapRegex(env, matcher, ""));
+        WrapRegex regex = new WrapRegex(env, entry.getPattern().matcher(input), input);
+        regex.literal = entry.getLiteral();
+
+        return ObjectMemory.valueOf(regex);
     }
 
     @Signature(@Arg(value = "flags"))
     public Memory withFlags(Environment env, Memory... args) {
-        int flags = convertFlags(args[0]);
-        Pattern pattern = Pattern.compile(matcher.pattern().pattern(), flags);
-        Matcher matcher1 = pattern.matcher(input);
+        PatternCache.Entry entry = compile(env, matcher.pattern().pattern(), convertFlags(args[0]));
+
+        WrapRegex regex = new WrapRegex(env, entry.getPattern().matcher(input), input);
+        regex.literal = entry.getLiteral();
 
-        return ObjectMemory.valueOf(new WrapRegex(env, matcher1, input));
+        return ObjectMemory.valueOf(regex);
     }
 
     @Override
@@ -421,9 +438,14 @@ final public class WrapRegex extends BaseObject implements Iterator {
             @Arg(value = "flags", optional = @Optional("0"))
     })
     public static Memory match(Environment env, Memory... args) {
-        Pattern pattern = Pattern.compile(args[0].toString(), convertFlags(args[2]));
+        PatternCache.Entry entry = compile(env, args[0].toString(), convertFlags(args[2]));
+        String string = args[1].toString();
+
+        if (entry.getLiteral() != null) {
+            return string.contains(entry.getLiteral()) ? Memory.TRUE : Memory.FALSE;
+        }
 
-        return pattern.matcher(args[1].toString()).find() ? Memory.TRUE : Memory.FALSE;
+        return entry.getPattern().matcher(string).find() ? Memory.TRUE : Memory.FALSE;
     }
 
     @Signature({
@@ -432,17 +454,37 @@ final public class WrapRegex extends BaseObject implements Iterator {
             @Arg(value = "limit", optional = @Reflection.Optional("0"))
     })
     public static Memory split(Environment env, Memory... args) {
+        int limit = Math.max(0, args[2].toInteger());
+        PatternCache.Entry entry = compile(env, args[0].toString(), 0);
+        String string = args[1].toString();
+
         String[] r;
-        int limit = args[2].toInteger();
 
-        if (limit <= 0)
-            r = args[1].toString().split(args[0].toString());
+        if (entry.getLiteral() != null && !entry.getLiteral().isEmpty())
+            r = splitLiteral(string, entry.getLiteral(), limit);
         else
-            r = args[1].toString().split(args[0].toString(), limit);
+            r = entry.getPattern().split(string, limit);
 
         return ArrayMemory.ofStrings(r).toConstant();
     }
 
+    /**
+     * @return statistics of the pattern cache: hits, misses, evictions, size, maxSize
+     */
+    @Signature
+    public static Memory cacheStats(Environment env, Memory... args) {
+        PatternCache cache = env.getScope().getPatternCache();
+
+        ArrayMemory r = new ArrayMemory();
+        r.refOfIndex("hits").assign(cache.getHits());
+        r.refOfIndex("misses").assign(cache.getMisses());
+        r.refOfIndex("evictions").assign(cache.getEvictions());
+        r.refOfIndex("size").assign(cache.size());
+        r.refOfIndex("maxSize").assign(cache.getMaxSize());
+
+        return r.toConstant();
+    }
+
     @FastMethod
     @Signature(@Arg("string"))
     public static Memory quote(Environment env, Memory... args) {
@@ -470,6 +512,39 @@ final public class WrapRegex extends BaseObject implements Iterator {
         return ObjectMemory.valueOf(this).getNewIterator(env);
     }
 
+    private static PatternCache.Entry compile(Environment env, String pattern, int flags) {
+        return env.getScope().getPatternCache().get(pattern, flags);
+    }
+
+    /**
+     * The same as String.split() for a non-empty literal delimiter, without the regex engine.
+     */
+    private static String[] splitLiteral(String string, String delimiter, int limit) {
+        List<String> r = new ArrayList<>();
+        int from = 0, index;
+
+        while ((limit == 0 || r.size() < limit - 1) && (index = string.indexOf(delimiter, from)) != -1) {
+            r.add(string.substring(from, index));
+            from = index + delimiter.length();
+        }
+
+        if (from == 0) {
+            return new String[]{string};
+        }
+
+        r.add(string.substring(from));
+
+        int size = r.size();
+
+        if (limit == 0) {
+            while (size > 0 && r.get(size - 1).isEmpty()) {
+                size--;
+            }
+        }
+
+        return r.subList(0, size).toArray(new String[size]);
+    }
+
     private static int convertFlags(Memory _flags) {
         int result = 0;
 
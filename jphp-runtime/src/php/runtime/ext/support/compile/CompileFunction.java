@@ -8,6 +8,7 @@ import php.runtime.env.Environment;
 import php.runtime.env.TraceInfo;
 import php.runtime.exceptions.CriticalException;
 import php.runtime.exceptions.support.ErrorType;
+import php.runtime.invoke.NativeInvoker;
 import php.runtime.memory.ArrayMemory;
 import php.runtime.memory.support.MemoryUtils;
 import php.runtime.reflection.support.ReflectionUtils;
@@ -255,6 +256,9 @@ public class CompileFunction {
 
         public final int argsCount;
 
+        protected volatile NativeInvoker invoker;
+        protected volatile boolean invokerGenerated;
+
         public Method(java.lang.reflect.Method method, int argsCount, boolean _asImmutable) {
             this.argsCount = argsCount;
             this.method = method;
@@ -318,6 +322,77 @@ public class CompileFunction {
             return method.isVarArgs();
         }
 
+        /**
+         * Direct invoker of the method, it's generated on the first call.
+         *
+         * @return null if the method must be called via reflection
+         */
+        public NativeInvoker getInvoker() {
+            if (!invokerGenerated) {
+                synchronized (this) {
+                    if (!invokerGenerated) {
+                        invoker = NativeInvoker.generate(this);
+                        invokerGenerated = true;
+                    }
+                }
+            }
+
+            return invoker;
+        }
+
+        /**
+         * @return how the argument is passed to the java parameter, one of NativeInvoker kinds
+         */
+        public int getArgumentKind(int index) {
+            Class<?> type = parameterTypes[index];
+
+            if (type == Memory.class) {
+                return references[index]
+                        ? NativeInvoker.REFERENCE
+                        : (mutableValues[index] ? NativeInvoker.IMMUTABLE : NativeInvoker.VALUE);
+            }
+
+            if (converters[index] == null) {
+                if (type == Environment.class) {
+                    return NativeInvoker.ENVIRONMENT;
+                }
+
+                if (type == TraceInfo.class) {
+                    return NativeInvoker.TRACE;
+                }
+
+                return NativeInvoker.UNSUPPORTED;
+            }
+
+            if (type == Long.TYPE) return NativeInvoker.LONG;
+            if (type == Double.TYPE) return NativeInvoker.DOUBLE;
+            if (type == Boolean.TYPE) return NativeInvoker.BOOLEAN;
+            if (type == String.class) return NativeInvoker.STRING;
+
+            return NativeInvoker.CONVERT;
+        }
+
+        /**
+         * @return how the result is returned, one of NativeInvoker kinds
+         */
+        public int getResultKind() {
+            if (resultType == void.class) return NativeInvoker.VOID;
+            if (Memory.class.isAssignableFrom(resultType)) return NativeInvoker.MEMORY;
+            if (resultType == Long.TYPE) return NativeInvoker.LONG;
+            if (resultType == Integer.TYPE) return NativeInvoker.INT;
+            if (resultType == Boolean.TYPE) return NativeInvoker.BOOLEAN;
+
+            return NativeInvoker.CONVERT;
+        }
+
+        public Object convertArgument(int index, Environment env, TraceInfo trace, Memory argument) throws Throwable {
+            return converters[index].run(argument);
+        }
+
+        public Memory convertResult(Environment env, TraceInfo trace, Object result) throws Throwable {
+            return MemoryUtils.valueOf(result);
+        }
+
         public Memory call(Environment env, Memory... arguments) {
             Class<?>[] types = parameterTypes;
             Object[] passed = new Object[ types.length ];
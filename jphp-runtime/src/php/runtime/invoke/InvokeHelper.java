@@ -12,6 +12,7 @@ import php.runtime.env.Environment;
 import php.runtime.env.TraceInfo;
 import php.runtime.exceptions.FatalException;
 import php.runtime.exceptions.support.ErrorType;
+import php.runtime.invoke.cache.CallableCallCache;
 import php.runtime.invoke.cache.FunctionCallCache;
 import php.runtime.invoke.cache.MethodCallCache;
 import php.runtime.lang.IObject;
@@ -88,10 +89,34 @@ final public class InvokeHelper {
     }*/
 
     /**
-     * Method is invoked via bytecode
+     * Method is invoked via bytecode, the resolved callable is cached per call site and reused
+     * while the call site gets the same function name, class and method name.
      *
      * @throws Throwable
      */
+    public static Memory callAny(Memory method, Memory[] args, Environment env, TraceInfo trace,
+                                 CallableCallCache callCache, int cacheIndex) throws Throwable {
+        method = method.toValue();
+
+        if (callCache == null || method.isObject()) {
+            return callAny(method, args, env, trace);
+        }
+
+        ResolvedCallable callable = callCache.get(env, cacheIndex);
+
+        if (callable == null || !callable.matches(method)) {
+            callable = ResolvedCallable.resolve(env, method);
+
+            if (callable == null) {
+                return callAny(method, args, env, trace);
+            }
+
+            callCache.put(env, cacheIndex, callable);
+        }
+
+        return callable.call(env, trace, method, args);
+    }
+
     public static Memory callAny(Memory method, Memory[] args, Environment env, TraceInfo trace)
             throws Throwable {
         method = method.toValue();
@@ -262,11 +287,7 @@ final public class InvokeHelper {
         }
 
         if (function == null) {
-            if (!sign.isEmpty() && sign.charAt(0) != Information.NAMESPACE_SEP_CHAR) { // for global style invoke
-                int p = sign.lastIndexOf(Information.NAMESPACE_SEP_CHAR);
-                if (p > -1)
-                    function = env.fetchFunction(originName.substring(p + 1), sign.substring(p + 1));
-            }
+            function = fetchGlobalFunction(env, sign, originName);
 
             if (function == null) {
                 env.error(trace, Messages.ERR_CALL_TO_UNDEFINED_FUNCTION.fetch(originName));
@@ -281,6 +302,26 @@ final public class InvokeHelper {
         return call(env, trace, function, args);
     }
 
+    public static FunctionEntity fetchFunction(Environment env, String sign, String originName) {
+        FunctionEntity function = env.fetchFunction(originName, sign);
+
+        if (function == null) {
+            function = fetchGlobalFunction(env, sign, originName);
+        }
+
+        return function;
+    }
+
+    private static FunctionEntity fetchGlobalFunction(Environment env, String sign, String originName) {
+        if (!sign.isEmpty() && sign.charAt(0) != Information.NAMESPACE_SEP_CHAR) { // for global style invoke
+            int p = sign.lastIndexOf(Information.NAMESPACE_SEP_CHAR);
+            if (p > -1)
+                return env.fetchFunction(originName.substring(p + 1), sign.substring(p + 1));
+        }
+
+        return null;
+    }
+
     public static Memory callStaticDynamic(Environment env, TraceInfo trace,
                                            String originClassName, String className,
                                            String originMethodName, String methodName,
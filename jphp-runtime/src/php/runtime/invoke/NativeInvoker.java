@@ -0,0 +1,103 @@
+package php.runtime.invoke;
+
+import php.runtime.Memory;
+import php.runtime.env.Environment;
+import php.runtime.env.TraceInfo;
+import php.runtime.ext.support.compile.CompileFunction;
+
+/**
+ * Adapter of a native method of an extension (an overload of CompileFunction or CompileMethodEntity),
+ * the generated subclass unpacks arguments to typed parameters and calls the method directly,
+ * without reflection and an array of converted arguments.
+ *
+ * The generator is in the compiler module, without it native methods are called via reflection.
+ */
+abstract public class NativeInvoker {
+    // kinds of arguments and results, see CompileFunction.Method.getArgumentKind()
+    public static final int UNSUPPORTED = 0;
+    public static final int ENVIRONMENT = 1;
+    public static final int TRACE = 2;
+    public static final int REFERENCE = 3; // Memory as is
+    public static final int VALUE = 4; // Memory.toValue()
+    public static final int IMMUTABLE = 5; // Memory.toImmutable()
+    public static final int CONVERT = 6; // via convertArgument(), convertResult()
+    public static final int LONG = 7;
+    public static final int INT = 8;
+    public static final int DOUBLE = 9;
+    public static final int BOOLEAN = 10;
+    public static final int STRING = 11;
+    public static final int VOID = 12;
+    public static final int MEMORY = 13; // result, null -> Memory.NULL
+
+    public interface Generator {
+        /**
+         * @return null if the method cannot be called directly
+         */
+        NativeInvoker generate(CompileFunction.Method method) throws Throwable;
+    }
+
+    private static final Generator generator;
+
+    static {
+        Generator result = null;
+
+        try {
+            Class<?> generatorClass = Class.forName("org.develnext.jphp.core.compiler.jvm.NativeInvokerGenerator");
+            result = (Generator) generatorClass.newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            // nop.
+        }
+
+        generator = result;
+    }
+
+    protected final CompileFunction.Method method;
+
+    protected NativeInvoker(CompileFunction.Method method) {
+        this.method = method;
+    }
+
+    public CompileFunction.Method getMethod() {
+        return method;
+    }
+
+    /**
+     * @param self object of the method, ignored for static methods
+     * @param arguments at least argsCount of the method
+     */
+    abstract public Memory invoke(Object self, Environment env, TraceInfo trace, Memory[] arguments) throws Throwable;
+
+    protected final Object convert(int index, Environment env, TraceInfo trace, Memory argument) throws Throwable {
+        return method.convertArgument(index, env, trace, argument);
+    }
+
+    protected final Memory unconvert(Environment env, TraceInfo trace, Object result) throws Throwable {
+        return method.convertResult(env, trace, result);
+    }
+
+    /**
+     * Handles an exception of the native method as it was thrown via reflection.
+     */
+    public static Memory rethrow(Environment env, Throwable throwable) {
+        return env.__throwTargetException(throwable);
+    }
+
+    public static boolean isAvailable() {
+        return generator != null;
+    }
+
+    /**
+     * @return null if there is no generator or the method cannot be called directly
+     */
+    public static NativeInvoker generate(CompileFunction.Method method) {
+        if (generator == null) {
+            return null;
+        }
+
+        try {
+            return generator.generate(method);
+        } catch (Throwable e) {
+            return null;
+        }
+    }
+}
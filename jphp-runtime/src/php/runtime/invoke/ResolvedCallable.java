@@ -0,0 +1,204 @@
+package php.runtime.invoke;
+
+import php.runtime.Memory;
+import php.runtime.env.Environment;
+import php.runtime.env.TraceInfo;
+import php.runtime.memory.ArrayMemory;
+import php.runtime.memory.LongMemory;
+import php.runtime.memory.ObjectMemory;
+import php.runtime.reflection.ClassEntity;
+import php.runtime.reflection.FunctionEntity;
+import php.runtime.reflection.MethodEntity;
+
+import java.util.Iterator;
+
+/**
+ * A string or array callable resolved to a function or a method, see {@link InvokeHelper#callAny}.
+ *
+ * Callables of an object are resolved by the class of the object, so one resolution is valid for any object
+ * of the class. Callables that depend on the calling context (self::, static::, parent::, non-static methods
+ * called statically, __call) are resolved as "slow" and are always called via the full lookup.
+ */
+final public class ResolvedCallable {
+    private static final int SLOW = 0;
+    private static final int FUNCTION = 1;
+    private static final int STATIC_METHOD = 2;
+    private static final int DYNAMIC_METHOD = 3;
+
+    private final int kind;
+
+    // "name" or "class::method" of string callables, the class name of static array callables.
+    private final String name;
+    // the method name of array callables.
+    private final String methodName;
+    // the class of the object of dynamic array callables.
+    private final ClassEntity clazz;
+    // the called class of static methods, it's the late static class of the call.
+    private final ClassEntity staticClass;
+
+    private final FunctionEntity function;
+    private final MethodEntity method;
+
+    private ResolvedCallable(int kind, String name, String methodName, ClassEntity clazz, ClassEntity staticClass,
+                             FunctionEntity function, MethodEntity method) {
+        this.kind = kind;
+        this.name = name;
+        this.methodName = methodName;
+        this.clazz = clazz;
+        this.staticClass = staticClass;
+        this.function = function;
+        this.method = method;
+    }
+
+    public boolean isSlow() {
+        return kind == SLOW;
+    }
+
+    public FunctionEntity getFunction() {
+        return function;
+    }
+
+    public MethodEntity getMethod() {
+        return method;
+    }
+
+    /**
+     * @param callable a value, not a reference
+     */
+    public boolean matches(Memory callable) {
+        if (callable.isArray()) {
+            if (methodName == null) {
+                return false;
+            }
+
+            ArrayMemory array = (ArrayMemory) callable;
+            Memory one = element(array, 0);
+            Memory two = element(array, 1);
+
+            if (one == null || two == null || !methodName.equals(two.toString())) {
+                return false;
+            }
+
+            one = one.toValue();
+
+            if (clazz != null) {
+                return one.isObject() && ((ObjectMemory) one).value.getReflection() == clazz;
+            } else {
+                return !one.isObject() && name.equals(one.toString());
+            }
+        } else if (callable.isString()) {
+            return methodName == null && name.equals(callable.toString());
+        }
+
+        return false;
+    }
+
+    /**
+     * @param callable a value matched by this resolution
+     */
+    public Memory call(Environment env, TraceInfo trace, Memory callable, Memory[] args) throws Throwable {
+        switch (kind) {
+            case FUNCTION:
+                return InvokeHelper.call(env, trace, function, args);
+            case STATIC_METHOD:
+                return InvokeHelper.callStatic(env, trace, method, staticClass.getName(), args, true);
+            case DYNAMIC_METHOD:
+                ObjectMemory object = (ObjectMemory) element((ArrayMemory) callable, 0).toValue();
+                return ObjectInvokeHelper.invokeMethod(object.value, method, env, trace, args, true);
+            default:
+                return InvokeHelper.callAny(callable, args, env, trace);
+        }
+    }
+
+    /**
+     * @param callable a value, not a reference
+     * @return null if the callable cannot be resolved yet (e.g. its class or function is not loaded)
+     */
+    public static ResolvedCallable resolve(Environment env, Memory callable) {
+        if (callable.isArray()) {
+            ArrayMemory array = (ArrayMemory) callable;
+            Memory one = element(array, 0);
+            Memory two = element(array, 1);
+
+            if (one == null || two == null) {
+                return null;
+            }
+
+            one = one.toValue();
+            String methodName = two.toString();
+            String methodNameL = methodName.toLowerCase();
+
+            if (one.isObject()) {
+                ClassEntity clazz = ((ObjectMemory) one).value.getReflection();
+                MethodEntity method = methodName.contains("::") ? null : clazz.findMethod(methodNameL);
+
+                if (method == null || method.isContextDepends()) {
+                    return new ResolvedCallable(SLOW, null, methodName, clazz, null, null, null);
+                }
+
+                return new ResolvedCallable(DYNAMIC_METHOD, null, methodName, clazz, null, null, method);
+            } else {
+                String className = one.toString();
+                return resolveStatic(env, className, methodName, className, methodName);
+            }
+        } else if (callable.isString()) {
+            String name = callable.toString();
+            int p = name.indexOf("::");
+
+            if (p > -1) {
+                return resolveStatic(env, name.substring(0, p), name.substring(p + 2), name, null);
+            }
+
+            FunctionEntity function = InvokeHelper.fetchFunction(env, name.toLowerCase(), name);
+
+            return function == null ? null : new ResolvedCallable(FUNCTION, name, null, null, null, function, null);
+        }
+
+        return null;
+    }
+
+    private static ResolvedCallable resolveStatic(Environment env, String className, String methodName,
+                                                  String name, String arrayMethodName) {
+        String classNameL = className.toLowerCase();
+
+        switch (classNameL) {
+            case "self":
+            case "static":
+            case "parent":
+                return new ResolvedCallable(SLOW, name, arrayMethodName, null, null, null, null);
+        }
+
+        ClassEntity clazz = env.fetchClass(className, classNameL, false);
+
+        if (clazz == null) {
+            return null;
+        }
+
+        MethodEntity method = clazz.findMethod(methodName.toLowerCase());
+
+        if (method == null || !method.isStatic()) {
+            return new ResolvedCallable(SLOW, name, arrayMethodName, null, null, null, null);
+        }
+
+        return new ResolvedCallable(STATIC_METHOD, name, arrayMethodName, null, clazz, null, method);
+    }
+
+    private static Memory element(ArrayMemory array, int index) {
+        if (array.size() < 2) {
+            return null;
+        }
+
+        if (array.isList()) {
+            return array.getByScalar(LongMemory.valueOf(index));
+        }
+
+        Iterator<? extends Memory> iterator = array.iterator();
+        Memory result = iterator.next();
+
+        for (int i = 0; i < index; i++) {
+            result = iterator.next();
+        }
+
+        return result;
+    }
+}
@@ -1,14 +1,27 @@
 package php.runtime.invoke.cache;
 
 import php.runtime.env.Environment;
-import php.runtime.reflection.support.Entity;
 
 import java.lang.ref.WeakReference;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
-abstract public class CallCache<T extends Entity> {
-    protected Item[][] cache;
+/**
+ * Cache of entities (or other resolved values) per environment and call index.
+ *
+ * Lock-free: tables are copied on growth and published via CAS, items are immutable,
+ * so readers from any thread see either a complete item or a miss. A lost put is only a miss in future.
+ */
+abstract public class CallCache<T> {
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<CallCache, Item[][]> CACHE_UPDATER
+            = AtomicReferenceFieldUpdater.newUpdater(CallCache.class, Item[][].class, "cache");
 
+    protected volatile Item[][] cache;
+
+    @SuppressWarnings("unchecked")
     public T get(Environment env, int index) {
+        Item[][] cache = this.cache;
+
         if (cache == null) {
             return null;
         }
@@ -36,40 +49,43 @@ abstract public class CallCache<T extends Entity> {
     abstract public Item[] newArrayData(int length);
     abstract public Item[][] newArrayArrayData(int length);
 
-    @SuppressWarnings("unchecked")
-    synchronized public void put(Environment env, int index, T entity) {
+    public void put(Environment env, int index, T entity) {
         int id = env.id;
+        Item item = new Item(entity, env);
 
-        if (cache == null) {
-            cache = newArrayArrayData(id + 1);
-        }
+        while (true) {
+            Item[][] cache = this.cache;
+            Item[] data = cache != null && id < cache.length ? cache[id] : null;
 
-        if (id >= cache.length) {
-            Item[][] newCache = newArrayArrayData(id + 1);
-            System.arraycopy(cache, 0, newCache, 0, cache.length);
-            cache = newCache;
-        }
+            if (data != null && index < data.length) {
+                data[index] = item;
+                return;
+            }
 
-        Item[] data = cache[id];
+            Item[][] newCache = newArrayArrayData(cache == null || id >= cache.length ? id + 1 : cache.length);
+            if (cache != null) {
+                System.arraycopy(cache, 0, newCache, 0, cache.length);
+            }
 
-        if (data == null) {
-            cache[id] = data = newArrayData(index + 1 + 10);
-        } else {
-            if (index >= data.length) {
-                Item[] newData = newArrayData(index + 1 + 10);
+            Item[] newData = newArrayData(index + 1 + 10);
+            if (data != null) {
                 System.arraycopy(data, 0, newData, 0, data.length);
-                cache[id] = data = newData;
             }
-        }
 
-        data[index] = new Item(entity, env);
+            newData[index] = item;
+            newCache[id] = newData;
+
+            if (CACHE_UPDATER.compareAndSet(this, cache, newCache)) {
+                return;
+            }
+        }
     }
 
     protected static class Item {
-        Entity data;
-        WeakReference<Environment> env;
+        final Object data;
+        final WeakReference<Environment> env;
 
-        public Item(Entity data, Environment env) {
+        public Item(Object data, Environment env) {
             this.data = data;
             this.env = new WeakReference<Environment>(env);
         }
@@ -0,0 +1,15 @@
+package php.runtime.invoke.cache;
+
+import php.runtime.invoke.ResolvedCallable;
+
+public class CallableCallCache extends CallCache<ResolvedCallable> {
+    @Override
+    public Item[] newArrayData(int length) {
+        return new Item[length];
+    }
+
+    @Override
+    public Item[][] newArrayArrayData(int length) {
+        return new Item[length][];
+    }
+}
@@ -0,0 +1,232 @@
+package php.runtime.invoke.dynamic;
+
+import php.runtime.Memory;
+import php.runtime.env.Environment;
+import php.runtime.env.TraceInfo;
+import php.runtime.exceptions.CriticalException;
+import php.runtime.invoke.InvokeArgumentHelper;
+import php.runtime.invoke.InvokeHelper;
+import php.runtime.lang.IObject;
+import php.runtime.memory.ObjectMemory;
+import php.runtime.reflection.ClassEntity;
+import php.runtime.reflection.FunctionEntity;
+import php.runtime.reflection.MethodEntity;
+import php.runtime.reflection.ParameterEntity;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.SwitchPoint;
+
+/**
+ * Bootstrap methods for invokedynamic call sites of compiled php code.
+ *
+ * Function and static method sites are cached per resolved entity (checked against the entity resolved
+ * for the environment of a call), instance method sites are cached per class of the object.
+ * All linked sites are dropped by {@link #invalidate()} when classes or functions are redefined.
+ */
+final public class DynamicLinker {
+    private static volatile SwitchPoint switchPoint = new SwitchPoint();
+
+    static final MethodHandle IS_INSTANCE_OF;
+    static final MethodHandle INVOKE_FUNCTION;
+    static final MethodHandle INVOKE_STATIC_METHOD;
+    static final MethodHandle INVOKE_METHOD;
+
+    static {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+        try {
+            IS_INSTANCE_OF = lookup.findStatic(DynamicLinker.class, "isInstanceOf",
+                    MethodType.methodType(boolean.class, ClassEntity.class, Memory.class));
+
+            INVOKE_FUNCTION = lookup.findStatic(DynamicLinker.class, "invokeFunction",
+                    MethodType.methodType(Memory.class,
+                            MethodHandle.class, FunctionEntity.class, Environment.class, TraceInfo.class, Memory[].class));
+
+            INVOKE_STATIC_METHOD = lookup.findStatic(DynamicLinker.class, "invokeStaticMethod",
+                    MethodType.methodType(Memory.class,
+                            MethodHandle.class, MethodEntity.class, String.class,
+                            Environment.class, TraceInfo.class, Memory[].class));
+
+            INVOKE_METHOD = lookup.findStatic(DynamicLinker.class, "invokeMethod",
+                    MethodType.methodType(Memory.class,
+                            MethodHandle.class, MethodEntity.class, ClassEntity.class, String.class,
+                            Memory.class, Environment.class, TraceInfo.class, Memory[].class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new CriticalException(e);
+        }
+    }
+
+    private DynamicLinker() {
+    }
+
+    public static CallSite bootstrapFunction(MethodHandles.Lookup lookup, String name, MethodType type,
+                                             String functionName) {
+        return new FunctionCallSite(type, functionName);
+    }
+
+    public static CallSite bootstrapStaticMethod(MethodHandles.Lookup lookup, String name, MethodType type,
+                                                 String className, String methodName) {
+        return new StaticMethodCallSite(type, className, methodName);
+    }
+
+    public static CallSite bootstrapMethod(MethodHandles.Lookup lookup, String name, MethodType type,
+                                           String methodName) {
+        return new MethodCallSite(type, methodName);
+    }
+
+    static SwitchPoint switchPoint() {
+        return switchPoint;
+    }
+
+    /**
+     * Drops all linked call sites, they will be relinked on the next call.
+     */
+    public static void invalidate() {
+        SwitchPoint old;
+
+        synchronized (DynamicLinker.class) {
+            old = switchPoint;
+            switchPoint = new SwitchPoint();
+        }
+
+        SwitchPoint.invalidateAll(new SwitchPoint[]{old});
+    }
+
+    static MethodHandle classGuard(ClassEntity clazz) {
+        return IS_INSTANCE_OF.bindTo(clazz);
+    }
+
+    private static boolean isInstanceOf(ClassEntity clazz, Memory object) {
+        object = object.toValue();
+        return object instanceof ObjectMemory && ((ObjectMemory) object).value.getReflection() == clazz;
+    }
+
+    private static Memory invokeNative(MethodHandle handle, MethodEntity method, IObject _this,
+                                       Environment env, TraceInfo trace, Memory[] passed) throws Throwable {
+        try {
+            Memory result;
+
+            try {
+                result = (Memory) handle.invokeExact(_this, env, passed);
+            } catch (Throwable e) {
+                return env.__throwTargetException(e);
+            }
+
+            return InvokeHelper.checkReturnType(env, trace, result, method);
+        } finally {
+            method.unsetArguments(passed);
+        }
+    }
+
+    private static Memory invokeNative(MethodHandle handle, FunctionEntity function,
+                                       Environment env, TraceInfo trace, Memory[] passed) throws Throwable {
+        try {
+            Memory result;
+
+            try {
+                result = (Memory) handle.invokeExact(env, passed);
+            } catch (Throwable e) {
+                return env.__throwTargetException(e);
+            }
+
+            return InvokeHelper.checkReturnType(env, trace, result, function);
+        } finally {
+            function.unsetArguments(passed);
+        }
+    }
+
+    private static Memory invokeFunction(MethodHandle handle, FunctionEntity function,
+                                         Environment env, TraceInfo trace, Memory[] args) throws Throwable {
+        Memory result = function.getImmutableResultTyped(env, trace);
+
+        if (result != null && !function.hasParameters() && args == null) {
+            return result;
+        }
+
+        Memory[] passed = InvokeArgumentHelper.makeArguments(
+                env, args, function.getParameters(), function.getName(), null, null, trace
+        );
+
+        if (result != null) {
+            return result;
+        }
+
+        if (trace != null && function.isUsesStackTrace())
+            env.pushCall(trace, null, args, function.getName(), null, null);
+
+        try {
+            return invokeNative(handle, function, env, trace, passed);
+        } finally {
+            if (trace != null && function.isUsesStackTrace())
+                env.popCall();
+        }
+    }
+
+    private static Memory invokeStaticMethod(MethodHandle handle, MethodEntity method, String staticClass,
+                                             Environment env, TraceInfo trace, Memory[] args) throws Throwable {
+        Memory result = method.getImmutableResultTyped(env, trace);
+
+        if (result != null) {
+            return result;
+        }
+
+        ClassEntity clazz = method.getClazz();
+
+        Memory[] passed = InvokeArgumentHelper.makeArguments(
+                env, args, method.getParameters(), clazz.getName(), method.getName(), staticClass, trace
+        );
+
+        try {
+            if (trace != null && method.isUsesStackTrace()) {
+                env.pushCallEx(trace, null, passed, method.getName(), clazz, staticClass);
+            }
+
+            return invokeNative(handle, method, null, env, TraceInfo.UNKNOWN, passed);
+        } finally {
+            if (trace != null && method.isUsesStackTrace())
+                env.popCall();
+        }
+    }
+
+    private static Memory invokeMethod(MethodHandle handle, MethodEntity method, ClassEntity clazz, String methodName,
+                                       Memory object, Environment env, TraceInfo trace, Memory[] args) throws Throwable {
+        IObject iObject = ((ObjectMemory) object.toValue()).value;
+
+        if (!method.isPublic()) {
+            InvokeHelper.checkAccess(env, trace, method);
+        }
+
+        Memory result = method.getImmutableResultTyped(env, trace);
+        ParameterEntity[] parameters = method.getParameters(args == null ? 0 : args.length);
+
+        if (result != null && args == null && (parameters == null || parameters.length == 0)) {
+            return result;
+        }
+
+        String className = clazz.getName();
+        Memory[] passed = InvokeArgumentHelper.makeArguments(
+                env, args, parameters, className, methodName, className, trace
+        );
+
+        if (result != null) {
+            return result;
+        }
+
+        try {
+            if (trace != null) {
+                env.pushCallEx(trace, iObject, args, methodName, method.getClazz(), className);
+            }
+
+            return invokeNative(handle, method, iObject, env, trace, passed);
+        } catch (NoClassDefFoundError e) {
+            throw new CriticalException("Unable to call method " + className + "::" + methodName + "(), " + e.getMessage());
+        } finally {
+            if (trace != null) {
+                env.popCall();
+            }
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package php.runtime.invoke.dynamic;
+
+import php.runtime.Memory;
+import php.runtime.env.Environment;
+import php.runtime.env.TraceInfo;
+import php.runtime.exceptions.CriticalException;
+import php.runtime.invoke.InvokeHelper;
+import php.runtime.invoke.cache.FunctionCallCache;
+import php.runtime.reflection.FunctionEntity;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.SwitchPoint;
+
+/**
+ * (Environment, TraceInfo, Memory[])Memory call site of a function with a constant name.
+ */
+class FunctionCallSite extends InlineCacheCallSite {
+    private static final MethodHandle FALLBACK;
+    private static final MethodHandle CALL;
+    private static final MethodHandle CALL_ENTITY;
+
+    static {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+        try {
+            FALLBACK = lookup.findVirtual(FunctionCallSite.class, "fallback",
+                    MethodType.methodType(Memory.class, Environment.class, TraceInfo.class, Memory[].class));
+
+            CALL = lookup.findStatic(InvokeHelper.class, "call",
+                    MethodType.methodType(Memory.class,
+                            Environment.class, TraceInfo.class, String.class, String.class, Memory[].class,
+                            FunctionCallCache.class, int.class));
+
+            CALL_ENTITY = lookup.findStatic(InvokeHelper.class, "call",
+                    MethodType.methodType(Memory.class,
+                            Environment.class, TraceInfo.class, FunctionEntity.class, Memory[].class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new CriticalException(e);
+        }
+    }
+
+    private final String name;
+    private final String lowerName;
+
+    FunctionCallSite(MethodType type, String name) {
+        super(type);
+        this.name = name;
+        this.lowerName = name.toLowerCase();
+
+        initFallback(FALLBACK.bindTo(this));
+    }
+
+    @Override
+    protected MethodHandle megamorphic() {
+        MethodHandle handle = MethodHandles.insertArguments(CALL, 2, lowerName, name);
+        return MethodHandles.insertArguments(handle, 3, new FunctionCallCache(), 0);
+    }
+
+    private MethodHandle target(FunctionEntity function) {
+        MethodHandle handle = function.getNativeHandle();
+
+        if (handle == null) {
+            return MethodHandles.insertArguments(CALL_ENTITY, 2, function);
+        }
+
+        return MethodHandles.insertArguments(DynamicLinker.INVOKE_FUNCTION, 0, handle, function);
+    }
+
+    private Memory fallback(Environment env, TraceInfo trace, Memory[] args) throws Throwable {
+        SwitchPoint switchPoint = DynamicLinker.switchPoint();
+        FunctionEntity function = InvokeHelper.fetchFunction(env, lowerName, name);
+
+        if (function == null) {
+            return InvokeHelper.call(env, trace, lowerName, name, args, null, 0);
+        }
+
+        MethodHandle target = target(function);
+        link(switchPoint, env, function, target);
+
+        return (Memory) target.invokeExact(env, trace, args);
+    }
+}
@@ -0,0 +1,127 @@
+package php.runtime.invoke.dynamic;
+
+import php.runtime.env.Environment;
+import php.runtime.exceptions.CriticalException;
+import php.runtime.invoke.cache.CallCache;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.MutableCallSite;
+import java.lang.invoke.SwitchPoint;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Call site with a polymorphic inline cache, each entry is a guard + a linked target.
+ * When the cache overflows the site becomes megamorphic and uses the generic (lookup) path forever.
+ */
+abstract class InlineCacheCallSite extends MutableCallSite {
+    static final int MAX_DEPTH = 4;
+
+    private static final MethodHandle IS_LINKED;
+
+    static {
+        try {
+            IS_LINKED = MethodHandles.lookup().findStatic(InlineCacheCallSite.class, "isLinked",
+                    MethodType.methodType(boolean.class, EntityCache.class, Object.class, Environment.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new CriticalException(e);
+        }
+    }
+
+    private MethodHandle fallback;
+    private MethodHandle chain;
+    private SwitchPoint switchPoint;
+    private int depth;
+    private boolean megamorphic;
+
+    private EntityCache entities = new EntityCache();
+    private final List<Object> linked = new ArrayList<Object>();
+
+    InlineCacheCallSite(MethodType type) {
+        super(type);
+    }
+
+    protected void initFallback(MethodHandle fallback) {
+        this.fallback = fallback;
+        this.chain = fallback;
+        setTarget(fallback);
+    }
+
+    abstract protected MethodHandle megamorphic();
+
+    synchronized boolean isMegamorphic() {
+        return megamorphic;
+    }
+
+    synchronized protected void link(SwitchPoint switchPoint, MethodHandle guard, MethodHandle target) {
+        if (megamorphic) {
+            return;
+        }
+
+        reset(switchPoint);
+        append(switchPoint, guard, target);
+    }
+
+    /**
+     * Links a target resolved in the environment, the entry is guarded on the entity resolved for the environment
+     * of a call. So other environments which resolve the same entity only miss once and do not grow the cache.
+     */
+    synchronized protected void link(SwitchPoint switchPoint, Environment env, Object entity, MethodHandle target) {
+        if (megamorphic) {
+            return;
+        }
+
+        reset(switchPoint);
+        entities.put(env, 0, entity);
+
+        for (Object one : linked) {
+            if (one == entity) {
+                return;
+            }
+        }
+
+        linked.add(entity);
+        append(switchPoint, MethodHandles.insertArguments(IS_LINKED, 0, entities, entity), target);
+    }
+
+    private void reset(SwitchPoint switchPoint) {
+        if (this.switchPoint != switchPoint) {
+            this.switchPoint = switchPoint;
+            this.chain = fallback;
+            this.depth = 0;
+            this.entities = new EntityCache();
+            this.linked.clear();
+        }
+    }
+
+    private void append(SwitchPoint switchPoint, MethodHandle guard, MethodHandle target) {
+        if (depth >= MAX_DEPTH) {
+            megamorphic = true;
+            setTarget(megamorphic());
+            return;
+        }
+
+        chain = MethodHandles.guardWithTest(guard, target, chain);
+        depth++;
+
+        setTarget(switchPoint.guardWithTest(chain, fallback));
+    }
+
+    private static boolean isLinked(EntityCache entities, Object entity, Environment env) {
+        return entities.get(env, 0) == entity;
+    }
+
+    private static class EntityCache extends CallCache<Object> {
+        @Override
+        public Item[] newArrayData(int length) {
+            return new Item[length];
+        }
+
+        @Override
+        public Item[][] newArrayArrayData(int length) {
+            return new Item[length][];
+        }
+    }
+}
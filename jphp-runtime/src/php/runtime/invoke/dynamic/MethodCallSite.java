@@ -0,0 +1,95 @@
+package php.runtime.invoke.dynamic;
+
+import php.runtime.Memory;
+import php.runtime.env.Environment;
+import php.runtime.env.TraceInfo;
+import php.runtime.exceptions.CriticalException;
+import php.runtime.invoke.ObjectInvokeHelper;
+import php.runtime.lang.Closure;
+import php.runtime.lang.IObject;
+import php.runtime.memory.ObjectMemory;
+import php.runtime.reflection.ClassEntity;
+import php.runtime.reflection.MethodEntity;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.SwitchPoint;
+
+/**
+ * (Memory, Environment, TraceInfo, Memory[])Memory call site of an object method with a constant name.
+ */
+class MethodCallSite extends InlineCacheCallSite {
+    private static final MethodHandle FALLBACK;
+    private static final MethodHandle INVOKE_METHOD;
+
+    static {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+        try {
+            FALLBACK = lookup.findVirtual(MethodCallSite.class, "fallback",
+                    MethodType.methodType(Memory.class,
+                            Memory.class, Environment.class, TraceInfo.class, Memory[].class));
+
+            INVOKE_METHOD = lookup.findStatic(ObjectInvokeHelper.class, "invokeMethod",
+                    MethodType.methodType(Memory.class,
+                            Memory.class, String.class, String.class, Environment.class, TraceInfo.class, Memory[].class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new CriticalException(e);
+        }
+    }
+
+    private final String methodName;
+    private final String lowerMethodName;
+
+    MethodCallSite(MethodType type, String methodName) {
+        super(type);
+        this.methodName = methodName;
+        this.lowerMethodName = methodName.toLowerCase();
+
+        initFallback(FALLBACK.bindTo(this));
+    }
+
+    private MethodHandle invokeMethod() {
+        return MethodHandles.insertArguments(INVOKE_METHOD, 1, methodName, lowerMethodName);
+    }
+
+    @Override
+    protected MethodHandle megamorphic() {
+        return invokeMethod();
+    }
+
+    private MethodHandle target(IObject iObject, ClassEntity clazz) {
+        MethodEntity method = clazz.findMethod(lowerMethodName);
+
+        // magic __call(), closures and methods depending on the calling class use the generic path
+        if (method == null || method.isContextDepends() || iObject instanceof Closure || clazz.isHiddenInCallStack()) {
+            return invokeMethod();
+        }
+
+        MethodHandle handle = method.getNativeHandle();
+
+        if (handle == null) {
+            return invokeMethod();
+        }
+
+        return MethodHandles.insertArguments(DynamicLinker.INVOKE_METHOD, 0, handle, method, clazz, methodName);
+    }
+
+    private Memory fallback(Memory object, Environment env, TraceInfo trace, Memory[] args) throws Throwable {
+        SwitchPoint switchPoint = DynamicLinker.switchPoint();
+        Memory value = object.toValue();
+
+        if (!(value instanceof ObjectMemory)) {
+            return ObjectInvokeHelper.invokeMethod(object, methodName, lowerMethodName, env, trace, args);
+        }
+
+        IObject iObject = ((ObjectMemory) value).value;
+        ClassEntity clazz = iObject.getReflection();
+
+        MethodHandle target = target(iObject, clazz);
+        link(switchPoint, DynamicLinker.classGuard(clazz), target);
+
+        return (Memory) target.invokeExact(object, env, trace, args);
+    }
+}
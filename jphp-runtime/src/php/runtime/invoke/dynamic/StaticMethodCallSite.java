@@ -0,0 +1,106 @@
+package php.runtime.invoke.dynamic;
+
+import php.runtime.Memory;
+import php.runtime.env.Environment;
+import php.runtime.env.TraceInfo;
+import php.runtime.exceptions.CriticalException;
+import php.runtime.invoke.InvokeHelper;
+import php.runtime.invoke.cache.MethodCallCache;
+import php.runtime.reflection.ClassEntity;
+import php.runtime.reflection.MethodEntity;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.SwitchPoint;
+
+/**
+ * (Environment, TraceInfo, Memory[])Memory call site of a static method with constant class and method names.
+ */
+class StaticMethodCallSite extends InlineCacheCallSite {
+    private static final MethodHandle FALLBACK;
+    private static final MethodHandle CALL_STATIC;
+    private static final MethodHandle CALL_STATIC_ENTITY;
+
+    static {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+        try {
+            FALLBACK = lookup.findVirtual(StaticMethodCallSite.class, "fallback",
+                    MethodType.methodType(Memory.class, Environment.class, TraceInfo.class, Memory[].class));
+
+            CALL_STATIC = lookup.findStatic(InvokeHelper.class, "callStatic",
+                    MethodType.methodType(Memory.class,
+                            Environment.class, TraceInfo.class,
+                            String.class, String.class, String.class, String.class,
+                            Memory[].class, MethodCallCache.class, int.class));
+
+            CALL_STATIC_ENTITY = lookup.findStatic(InvokeHelper.class, "callStatic",
+                    MethodType.methodType(Memory.class,
+                            Environment.class, TraceInfo.class, MethodEntity.class, String.class,
+                            Memory[].class, boolean.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new CriticalException(e);
+        }
+    }
+
+    private final String className;
+    private final String lowerClassName;
+    private final String methodName;
+    private final String lowerMethodName;
+
+    StaticMethodCallSite(MethodType type, String className, String methodName) {
+        super(type);
+        this.className = className;
+        this.lowerClassName = className.toLowerCase();
+        this.methodName = methodName;
+        this.lowerMethodName = methodName.toLowerCase();
+
+        initFallback(FALLBACK.bindTo(this));
+    }
+
+    private MethodHandle callStatic(MethodCallCache callCache) {
+        MethodHandle handle = MethodHandles.insertArguments(
+                CALL_STATIC, 2, lowerClassName, lowerMethodName, className, methodName
+        );
+
+        return MethodHandles.insertArguments(handle, 3, callCache, 0);
+    }
+
+    @Override
+    protected MethodHandle megamorphic() {
+        return callStatic(new MethodCallCache());
+    }
+
+    private MethodHandle target(MethodEntity method) {
+        MethodHandle handle = method.getNativeHandle();
+
+        if (handle == null) {
+            MethodHandle target = MethodHandles.insertArguments(CALL_STATIC_ENTITY, 2, method, className);
+            return MethodHandles.insertArguments(target, 3, false);
+        }
+
+        return MethodHandles.insertArguments(DynamicLinker.INVOKE_STATIC_METHOD, 0, handle, method, className);
+    }
+
+    private Memory fallback(Environment env, TraceInfo trace, Memory[] args) throws Throwable {
+        SwitchPoint switchPoint = DynamicLinker.switchPoint();
+
+        ClassEntity classEntity = env.fetchClass(className, lowerClassName, true);
+        MethodEntity method = classEntity == null ? null : classEntity.findMethod(lowerMethodName);
+
+        if (method == null || !method.isStatic()) {
+            // magic __callStatic(), late $this calls and errors
+            return InvokeHelper.callStatic(
+                    env, trace, lowerClassName, lowerMethodName, className, methodName, args, null, 0
+            );
+        }
+
+        InvokeHelper.checkAccess(env, trace, method);
+
+        MethodHandle target = target(method);
+        link(switchPoint, env, method, target);
+
+        return (Memory) target.invokeExact(env, trace, args);
+    }
+}
@@ -4,7 +4,9 @@ import php.runtime.annotation.Reflection.BaseType;
 import php.runtime.annotation.Reflection.Ignore;
 import php.runtime.env.Environment;
 import php.runtime.memory.ArrayMemory;
+import php.runtime.memory.ReferenceMemory;
 import php.runtime.reflection.ClassEntity;
+import php.runtime.reflection.PropertyEntity;
 
 import java.lang.ref.WeakReference;
 
@@ -12,6 +14,7 @@ import java.lang.ref.WeakReference;
 @BaseType
 abstract public class BaseObject implements IObject {
     protected ArrayMemory __dynamicProperties__;
+    protected ReferenceMemory[] __slots__;
     protected ClassEntity __class__;
     protected final Environment __env__;
 
@@ -30,7 +33,6 @@ abstract public class BaseObject implements IObject {
 
     public BaseObject(Environment env, ClassEntity clazz) {
         this.__class__ = clazz;
-        this.__dynamicProperties__ = new ArrayMemory(true);
         this.__env__ = env;
     }
 
@@ -51,7 +53,22 @@ abstract public class BaseObject implements IObject {
                 if (__dynamicProperties__ != null) return __dynamicProperties__;
 
                 if (__dynamicProperties__ == null) {
-                    __dynamicProperties__ = new ArrayMemory(true);
+                    ArrayMemory props = new ArrayMemory(true);
+                    ReferenceMemory[] slots = __slots__;
+
+                    if (slots != null) {
+                        PropertyEntity[] layout = __class__.getSlotProperties();
+
+                        // a slot may be referenced by a variable ($q = &$o->prop), so the slot is
+                        // redirected to its new array entry, writes via the variable still reach the object.
+                        for (int i = 0; i < slots.length; i++) {
+                            ReferenceMemory slot = slots[i];
+                            slot.setValue(props.putAsKeyString(layout[i].getSpecificName(), slot.getValue()));
+                        }
+                    }
+
+                    __dynamicProperties__ = props;
+                    __slots__ = null;
                 }
             }
         }
@@ -59,6 +76,50 @@ abstract public class BaseObject implements IObject {
         return __dynamicProperties__;
     }
 
+    /**
+     * Declared properties of the object, in the order of {@link ClassEntity#getSlotProperties()},
+     * null when the properties are stored in the array of {@link #getProperties()}.
+     */
+    public ReferenceMemory[] __getSlots() {
+        return __slots__;
+    }
+
+    /**
+     * @return false if the properties array already exists and the slots are not used.
+     */
+    public boolean __setSlots(ReferenceMemory[] slots) {
+        synchronized (this) {
+            if (__dynamicProperties__ != null) {
+                return false;
+            }
+
+            __slots__ = slots;
+            return true;
+        }
+    }
+
+    public ReferenceMemory __getSlot(PropertyEntity property) {
+        ReferenceMemory[] slots = __slots__;
+
+        if (slots == null) {
+            return null;
+        }
+
+        int index = property.getSlotIndex(__class__);
+        return index < 0 ? null : slots[index];
+    }
+
+    public ReferenceMemory __getSlot(String specificName) {
+        ReferenceMemory[] slots = __slots__;
+
+        if (slots == null) {
+            return null;
+        }
+
+        int index = __class__.getSlotIndex(specificName);
+        return index < 0 ? null : slots[index];
+    }
+
     @Override
     public Environment getEnvironment() {
         return __env__;
@@ -36,6 +36,23 @@ abstract public class Generator extends BaseObject implements Iterator, IManualD
     protected final YieldAdapterIterator<Bucket> iterator;
     protected final php.runtime.util.generator.Generator<Bucket> gen;
 
+    /**
+     * State of a resumable generator, see {@link #isResumable()}, the compiler saves the locals
+     * and the operand stack of _run into these fields before each suspension.
+     */
+    protected int __state = 0;
+    protected Object[] __locals;
+    protected long[] __primitives;
+
+    private Bucket current;
+    private boolean suspended;
+    private boolean finished;
+
+    private ForeachIterator delegateIterator;
+    private Generator delegateGenerator;
+    private Bucket delegateCurrent;
+    private Environment delegateEnv;
+
     protected final static ThreadLocal<Generator> currentGenerator = new ThreadLocal<>();
 
     protected CallStackItem callStackItem;
@@ -62,6 +79,12 @@ abstract public class Generator extends BaseObject implements Iterator, IManualD
         this.callStack     = env.getCallStack();
         this.callStackItem = stackItem == null ? null : new CallStackItem(stackItem);
 
+        if (isResumable()) {
+            gen = null;
+            iterator = null;
+            return;
+        }
+
         gen = new php.runtime.util.generator.Generator<Bucket>() {
             @Override
             protected void run(YieldAdapterIterator<Bucket> yieldAdapter) {
@@ -73,6 +96,8 @@ abstract public class Generator extends BaseObject implements Iterator, IManualD
                 } catch (Throwable e) {
                     lastThrowable = e;
                     Generator.this.setCurrent(Memory.NULL);
+                } finally {
+                    currentGenerator.remove();
                 }
             }
         };
@@ -81,6 +106,59 @@ abstract public class Generator extends BaseObject implements Iterator, IManualD
 
     abstract protected Memory _run(Environment env, Memory... args);
 
+    /**
+     * Returns true when the compiler has transformed _run into a state machine which returns on each yield
+     * and continues from the saved state on the next call, such generators are executed in the caller thread,
+     * others are executed by {@link php.runtime.util.generator.ThreadedYieldAdapter}.
+     */
+    protected boolean isResumable() {
+        return false;
+    }
+
+    private Memory resume(Environment env) {
+        if (finished) {
+            throw new NoSuchElementException();
+        }
+
+        Generator previous = currentGenerator.get();
+        currentGenerator.set(this);
+
+        suspended = false;
+        try {
+            _run(env);
+        } catch (Throwable e) {
+            lastThrowable = e;
+            setCurrent(Memory.NULL);
+        } finally {
+            if (previous == null) {
+                currentGenerator.remove();
+            } else {
+                currentGenerator.set(previous);
+            }
+        }
+
+        if (!suspended) {
+            finished = true;
+            __locals = null;
+            __primitives = null;
+            throw new NoSuchElementException();
+        }
+
+        return current.getValue();
+    }
+
+    private Bucket getCurrentBucket() {
+        return iterator == null ? current : iterator.getCurrentValue();
+    }
+
+    private void setCurrentBucket(Bucket bucket) {
+        if (iterator == null) {
+            current = bucket;
+        } else {
+            iterator.setCurrentValue(bucket);
+        }
+    }
+
     protected Memory _next(Environment env) {
         if (busy) {
             env.error(env.trace(), "Cannot resume an already running generator");
@@ -95,6 +173,11 @@ abstract public class Generator extends BaseObject implements Iterator, IManualD
         try {
             counter += 1;
             busy = true;
+
+            if (iterator == null) {
+                return resume(env);
+            }
+
             return iterator.next().getValue();
         } catch (NoSuchElementException e) {
             valid = false;
@@ -165,9 +248,9 @@ abstract public class Generator extends BaseObject implements Iterator, IManualD
            rewind(env);
         }
 
-        Bucket current = iterator.getCurrentValue();
+        Bucket current = getCurrentBucket();
         if (current == null) {
-            iterator.setCurrentValue(new Bucket(args[0]));
+            setCurrentBucket(new Bucket(args[0]));
         } else {
             current.pushValue(args[0]);
         }
@@ -221,15 +304,16 @@ abstract public class Generator extends BaseObject implements Iterator, IManualD
             rewind(env);
         }
 
-        if (iterator.getCurrentValue() == null) {
+        Bucket current = getCurrentBucket();
+        if (current == null) {
             return Memory.NULL;
         }
 
-        return iterator.getCurrentValue().getValue();
+        return current.getValue();
     }
 
     protected Memory __current() {
-        Bucket current = iterator.getCurrentValue();
+        Bucket current = getCurrentBucket();
         return current == null ? Memory.NULL : current.getValue();
     }
 
@@ -240,11 +324,12 @@ abstract public class Generator extends BaseObject implements Iterator, IManualD
             rewind(env);
         }
 
-        if (iterator.getCurrentValue() == null) {
+        Bucket current = getCurrentBucket();
+        if (current == null) {
             return Memory.NULL;
         }
 
-        return iterator.getCurrentValue().getKey();
+        return current.getKey();
     }
 
     @Signature
@@ -290,7 +375,7 @@ abstract public class Generator extends BaseObject implements Iterator, IManualD
     protected Bucket setCurrent(Memory value) {
         boolean returnRef = (((GeneratorEntity)getReflection()).isReturnReference());
 
-        Bucket current = iterator.getCurrentValue();
+        Bucket current = getCurrentBucket();
         if (value instanceof KeyValueMemory) {
             if (current != null) {
                 current.setKey(((KeyValueMemory) value).key);
@@ -318,25 +403,67 @@ abstract public class Generator extends BaseObject implements Iterator, IManualD
     }
 
     protected Memory yieldFrom(Environment env, TraceInfo trace, Memory iterable) {
+        __delegate(env, trace, iterable);
+
+        while (__delegateNext()) {
+            yieldAdapter().yield(delegateCurrent);
+            checkNewThrow();
+        }
+
+        return __delegateResult();
+    }
+
+    protected Memory yield(Environment env, TraceInfo trace, Memory value) {
+        Bucket current = prepareYield(env, trace, value);
+        yieldAdapter().yield(current);
+
+        checkNewThrow();
+        return current.getValue();
+    }
+
+    private Bucket prepareYield(Environment env, TraceInfo trace, Memory value) {
         if (closed == ClosedType.MANUAL) {
             env.error(trace, "Cannot yield from finally in a force-closed generator");
         }
 
-        ForeachIterator iterator = iterable.getNewIterator(env);
-        if (iterator == null) {
+        checkNewThrow();
+
+        return setCurrent(value);
+    }
+
+    protected void __suspend(Environment env, TraceInfo trace) {
+        __suspend(env, trace, Memory.NULL);
+    }
+
+    protected void __suspend(Environment env, TraceInfo trace, Memory value) {
+        current = prepareYield(env, trace, value);
+        suspended = true;
+    }
+
+    protected Memory __resume() {
+        checkNewThrow();
+        return current.getValue();
+    }
+
+    protected void __delegate(Environment env, TraceInfo trace) {
+        __delegate(env, trace, Memory.NULL);
+    }
+
+    protected void __delegate(Environment env, TraceInfo trace, Memory iterable) {
+        if (closed == ClosedType.MANUAL) {
+            env.error(trace, "Cannot yield from finally in a force-closed generator");
+        }
+
+        ForeachIterator foreachIterator = iterable.getNewIterator(env);
+        if (foreachIterator == null) {
             env.error(trace, "Can use \"yield from\" only with arrays and Traversables");
-            return Memory.NULL;
         }
 
         Generator subGenerator = null;
 
         if (iterable.instanceOf("Generator", "generator")) {
             subGenerator = iterable.toObject(Generator.class);
-        }
-
-        Bucket current = null;
 
-        if (subGenerator != null) {
             if (!subGenerator.isInit) {
                 if (subGenerator.counter < 1) {
                     subGenerator.rewind(env);
@@ -344,28 +471,55 @@ abstract public class Generator extends BaseObject implements Iterator, IManualD
                     subGenerator._next(env);
                 }
             }
+        }
 
-            while (subGenerator.valid){
-                checkNewThrow();
-
-                current = setCurrent(subGenerator.__current());
-                subGenerator._next(env);
+        delegateEnv = env;
+        delegateIterator = foreachIterator;
+        delegateGenerator = subGenerator;
+        delegateCurrent = null;
+    }
 
-                gen.yield(current);
+    protected boolean __delegateNext() {
+        if (delegateIterator == null) {
+            return false;
+        }
 
-                checkNewThrow();
+        if (delegateGenerator != null) {
+            if (!delegateGenerator.valid) {
+                return false;
             }
-        } else {
-            while (iterator.next()) {
-                checkNewThrow();
 
-                current = setCurrent(iterator.getValue());
-                gen.yield(current);
+            checkNewThrow();
 
-                checkNewThrow();
+            delegateCurrent = setCurrent(delegateGenerator.__current());
+            delegateGenerator._next(delegateEnv);
+        } else {
+            if (!delegateIterator.next()) {
+                return false;
             }
+
+            checkNewThrow();
+
+            delegateCurrent = setCurrent(delegateIterator.getValue());
+        }
+
+        if (iterator == null) {
+            current = delegateCurrent;
+            suspended = true;
         }
 
+        return true;
+    }
+
+    protected Memory __delegateResult() {
+        Generator subGenerator = delegateGenerator;
+        Bucket last = delegateCurrent;
+
+        delegateEnv = null;
+        delegateIterator = null;
+        delegateGenerator = null;
+        delegateCurrent = null;
+
         if (subGenerator != null) {
             Memory genReturn = subGenerator.genReturn;
 
@@ -374,25 +528,30 @@ abstract public class Generator extends BaseObject implements Iterator, IManualD
             }
         }
 
-        return current != null ? current.getValue() : Memory.NULL;
+        return last != null ? last.getValue() : Memory.NULL;
     }
 
-    protected Memory yield(Environment env, TraceInfo trace, Memory value) {
-        if (closed == ClosedType.MANUAL) {
-            env.error(trace, "Cannot yield from finally in a force-closed generator");
+    protected void __allocFrame(int size) {
+        if (__locals == null) {
+            __locals = new Object[size];
+            __primitives = new long[size];
         }
-
-        checkNewThrow();
-
-        Bucket current = setCurrent(value);
-        gen.yield(current);
-
-        checkNewThrow();
-        return current.getValue();
     }
 
     protected Memory yield(Memory key, Memory value) {
-        return gen.yield(new Bucket(key, value)).getValue();
+        return yieldAdapter().yield(new Bucket(key, value)).getValue();
+    }
+
+    /**
+     * A resumable generator has no thread adapter, it's suspended only by the yield calls of _run
+     * transformed by the compiler, see {@link #__suspend}.
+     */
+    private php.runtime.util.generator.Generator<Bucket> yieldAdapter() {
+        if (gen == null) {
+            throw new CriticalException("Unable to yield outside of the state machine of a resumable generator");
+        }
+
+        return gen;
     }
 
     protected Memory setReturn(Environment env, TraceInfo trace, Memory result) {
@@ -0,0 +1,25 @@
+package php.runtime.loader;
+
+import php.runtime.reflection.support.Entity;
+
+/**
+ * Defines classes of one module, the classes are unloaded with the loader when the module is no longer used.
+ * Classes of other modules are found by name via the parent {@link RuntimeClassLoader}.
+ */
+public class ModuleClassLoader extends ClassLoader {
+    // keeps the module (and its entities) alive while any its class is alive
+    protected final Entity owner;
+
+    ModuleClassLoader(RuntimeClassLoader parent, Entity owner) {
+        super(parent);
+        this.owner = owner;
+    }
+
+    public Entity getOwner() {
+        return owner;
+    }
+
+    Class<?> define(byte[] data) {
+        return defineClass(null, data, 0, data.length);
+    }
+}
@@ -8,21 +8,42 @@ import php.runtime.reflection.*;
 import php.runtime.reflection.helper.ClosureEntity;
 import php.runtime.reflection.helper.GeneratorEntity;
 
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.Method;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Each module is defined by its own {@link ModuleClassLoader}, this loader finds classes of modules by name
+ * and entities by internal names. Entities and classes are weakly referenced, so a module is unloaded
+ * when it's not used by scopes, environments and objects.
+ */
 public class RuntimeClassLoader extends URLClassLoader {
-    protected Map<String, ClassEntity> internalClasses = new HashMap<String, ClassEntity>();
-    protected Map<String, FunctionEntity> internalFunctions = new HashMap<String, FunctionEntity>();
-    protected Map<String, ModuleEntity> internalModules = new HashMap<String, ModuleEntity>();
+    protected final Map<String, NamedReference<ClassEntity>> internalClasses = new ConcurrentHashMap<>();
+    protected final Map<String, NamedReference<FunctionEntity>> internalFunctions = new ConcurrentHashMap<>();
+    protected final Map<String, NamedReference<ModuleEntity>> internalModules = new ConcurrentHashMap<>();
+    protected final Map<String, NamedReference<Class<?>>> definedClasses = new ConcurrentHashMap<>();
+
+    private final ReferenceQueue<Object> queue = new ReferenceQueue<>();
 
     protected List<Callback<Void, URL>> addLibraryListeners = new ArrayList<>();
 
+    protected static class NamedReference<T> extends WeakReference<T> {
+        final String name;
+        final Map<String, ? extends NamedReference<?>> map;
+
+        NamedReference(String name, T referent, Map<String, ? extends NamedReference<?>> map, ReferenceQueue<? super T> queue) {
+            super(referent, queue);
+            this.name = name;
+            this.map = map;
+        }
+    }
+
     public RuntimeClassLoader() {
         this(Thread.currentThread().getContextClassLoader());
     }
@@ -31,28 +52,68 @@ public class RuntimeClassLoader extends URLClassLoader {
         super(new URL[0], parent);
     }
 
+    private <T> void put(Map<String, NamedReference<T>> map, String name, T value) {
+        expungeStale();
+        map.put(name, new NamedReference<T>(name, value, map, queue));
+    }
+
+    private static <T> T get(Map<String, NamedReference<T>> map, String name) {
+        NamedReference<T> ref = map.get(name);
+        return ref == null ? null : ref.get();
+    }
+
+    private static <T> void remove(Map<String, NamedReference<T>> map, String name, T value) {
+        NamedReference<T> ref = map.get(name);
+
+        if (ref != null && ref.get() == value) {
+            map.remove(name, ref);
+        }
+    }
+
+    private void expungeStale() {
+        NamedReference<?> ref;
+
+        while ((ref = (NamedReference<?>) queue.poll()) != null) {
+            ref.map.remove(ref.name, ref);
+        }
+    }
+
     public ClassEntity getClass(String internalName) {
-        return internalClasses.get(internalName);
+        return get(internalClasses, internalName);
     }
 
     public FunctionEntity getFunction(String internalName) {
-        return internalFunctions.get(internalName);
+        return get(internalFunctions, internalName);
     }
 
     public ModuleEntity getModule(String internalName) {
-        return internalModules.get(internalName);
+        return get(internalModules, internalName);
     }
 
-    public Class<?> loadClass(ClassEntity clazz, boolean withBytecode) throws NoSuchMethodException, NoSuchFieldException {
-        if (withBytecode) {
-            byte[] data = translateData(clazz.getData());
-            Class<?> result = null;
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+        Class<?> result = get(definedClasses, name);
 
-            if (result == null) {
-                result = defineClass(null, data, 0, data.length);
-            }
+        if (result != null) {
+            return result;
+        }
 
-            clazz.setNativeClazz(result);
+        return super.findClass(name);
+    }
+
+    protected Class<?> define(ModuleClassLoader loader, byte[] data) {
+        Class<?> result = loader.define(translateData(data));
+        put(definedClasses, result.getName(), result);
+        return result;
+    }
+
+    public Class<?> loadClass(ClassEntity clazz, boolean withBytecode) throws NoSuchMethodException, NoSuchFieldException {
+        return loadClass(clazz, withBytecode ? new ModuleClassLoader(this, clazz) : null);
+    }
+
+    protected Class<?> loadClass(ClassEntity clazz, ModuleClassLoader loader) throws NoSuchMethodException, NoSuchFieldException {
+        if (loader != null) {
+            clazz.setNativeClazz(define(loader, clazz.getData()));
         }
 
         for (MethodEntity method : clazz.getMethods().values()) {
@@ -64,57 +125,54 @@ public class RuntimeClassLoader extends URLClassLoader {
             }
         }
 
-        internalClasses.put(clazz.getCompiledInternalName(), clazz);
+        put(internalClasses, clazz.getCompiledInternalName(), clazz);
         return clazz.getNativeClass();
     }
 
-    protected Class<?> loadClosure(ClosureEntity closure, boolean withBytecode) throws NoSuchMethodException, NoSuchFieldException {
-        return loadClass(closure, withBytecode);
+    protected Class<?> loadClosure(ClosureEntity closure, ModuleClassLoader loader) throws NoSuchMethodException, NoSuchFieldException {
+        return loadClass(closure, loader);
     }
 
-    protected Class<?> loadFunction(FunctionEntity function, boolean withBytecode) throws NoSuchMethodException {
+    protected Class<?> loadFunction(FunctionEntity function, ModuleClassLoader loader) throws NoSuchMethodException {
         String className = function.getInternalName();
-        if (withBytecode) {
-            byte[] data = translateData(function.getData());
-
-            Class<?> result = defineClass(null, data, 0, data.length);
-
-            function.setNativeClazz(result);
+        if (loader != null) {
+            function.setNativeClazz(define(loader, function.getData()));
         }
 
         Method method = function.getNativeClazz().getDeclaredMethod(
                 "__invoke", Environment.class, Memory[].class
         );
         function.setNativeMethod(method);
-        internalFunctions.put(className, function);
+        put(internalFunctions, className, function);
 
         return function.getNativeClazz();
     }
 
-    protected Class<?> loadGenerator(GeneratorEntity generator, boolean withBytecode) throws NoSuchMethodException, NoSuchFieldException {
-        return loadClass(generator, withBytecode);
+    protected Class<?> loadGenerator(GeneratorEntity generator, ModuleClassLoader loader) throws NoSuchMethodException, NoSuchFieldException {
+        return loadClass(generator, loader);
     }
 
     public boolean loadModule(ModuleEntity module, boolean withBytecode) {
         String internal = module.getInternalName();
+        ModuleClassLoader loader = withBytecode ? new ModuleClassLoader(this, module) : null;
 
         boolean ret = false;
         if (!module.isLoaded()) {
-            internalModules.put(internal, module);
+            put(internalModules, internal, module);
             try {
                 for (ClosureEntity closure : module.getClosures())
-                    loadClosure(closure, withBytecode);
+                    loadClosure(closure, loader);
 
                 for (GeneratorEntity generator : module.getGenerators())
-                    loadGenerator(generator, withBytecode);
+                    loadGenerator(generator, loader);
 
                 for (ClassEntity clazz : module.getClasses()) {
                     if (clazz.getType() != ClassEntity.Type.INTERFACE)
-                        loadClass(clazz, withBytecode);
+                        loadClass(clazz, loader);
                 }
 
                 for (FunctionEntity function : module.getFunctions()) {
-                    loadFunction(function, withBytecode);
+                    loadFunction(function, loader);
                 }
 
             } catch (NoSuchMethodException e) {
@@ -127,12 +185,8 @@ public class RuntimeClassLoader extends URLClassLoader {
             ret = true;
         }
 
-        if (withBytecode) {
-            byte[] data = translateData(module.getData());
-            Class<?> result = defineClass(
-                    null, data, 0, module.getData().length
-            );
-            module.setNativeClazz(result);
+        if (loader != null) {
+            module.setNativeClazz(define(loader, module.getData()));
         }
 
         try {
@@ -147,6 +201,32 @@ public class RuntimeClassLoader extends URLClassLoader {
         return ret;
     }
 
+    /**
+     * Classes of the module are no longer found by name, the module is unloaded when it's no longer used.
+     * Entities stay available for running code and stack traces until then.
+     */
+    public void unloadModule(ModuleEntity module) {
+        unloadClass(module.getNativeClazz());
+
+        for (ClosureEntity closure : module.getClosures())
+            unloadClass(closure.getNativeClass());
+
+        for (GeneratorEntity generator : module.getGenerators())
+            unloadClass(generator.getNativeClass());
+
+        for (ClassEntity clazz : module.getClasses())
+            unloadClass(clazz.getNativeClass());
+
+        for (FunctionEntity function : module.getFunctions())
+            unloadClass(function.getNativeClazz());
+    }
+
+    private void unloadClass(Class<?> clazz) {
+        if (clazz != null && clazz.getClassLoader() instanceof ModuleClassLoader) {
+            remove(definedClasses, clazz.getName(), clazz);
+        }
+    }
+
     protected byte[] translateData(byte[] data) {
         return data;
     }
@@ -0,0 +1,269 @@
+package php.runtime.loader.dump;
+
+import php.runtime.Information;
+import php.runtime.common.DigestUtils;
+import php.runtime.env.CompileScope;
+import php.runtime.env.Context;
+import php.runtime.env.Environment;
+import php.runtime.loader.RuntimeClassLoader;
+import php.runtime.reflection.ModuleEntity;
+
+import java.io.*;
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Persistent cache of compiled modules, stores .phb dumps of {@link ModuleDumper} in a directory.
+ *
+ * A dump is keyed by the module path, a sha-256 hash of the source, the jphp version and the lang mode of the scope,
+ * files are written atomically via temp file + rename and the oldest ones are removed when the directory
+ * exceeds the max size.
+ */
+public class ModuleDumpCache {
+    public final static String EXTENSION = ".phb";
+
+    protected final File directory;
+    protected final long maxSize;
+
+    // classes of a dump have fixed names, so a dump is loaded once per class loader of scopes
+    // (a child scope shares the loader of its parent), modules are weak like in RuntimeClassLoader.
+    protected final Map<RuntimeClassLoader, Map<String, WeakReference<ModuleEntity>>> loaded
+            = new WeakHashMap<RuntimeClassLoader, Map<String, WeakReference<ModuleEntity>>>();
+
+    public ModuleDumpCache(File directory, long maxSize) {
+        this.directory = directory;
+        this.maxSize = maxSize;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Loads a module of the source context from the cache or compiles and stores it,
+     * the module is loaded to the scope but is not registered in the environment.
+     */
+    public ModuleEntity importModule(Environment env, Context context) throws Throwable {
+        String name = context.getModuleName();
+        byte[] source = readAll(context.getInputStream(env.getDefaultCharset()));
+        String key = key(env.scope, name, source);
+
+        Map<String, WeakReference<ModuleEntity>> loaded = loaded(env.scope);
+
+        ModuleEntity module = get(loaded, key);
+        if (module != null) {
+            return module;
+        }
+
+        context = new Context(new ByteArrayInputStream(source), name, env.getDefaultCharset());
+
+        File file = new File(directory, key + EXTENSION);
+        byte[] dump = null;
+
+        module = load(env, context, file);
+
+        if (module == null) {
+            module = env.scope.createCompiler(env, context).compile(false);
+
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            new ModuleDumper(context, env, true).save(module, output);
+            dump = output.toByteArray();
+        }
+
+        synchronized (env.scope) {
+            ModuleEntity other = get(loaded, key);
+
+            if (other != null) {
+                return other;
+            }
+
+            env.scope.loadModule(module);
+            loaded.put(key, new WeakReference<ModuleEntity>(module));
+        }
+
+        if (dump != null) {
+            try {
+                write(file, dump);
+                evict();
+            } catch (IOException e) {
+                // the cache is optional, the module is already compiled.
+            }
+        }
+
+        return module;
+    }
+
+    protected Map<String, WeakReference<ModuleEntity>> loaded(CompileScope scope) {
+        synchronized (loaded) {
+            Map<String, WeakReference<ModuleEntity>> result = loaded.get(scope.getClassLoader());
+
+            if (result == null) {
+                result = new ConcurrentHashMap<String, WeakReference<ModuleEntity>>();
+                loaded.put(scope.getClassLoader(), result);
+            }
+
+            return result;
+        }
+    }
+
+    private static ModuleEntity get(Map<String, WeakReference<ModuleEntity>> loaded, String key) {
+        WeakReference<ModuleEntity> reference = loaded.get(key);
+        return reference == null ? null : reference.get();
+    }
+
+    protected ModuleEntity load(Environment env, Context context, File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+
+        try {
+            ModuleEntity module = new ModuleDumper(context, env, true).load(file);
+            file.setLastModified(System.currentTimeMillis());
+
+            return module;
+        } catch (IOException | RuntimeException e) {
+            file.delete(); // broken or foreign dump.
+            return null;
+        }
+    }
+
+    protected void write(File file, byte[] dump) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory()) {
+            throw new IOException("Unable to create the module cache directory " + directory);
+        }
+
+        File tmp = File.createTempFile(file.getName(), ".tmp", directory);
+
+        try {
+            try (FileOutputStream output = new FileOutputStream(tmp)) {
+                output.write(dump);
+            }
+
+            try {
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            tmp.delete();
+        }
+    }
+
+    /**
+     * Removes the least recently used dumps while the directory is greater than the max size.
+     */
+    public void evict() {
+        if (maxSize <= 0) {
+            return;
+        }
+
+        File[] files = directory.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.isFile() && file.getName().endsWith(EXTENSION);
+            }
+        });
+
+        if (files == null) {
+            return;
+        }
+
+        long size = 0;
+        for (File file : files) {
+            size += file.length();
+        }
+
+        if (size <= maxSize) {
+            return;
+        }
+
+        final long[] modified = new long[files.length];
+        Integer[] order = new Integer[files.length];
+
+        for (int i = 0; i < files.length; i++) {
+            modified[i] = files[i].lastModified();
+            order[i] = i;
+        }
+
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                return Long.compare(modified[o1], modified[o2]);
+            }
+        });
+
+        for (Integer i : order) {
+            if (size <= maxSize) {
+                break;
+            }
+
+            long length = files[i].length();
+
+            if (files[i].delete()) {
+                size -= length;
+            }
+        }
+    }
+
+    public void clear() {
+        File[] files = directory.listFiles();
+
+        if (files != null) {
+            for (File file : files) {
+                if (file.getName().endsWith(EXTENSION)) {
+                    file.delete();
+                }
+            }
+        }
+
+        synchronized (loaded) {
+            loaded.clear();
+        }
+    }
+
+    public static String key(CompileScope scope, String name, byte[] source) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+
+            digest.update(source);
+            digest.update((byte) 0);
+            digest.update(String.valueOf(name).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(Information.CORE_VERSION.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(String.valueOf(ModuleDumper.DUMP_VERSION).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(scope.getLangMode().name().getBytes(StandardCharsets.UTF_8));
+
+            return DigestUtils.bytesToHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static byte[] readAll(InputStream input) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+
+        int len;
+        while ((len = input.read(buffer)) != -1) {
+            output.write(buffer, 0, len);
+        }
+
+        return output.toByteArray();
+    }
+}
@@ -0,0 +1,220 @@
+package php.runtime.loader.dump;
+
+import php.runtime.Information;
+import php.runtime.env.Context;
+import php.runtime.env.Environment;
+import php.runtime.loader.dump.io.DumpException;
+import php.runtime.reflection.ModuleEntity;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Index of a bootstrapped launcher in one file: class names of registered extensions in order of registration
+ * and dumps of compiled bootstrap modules. It's written at build time and mapped by the launcher at startup
+ * instead of extension discovery via ServiceLoader and compilation of the bootstrap.
+ *
+ * A dump is used only if its key (see {@link ModuleDumpCache#key}) matches the current source of the module,
+ * dumps are parsed on the first import.
+ */
+public class StartupSnapshot {
+    public final static int STAMP = 479873683;
+    public final static int VERSION = 1;
+
+    protected final List<String> extensions = new ArrayList<String>();
+    protected final Map<String, Entry> modules = new LinkedHashMap<String, Entry>();
+
+    protected static class Entry {
+        final String key;
+        final ByteBuffer dump;
+
+        Entry(String key, ByteBuffer dump) {
+            this.key = key;
+            this.dump = dump;
+        }
+    }
+
+    public StartupSnapshot() {
+    }
+
+    public void addExtension(String className) {
+        extensions.add(className);
+    }
+
+    public List<String> getExtensions() {
+        return extensions;
+    }
+
+    public void addModule(String path, String key, byte[] dump) {
+        modules.put(path, new Entry(key, ByteBuffer.wrap(dump)));
+    }
+
+    public boolean hasModule(String path) {
+        return modules.containsKey(path);
+    }
+
+    public Set<String> getModulePaths() {
+        return modules.keySet();
+    }
+
+    /**
+     * @return null if there is no dump of the source, the module is loaded to the scope but is not registered
+     */
+    public ModuleEntity importModule(Environment env, String path, byte[] source) throws IOException {
+        Entry entry = modules.get(path);
+
+        if (entry == null || !entry.key.equals(ModuleDumpCache.key(env.scope, path, source))) {
+            return null;
+        }
+
+        Context context = new Context(new ByteArrayInputStream(source), path, env.getDefaultCharset());
+        ModuleEntity module = new ModuleDumper(context, env, true).load(new ByteBufferInputStream(entry.dump.duplicate()));
+
+        synchronized (env.scope) {
+            env.scope.loadModule(module);
+        }
+
+        return module;
+    }
+
+    public void save(OutputStream output) throws IOException {
+        DataOutputStream data = new DataOutputStream(output);
+
+        data.writeInt(STAMP);
+        data.writeInt(VERSION);
+        writeString(data, Information.CORE_VERSION);
+
+        data.writeInt(extensions.size());
+        for (String extension : extensions) {
+            writeString(data, extension);
+        }
+
+        data.writeInt(modules.size());
+        for (Map.Entry<String, Entry> module : modules.entrySet()) {
+            ByteBuffer dump = module.getValue().dump.duplicate();
+
+            writeString(data, module.getKey());
+            writeString(data, module.getValue().key);
+            data.writeInt(dump.remaining());
+
+            while (dump.hasRemaining()) {
+                data.write(dump.get());
+            }
+        }
+
+        data.flush();
+    }
+
+    public void save(File file) throws IOException {
+        try (OutputStream output = new BufferedOutputStream(new FileOutputStream(file))) {
+            save(output);
+        }
+    }
+
+    /**
+     * Maps the file to memory.
+     */
+    public static StartupSnapshot load(File file) throws IOException {
+        try (FileChannel channel = new RandomAccessFile(file, "r").getChannel()) {
+            return load(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    public static StartupSnapshot load(InputStream input) throws IOException {
+        return load(ByteBuffer.wrap(ModuleDumpCache.readAll(input)));
+    }
+
+    /**
+     * @throws DumpException if the buffer is not a snapshot of this jphp version
+     */
+    public static StartupSnapshot load(ByteBuffer buffer) throws DumpException {
+        try {
+            if (buffer.getInt() != STAMP) {
+                throw new DumpException("Invalid snapshot format");
+            }
+
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new DumpException("Invalid snapshot version - " + version + ", only " + VERSION);
+            }
+
+            String coreVersion = readString(buffer);
+            if (!Information.CORE_VERSION.equals(coreVersion)) {
+                throw new DumpException("The snapshot is created by other jphp version - " + coreVersion);
+            }
+
+            StartupSnapshot snapshot = new StartupSnapshot();
+
+            for (int i = buffer.getInt(); i > 0; i--) {
+                snapshot.addExtension(readString(buffer));
+            }
+
+            for (int i = buffer.getInt(); i > 0; i--) {
+                String path = readString(buffer);
+                String key = readString(buffer);
+
+                int length = buffer.getInt();
+                ByteBuffer dump = buffer.slice();
+                dump.limit(length);
+                buffer.position(buffer.position() + length);
+
+                snapshot.modules.put(path, new Entry(key, dump));
+            }
+
+            return snapshot;
+        } catch (RuntimeException e) {
+            throw new DumpException("Broken snapshot, " + e);
+        }
+    }
+
+    private static void writeString(DataOutputStream data, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+
+        data.writeInt(bytes.length);
+        data.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    protected static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        public ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+
+            len = Math.min(len, buffer.remaining());
+            buffer.get(b, off, len);
+
+            return len;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
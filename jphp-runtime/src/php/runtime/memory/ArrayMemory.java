@@ -75,7 +75,7 @@ public class ArrayMemory extends Memory implements Iterable<ReferenceMemory> {
     }
 
     public static ArrayMemory createHashed(int expectedSize) {
-        ArrayMemoryMap map = new ArrayMemoryMap(expectedSize < 4 ? 7 : (int) (expectedSize * 1.75));
+        ArrayMemoryMap map = new ArrayMemoryMap(expectedSize < 1 ? 1 : expectedSize);
         return new ArrayMemory(map);
     }
 
@@ -203,11 +203,7 @@ public class ArrayMemory extends Memory implements Iterable<ReferenceMemory> {
             }
         } else {
             result._list = null;
-            result.map = new ArrayMemoryMap();
-
-            for (Map.Entry<Object, Memory> entry : map.entrySet()) {
-                result.map.put(entry.getKey(), entry.getValue().toImmutable());
-            }
+            result.map = map.duplicate();
         }
 
         return result;
@@ -271,7 +267,7 @@ public class ArrayMemory extends Memory implements Iterable<ReferenceMemory> {
     }
 
     private void convertToMap() {
-        map = new ArrayMemoryMap();
+        map = _list == null || _list.isEmpty() ? new ArrayMemoryMap() : new ArrayMemoryMap(_list.size() + 1);
         if (_list != null && !_list.isEmpty()) {
             int i = 0;
             for (ReferenceMemory memory : _list) {
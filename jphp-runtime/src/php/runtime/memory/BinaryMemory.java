@@ -4,18 +4,23 @@ import php.runtime.Memory;
 import php.runtime.env.TraceInfo;
 
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 
+/**
+ * Byte string, the bytes are decoded (as UTF-8) only when a char api needs them, the result is cached.
+ */
 public class BinaryMemory extends StringMemory {
     private byte[] bytes;
+    private String string;
 
     public BinaryMemory(String value) {
         super(null);
-        bytes = value.getBytes();
+        bytes = value.getBytes(StandardCharsets.UTF_8);
+        string = value;
     }
 
     public BinaryMemory(char ch) {
-        super(null);
-        bytes = String.valueOf(ch).getBytes();
+        this(String.valueOf(ch));
     }
 
     public BinaryMemory(byte... bytes){
@@ -32,6 +37,10 @@ public class BinaryMemory extends StringMemory {
         return bytes;
     }
 
+    public int length() {
+        return bytes.length;
+    }
+
     @Override
     public char toChar() {
         return (char)((bytes == null || bytes.length == 0 ? 0 : bytes[0]) & 0xFF);
@@ -39,7 +48,11 @@ public class BinaryMemory extends StringMemory {
 
     @Override
     public String toString() {
-        return new String(bytes, Charset.forName("UTF-8"));
+        if (string == null) {
+            string = new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        return string;
     }
 
     @Override
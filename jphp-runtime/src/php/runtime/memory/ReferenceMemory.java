@@ -613,6 +613,10 @@ public class ReferenceMemory extends Memory {
             case NULL:
             case REFERENCE:
             case ARRAY: return getValue().toImmutable();
+            case STRING:
+                // a builder of .= is changed in place, copies must be immutable
+                if (getValue() instanceof StringBuilderMemory)
+                    return getValue().toImmutable();
             default: return getValue();
         }
     }
@@ -750,13 +754,19 @@ public class ReferenceMemory extends Memory {
         }
     }
 
+    /**
+     * A builder is appended in place only by the reference which created it, a builder received
+     * from other variable (by value) is copied, the other variable must not see the appends.
+     */
     public StringBuilderMemory needStringBuilder(){
-        Memory value = toValue();
+        ReferenceMemory reference = getReference();
+        Memory value = reference.getValue();
 
-        if (value instanceof StringBuilderMemory)
+        if (value instanceof StringBuilderMemory && ((StringBuilderMemory) value).owner == reference)
             return (StringBuilderMemory)value;
 
-        StringBuilderMemory builderMemory = new StringBuilderMemory(getValue().toString());
+        StringBuilderMemory builderMemory = new StringBuilderMemory(value.toString());
+        builderMemory.owner = reference;
         assign(builderMemory);
         return builderMemory;
     }
@@ -6,6 +6,9 @@ public class StringBuilderMemory extends StringMemory {
     StringBuilder builder = null;
     StringMemory cache = null;
 
+    // the reference which appends to this builder in place, see ReferenceMemory.needStringBuilder()
+    Memory owner = null;
+
     public StringBuilderMemory(){
         super("");
     }
@@ -25,11 +28,13 @@ public class StringBuilderMemory extends StringMemory {
         return cache = new StringMemory(toString());
     }
 
+    /**
+     * The builder is kept after reading, so the next append does not copy the whole string into a new builder.
+     */
     @Override
     public String toString() {
-        if (builder != null){
+        if (value == null){
             value = builder.toString();
-            builder = null;
         }
         return value;
     }
@@ -43,26 +48,25 @@ public class StringBuilderMemory extends StringMemory {
         cache = null;
         if (this.builder == null){
             this.builder = new StringBuilder(this.value);
-            this.value = null;
         }
+        this.value = null;
     }
 
     public void append(Memory memory){
-        resolveBuilder();
         switch (memory.type){
             case BOOL:
                 if (memory instanceof FalseMemory)
                     break;
                 else
-                    builder.append(memory.toString());
+                    append(memory.toString());
                 break;
             case NULL: break;
-            case INT: builder.append(((LongMemory)memory).value); break;
-            case DOUBLE: builder.append(((DoubleMemory)memory).value); break;
-            case STRING: builder.append(memory.toString()); break;
+            case INT: append(((LongMemory)memory).value); break;
+            case DOUBLE: append(memory.toString()); break;
             case REFERENCE: append(memory.toImmutable()); break;
             default:
-                builder.append(memory.toString());
+                // the value is taken before resolving the builder, it can be this memory, e.g. $var .= $var
+                append(memory.toString());
         }
     }
 
@@ -85,8 +89,7 @@ public class StringBuilderMemory extends StringMemory {
     }
 
     public void append(double value){
-        resolveBuilder();
-        builder.append(value);
+        append(DoubleMemory.valueOf(value).toString()); // php format, not java
     }
 
     public void append(boolean value){
@@ -102,22 +105,4 @@ public class StringBuilderMemory extends StringMemory {
         else
             return builder.length();
     }
-
-    @Override
-    public boolean equals(Object o) {
-        if (this == o) return true;
-        if (o == null || getClass() != o.getClass()) return false;
-        if (!super.equals(o)) return false;
-
-        StringBuilderMemory that = (StringBuilderMemory) o;
-
-        return builder != null ? builder.equals(that.builder) : that.builder == null;
-    }
-
-    @Override
-    public int hashCode() {
-        int result = super.hashCode();
-        result = 31 * result + (builder != null ? builder.hashCode() : 0);
-        return result;
-    }
 }
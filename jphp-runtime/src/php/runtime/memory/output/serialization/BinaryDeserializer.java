@@ -0,0 +1,269 @@
+package php.runtime.memory.output.serialization;
+
+import php.runtime.Memory;
+import php.runtime.common.Messages;
+import php.runtime.env.Environment;
+import php.runtime.env.TraceInfo;
+import php.runtime.exceptions.support.ErrorType;
+import php.runtime.lang.IObject;
+import php.runtime.lang.spl.Serializable;
+import php.runtime.memory.*;
+import php.runtime.reflection.ClassEntity;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static php.runtime.memory.output.serialization.BinarySerializer.*;
+
+/**
+ * Reads the format of {@link BinarySerializer}.
+ */
+public class BinaryDeserializer {
+    protected final Environment env;
+    protected final TraceInfo trace;
+
+    protected byte[] input;
+    protected int pos;
+    protected final List<String> strings = new ArrayList<>();
+
+    public BinaryDeserializer(Environment env, TraceInfo trace) {
+        this.env = env;
+        this.trace = trace;
+    }
+
+    protected Memory error(int offset, int length) {
+        env.error(trace, ErrorType.E_NOTICE, "unserialize_binary(): Error at offset %s of %s bytes", offset, length);
+        return Memory.NULL;
+    }
+
+    public static boolean hasHeader(byte[] input) {
+        if (input.length < HEADER.length) {
+            return false;
+        }
+
+        for (int i = 0; i < HEADER.length; i++) {
+            if (input[i] != HEADER[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @return null with a notice if the input is invalid
+     */
+    public Memory read(byte[] input) {
+        this.input = input;
+        this.strings.clear();
+
+        if (!hasHeader(input)) {
+            return error(0, input.length);
+        }
+
+        this.pos = HEADER.length;
+
+        try {
+            Memory result = readValue();
+
+            if (result == null || pos != input.length) {
+                return error(pos, input.length);
+            }
+
+            return result;
+        } catch (ArrayIndexOutOfBoundsException | NegativeArraySizeException e) {
+            return error(Math.min(pos, input.length), input.length);
+        }
+    }
+
+    /**
+     * @return null if the input is invalid
+     */
+    protected Memory readValue() {
+        int tag = input[pos++];
+
+        switch (tag) {
+            case TAG_NULL:
+                return Memory.NULL;
+            case TAG_FALSE:
+                return Memory.FALSE;
+            case TAG_TRUE:
+                return Memory.TRUE;
+            case TAG_INT: {
+                long value = readVarLong();
+                return LongMemory.valueOf((value >>> 1) ^ -(value & 1));
+            }
+            case TAG_DOUBLE:
+                return DoubleMemory.valueOf(Double.longBitsToDouble(readLong()));
+            case TAG_STRING:
+            case TAG_STRING_REF: {
+                String value = readString(tag);
+                return value == null ? null : StringMemory.valueOf(value);
+            }
+            case TAG_BINARY: {
+                int length = readSize();
+                byte[] bytes = new byte[length];
+                System.arraycopy(input, pos, bytes, 0, length);
+                pos += length;
+
+                return new BinaryMemory(bytes);
+            }
+            case TAG_LIST: {
+                int size = readSize();
+                ArrayMemory result = ArrayMemory.createListed(size);
+
+                for (int i = 0; i < size; i++) {
+                    Memory value = readValue();
+                    if (value == null)
+                        return null;
+
+                    result.add(value);
+                }
+
+                return result;
+            }
+            case TAG_ARRAY: {
+                int size = readSize();
+                ArrayMemory result = ArrayMemory.createHashed(size);
+
+                return readItems(result, size) ? result : null;
+            }
+            case TAG_OBJECT:
+                return readObject(false);
+            case TAG_SERIALIZABLE:
+                return readObject(true);
+            default:
+                pos--;
+                return null;
+        }
+    }
+
+    protected boolean readItems(ArrayMemory result, int size) {
+        for (int i = 0; i < size; i++) {
+            Memory key = readValue();
+            if (key == null)
+                return false;
+
+            Memory value = readValue();
+            if (value == null)
+                return false;
+
+            result.put(ArrayMemory.toKey(key), value);
+        }
+
+        return true;
+    }
+
+    protected Memory readObject(boolean isSerializable) {
+        String className = readString(input[pos++]);
+        if (className == null)
+            return null;
+
+        ClassEntity classEntity = env.fetchClass(className, true);
+        if (classEntity == null) {
+            env.error(trace, ErrorType.E_ERROR, Messages.ERR_CLASS_NOT_FOUND, className);
+            return Memory.NULL;
+        }
+
+        try {
+            IObject iObject = classEntity.newObjectWithoutConstruct(env);
+            if (iObject == null) {
+                env.exception(
+                        trace,
+                        new Messages.Item("Unserialization of '%s' is not allowed").fetch(classEntity.getName())
+                );
+            }
+
+            if (isSerializable) {
+                Memory data = readValue();
+                if (data == null)
+                    return null;
+
+                if (!(iObject instanceof Serializable)) {
+                    env.warning(trace, "Class %s has no unserializer", classEntity.getName());
+                    return Memory.NULL;
+                }
+
+                iObject.callMethod(env, "unserialize", data);
+            } else {
+                int size = readSize();
+                ArrayMemory props = ArrayMemory.createHashed(size);
+
+                if (!readItems(props, size))
+                    return null;
+
+                iObject.getProperties().putAll(props);
+
+                if (classEntity.methodMagicWakeup != null) {
+                    env.pushCall(trace, iObject, classEntity.methodMagicWakeup.getName());
+                    try {
+                        classEntity.methodMagicWakeup.invokeDynamic(iObject, env, trace);
+                    } finally {
+                        env.popCall();
+                    }
+                }
+            }
+
+            return new ObjectMemory(iObject);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Throwable throwable) {
+            throw new RuntimeException(throwable);
+        }
+    }
+
+    protected String readString(int tag) {
+        switch (tag) {
+            case TAG_STRING: {
+                int length = readSize();
+                String value = new String(input, pos, length, StandardCharsets.UTF_8);
+                pos += length;
+
+                strings.add(value);
+                return value;
+            }
+            case TAG_STRING_REF: {
+                long index = readVarLong();
+                return index >= 0 && index < strings.size() ? strings.get((int) index) : null;
+            }
+            default:
+                return null;
+        }
+    }
+
+    protected int readSize() {
+        long size = readVarLong();
+
+        if (size < 0 || size > input.length - pos) {
+            throw new ArrayIndexOutOfBoundsException((int) Math.min(size, Integer.MAX_VALUE));
+        }
+
+        return (int) size;
+    }
+
+    protected long readVarLong() {
+        long result = 0;
+
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = input[pos++];
+            result |= (long) (b & 0x7F) << shift;
+
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+
+        throw new ArrayIndexOutOfBoundsException(pos);
+    }
+
+    protected long readLong() {
+        long result = 0;
+
+        for (int i = 0; i < 8; i++) {
+            result = (result << 8) | (input[pos++] & 0xFF);
+        }
+
+        return result;
+    }
+}
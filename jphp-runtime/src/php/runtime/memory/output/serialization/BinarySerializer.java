@@ -0,0 +1,266 @@
+package php.runtime.memory.output.serialization;
+
+import php.runtime.Memory;
+import php.runtime.env.Environment;
+import php.runtime.env.TraceInfo;
+import php.runtime.lang.ForeachIterator;
+import php.runtime.lang.IObject;
+import php.runtime.lang.spl.Serializable;
+import php.runtime.memory.*;
+import php.runtime.reflection.ClassEntity;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Compact binary format of serialize(): varint integers and sizes, strings are written once and then
+ * referenced by index (keys, class and property names), lists are written without keys.
+ *
+ * The format:
+ *  header: 0x00 'J' 'B' VERSION
+ *  value: TAG [data]
+ *
+ * Recursive arrays and objects are written as null like in the text format.
+ */
+public class BinarySerializer {
+    public static final byte[] HEADER = {0x00, 'J', 'B', 1};
+
+    public static final int TAG_NULL = 0;
+    public static final int TAG_FALSE = 1;
+    public static final int TAG_TRUE = 2;
+    public static final int TAG_INT = 3; // zigzag varint
+    public static final int TAG_DOUBLE = 4; // 8 bytes
+    public static final int TAG_STRING = 5; // varint length, utf-8 bytes, is added to the string table
+    public static final int TAG_STRING_REF = 6; // varint index in the string table
+    public static final int TAG_BINARY = 7; // varint length, bytes
+    public static final int TAG_LIST = 8; // varint size, values
+    public static final int TAG_ARRAY = 9; // varint size, key-value pairs
+    public static final int TAG_OBJECT = 10; // class name, varint size, property-value pairs
+    public static final int TAG_SERIALIZABLE = 11; // class name, data of serialize()
+
+    protected final Environment env;
+    protected final TraceInfo trace;
+
+    protected byte[] buffer = new byte[256];
+    protected int count = 0;
+
+    protected final Map<String, Integer> strings = new HashMap<>();
+    protected final Set<Object> used = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+
+    public BinarySerializer(Environment env, TraceInfo trace) {
+        this.env = env;
+        this.trace = trace;
+    }
+
+    /**
+     * @return serialized value with the header
+     */
+    public byte[] serialize(Memory memory) {
+        writeBytes(HEADER, 0, HEADER.length);
+        write(memory);
+
+        return toByteArray();
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, count);
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public void write(Memory memory) {
+        switch (memory.type) {
+            case NULL:
+                writeTag(TAG_NULL);
+                break;
+            case BOOL:
+                writeTag(memory.toBoolean() ? TAG_TRUE : TAG_FALSE);
+                break;
+            case INT:
+                writeTag(TAG_INT);
+                writeVarLong((memory.toLong() << 1) ^ (memory.toLong() >> 63));
+                break;
+            case DOUBLE:
+                writeTag(TAG_DOUBLE);
+                writeLong(Double.doubleToLongBits(memory.toDouble()));
+                break;
+            case STRING:
+                if (memory instanceof BinaryMemory) {
+                    byte[] bytes = memory.getBinaryBytes(StandardCharsets.UTF_8);
+
+                    writeTag(TAG_BINARY);
+                    writeVarLong(bytes.length);
+                    writeBytes(bytes, 0, bytes.length);
+                } else {
+                    writeString(memory.toString());
+                }
+                break;
+            case ARRAY:
+                writeArray((ArrayMemory) memory);
+                break;
+            case OBJECT:
+                writeObject((ObjectMemory) memory);
+                break;
+            case REFERENCE:
+                if (!memory.isShortcut())
+                    write(memory.toValue());
+                else
+                    writeTag(TAG_NULL);
+                break;
+        }
+    }
+
+    public void writeString(String value) {
+        Integer index = strings.get(value);
+
+        if (index != null) {
+            writeTag(TAG_STRING_REF);
+            writeVarLong(index);
+            return;
+        }
+
+        strings.put(value, strings.size());
+
+        writeTag(TAG_STRING);
+        writeUtf8(value);
+    }
+
+    public void writeArray(ArrayMemory memory) {
+        if (!used.add(memory)) {
+            writeTag(TAG_NULL); // recursion
+            return;
+        }
+
+        try {
+            boolean list = memory.isList();
+
+            writeTag(list ? TAG_LIST : TAG_ARRAY);
+            writeVarLong(memory.size());
+            writeItems(memory, !list);
+        } finally {
+            used.remove(memory);
+        }
+    }
+
+    public void writeObject(ObjectMemory memory) {
+        if (!used.add(memory.value)) {
+            writeTag(TAG_NULL); // recursion
+            return;
+        }
+
+        try {
+            writeObject(memory, memory.value);
+        } finally {
+            used.remove(memory.value);
+        }
+    }
+
+    protected void writeObject(ObjectMemory memory, IObject object) {
+        ClassEntity reflection = object.getReflection();
+
+        if (object instanceof Serializable) {
+            Memory result = object.callMethod(env, "serialize");
+
+            if (result.isNull()) {
+                writeTag(TAG_NULL);
+                return;
+            }
+
+            if (result.isString()) {
+                writeTag(TAG_SERIALIZABLE);
+                writeString(reflection.getName());
+                write(result);
+                return;
+            } else {
+                env.exception(trace, reflection.getName() + "::serialize() must return a string or NULL");
+            }
+        }
+
+        ArrayMemory props = Serializer.sleep(env, trace, memory);
+        if (props == null) {
+            writeTag(TAG_NULL);
+            return;
+        }
+
+        writeTag(TAG_OBJECT);
+        writeString(reflection.getName());
+        writeVarLong(props.size());
+        writeItems(props, true);
+    }
+
+    protected void writeItems(ArrayMemory memory, boolean withKeys) {
+        ForeachIterator iterator = memory.foreachIterator(false, false);
+
+        while (iterator.next()) {
+            if (withKeys) {
+                Object key = iterator.getKey();
+
+                if (key instanceof String) {
+                    writeString((String) key);
+                } else {
+                    write(iterator.getMemoryKey());
+                }
+            }
+
+            write(iterator.getValue());
+        }
+    }
+
+    protected void writeTag(int tag) {
+        ensureCapacity(1);
+        buffer[count++] = (byte) tag;
+    }
+
+    protected void writeVarLong(long value) {
+        ensureCapacity(10);
+
+        while ((value & ~0x7FL) != 0) {
+            buffer[count++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+
+        buffer[count++] = (byte) value;
+    }
+
+    protected void writeLong(long value) {
+        ensureCapacity(8);
+
+        for (int i = 56; i >= 0; i -= 8) {
+            buffer[count++] = (byte) (value >>> i);
+        }
+    }
+
+    protected void writeBytes(byte[] bytes, int offset, int length) {
+        ensureCapacity(length);
+        System.arraycopy(bytes, offset, buffer, count, length);
+        count += length;
+    }
+
+    protected void writeUtf8(String value) {
+        int length = value.length();
+
+        for (int i = 0; i < length; i++) {
+            if (value.charAt(i) >= 0x80) {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                writeVarLong(bytes.length);
+                writeBytes(bytes, 0, bytes.length);
+                return;
+            }
+        }
+
+        writeVarLong(length);
+        ensureCapacity(length);
+
+        for (int i = 0; i < length; i++) {
+            buffer[count++] = (byte) value.charAt(i);
+        }
+    }
+
+    protected void ensureCapacity(int size) {
+        if (count + size > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length << 1, count + size));
+        }
+    }
+}
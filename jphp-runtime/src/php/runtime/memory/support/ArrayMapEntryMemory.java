@@ -6,47 +6,17 @@ import php.runtime.memory.ReferenceMemory;
 
 import java.util.Map;
 
-public class ArrayMapEntryMemory extends ReferenceMemory implements Map.Entry<Object, Memory>, KeyValue<Object, Memory> {
-    /**
-     * The next entry in the hash chain
-     */
-    protected ArrayMapEntryMemory next;
-
-    /**
-     * The entry before this one in the order
-     */
-    protected ArrayMapEntryMemory before;
-    /**
-     * The entry after this one in the order
-     */
-    protected ArrayMapEntryMemory after;
-
-    /**
-     * The hash code of the key
-     */
-    protected int hashCode;
-
-    /**
-     * The key
-     */
-    private Object key;
-
-    public ArrayMapEntryMemory(ArrayMapEntryMemory next, int hashCode, Object key, Memory value) {
+/**
+ * Value cell of {@link ArrayMemoryMap}. Hashes and the order of entries are kept by the map in plain arrays,
+ * an entry holds only its value and key.
+ */
+abstract public class ArrayMapEntryMemory extends ReferenceMemory implements Map.Entry<Object, Memory>, KeyValue<Object, Memory> {
+    protected ArrayMapEntryMemory(Memory value) {
         super(value);
-
-        this.next = next;
-        this.hashCode = hashCode;
-        this.key = key;
     }
 
     @Override
-    public Object getKey() {
-        return key;
-    }
-
-    public void setKey(Object key) {
-        this.key = key;
-    }
+    abstract public Object getKey();
 
     public boolean equals(Object obj) {
         if (obj == this) {
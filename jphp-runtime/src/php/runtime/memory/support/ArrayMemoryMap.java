@@ -5,10 +5,18 @@ import php.runtime.common.Pair;
 import php.runtime.common.collections.*;
 import php.runtime.common.collections.iterators.*;
 import php.runtime.common.collections.list.UnmodifiableList;
+import php.runtime.memory.LongMemory;
 
 import java.io.Serializable;
 import java.util.*;
 
+/**
+ * Ordered hash map of array memory.
+ *
+ * Entries are stored in insertion order in a plain array, removed entries leave holes which are compacted
+ * on the next growth. Buckets and collision chains are int positions in that array, integer keys are kept
+ * as primitive longs, so an entry costs only its value cell.
+ */
 public class ArrayMemoryMap extends AbstractMap<Object, Memory>
         implements IterableMap<Object, Memory>, OrderedMap<Object, Memory>, Serializable {
     /**
@@ -26,40 +34,40 @@ public class ArrayMemoryMap extends AbstractMap<Object, Memory>
     /**
      * The default capacity to use
      */
-    protected static final int DEFAULT_CAPACITY = 11;
+    protected static final int DEFAULT_CAPACITY = 8;
     /**
-     * The default threshold to use
+     * The maximum capacity allowed
      */
-    protected static final int DEFAULT_THRESHOLD = 8;
+    protected static final int MAXIMUM_CAPACITY = 1 << 30;
+
     /**
-     * The default load factor to use
+     * Entries in insertion order, null for removed ones
      */
-    protected static final float DEFAULT_LOAD_FACTOR = 0.75f;
+    protected transient ArrayMapEntryMemory[] entries;
     /**
-     * The maximum capacity allowed
+     * Hash codes of entries
      */
-    protected static final int MAXIMUM_CAPACITY = 1 << 30;
+    protected transient int[] hashes;
     /**
-     * An object for masking null
+     * Position of the next entry of the same bucket, -1 for the last one
      */
-    protected static final Object NULL = new Object();
-
+    protected transient int[] chain;
     /**
-     * Load factor, normally 0.75
+     * Position of the first entry of each bucket, -1 for empty buckets
      */
-    protected transient float loadFactor;
+    protected transient int[] buckets;
     /**
-     * The size of the map
+     * Count of used positions in entries
      */
-    protected transient int size;
+    protected transient int used;
     /**
-     * Map entries
+     * Position of the first entry, all positions before it are holes
      */
-    protected transient ArrayMapEntryMemory[] data;
+    protected transient int head;
     /**
-     * Size at which to rehash
+     * The size of the map
      */
-    protected transient int threshold;
+    protected transient int size;
     /**
      * Modification count for iterators
      */
@@ -77,63 +85,33 @@ public class ArrayMemoryMap extends AbstractMap<Object, Memory>
      */
     protected transient Values values;
 
-    protected transient ArrayMapEntryMemory header;
-
-    /**
-     * Constructor only used in deserialization, do not use otherwise.
-     */
     public ArrayMemoryMap() {
-        this(DEFAULT_CAPACITY, DEFAULT_LOAD_FACTOR, DEFAULT_THRESHOLD);
+        this(DEFAULT_CAPACITY);
     }
 
     /**
-     * Constructor which performs no validation on the passed in parameters.
-     *
-     * @param initialCapacity the initial capacity, must be a power of two
-     * @param loadFactor      the load factor, must be &gt; 0.0f and generally &lt; 1.0f
-     * @param threshold       the threshold, must be sensible
-     */
-    protected ArrayMemoryMap(int initialCapacity, float loadFactor, int threshold) {
-        super();
-        this.loadFactor = loadFactor;
-        this.data = new ArrayMapEntryMemory[initialCapacity];
-        this.threshold = threshold;
-        init();
-    }
-
-    /**
-     * Constructs a new, empty map with the specified initial capacity and
-     * default load factor.
+     * Constructs a new, empty map with the specified initial capacity.
      *
      * @param initialCapacity the initial capacity
      * @throws IllegalArgumentException if the initial capacity is less than one
      */
     public ArrayMemoryMap(int initialCapacity) {
-        this(initialCapacity, DEFAULT_LOAD_FACTOR);
+        super();
+        if (initialCapacity < 1) {
+            throw new IllegalArgumentException("Initial capacity must be greater than 0");
+        }
+        init(calculateNewCapacity(initialCapacity));
     }
 
     /**
-     * Constructs a new, empty map with the specified initial capacity and
-     * load factor.
-     *
-     * @param initialCapacity the initial capacity
-     * @param loadFactor      the load factor
-     * @throws IllegalArgumentException if the initial capacity is less than one
-     * @throws IllegalArgumentException if the load factor is less than or equal to zero
+     * Constructs a new, empty map with the specified initial capacity,
+     * the load factor is kept for compatibility and is not used.
      */
     public ArrayMemoryMap(int initialCapacity, float loadFactor) {
-        super();
-        if (initialCapacity < 1) {
-            throw new IllegalArgumentException("Initial capacity must be greater than 0");
-        }
+        this(initialCapacity);
         if (loadFactor <= 0.0f || Float.isNaN(loadFactor)) {
             throw new IllegalArgumentException("Load factor must be greater than 0");
         }
-        this.loadFactor = loadFactor;
-        this.threshold = calculateThreshold(initialCapacity, loadFactor);
-        initialCapacity = calculateNewCapacity(initialCapacity);
-        this.data = new ArrayMapEntryMemory[initialCapacity];
-        init();
     }
 
     /**
@@ -143,16 +121,37 @@ public class ArrayMemoryMap extends AbstractMap<Object, Memory>
      * @throws NullPointerException if the map is null
      */
     public ArrayMemoryMap(ArrayMemoryMap map) {
-        this(Math.max(2 * map.size(), DEFAULT_CAPACITY), DEFAULT_LOAD_FACTOR);
+        this(Math.max(map.size(), DEFAULT_CAPACITY));
         putAll(map);
     }
 
+    protected void init(int capacity) {
+        entries = new ArrayMapEntryMemory[capacity];
+        hashes = new int[capacity];
+        chain = new int[capacity];
+        buckets = new int[capacity];
+        Arrays.fill(buckets, -1);
+
+        used = 0;
+        head = 0;
+        size = 0;
+    }
+
     /**
-     * Initialise subclasses during construction, cloning or deserialization.
+     * Copy of the map with immutable values, entries keep their order.
      */
-    protected void init() {
-        header = new ArrayMapEntryMemory(null, -1, null, null);
-        header.before = header.after = header;
+    public ArrayMemoryMap duplicate() {
+        ArrayMemoryMap result = new ArrayMemoryMap(Math.max(size, DEFAULT_CAPACITY));
+
+        for (int i = head; i < used; i++) {
+            ArrayMapEntryMemory entry = entries[i];
+
+            if (entry != null) {
+                result.addMapping(hashes[i], copyEntry(entry, entry.getValue().toImmutable()));
+            }
+        }
+
+        return result;
     }
 
     /**
@@ -184,13 +183,20 @@ public class ArrayMemoryMap extends AbstractMap<Object, Memory>
      * @return the index, or -1 if not found
      */
     public int indexOf(Object key) {
-        int i = 0;
-        for (ArrayMapEntryMemory entry = header.after; entry != header; entry = entry.after, i++) {
-            if (isEqualKey(key, entry.getKey())) {
-                return i;
+        int position = positionOf(key);
+
+        if (position < 0) {
+            return -1;
+        }
+
+        int index = 0;
+        for (int i = head; i < position; i++) {
+            if (entries[i] != null) {
+                index++;
             }
         }
-        return -1;
+
+        return index;
     }
 
     /**
@@ -207,15 +213,6 @@ public class ArrayMemoryMap extends AbstractMap<Object, Memory>
 
     /**
      * Gets an unmodifiable List view of the keys.
-     * <p/>
-     * The returned list is unmodifiable because changes to the values of
-     * the list (using {@link java.util.ListIterator#set(Object)}) will
-     * effectively remove the value from the list and reinsert that value at
-     * the end of the list, which is an unexpected side effect of changing the
-     * value of a list.  This occurs because changing the key, changes when the
-     * mapping is added to the map and thus where it appears in the list.
-     * <p/>
-     * An alternative to this method is to use {@link #keySet()}.
      *
      * @return The ordered list of keys.
      * @see #keySet()
@@ -309,15 +306,8 @@ public class ArrayMemoryMap extends AbstractMap<Object, Memory>
      * @return the mapped value, null if no match
      */
     public Memory get(Object key) {
-        int hashCode = hash((key == null) ? NULL : key);
-        ArrayMapEntryMemory entry = data[hashIndex(hashCode, data.length)]; // no local for hash index
-        while (entry != null) {
-            if (entry.hashCode == hashCode && isEqualKey(key, entry.getKey())) {
-                return entry.getValue();
-            }
-            entry = entry.next;
-        }
-        return null;
+        int position = positionOf(key);
+        return position < 0 ? null : entries[position].getValue();
     }
 
     /**
@@ -333,6 +323,7 @@ public class ArrayMemoryMap extends AbstractMap<Object, Memory>
     public boolean isEmpty() {
         return (size == 0);
     }
+
     /**
      * Checks whether the map contains the specified key.
      *
@@ -340,15 +331,7 @@ public class ArrayMemoryMap extends AbstractMap<Object, Memory>
      * @return true if the map contains the key
      */
     public boolean containsKey(Object key) {
-        int hashCode = hash((key == null) ? NULL : key);
-        ArrayMapEntryMemory entry = data[hashIndex(hashCode, data.length)]; // no local for hash index
-        while (entry != null) {
-            if (entry.hashCode == hashCode && isEqualKey(key, entry.getKey())) {
-                return true;
-            }
-            entry = entry.next;
-        }
-        return false;
+        return positionOf(key) >= 0;
     }
 
     /**
@@ -358,16 +341,11 @@ public class ArrayMemoryMap extends AbstractMap<Object, Memory>
      * @return true if the map contains the value
      */
     public boolean containsValue(Object value) {
-        // override uses faster iterator
-        if (value == null) {
-            for (ArrayMapEntryMemory entry = header.after; entry != header; entry = entry.after) {
-                if (entry.getValue() == null) {
-                    return true;
-                }
-            }
-        } else {
-            for (ArrayMapEntryMemory entry = header.after; entry != header; entry = entry.after) {
-                if (isEqualValue(value, entry.getValue())) {
+        for (int i = head; i < used; i++) {
+            ArrayMapEntryMemory entry = entries[i];
+
+            if (entry != null) {
+                if (value == null ? entry.getValue() == null : isEqualValue(value, entry.getValue())) {
                     return true;
                 }
             }
@@ -387,22 +365,17 @@ public class ArrayMemoryMap extends AbstractMap<Object, Memory>
     }
 
     public Pair<Memory, ArrayMapEntryMemory> putWithEntry(Object key, Memory value) {
-        int hashCode = hash((key == null) ? NULL : key);
-        int index = hashIndex(hashCode, data.length);
-        ArrayMapEntryMemory entry = data[index];
+        int hashCode = hash(key);
+        int position = positionOf(key, hashCode);
 
-        while (entry != null) {
-            if (entry.hashCode == hashCode && isEqualKey(key, entry.getKey())) {
-                Memory oldValue = entry.getValue();
-                updateEntry(entry, value);
-                return new Pair<>(oldValue, entry);
-            }
-
-            entry = entry.next;
+        if (position >= 0) {
+            ArrayMapEntryMemory entry = entries[position];
+            Memory oldValue = entry.getValue();
+            entry.setValue(value);
+            return new Pair<>(oldValue, entry);
         }
 
-        entry = addMapping(index, hashCode, key, value);
-        return new Pair<>(null, entry);
+        return new Pair<>(null, addMapping(hashCode, createEntry(key, value)));
     }
 
     /**
@@ -412,16 +385,18 @@ public class ArrayMemoryMap extends AbstractMap<Object, Memory>
      * @throws NullPointerException if the map is null
      */
     public void putAll(ArrayMemoryMap map) {
-        int mapSize = map.size();
-        if (mapSize == 0) {
+        if (map.size() == 0) {
             return;
         }
-        int newSize = (int) ((size + mapSize) / loadFactor + 1);
-        ensureCapacity(calculateNewCapacity(newSize));
-        // Have to cast here because of compiler inference problems.
-        for (Iterator it = map.entrySet().iterator(); it.hasNext();) {
-            ArrayMapEntryMemory entry = (ArrayMapEntryMemory) it.next();
-            put(entry.getKey(), entry.getValue());
+
+        ensureCapacity(calculateNewCapacity(size + map.size()));
+
+        for (int i = map.head; i < map.used; i++) {
+            ArrayMapEntryMemory entry = map.entries[i];
+
+            if (entry != null) {
+                put(entry.getKey(), entry.getValue());
+            }
         }
     }
 
@@ -432,19 +407,27 @@ public class ArrayMemoryMap extends AbstractMap<Object, Memory>
      * @return the value mapped to the removed key, null if key not in map
      */
     public Memory remove(Object key) {
-        int hashCode = hash((key == null) ? NULL : key);
-        int index = hashIndex(hashCode, data.length);
-        ArrayMapEntryMemory entry = data[index];
-        ArrayMapEntryMemory previous = null;
-        while (entry != null) {
-            if (entry.hashCode == hashCode && isEqualKey(key, entry.getKey())) {
+        int hashCode = hash(key);
+        int bucket = hashCode & (buckets.length - 1);
+        int previous = -1;
+
+        for (int i = buckets[bucket]; i >= 0; previous = i, i = chain[i]) {
+            if (hashes[i] == hashCode && isEqualKey(key, entries[i])) {
+                if (previous < 0) {
+                    buckets[bucket] = chain[i];
+                } else {
+                    chain[previous] = chain[i];
+                }
+
+                ArrayMapEntryMemory entry = entries[i];
                 Memory oldValue = entry.getValue();
-                removeMapping(entry, index, previous);
+
+                removeMapping(i);
+                destroyEntry(entry);
                 return oldValue;
             }
-            previous = entry;
-            entry = entry.next;
         }
+
         return null;
     }
 
@@ -454,39 +437,37 @@ public class ArrayMemoryMap extends AbstractMap<Object, Memory>
      */
     public void clear() {
         modCount++;
-        ArrayMapEntryMemory[] data = this.data;
-        for (int i = data.length - 1; i >= 0; i--) {
-            data[i] = null;
-        }
+        Arrays.fill(entries, 0, used, null);
+        Arrays.fill(buckets, -1);
+        used = 0;
+        head = 0;
         size = 0;
-
-        header.before = header.after = header;
     }
 
     /**
-     * Gets the first key in the map, which is the most recently inserted.
+     * Gets the first key in the map, which is the eldest.
      *
-     * @return the most recently inserted key
+     * @return the eldest key
      */
     public Object firstKey() {
         if (size == 0) {
             throw new NoSuchElementException("Map is empty");
         }
 
-        return header.after.getKey();
+        return entries[head].getKey();
     }
 
     /**
-     * Gets the last key in the map, which is the first inserted.
+     * Gets the last key in the map, which is the most recently inserted.
      *
-     * @return the eldest key
+     * @return the most recently inserted key
      */
     public Object lastKey() {
         if (size == 0) {
             throw new NoSuchElementException("Map is empty");
         }
 
-        return header.before.getKey();
+        return entries[used - 1].getKey();
     }
 
     /**
@@ -496,8 +477,14 @@ public class ArrayMemoryMap extends AbstractMap<Object, Memory>
      * @return the next key
      */
     public Object nextKey(Object key) {
-        ArrayMapEntryMemory entry = (ArrayMapEntryMemory) getEntry(key);
-        return (entry == null || entry.after == header ? null : entry.after.getKey());
+        int position = positionOf(key);
+
+        if (position < 0) {
+            return null;
+        }
+
+        position = nextPosition(position + 1);
+        return position < used ? entries[position].getKey() : null;
     }
 
     /**
@@ -507,45 +494,41 @@ public class ArrayMemoryMap extends AbstractMap<Object, Memory>
      * @return the previous key
      */
     public Object previousKey(Object key) {
-        ArrayMapEntryMemory entry = (ArrayMapEntryMemory) getEntry(key);
-        return (entry == null || entry.before == header ? null : entry.before.getKey());
+        int position = positionOf(key);
+
+        if (position < 0) {
+            return null;
+        }
+
+        position = previousPosition(position - 1);
+        return position >= 0 ? entries[position].getKey() : null;
     }
 
     /**
-     * Gets the hash code for the key specified.
-     * This implementation uses the additional hashing routine from JDK1.4.
-     * Subclasses can override this to return alternate hash codes.
+     * Gets the hash code for the key specified, integer keys are hashed the same as {@link LongMemory}.
      *
      * @param key the key to get a hash code for
      * @return the hash code
      */
-    protected int hash(Object key) {
-        // same as JDK 1.4
-        /*int h = key.hashCode();
-        h += ~(h << 9);
-        h ^= (h >>> 14);
-        h += (h << 4);
-        h ^= (h >>> 10);*/
-        return key.hashCode();
+    protected static int hash(Object key) {
+        int h = key == null ? 0 : key.hashCode();
+        return h ^ (h >>> 16);
     }
 
     /**
-     * Compares two keys, in internal converted form, to see if they are equal.
-     * This implementation uses the equals method.
-     * Subclasses can override this to match differently.
-     *
-     * @param key1 the first key to compare passed in from outside
-     * @param key2 the second key extracted from the entry via <code>entry.key</code>
-     * @return true if equal
+     * Compares a key passed from outside with the key of an entry.
      */
-    protected boolean isEqualKey(Object key1, Object key2) {
-        return (key1 == key2 || ((key1 != null) && key1.equals(key2)));
+    protected static boolean isEqualKey(Object key, ArrayMapEntryMemory entry) {
+        if (entry instanceof LongKeyEntry) {
+            return key instanceof LongMemory && ((LongMemory) key).value == ((LongKeyEntry) entry).key;
+        }
+
+        Object entryKey = ((ObjectKeyEntry) entry).key;
+        return key == entryKey || (key != null && key.equals(entryKey));
     }
 
     /**
      * Compares two values, in external form, to see if they are equal.
-     * This implementation uses the equals method and assumes neither value is null.
-     * Subclasses can override this to match differently.
      *
      * @param value1 the first value to compare passed in from outside
      * @param value2 the second value extracted from the entry via <code>getValue()</code>
@@ -555,39 +538,71 @@ public class ArrayMemoryMap extends AbstractMap<Object, Memory>
         return (value1 == value2 || value1.equals(value2));
     }
 
+    protected int positionOf(Object key) {
+        return positionOf(key, hash(key));
+    }
+
+    protected int positionOf(Object key, int hashCode) {
+        int[] hashes = this.hashes;
+        int[] chain = this.chain;
+        ArrayMapEntryMemory[] entries = this.entries;
+
+        int i = buckets[hashCode & (buckets.length - 1)];
+
+        if (key instanceof LongMemory) {
+            long value = ((LongMemory) key).value;
+
+            for (; i >= 0; i = chain[i]) {
+                if (hashes[i] == hashCode) {
+                    ArrayMapEntryMemory entry = entries[i];
+
+                    if (entry instanceof LongKeyEntry && ((LongKeyEntry) entry).key == value) {
+                        return i;
+                    }
+                }
+            }
+        } else {
+            for (; i >= 0; i = chain[i]) {
+                if (hashes[i] == hashCode && isEqualKey(key, entries[i])) {
+                    return i;
+                }
+            }
+        }
+
+        return -1;
+    }
+
     /**
-     * Gets the index into the data storage for the hashCode specified.
-     * This implementation uses the least significant bits of the hashCode.
-     * Subclasses can override this to return alternate bucketing.
-     *
-     * @param hashCode the hash code to use
-     * @param dataSize the size of the data to pick a bucket from
-     * @return the bucket index
+     * @return position of the first entry at or after the position, {@link #used} if there is no such entry.
      */
-    protected int hashIndex(int hashCode, int dataSize) {
-        return hashCode & (dataSize - 1);
+    protected int nextPosition(int position) {
+        while (position < used && entries[position] == null) {
+            position++;
+        }
+
+        return position;
+    }
+
+    /**
+     * @return position of the last entry at or before the position, -1 if there is no such entry.
+     */
+    protected int previousPosition(int position) {
+        while (position >= head && entries[position] == null) {
+            position--;
+        }
+
+        return position < head ? -1 : position;
     }
 
     /**
      * Gets the entry mapped to the key specified.
-     * <p/>
-     * This method exists for subclasses that may need to perform a multi-step
-     * process accessing the entry. The public methods in this class don't use this
-     * method to gain a small performance boost.
      *
      * @param key the key
      * @return the entry, null if no match
      */
     public ArrayMapEntryMemory getEntry(Object key) {
-        int hashCode = hash((key == null) ? NULL : key);
-        ArrayMapEntryMemory entry = data[hashIndex(hashCode, data.length)]; // no local for hash index
-        while (entry != null) {
-            if (entry.hashCode == hashCode && isEqualKey(key, entry.getKey())) {
-                return entry;
-            }
-            entry = entry.next;
-        }
-        return null;
+        int position = positionOf(key);
+        return position < 0 ? null : entries[position];
     }
 
     protected ArrayMapEntryMemory getEntry(int index) {
@@ -598,229 +613,135 @@ public class ArrayMemoryMap extends AbstractMap<Object, Memory>
             throw new IndexOutOfBoundsException("Index " + index + " is invalid for size " + size);
         }
 
-        ArrayMapEntryMemory entry;
-        if (index < (size / 2)) {
-            // Search forwards
-            entry = header.after;
-            for (int currentIndex = 0; currentIndex < index; currentIndex++) {
-                entry = entry.after;
-            }
-        } else {
-            // Search backwards
-            entry = header;
-            for (int currentIndex = size; currentIndex > index; currentIndex--) {
-                entry = entry.before;
-            }
+        if (used - head == size) {
+            return entries[head + index];
         }
-        return entry;
+
+        int position = nextPosition(head);
+        for (int i = 0; i < index; i++) {
+            position = nextPosition(position + 1);
+        }
+
+        return entries[position];
     }
 
-    /**
-     * Updates an existing key-value mapping to change the value.
-     * <p/>
-     * This implementation calls <code>setValue()</code> on the entry.
-     * Subclasses could override to handle changes to the map.
-     *
-     * @param entry    the entry to update
-     * @param newValue the new value to store
-     */
-    protected void updateEntry(ArrayMapEntryMemory entry, Memory newValue) {
-        entry.setValue(newValue);
+    protected static ArrayMapEntryMemory createEntry(Object key, Memory value) {
+        if (key instanceof LongMemory) {
+            return new LongKeyEntry(((LongMemory) key).value, value);
+        }
+
+        return new ObjectKeyEntry(key, value);
     }
 
-    /**
-     * Reuses an existing key-value mapping, storing completely new data.
-     * <p/>
-     * This implementation sets all the data fields on the entry.
-     * Subclasses could populate additional entry fields.
-     *
-     * @param entry     the entry to update, not null
-     * @param hashIndex the index in the data array
-     * @param hashCode  the hash code of the key to add
-     * @param key       the key to add
-     * @param value     the value to add
-     */
-    protected void reuseEntry(ArrayMapEntryMemory entry, int hashIndex, int hashCode, Object key, Memory value) {
-        entry.next = data[hashIndex];
-        entry.hashCode = hashCode;
-        entry.setKey(key);
-        entry.setValue(value);
+    protected static ArrayMapEntryMemory copyEntry(ArrayMapEntryMemory entry, Memory value) {
+        if (entry instanceof LongKeyEntry) {
+            return new LongKeyEntry(((LongKeyEntry) entry).key, value);
+        }
+
+        return new ObjectKeyEntry(((ObjectKeyEntry) entry).key, value);
     }
 
     /**
-     * Adds a new key-value mapping into this map.
-     * <p/>
-     * This implementation calls <code>createEntry()</code>, <code>addEntry()</code>
-     * and <code>checkCapacity()</code>.
-     * It also handles changes to <code>modCount</code> and <code>size</code>.
-     * Subclasses could override to fully control adds to the map.
-     *
-     * @param hashIndex the index into the data array to store at
-     * @param hashCode  the hash code of the key to add
-     * @param key       the key to add
-     * @param value     the value to add
+     * Adds a new entry at the end of the map, the key must not be in the map.
      */
-    protected ArrayMapEntryMemory addMapping(int hashIndex, int hashCode, Object key, Memory value) {
+    protected ArrayMapEntryMemory addMapping(int hashCode, ArrayMapEntryMemory entry) {
+        if (used == entries.length) {
+            // compact holes or grow
+            ensureCapacity(size + (size >>> 1) < used ? entries.length : entries.length << 1);
+        }
+
         modCount++;
-        ArrayMapEntryMemory entry = new ArrayMapEntryMemory(data[hashIndex], hashCode, key, value);
-        addEntry(entry, hashIndex);
-        size++;
-        checkCapacity();
 
-        return entry;
-    }
+        int position = used++;
+        int bucket = hashCode & (buckets.length - 1);
 
-    /**
-     * Adds an entry into this map.
-     * <p/>
-     * This implementation adds the entry to the data storage table.
-     * Subclasses could override to handle changes to the map.
-     *
-     * @param entry     the entry to add
-     * @param hashIndex the index into the data array to store at
-     */
-    protected void addEntry(ArrayMapEntryMemory entry, int hashIndex) {
-        ArrayMapEntryMemory link = entry;
-        link.after = header;
-        link.before = header.before;
-        header.before.after = link;
-        header.before = link;
-        data[hashIndex] = entry;
-    }
+        entries[position] = entry;
+        hashes[position] = hashCode;
+        chain[position] = buckets[bucket];
+        buckets[bucket] = position;
 
+        size++;
+        return entry;
+    }
 
     /**
-     * Removes a mapping from the map.
-     * <p/>
-     * This implementation calls <code>removeEntry()</code> and <code>destroyEntry()</code>.
-     * It also handles changes to <code>modCount</code> and <code>size</code>.
-     * Subclasses could override to fully control removals from the map.
-     *
-     * @param entry     the entry to remove
-     * @param hashIndex the index into the data structure
-     * @param previous  the previous entry in the chain
+     * Removes an entry which is already unlinked from its bucket.
      */
-    protected void removeMapping(ArrayMapEntryMemory entry, int hashIndex, ArrayMapEntryMemory previous) {
+    protected void removeMapping(int position) {
         modCount++;
-        removeEntry(entry, hashIndex, previous);
+        entries[position] = null;
         size--;
-        destroyEntry(entry);
-    }
 
-    /**
-     * Removes an entry from the chain stored in a particular index.
-     * <p/>
-     * This implementation removes the entry from the data storage table.
-     * The size is not updated.
-     * Subclasses could override to handle changes to the map.
-     *
-     * @param entry     the entry to remove
-     * @param hashIndex the index into the data structure
-     * @param previous  the previous entry in the chain
-     */
-    protected void removeEntry(ArrayMapEntryMemory entry, int hashIndex, ArrayMapEntryMemory previous) {
-        ArrayMapEntryMemory link = entry;
-        link.before.after = link.after;
-        link.after.before = link.before;
-        link.after = null;
-        link.before = null;
-
-        if (previous == null) {
-            data[hashIndex] = entry.next;
-        } else {
-            previous.next = entry.next;
+        if (size == 0) {
+            head = 0;
+            used = 0;
+            return;
         }
-    }
 
-    /**
-     * Gets the <code>before</code> field from a <code>LinkEntry</code>.
-     * Used in subclasses that have no visibility of the field.
-     *
-     * @param entry the entry to query, must not be null
-     * @return the <code>before</code> field of the entry
-     * @throws NullPointerException if the entry is null
-     * @since Commons Collections 3.1
-     */
-    protected ArrayMapEntryMemory entryBefore(ArrayMapEntryMemory entry) {
-        return entry.before;
-    }
+        if (position == head) {
+            head = nextPosition(position + 1);
+        }
 
-    /**
-     * Gets the <code>after</code> field from a <code>LinkEntry</code>.
-     * Used in subclasses that have no visibility of the field.
-     *
-     * @param entry the entry to query, must not be null
-     * @return the <code>after</code> field of the entry
-     * @throws NullPointerException if the entry is null
-     * @since Commons Collections 3.1
-     */
-    protected ArrayMapEntryMemory entryAfter(ArrayMapEntryMemory entry) {
-        return entry.after;
+        if (position == used - 1) {
+            while (entries[used - 1] == null) {
+                used--;
+            }
+        }
     }
 
-
     /**
      * Kills an entry ready for the garbage collector.
-     * <p/>
-     * This implementation prepares the HashEntry for garbage collection.
-     * Subclasses can override this to implement caching (override clear as well).
      *
      * @param entry the entry to destroy
      */
     protected void destroyEntry(ArrayMapEntryMemory entry) {
-        entry.next = null;
-        entry.setKey(null);
         entry.setValue(null);
     }
 
     /**
-     * Checks the capacity of the map and enlarges it if necessary.
-     * <p/>
-     * This implementation uses the threshold to check if the map needs enlarging
-     */
-    protected void checkCapacity() {
-        if (size >= threshold) {
-            int newCapacity = data.length * 2;
-            if (newCapacity <= MAXIMUM_CAPACITY) {
-                ensureCapacity(newCapacity);
-            }
-        }
-    }
-
-    /**
-     * Changes the size of the data structure to the capacity proposed.
+     * Rebuilds the map with the capacity, removed entries are dropped.
      *
      * @param newCapacity the new capacity of the array (a power of two, less or equal to max)
      */
     protected void ensureCapacity(int newCapacity) {
-        int oldCapacity = data.length;
-        if (newCapacity <= oldCapacity) {
+        newCapacity = Math.max(calculateNewCapacity(newCapacity), calculateNewCapacity(size));
+
+        if (newCapacity < entries.length || (newCapacity == entries.length && used == size && head == 0)) {
             return;
         }
-        if (size == 0) {
-            threshold = calculateThreshold(newCapacity, loadFactor);
-            data = new ArrayMapEntryMemory[newCapacity];
-        } else {
-            ArrayMapEntryMemory oldEntries[] = data;
-            ArrayMapEntryMemory newEntries[] = new ArrayMapEntryMemory[newCapacity];
-
-            modCount++;
-            for (int i = oldCapacity - 1; i >= 0; i--) {
-                ArrayMapEntryMemory entry = oldEntries[i];
-                if (entry != null) {
-                    oldEntries[i] = null;  // gc
-                    do {
-                        ArrayMapEntryMemory next = entry.next;
-                        int index = hashIndex(entry.hashCode, newCapacity);
-                        entry.next = newEntries[index];
-                        newEntries[index] = entry;
-                        entry = next;
-                    } while (entry != null);
-                }
+
+        if (newCapacity > MAXIMUM_CAPACITY) {
+            throw new IllegalStateException("Map is too large");
+        }
+
+        ArrayMapEntryMemory[] oldEntries = entries;
+        int[] oldHashes = hashes;
+        int oldHead = head;
+        int oldUsed = used;
+
+        modCount++;
+        init(newCapacity);
+
+        int[] buckets = this.buckets;
+        int mask = buckets.length - 1;
+        int position = 0;
+
+        for (int i = oldHead; i < oldUsed; i++) {
+            ArrayMapEntryMemory entry = oldEntries[i];
+
+            if (entry != null) {
+                int hashCode = oldHashes[i];
+                int bucket = hashCode & mask;
+
+                entries[position] = entry;
+                hashes[position] = hashCode;
+                chain[position] = buckets[bucket];
+                buckets[bucket] = position;
+                position++;
             }
-            threshold = calculateThreshold(newCapacity, loadFactor);
-            data = newEntries;
         }
+
+        used = size = position;
     }
 
     /**
@@ -831,92 +752,20 @@ public class ArrayMemoryMap extends AbstractMap<Object, Memory>
      * @return the normalized new capacity
      */
     protected int calculateNewCapacity(int proposedCapacity) {
-        int newCapacity = 1;
+        int newCapacity = DEFAULT_CAPACITY;
         if (proposedCapacity > MAXIMUM_CAPACITY) {
             newCapacity = MAXIMUM_CAPACITY;
         } else {
             while (newCapacity < proposedCapacity) {
                 newCapacity <<= 1;  // multiply by two
             }
-            if (newCapacity > MAXIMUM_CAPACITY) {
-                newCapacity = MAXIMUM_CAPACITY;
-            }
         }
         return newCapacity;
     }
 
-    /**
-     * Calculates the new threshold of the map, where it will be resized.
-     * This implementation uses the load factor.
-     *
-     * @param newCapacity the new capacity
-     * @param factor      the load factor
-     * @return the new resize threshold
-     */
-    protected int calculateThreshold(int newCapacity, float factor) {
-        return (int) (newCapacity * factor);
-    }
-
-    /**
-     * Gets the <code>next</code> field from a <code>HashEntry</code>.
-     * Used in subclasses that have no visibility of the field.
-     *
-     * @param entry the entry to query, must not be null
-     * @return the <code>next</code> field of the entry
-     * @throws NullPointerException if the entry is null
-     * @since Commons Collections 3.1
-     */
-    protected ArrayMapEntryMemory entryNext(ArrayMapEntryMemory entry) {
-        return entry.next;
-    }
-
-    /**
-     * Gets the <code>hashCode</code> field from a <code>HashEntry</code>.
-     * Used in subclasses that have no visibility of the field.
-     *
-     * @param entry the entry to query, must not be null
-     * @return the <code>hashCode</code> field of the entry
-     * @throws NullPointerException if the entry is null
-     * @since Commons Collections 3.1
-     */
-    protected int entryHashCode(ArrayMapEntryMemory entry) {
-        return entry.hashCode;
-    }
-
-    /**
-     * Gets the <code>key</code> field from a <code>HashEntry</code>.
-     * Used in subclasses that have no visibility of the field.
-     *
-     * @param entry the entry to query, must not be null
-     * @return the <code>key</code> field of the entry
-     * @throws NullPointerException if the entry is null
-     * @since Commons Collections 3.1
-     */
-    protected Object entryKey(ArrayMapEntryMemory entry) {
-        return entry.getKey();
-    }
-
-    /**
-     * Gets the <code>value</code> field from a <code>HashEntry</code>.
-     * Used in subclasses that have no visibility of the field.
-     *
-     * @param entry the entry to query, must not be null
-     * @return the <code>value</code> field of the entry
-     * @throws NullPointerException if the entry is null
-     * @since Commons Collections 3.1
-     */
-    protected Memory entryValue(ArrayMapEntryMemory entry) {
-        return entry.getValue();
-    }
-
     /**
      * Gets an iterator over the map.
      * Changes made to the iterator affect this map.
-     * <p/>
-     * A MapIterator returns the keys in the map. It also provides convenient
-     * methods to get the key and value, and set the value.
-     * It avoids the need to create an entrySet/keySet/values object.
-     * It also avoids creating the Map.Entry object.
      *
      * @return the map iterator
      */
@@ -934,10 +783,6 @@ public class ArrayMemoryMap extends AbstractMap<Object, Memory>
     /**
      * Gets a bidirectional iterator over the map.
      * Changes made to the iterator affect this map.
-     * <p/>
-     * A MapIterator returns the keys in the map. It also provides convenient
-     * methods to get the key and value, and set the value.
-     * It avoids the need to create an entrySet/keySet/values object.
      *
      * @return the map iterator
      */
@@ -948,7 +793,6 @@ public class ArrayMemoryMap extends AbstractMap<Object, Memory>
         return new LinkMapIterator(this);
     }
 
-
     /**
      * Gets the entrySet view of the map.
      * Changes made to the view affect this map.
@@ -964,12 +808,6 @@ public class ArrayMemoryMap extends AbstractMap<Object, Memory>
         return entrySet;
     }
 
-    /**
-     * Creates an entry set iterator.
-     * Subclasses can override this to return iterators with different properties.
-     *
-     * @return the entrySet iterator
-     */
     protected Iterator<Entry<Object, Memory>> createEntrySetIterator() {
         if (size() == 0) {
             return EmptyIterator.INSTANCE;
@@ -991,12 +829,6 @@ public class ArrayMemoryMap extends AbstractMap<Object, Memory>
         return keySet;
     }
 
-    /**
-     * Creates a key set iterator.
-     * Subclasses can override this to return iterators with different properties.
-     *
-     * @return the keySet iterator
-     */
     protected Iterator<Object> createKeySetIterator() {
         if (size() == 0) {
             return EmptyIterator.INSTANCE;
@@ -1018,12 +850,6 @@ public class ArrayMemoryMap extends AbstractMap<Object, Memory>
         return values;
     }
 
-    /**
-     * Creates a values iterator.
-     * Subclasses can override this to return iterators with different properties.
-     *
-     * @return the values iterator
-     */
     protected Iterator<Memory> createValuesIterator() {
         if (size() == 0) {
             return EmptyIterator.INSTANCE;
@@ -1031,6 +857,47 @@ public class ArrayMemoryMap extends AbstractMap<Object, Memory>
         return new ValuesIterator(this);
     }
 
+    /**
+     * Entry with an integer key.
+     */
+    protected static final class LongKeyEntry extends ArrayMapEntryMemory {
+        final long key;
+        private Memory keyMemory; // created on the first getKey(), a racy init only creates a duplicate
+
+        LongKeyEntry(long key, Memory value) {
+            super(value);
+            this.key = key;
+        }
+
+        @Override
+        public Object getKey() {
+            Memory keyMemory = this.keyMemory;
+
+            if (keyMemory == null) {
+                this.keyMemory = keyMemory = LongMemory.valueOf(key);
+            }
+
+            return keyMemory;
+        }
+    }
+
+    /**
+     * Entry with a string or any other key.
+     */
+    protected static final class ObjectKeyEntry extends ArrayMapEntryMemory {
+        final Object key;
+
+        ObjectKeyEntry(Object key, Memory value) {
+            super(value);
+            this.key = key;
+        }
+
+        @Override
+        public Object getKey() {
+            return key;
+        }
+    }
+
     /**
      * MapIterator implementation.
      */
@@ -1147,8 +1014,11 @@ public class ArrayMemoryMap extends AbstractMap<Object, Memory>
             parent.clear();
         }
 
-        public boolean contains(ArrayMapEntryMemory entry) {
-            ArrayMapEntryMemory e = entry;
+        public boolean contains(Object obj) {
+            if (!(obj instanceof ArrayMapEntryMemory)) {
+                return false;
+            }
+            ArrayMapEntryMemory e = (ArrayMapEntryMemory) obj;
             ArrayMapEntryMemory match = parent.getEntry(e.getKey());
             return (match != null && match.equals(e));
         }
@@ -1241,7 +1111,7 @@ public class ArrayMemoryMap extends AbstractMap<Object, Memory>
     }
 
     /**
-     * Base Iterator that iterates in link order.
+     * Base Iterator that iterates in insertion order.
      */
     protected static abstract class LinkIterator {
         /**
@@ -1249,13 +1119,13 @@ public class ArrayMemoryMap extends AbstractMap<Object, Memory>
          */
         protected final ArrayMemoryMap parent;
         /**
-         * The current (last returned) entry
+         * Position of the current (last returned) entry, -1 if there is no one
          */
-        protected ArrayMapEntryMemory last;
+        protected int last;
         /**
-         * The next entry
+         * Position of the next entry
          */
-        protected ArrayMapEntryMemory next;
+        protected int next;
         /**
          * The modification count expected
          */
@@ -1264,67 +1134,70 @@ public class ArrayMemoryMap extends AbstractMap<Object, Memory>
         protected LinkIterator(ArrayMemoryMap parent) {
             super();
             this.parent = parent;
-            this.next = parent.header.after;
+            this.last = -1;
+            this.next = parent.nextPosition(parent.head);
             this.expectedModCount = parent.modCount;
         }
 
         public boolean hasNext() {
-            return (next != parent.header);
+            return next < parent.used;
         }
 
         public boolean hasPrevious() {
-            return (next.before != parent.header);
+            return parent.previousPosition(Math.min(next, parent.used) - 1) >= 0;
         }
 
         protected ArrayMapEntryMemory nextEntry() {
             if (parent.modCount != expectedModCount) {
                 throw new ConcurrentModificationException();
             }
-            if (next == parent.header) {
+            if (next >= parent.used) {
                 throw new NoSuchElementException(NO_NEXT_ENTRY);
             }
             last = next;
-            next = next.after;
-            return last;
+            next = parent.nextPosition(next + 1);
+            return parent.entries[last];
         }
 
         protected ArrayMapEntryMemory previousEntry() {
             if (parent.modCount != expectedModCount) {
                 throw new ConcurrentModificationException();
             }
-            ArrayMapEntryMemory previous = next.before;
-            if (previous == parent.header) {
+            int previous = parent.previousPosition(Math.min(next, parent.used) - 1);
+            if (previous < 0) {
                 throw new NoSuchElementException(NO_PREVIOUS_ENTRY);
             }
             next = previous;
             last = previous;
-            return last;
+            return parent.entries[last];
         }
 
         protected ArrayMapEntryMemory currentEntry() {
-            return last;
+            return last < 0 ? null : parent.entries[last];
         }
 
         public void remove() {
-            if (last == null) {
+            if (last < 0) {
                 throw new IllegalStateException(REMOVE_INVALID);
             }
             if (parent.modCount != expectedModCount) {
                 throw new ConcurrentModificationException();
             }
-            parent.remove(last.getKey());
-            last = null;
+            parent.remove(parent.entries[last].getKey());
+            last = -1;
             expectedModCount = parent.modCount;
         }
 
         public void reset() {
-            last = null;
-            next = parent.header.after;
+            last = -1;
+            next = parent.nextPosition(parent.head);
         }
 
         public String toString() {
-            if (last != null) {
-                return "Iterator[" + last.getKey() + "=" + last.getValue() + "]";
+            ArrayMapEntryMemory current = currentEntry();
+
+            if (current != null) {
+                return "Iterator[" + current.getKey() + "=" + current.getValue() + "]";
             } else {
                 return "Iterator[]";
             }
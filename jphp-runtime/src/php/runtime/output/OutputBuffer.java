@@ -11,6 +11,9 @@ import php.runtime.memory.StringMemory;
 import java.io.ByteArrayOutputStream;
 import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
 public class OutputBuffer {
     public final static int HANDLER_START = 1;
@@ -22,7 +25,7 @@ public class OutputBuffer {
     public enum Type { INTERNAL, USER }
 
     private OutputStream output;
-    private ByteArrayOutputStream buffer;
+    private Buffer buffer;
     private boolean binaryInBuffer;
 
     private Memory callback;
@@ -48,7 +51,7 @@ public class OutputBuffer {
 
     public OutputBuffer(Environment environment, OutputBuffer parent, Memory callback, int chunkSize, boolean erase) {
         this.environment = environment;
-        this.buffer = new ByteArrayOutputStream(4098);
+        this.buffer = new Buffer(4098);
 
         this.callback = callback;
         if (callback != null)
@@ -233,8 +236,13 @@ public class OutputBuffer {
     }
 
     public void write(String content) throws Throwable {
-        if (!isLock())
-            _write(content.getBytes(environment.getDefaultCharset()));
+        if (!isLock()) {
+            if (isAsciiCompatible(environment.getDefaultCharset()) && buffer.writeAscii(content)) {
+                flushIfNeeded();
+            } else {
+                _write(content.getBytes(environment.getDefaultCharset()));
+            }
+        }
     }
 
     public void write(Memory content) throws Throwable {
@@ -254,31 +262,21 @@ public class OutputBuffer {
     protected void _write(byte[] bytes, int length) throws Throwable {
         if (isLock()) return;
 
-        boolean needFlush = implicitFlush || (chunkSize > 0 && length + buffer.size() >= chunkSize);
-
-        if (needFlush){
-            if (chunkSize > 0){
-                int cutLength = (length + buffer.size()) - chunkSize;
-                if (cutLength > 0){
-                    buffer.write(bytes, 0, length);
-                    doFlush(true);
-
-                    /*byte[] tmp = new byte[cutLength];
-                    System.arraycopy(bytes, bytes.length - cutLength, tmp, 0, cutLength);
-                    _write(tmp);*/
-                } else {
-                    buffer.write(bytes, 0, length);
-                    doFlush(true);
-                }
-            } else {
-                buffer.write(bytes, 0, length);
-                doFlush(true);
-            }
-        } else {
-            buffer.write(bytes, 0, length);
+        buffer.write(bytes, 0, length);
+        flushIfNeeded();
+    }
+
+    protected void flushIfNeeded() throws Throwable {
+        if (implicitFlush || (chunkSize > 0 && buffer.size() >= chunkSize)) {
+            doFlush(true);
         }
     }
 
+    protected static boolean isAsciiCompatible(Charset charset) {
+        return charset == StandardCharsets.UTF_8 || charset == StandardCharsets.ISO_8859_1 || charset == StandardCharsets.US_ASCII
+                || charset.name().equals("UTF-8");
+    }
+
     public void write(byte[] bytes, int length) throws Throwable {
         if (!isLock()){
             binaryInBuffer = true;
@@ -357,4 +355,32 @@ public class OutputBuffer {
     public boolean isBufferEmpty(){
         return buffer.size() == 0;
     }
+
+    /**
+     * Byte buffer, ascii strings are copied into it without encoding and temporary arrays.
+     */
+    protected static class Buffer extends ByteArrayOutputStream {
+        public Buffer(int size) {
+            super(size);
+        }
+
+        @SuppressWarnings("deprecation")
+        public boolean writeAscii(String value) {
+            int length = value.length();
+
+            for (int i = 0; i < length; i++) {
+                if (value.charAt(i) >= 0x80) {
+                    return false;
+                }
+            }
+
+            if (count + length > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length << 1, count + length));
+            }
+
+            value.getBytes(0, length, buf, count);
+            count += length;
+            return true;
+        }
+    }
 }
@@ -4,7 +4,6 @@ import php.runtime.Memory;
 import php.runtime.annotation.Reflection;
 import php.runtime.common.Messages;
 import php.runtime.common.Modifier;
-import php.runtime.env.ConcurrentEnvironment;
 import php.runtime.env.Context;
 import php.runtime.env.Environment;
 import php.runtime.env.TraceInfo;
@@ -16,6 +15,7 @@ import php.runtime.ext.support.Extension;
 import php.runtime.invoke.InvokeArgumentHelper;
 import php.runtime.invoke.ObjectInvokeHelper;
 import php.runtime.invoke.cache.PropertyCallCache;
+import php.runtime.lang.BaseObject;
 import php.runtime.lang.ForeachIterator;
 import php.runtime.lang.IObject;
 import php.runtime.lang.support.MagicSignatureClass;
@@ -94,6 +94,11 @@ public class ClassEntity extends Entity implements Cloneable {
 
     protected boolean isStatic;
 
+    // declared properties stored in BaseObject slots, see linkSlots()
+    private volatile boolean slotsLinked;
+    private PropertyEntity[] slotProperties;
+    private Map<String, Integer> slotIndexes;
+
     protected static final ClassEntity magicSignatureClass =
             new ClassEntity(new ClassWrapper(null, MagicSignatureClass.class));
 
@@ -651,6 +656,100 @@ ClassReader classReader;
         return properties.values();
     }
 
+    /**
+     * Declared properties in the order of object slots, null if objects of the class keep
+     * all properties in the array of {@link IObject#getProperties()}.
+     */
+    public PropertyEntity[] getSlotProperties() {
+        if (!slotsLinked) {
+            linkSlots();
+        }
+
+        return slotProperties;
+    }
+
+    /**
+     * @return index of the slot for the specific name of a property, -1 if there is no such slot.
+     */
+    public int getSlotIndex(String specificName) {
+        if (!slotsLinked) {
+            linkSlots();
+        }
+
+        if (slotIndexes == null) {
+            return -1;
+        }
+
+        Integer index = slotIndexes.get(specificName);
+        return index == null ? -1 : index;
+    }
+
+    private synchronized void linkSlots() {
+        if (slotsLinked) {
+            return;
+        }
+
+        // the same order and the same shadowing as properties of a new object had in the array
+        List<PropertyEntity> layout = new ArrayList<PropertyEntity>();
+        Map<String, Integer> indexes = new HashMap<String, Integer>();
+
+        for (PropertyEntity property : getProperties()) {
+            if (id == property.clazz.getId() && property.getGetter() == null) {
+                Integer index = indexes.get(property.getSpecificName());
+
+                if (index == null) {
+                    indexes.put(property.getSpecificName(), layout.size());
+                    layout.add(property);
+                } else {
+                    layout.set(index, property);
+                }
+            }
+        }
+
+        ClassEntity tmp = parent;
+        while (tmp != null) {
+            long otherId = tmp.getId();
+            for (PropertyEntity property : tmp.getProperties()) {
+                if (property.getClazz().getId() == otherId && property.getGetter() == null) {
+                    if (property.modifier != Modifier.PROTECTED || !indexes.containsKey(property.getName())) {
+                        if (!indexes.containsKey(property.getSpecificName())) {
+                            indexes.put(property.getSpecificName(), layout.size());
+                            layout.add(property);
+                        }
+                    }
+                }
+            }
+            tmp = tmp.parent;
+        }
+
+        boolean supported = !layout.isEmpty() && isSlotSupported();
+
+        for (PropertyEntity property : layout) {
+            if (property.getClass() != PropertyEntity.class) {
+                supported = false;
+            }
+        }
+
+        if (supported) {
+            slotProperties = layout.toArray(new PropertyEntity[layout.size()]);
+            slotIndexes = indexes;
+        }
+
+        slotsLinked = true;
+    }
+
+    private boolean isSlotSupported() {
+        if (nativeClazz == null || !BaseObject.class.isAssignableFrom(nativeClazz)) {
+            return false;
+        }
+
+        try {
+            return nativeClazz.getMethod("getProperties").getDeclaringClass() == BaseObject.class;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
     public Collection<PropertyEntity> getStaticProperties() {
         return staticProperties.values();
     }
@@ -940,6 +1039,16 @@ ClassReader classReader;
             return null;
         }
 
+        PropertyEntity[] slotProperties = getSlotProperties();
+
+        if (slotProperties != null && newSlots(env, slotProperties, (BaseObject) object)) {
+            if (doConstruct && methodConstruct != null) {
+                ObjectInvokeHelper.invokeMethod(object, methodConstruct, env, trace, args, true);
+            }
+
+            return (T) object;
+        }
+
         ArrayMemory props = object.getProperties();
 
         for (PropertyEntity property : getProperties()) {
@@ -973,8 +1082,39 @@ ClassReader classReader;
         return (T) object;
     }
 
+    private static boolean newSlots(Environment env, PropertyEntity[] slotProperties, BaseObject object) {
+        ReferenceMemory[] slots = new ReferenceMemory[slotProperties.length];
+
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = new ReferenceMemory(slotProperties[i].getDefaultValue(env).toImmutable());
+        }
+
+        return object.__setSlots(slots);
+    }
+
     public <T extends IObject> T cloneObject(T value, Environment env, TraceInfo trace) throws Throwable {
         IObject copy = this.newObjectWithoutConstruct(env);
+
+        ReferenceMemory[] slots = value instanceof BaseObject && value.getReflection() == this
+                ? ((BaseObject) value).__getSlots()
+                : null;
+
+        if (slots != null && copy instanceof BaseObject) {
+            ReferenceMemory[] copySlots = new ReferenceMemory[slots.length];
+
+            for (int i = 0; i < slots.length; i++) {
+                copySlots[i] = new ReferenceMemory(slots[i].toImmutable());
+            }
+
+            if (((BaseObject) copy).__setSlots(copySlots)) {
+                if (methodMagicClone != null) {
+                    ObjectInvokeHelper.invokeMethod(copy, methodMagicClone, env, trace, null, true);
+                }
+
+                return (T) copy;
+            }
+        }
+
         ForeachIterator iterator = value.getProperties().foreachIterator(false, false);
         ArrayMemory props = copy.getProperties();
         while (iterator.next()) {
@@ -1168,7 +1308,8 @@ ClassReader classReader;
 
         int accessFlag = entity == null ? 0 : entity.canAccess(env);
 
-        ArrayMemory props = object.getProperties();
+        boolean slotted = isSlotted(object);
+        ArrayMemory props = slotted ? null : object.getProperties();
 
         if (entity != null) {
             if (entity.setter != null) {
@@ -1190,7 +1331,15 @@ ClassReader classReader;
             }
         }
 
-        value = props == null || accessFlag != 0 ? null : props.getByScalar(entity == null ? property : entity.specificName);
+        if (accessFlag != 0) {
+            value = null;
+        } else if (slotted) {
+            value = entity == null
+                    ? ((BaseObject) object).__getSlot(property)
+                    : ((BaseObject) object).__getSlot(entity);
+        } else {
+            value = props == null ? null : props.getByScalar(entity == null ? property : entity.specificName);
+        }
 
         if (value == null) {
             boolean recursive = false;
@@ -1271,14 +1420,28 @@ ClassReader classReader;
                     }
                 }
 
+                if (slotted) {
+                    props = object.getProperties();
+                }
+
                 return props == null
                         ? Memory.NULL
                         : (entity == null ? props.refOfIndex(name).assign(memory) : entity.assignValue(env, trace, object, name, memory));
             }
         } else {
-            if (callback != null)
+            if (callback != null) {
                 memory = callback.invoke(value, memory);
 
+                if (slotted && !isSlotted(object)) {
+                    // the callback has moved the slots to the properties array
+                    ReferenceMemory actual = object.getProperties().getByScalar(entity == null ? property : entity.specificName);
+
+                    if (actual != null) {
+                        value = actual;
+                    }
+                }
+            }
+
             if (entity instanceof CompilePropertyEntity) {
                 return entity.assignValue(env, trace, object, property, memory);
             }
@@ -1350,9 +1513,16 @@ ClassReader classReader;
 
         int accessFlag = entity == null ? 0 : entity.canAccess(env);
 
-        ArrayMemory props = object.getProperties();
-        if (props != null && accessFlag == 0) {
-            Memory tmp = entity == null ? props.getByScalar(property) : entity.getValue(env, trace, object);
+        boolean slotted = isSlotted(object);
+        ArrayMemory props = slotted ? null : object.getProperties();
+        if ((slotted || props != null) && accessFlag == 0) {
+            Memory tmp;
+            if (entity != null) {
+                tmp = entity.getValue(env, trace, object);
+            } else {
+                tmp = slotted ? ((BaseObject) object).__getSlot(property) : props.getByScalar(property);
+            }
+
             if (tmp != null) {
                 return tmp.toBoolean() ? Memory.TRUE : Memory.NULL;
             } else
@@ -1387,7 +1557,7 @@ ClassReader classReader;
     public Memory issetProperty(Environment env, TraceInfo trace, IObject object, String property,
                                 PropertyCallCache callCache, int cacheIndex)
             throws Throwable {
-        PropertyEntity entity = callCache == null || env instanceof ConcurrentEnvironment ? null : callCache.get(env, cacheIndex);
+        PropertyEntity entity = callCache == null ? null : callCache.get(env, cacheIndex);
 
         if (entity == null) {
             ClassEntity contex = env.getLastClassOnStack();
@@ -1400,11 +1570,16 @@ ClassReader classReader;
 
         int accessFlag = entity == null ? 0 : entity.canAccess(env);
 
-        ArrayMemory props = object.getProperties();
+        boolean slotted = isSlotted(object);
+        ArrayMemory props = slotted ? null : object.getProperties();
         Memory tmp = null;
 
-        if (props != null && accessFlag == 0) {
-            tmp = entity == null ? props.getByScalar(property) : entity.getValue(env, trace, object);
+        if ((slotted || props != null) && accessFlag == 0) {
+            if (entity != null) {
+                tmp = entity.getValue(env, trace, object);
+            } else {
+                tmp = slotted ? ((BaseObject) object).__getSlot(property) : props.getByScalar(property);
+            }
         }
 
         if (tmp != null) {
@@ -1443,7 +1618,7 @@ ClassReader classReader;
                                     boolean checkAccess, ClassEntity context, PropertyCallCache callCache, int cacheIndex,
                                     boolean lateStaticCall)
             throws Throwable {
-        PropertyEntity entity = callCache == null || env instanceof ConcurrentEnvironment || context != null ? null : callCache.get(env, cacheIndex);
+        PropertyEntity entity = callCache == null || context != null ? null : callCache.get(env, cacheIndex);
 
         if (entity == null) {
             boolean saveCache = context == null && callCache != null;
@@ -1478,7 +1653,7 @@ ClassReader classReader;
             throws Throwable {
         Memory value;
 
-        PropertyEntity entity = callCache == null || env instanceof ConcurrentEnvironment ? null : callCache.get(env, cacheIndex);
+        PropertyEntity entity = callCache == null ? null : callCache.get(env, cacheIndex);
 
         if (entity == null) {
             ClassEntity context = env.getLastClassOnStack();
@@ -1536,7 +1711,7 @@ ClassReader classReader;
             throws Throwable {
         Memory value;
 
-        PropertyEntity entity = callCache == null || env instanceof ConcurrentEnvironment ? null : callCache.get(env, cacheIndex);
+        PropertyEntity entity = callCache == null ? null : callCache.get(env, cacheIndex);
 
         if (entity == null) {
             ClassEntity context = env.getLastClassOnStack();
@@ -1567,6 +1742,8 @@ ClassReader classReader;
         } else {
             if (entity != null) {
                 value = entity.getValue(env, trace, object);
+            } else if (isSlotted(object)) {
+                value = ((BaseObject) object).__getSlot(property);
             } else {
                 ArrayMemory props = object.getProperties();
                 value = props == null ? null : props.getByScalar(property);
@@ -1613,7 +1790,17 @@ ClassReader classReader;
         if (prop == null)
             throw new RuntimeException("Property '" + name + "' not found");
 
-        object.getProperties().put(prop.specificName, value == null ? Memory.NULL : value);
+        ReferenceMemory slot = object instanceof BaseObject ? ((BaseObject) object).__getSlot(prop) : null;
+
+        if (slot != null) {
+            slot.assign(value == null ? Memory.NULL : value);
+        } else {
+            object.getProperties().put(prop.specificName, value == null ? Memory.NULL : value);
+        }
+    }
+
+    private static boolean isSlotted(IObject object) {
+        return object instanceof BaseObject && ((BaseObject) object).__getSlots() != null;
     }
 
     private static interface SetterCallback {
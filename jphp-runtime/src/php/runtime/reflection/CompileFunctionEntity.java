@@ -8,6 +8,7 @@ import php.runtime.exceptions.support.ErrorType;
 import php.runtime.ext.support.Extension;
 import php.runtime.ext.support.compile.CompileFunction;
 import php.runtime.ext.support.compile.CompileFunctionSpec;
+import php.runtime.invoke.NativeInvoker;
 import php.runtime.memory.support.MemoryUtils;
 
 import java.lang.reflect.InvocationTargetException;
@@ -61,6 +62,12 @@ public class CompileFunctionEntity extends FunctionEntity {
             }
         }
 
+        NativeInvoker invoker = method.getInvoker();
+
+        if (invoker != null) {
+            return invoker.invoke(null, env, trace, arguments);
+        }
+
         Class<?>[] types = method.parameterTypes;
         Object[] passed = new Object[ types.length ];
 
@@ -13,9 +13,11 @@ import php.runtime.exceptions.CriticalException;
 import php.runtime.exceptions.support.ErrorType;
 import php.runtime.ext.support.Extension;
 import php.runtime.ext.support.compile.CompileFunction;
+import php.runtime.invoke.NativeInvoker;
 import php.runtime.lang.IObject;
 import php.runtime.memory.support.MemoryOperation;
 import php.runtime.memory.support.MemoryUtils;
+import php.runtime.memory.support.operation.*;
 import php.runtime.reflection.support.ReflectionUtils;
 
 import java.lang.annotation.Annotation;
@@ -197,6 +199,12 @@ public class CompileMethodEntity extends MethodEntity {
                 }
             }
 
+            NativeInvoker invoker = method.getInvoker();
+
+            if (invoker != null) {
+                return invoker.invoke(_this, env, trace, arguments);
+            }
+
             Class<?>[] types = method.parameterTypes;
             Object[] passed = new Object[ types.length ];
 
@@ -333,6 +341,76 @@ public class CompileMethodEntity extends MethodEntity {
                 super(method, argsCount, _asImmutable);
             }
 
+            @Override
+            public int getArgumentKind(int index) {
+                Class<?> type = parameterTypes[index];
+                MemoryOperation operation = argumentOperations[index];
+
+                if (type == Memory.class) {
+                    return references[index]
+                            ? NativeInvoker.REFERENCE
+                            : (mutableValues[index] ? NativeInvoker.VALUE : NativeInvoker.IMMUTABLE);
+                }
+
+                if (operation instanceof InjectMemoryOperation) {
+                    return type == Environment.class ? NativeInvoker.ENVIRONMENT : NativeInvoker.TRACE;
+                }
+
+                if (operation == null || isReleasing(operation)) {
+                    return NativeInvoker.UNSUPPORTED;
+                }
+
+                Class<?> operationClass = operation.getClass();
+
+                if (type == Long.TYPE && operationClass == LongMemoryOperation.class) return NativeInvoker.LONG;
+                if (type == Integer.TYPE && operationClass == IntegerMemoryOperation.class) return NativeInvoker.INT;
+                if (type == Double.TYPE && operationClass == DoubleMemoryOperation.class) return NativeInvoker.DOUBLE;
+                if (type == Boolean.TYPE && operationClass == BooleanMemoryOperation.class) return NativeInvoker.BOOLEAN;
+                if (type == String.class && operationClass == StringMemoryOperation.class) return NativeInvoker.STRING;
+
+                return NativeInvoker.CONVERT;
+            }
+
+            @Override
+            public int getResultKind() {
+                Class<?> operationClass = returnOperation.getClass();
+
+                if (operationClass == VoidMemoryOperation.class) return NativeInvoker.VOID;
+                if (operationClass == MemoryMemoryOperation.class && Memory.class.isAssignableFrom(resultType)) return NativeInvoker.MEMORY;
+                if (resultType == Long.TYPE && operationClass == LongMemoryOperation.class) return NativeInvoker.LONG;
+                if (resultType == Integer.TYPE && operationClass == IntegerMemoryOperation.class) return NativeInvoker.INT;
+                if (resultType == Double.TYPE && operationClass == DoubleMemoryOperation.class) return NativeInvoker.DOUBLE;
+                if (resultType == Boolean.TYPE && operationClass == BooleanMemoryOperation.class) return NativeInvoker.BOOLEAN;
+                if (resultType == String.class && operationClass == StringMemoryOperation.class) return NativeInvoker.STRING;
+
+                return NativeInvoker.CONVERT;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object convertArgument(int index, Environment env, TraceInfo trace, Memory argument) throws Throwable {
+                return argumentOperations[index].convert(env, trace, argument);
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public Memory convertResult(Environment env, TraceInfo trace, Object result) throws Throwable {
+                return returnOperation.unconvertNoThow(env, trace, result);
+            }
+
+            /**
+             * Converted values of such operations are released after the call, the direct invoker doesn't do it.
+             */
+            private boolean isReleasing(MemoryOperation operation) {
+                try {
+                    return operation.getClass()
+                            .getMethod("releaseConverted", Environment.class, TraceInfo.class, Object.class)
+                            .getDeclaringClass() != MemoryOperation.class;
+                } catch (NoSuchMethodException e) {
+                    return true;
+                }
+            }
+
             public void setUnknownTypeFetcher(CallbackW<MemoryOperation, Class<?>, Type> unknownTypeFetcher) {
                 this.unknownTypeFetcher = unknownTypeFetcher;
             }
@@ -11,6 +11,9 @@ import php.runtime.memory.ObjectMemory;
 import php.runtime.reflection.helper.ClosureEntity;
 import php.runtime.reflection.support.AbstractFunctionEntity;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 
@@ -20,6 +23,7 @@ public class FunctionEntity extends AbstractFunctionEntity {
 
     private Class<?> nativeClazz;
     private Method nativeMethod;
+    private MethodHandle nativeHandle;
 
     private boolean isStatic = false;
 
@@ -55,9 +59,31 @@ public class FunctionEntity extends AbstractFunctionEntity {
 
     public void setNativeMethod(Method nativeMethod) {
         this.nativeMethod = nativeMethod;
+        this.nativeHandle = null;
         nativeMethod.setAccessible(true);
     }
 
+    /**
+     * Direct handle of the native function with the (Environment, Memory[])Memory type,
+     * null if the function can be called only via {@link #invoke(Environment, TraceInfo, Memory[])}.
+     */
+    public MethodHandle getNativeHandle() {
+        MethodHandle handle = nativeHandle;
+
+        if (handle == null && nativeMethod != null && getClass() == FunctionEntity.class) {
+            try {
+                handle = MethodHandles.lookup().unreflect(nativeMethod)
+                        .asType(MethodType.methodType(Memory.class, Environment.class, Memory[].class));
+            } catch (IllegalAccessException | RuntimeException e) {
+                return null;
+            }
+
+            nativeHandle = handle;
+        }
+
+        return handle;
+    }
+
     public boolean isDeprecated(){
         return false; // TODO
     }
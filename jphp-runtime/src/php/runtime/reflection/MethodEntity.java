@@ -19,6 +19,9 @@ import php.runtime.reflection.helper.ClosureEntity;
 import php.runtime.reflection.support.AbstractFunctionEntity;
 import php.runtime.reflection.support.TypeChecker;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 
@@ -30,6 +33,7 @@ public class MethodEntity extends AbstractFunctionEntity {
     protected MethodEntity prototype;
 
     protected Method nativeMethod;
+    protected MethodHandle nativeHandle;
 
     protected boolean isAbstract;
     protected boolean isFinal;
@@ -200,6 +204,7 @@ public class MethodEntity extends AbstractFunctionEntity {
 
     public void setNativeMethod(Method nativeMethod) {
         this.nativeMethod = nativeMethod;
+        this.nativeHandle = null;
 
         if (nativeMethod != null) {
             nativeMethod.setAccessible(true);
@@ -222,6 +227,38 @@ public class MethodEntity extends AbstractFunctionEntity {
         return result;
     }
 
+    /**
+     * Direct handle of the native method with the (IObject, Environment, Memory[])Memory type,
+     * null if the method can be called only via {@link #invokeDynamic(IObject, Environment, TraceInfo, Memory...)}.
+     */
+    public MethodHandle getNativeHandle() {
+        MethodHandle handle = nativeHandle;
+
+        if (handle == null && nativeMethod != null && getClass() == MethodEntity.class && !isAbstract && !isEmpty) {
+            boolean nativeStatic = java.lang.reflect.Modifier.isStatic(nativeMethod.getModifiers());
+
+            if (isStatic && !nativeStatic) {
+                return null;
+            }
+
+            try {
+                handle = MethodHandles.lookup().unreflect(nativeMethod);
+
+                if (nativeStatic) {
+                    handle = MethodHandles.dropArguments(handle, 0, IObject.class);
+                }
+
+                handle = handle.asType(MethodType.methodType(Memory.class, IObject.class, Environment.class, Memory[].class));
+            } catch (IllegalAccessException | RuntimeException e) {
+                return null;
+            }
+
+            nativeHandle = handle;
+        }
+
+        return handle;
+    }
+
     public Memory invokeDynamic(IObject _this, Environment env, TraceInfo trace, Memory... arguments) throws Throwable {
         try {
             if (isAbstract){
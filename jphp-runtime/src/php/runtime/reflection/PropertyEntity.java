@@ -8,6 +8,7 @@ import php.runtime.env.Environment;
 import php.runtime.env.TraceInfo;
 import php.runtime.exceptions.support.ErrorType;
 import php.runtime.invoke.ObjectInvokeHelper;
+import php.runtime.lang.BaseObject;
 import php.runtime.lang.IObject;
 import php.runtime.memory.ArrayMemory;
 import php.runtime.reflection.support.Entity;
@@ -33,6 +34,10 @@ public class PropertyEntity extends Entity {
 
     protected boolean hiddenInDebugInfo = false;
 
+    // slot indexes per class, direct-mapped by the class id (ids are sequential)
+    private static final int SLOT_INDEX_CACHE_SIZE = 8;
+    private final SlotIndex[] slotIndexes = new SlotIndex[SLOT_INDEX_CACHE_SIZE];
+
     public PropertyEntity(Context context) {
         super(context);
     }
@@ -270,11 +275,40 @@ public class PropertyEntity extends Entity {
         );
     }
 
+    /**
+     * Index of the property in slots of objects of the class, -1 if the class has no slot for it.
+     */
+    public int getSlotIndex(ClassEntity clazz) {
+        long classId = clazz.getId();
+        int i = (int) (classId & (SLOT_INDEX_CACHE_SIZE - 1));
+        SlotIndex slotIndex = slotIndexes[i];
+
+        if (slotIndex == null || slotIndex.classId != classId) {
+            // items are immutable, a racy write only loses an entry
+            slotIndexes[i] = slotIndex = new SlotIndex(classId, clazz.getSlotIndex(specificName));
+        }
+
+        return slotIndex.index;
+    }
+
     public Memory getValue(Environment env, TraceInfo trace, Object object) throws Throwable {
         if (getter != null && object instanceof IObject) {
             return ObjectInvokeHelper.invokeMethod((IObject) object, getter, env, trace, null, false);
         }
 
+        if (object instanceof BaseObject) {
+            BaseObject baseObject = (BaseObject) object;
+            Memory result = baseObject.__getSlot(this);
+
+            if (result == null) {
+                result = baseObject.__getSlot(name);
+            }
+
+            if (result != null) {
+                return result;
+            }
+        }
+
         ArrayMemory props = ((IObject) object).getProperties();
 
         Memory result = props.getByScalar(specificName);
@@ -284,4 +318,14 @@ public class PropertyEntity extends Entity {
 
         return result;
     }
+
+    private static class SlotIndex {
+        final long classId;
+        final int index;
+
+        SlotIndex(long classId, int index) {
+            this.classId = classId;
+            this.index = index;
+        }
+    }
 }
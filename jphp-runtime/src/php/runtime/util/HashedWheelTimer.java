@@ -0,0 +1,491 @@
+package php.runtime.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.TimerTask;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hashed timing wheel: tasks are put to buckets by their deadline, one thread moves over the buckets each tick
+ * and passes expired tasks to an executor. Schedule and cancel are O(1), the accuracy is one tick.
+ *
+ * Repeated tasks are scheduled again after their run (fixed delay like {@link java.util.Timer#schedule}).
+ * The lag is time between the deadline of a task and the start of its run.
+ */
+public class HashedWheelTimer {
+    private static final int ST_INIT = 0;
+    private static final int ST_STARTED = 1;
+    private static final int ST_STOPPED = 2;
+
+    public abstract static class Task extends TimerTask {
+        private static final int SCHEDULED = 0;
+        private static final int CANCELLED = 1;
+        private static final int DONE = 2;
+
+        private final AtomicInteger state = new AtomicInteger(SCHEDULED);
+
+        private HashedWheelTimer timer;
+        private long deadline; // nanos from the start of the timer
+        private long period; // millis, 0 - once
+        private long remainingRounds;
+        private volatile long scheduledTime;
+
+        private Bucket bucket;
+        private Task next;
+        private Task prev;
+
+        @Override
+        public boolean cancel() {
+            if (!state.compareAndSet(SCHEDULED, CANCELLED)) {
+                return false;
+            }
+
+            HashedWheelTimer timer = this.timer;
+
+            if (timer != null) {
+                timer.cancelled.add(this);
+            }
+
+            return true;
+        }
+
+        public boolean isCancelled() {
+            return state.get() == CANCELLED;
+        }
+
+        /**
+         * @return time in millis of the last deadline
+         */
+        @Override
+        public long scheduledExecutionTime() {
+            return scheduledTime;
+        }
+    }
+
+    private static class Bucket {
+        private Task head;
+        private Task tail;
+
+        void add(Task task) {
+            task.bucket = this;
+
+            if (head == null) {
+                head = tail = task;
+            } else {
+                tail.next = task;
+                task.prev = tail;
+                tail = task;
+            }
+        }
+
+        Task remove(Task task) {
+            Task next = task.next;
+
+            if (task.prev != null) {
+                task.prev.next = next;
+            }
+
+            if (task.next != null) {
+                task.next.prev = task.prev;
+            }
+
+            if (task == head) {
+                head = task == tail ? null : next;
+            }
+
+            if (task == tail) {
+                tail = task.prev;
+            }
+
+            task.prev = task.next = null;
+            task.bucket = null;
+
+            return next;
+        }
+
+        void expire(HashedWheelTimer timer) {
+            Task task = head;
+
+            while (task != null) {
+                if (task.remainingRounds <= 0) {
+                    Task next = remove(task);
+                    timer.pending.decrementAndGet();
+                    timer.dispatch(task);
+                    task = next;
+                } else if (task.isCancelled()) {
+                    task = remove(task);
+                    timer.pending.decrementAndGet();
+                } else {
+                    task.remainingRounds--;
+                    task = task.next;
+                }
+            }
+        }
+
+        void drain(List<Task> result) {
+            Task task = head;
+
+            while (task != null) {
+                Task next = remove(task);
+                result.add(task);
+                task = next;
+            }
+        }
+    }
+
+    private final String name;
+    private final long tickDuration;
+    private final Bucket[] wheel;
+    private final int mask;
+
+    private volatile Executor executor;
+    private volatile boolean ownExecutor;
+
+    private final Queue<Task> timeouts = new ConcurrentLinkedQueue<>();
+    private final Queue<Task> cancelled = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger state = new AtomicInteger(ST_INIT);
+    private final CountDownLatch startLatch = new CountDownLatch(1);
+    private volatile long startTime;
+    private Thread worker;
+    private long tick;
+
+    private final AtomicLong pending = new AtomicLong();
+    private final AtomicLong executed = new AtomicLong();
+    private final AtomicLong lagTotal = new AtomicLong();
+    private final AtomicLong lagMax = new AtomicLong();
+
+    /**
+     * @param tickMillis duration of a tick (accuracy)
+     * @param wheelSize count of buckets, is rounded to a power of two
+     * @param executor to run tasks, null - a single daemon thread
+     */
+    public HashedWheelTimer(String name, long tickMillis, int wheelSize, Executor executor) {
+        if (tickMillis < 1) {
+            throw new IllegalArgumentException("tickMillis must be greater than 0");
+        }
+
+        if (wheelSize < 1 || wheelSize > (1 << 30)) {
+            throw new IllegalArgumentException("wheelSize must be in 1.." + (1 << 30));
+        }
+
+        int size = Integer.highestOneBit(wheelSize);
+        if (size < wheelSize) {
+            size <<= 1;
+        }
+
+        this.name = name;
+        this.tickDuration = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        this.wheel = new Bucket[size];
+        this.mask = size - 1;
+
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new Bucket();
+        }
+
+        setExecutor(executor);
+    }
+
+    public HashedWheelTimer(String name) {
+        this(name, 10, 512, null);
+    }
+
+    /**
+     * @param executor null - a single daemon thread
+     */
+    public void setExecutor(Executor executor) {
+        Executor old = this.executor;
+        boolean ownOld = this.ownExecutor;
+
+        this.ownExecutor = executor == null;
+
+        if (executor == null) {
+            executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, name + " callbacks");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+
+        this.executor = executor;
+
+        if (ownOld) {
+            ((ExecutorService) old).shutdown();
+        }
+    }
+
+    public void schedule(Task task, long delay) {
+        schedule(task, delay, 0);
+    }
+
+    /**
+     * @param delay millis
+     * @param period millis between the end of a run and the next one, 0 - once
+     */
+    public void schedule(Task task, long delay, long period) {
+        if (delay < 0) {
+            throw new IllegalArgumentException("Negative delay");
+        }
+
+        if (period < 0) {
+            throw new IllegalArgumentException("Negative period");
+        }
+
+        if (task.timer != null) {
+            throw new IllegalStateException("Task already scheduled or cancelled");
+        }
+
+        start();
+
+        task.timer = this;
+        task.period = period;
+        add(task, System.nanoTime() - startTime + TimeUnit.MILLISECONDS.toNanos(delay));
+    }
+
+    private void add(Task task, long deadline) {
+        task.deadline = deadline;
+        task.scheduledTime = System.currentTimeMillis() + TimeUnit.NANOSECONDS.toMillis(deadline - (System.nanoTime() - startTime));
+
+        pending.incrementAndGet();
+        timeouts.add(task);
+    }
+
+    private void start() {
+        switch (state.get()) {
+            case ST_INIT:
+                if (state.compareAndSet(ST_INIT, ST_STARTED)) {
+                    worker = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            work();
+                        }
+                    }, name);
+                    worker.start();
+                }
+                break;
+            case ST_STARTED:
+                break;
+            default:
+                throw new IllegalStateException("Timer is stopped");
+        }
+
+        while (startTime == 0) {
+            try {
+                startLatch.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+    }
+
+    /**
+     * Stops the worker thread, unprocessed tasks are cancelled.
+     *
+     * @return unprocessed tasks
+     */
+    public List<Task> stop() {
+        List<Task> result = new ArrayList<>();
+
+        if (state.getAndSet(ST_STOPPED) == ST_STARTED) {
+            worker.interrupt();
+
+            if (Thread.currentThread() != worker) {
+                try {
+                    worker.join(1000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            for (Bucket bucket : wheel) {
+                bucket.drain(result);
+            }
+        }
+
+        Task task;
+        while ((task = timeouts.poll()) != null) {
+            result.add(task);
+        }
+
+        for (Task one : result) {
+            one.state.compareAndSet(Task.SCHEDULED, Task.CANCELLED);
+        }
+
+        cancelled.clear();
+        pending.set(0);
+
+        if (ownExecutor) {
+            ((ExecutorService) executor).shutdown();
+        }
+
+        return result;
+    }
+
+    public boolean isStopped() {
+        return state.get() == ST_STOPPED;
+    }
+
+    private void work() {
+        startTime = System.nanoTime();
+        if (startTime == 0) {
+            startTime = 1;
+        }
+
+        startLatch.countDown();
+
+        while (state.get() == ST_STARTED) {
+            if (waitForNextTick() < 0) {
+                break;
+            }
+
+            processCancelled();
+            transferTimeouts();
+
+            wheel[(int) (tick & mask)].expire(this);
+            tick++;
+        }
+    }
+
+    private long waitForNextTick() {
+        long deadline = tickDuration * (tick + 1);
+
+        while (true) {
+            long current = System.nanoTime() - startTime;
+            long sleep = (deadline - current + 999999) / 1000000;
+
+            if (sleep <= 0) {
+                return current;
+            }
+
+            try {
+                Thread.sleep(sleep);
+            } catch (InterruptedException e) {
+                if (state.get() != ST_STARTED) {
+                    return -1;
+                }
+            }
+        }
+    }
+
+    private void processCancelled() {
+        Task task;
+
+        while ((task = cancelled.poll()) != null) {
+            if (task.bucket != null) {
+                task.bucket.remove(task);
+                pending.decrementAndGet();
+            }
+        }
+    }
+
+    private void transferTimeouts() {
+        // limit to not block the tick if tasks are added in a loop
+        for (int i = 0; i < 100000; i++) {
+            Task task = timeouts.poll();
+
+            if (task == null) {
+                break;
+            }
+
+            if (task.isCancelled()) {
+                pending.decrementAndGet();
+                continue;
+            }
+
+            long calculated = task.deadline / tickDuration;
+            task.remainingRounds = (calculated - tick) / wheel.length;
+
+            long ticks = Math.max(calculated, tick);
+            wheel[(int) (ticks & mask)].add(task);
+        }
+    }
+
+    private void dispatch(final Task task) {
+        if (task.state.get() != Task.SCHEDULED) {
+            return;
+        }
+
+        Runnable runnable = new Runnable() {
+            @Override
+            public void run() {
+                execute(task);
+            }
+        };
+
+        try {
+            executor.execute(runnable);
+        } catch (RejectedExecutionException e) {
+            runnable.run();
+        }
+    }
+
+    private void execute(Task task) {
+        if (task.period == 0) {
+            if (!task.state.compareAndSet(Task.SCHEDULED, Task.DONE)) {
+                return;
+            }
+        } else if (task.isCancelled()) {
+            return;
+        }
+
+        long lag = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime - task.deadline);
+
+        executed.incrementAndGet();
+        lagTotal.addAndGet(Math.max(0, lag));
+
+        long max;
+        while (lag > (max = lagMax.get()) && !lagMax.compareAndSet(max, lag)) {
+            // retry
+        }
+
+        try {
+            task.run();
+        } finally {
+            if (task.period > 0 && !task.isCancelled() && state.get() == ST_STARTED) {
+                add(task, System.nanoTime() - startTime + TimeUnit.MILLISECONDS.toNanos(task.period));
+            }
+        }
+    }
+
+    /**
+     * @return count of scheduled tasks
+     */
+    public long getPending() {
+        return pending.get();
+    }
+
+    /**
+     * @return count of runs
+     */
+    public long getExecuted() {
+        return executed.get();
+    }
+
+    /**
+     * @return average lag in millis
+     */
+    public double getAverageLag() {
+        long count = executed.get();
+        return count == 0 ? 0 : (double) lagTotal.get() / count;
+    }
+
+    /**
+     * @return max lag in millis
+     */
+    public long getMaxLag() {
+        return lagMax.get();
+    }
+
+    public void resetStats() {
+        executed.set(0);
+        lagTotal.set(0);
+        lagMax.set(0);
+    }
+}
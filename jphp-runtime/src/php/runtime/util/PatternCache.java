@@ -0,0 +1,223 @@
+package php.runtime.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Bounded cache of compiled patterns by source and flags, it's safe to use from many threads.
+ *
+ * Lookups don't lock, an entry only gets a stamp of the last access. When the size exceeds the max size,
+ * the least recently used tenth of entries is evicted (approximate LRU).
+ */
+public class PatternCache {
+    public static final int DEFAULT_MAX_SIZE = 1024;
+
+    private static final String META_CHARS = "\\^$.|?*+()[]{}";
+
+    public static class Entry {
+        protected final Pattern pattern;
+        protected final String literal;
+
+        volatile long lastAccess;
+
+        Entry(Pattern pattern, String literal) {
+            this.pattern = pattern;
+            this.literal = literal;
+        }
+
+        public Pattern getPattern() {
+            return pattern;
+        }
+
+        /**
+         * @return the string the pattern matches if it has no special chars, else null
+         */
+        public String getLiteral() {
+            return literal;
+        }
+    }
+
+    protected static class Key {
+        final String regex;
+        final int flags;
+
+        Key(String regex, int flags) {
+            this.regex = regex;
+            this.flags = flags;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+
+            Key key = (Key) o;
+            return flags == key.flags && regex.equals(key.regex);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * regex.hashCode() + flags;
+        }
+    }
+
+    protected final ConcurrentHashMap<Key, Entry> entries = new ConcurrentHashMap<>();
+    protected volatile int maxSize;
+
+    protected final AtomicLong clock = new AtomicLong();
+    protected final AtomicLong hits = new AtomicLong();
+    protected final AtomicLong misses = new AtomicLong();
+    protected final AtomicLong evictions = new AtomicLong();
+
+    public PatternCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * @param maxSize 0 - disables the cache
+     */
+    public PatternCache(int maxSize) {
+        setMaxSize(maxSize);
+    }
+
+    /**
+     * @throws java.util.regex.PatternSyntaxException
+     */
+    public Entry get(String regex, int flags) {
+        Key key = new Key(regex, flags);
+        Entry entry = entries.get(key);
+
+        if (entry != null) {
+            hits.incrementAndGet();
+            entry.lastAccess = clock.incrementAndGet();
+            return entry;
+        }
+
+        misses.incrementAndGet();
+        entry = new Entry(Pattern.compile(regex, flags), toLiteral(regex, flags));
+
+        if (maxSize == 0) {
+            return entry;
+        }
+
+        entry.lastAccess = clock.incrementAndGet();
+        Entry old = entries.putIfAbsent(key, entry);
+
+        if (old != null) {
+            old.lastAccess = entry.lastAccess;
+            return old;
+        }
+
+        if (entries.size() > maxSize) {
+            evict();
+        }
+
+        return entry;
+    }
+
+    public Pattern compile(String regex, int flags) {
+        return get(regex, flags).pattern;
+    }
+
+    protected synchronized void evict() {
+        int size = entries.size();
+        int max = maxSize;
+
+        if (size <= max) {
+            return;
+        }
+
+        List<Map.Entry<Key, Entry>> list = new ArrayList<>(entries.entrySet());
+        Collections.sort(list, new Comparator<Map.Entry<Key, Entry>>() {
+            @Override
+            public int compare(Map.Entry<Key, Entry> o1, Map.Entry<Key, Entry> o2) {
+                return Long.compare(o1.getValue().lastAccess, o2.getValue().lastAccess);
+            }
+        });
+
+        int count = Math.min(list.size(), size - max + max / 10);
+
+        for (int i = 0; i < count; i++) {
+            Map.Entry<Key, Entry> one = list.get(i);
+
+            if (entries.remove(one.getKey(), one.getValue())) {
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public void setMaxSize(int maxSize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("maxSize must be greater or equal 0");
+        }
+
+        this.maxSize = maxSize;
+
+        if (maxSize == 0) {
+            entries.clear();
+        } else if (entries.size() > maxSize) {
+            evict();
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public void resetStatistics() {
+        hits.set(0);
+        misses.set(0);
+        evictions.set(0);
+    }
+
+    /**
+     * @return the string the pattern matches if it has no special chars and flags changing the matching, else null
+     */
+    public static String toLiteral(String regex, int flags) {
+        if ((flags & (Pattern.CASE_INSENSITIVE | Pattern.CANON_EQ)) != 0) {
+            return null;
+        }
+
+        if ((flags & Pattern.LITERAL) != 0) {
+            return regex;
+        }
+
+        if ((flags & Pattern.COMMENTS) != 0) {
+            return null;
+        }
+
+        for (int i = 0; i < regex.length(); i++) {
+            if (META_CHARS.indexOf(regex.charAt(i)) != -1) {
+                return null;
+            }
+        }
+
+        return regex;
+    }
+}
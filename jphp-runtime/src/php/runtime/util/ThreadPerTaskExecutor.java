@@ -0,0 +1,149 @@
+package php.runtime.util;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Executor which starts a new thread for each task and never reuses it (like Executors.newThreadPerTaskExecutor()
+ * of Java 21). Tasks are not queued, the number of threads is not limited.
+ */
+public class ThreadPerTaskExecutor extends AbstractExecutorService {
+    private final ThreadFactory factory;
+
+    private final Object lock = new Object();
+    private final Set<Thread> threads = new HashSet<Thread>();
+
+    private boolean shutdown = false;
+    private long taskCount = 0;
+
+    public ThreadPerTaskExecutor(ThreadFactory factory) {
+        this.factory = factory;
+    }
+
+    @Override
+    public void execute(final Runnable command) {
+        if (command == null) {
+            throw new NullPointerException();
+        }
+
+        Thread thread;
+
+        synchronized (lock) {
+            if (shutdown) {
+                throw new RejectedExecutionException("Executor is shut down");
+            }
+
+            thread = factory.newThread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        command.run();
+                    } finally {
+                        finish(Thread.currentThread());
+                    }
+                }
+            });
+
+            threads.add(thread);
+            taskCount++;
+        }
+
+        try {
+            thread.start();
+        } catch (RuntimeException | Error e) {
+            finish(thread);
+            throw e;
+        }
+    }
+
+    private void finish(Thread thread) {
+        synchronized (lock) {
+            if (threads.remove(thread) && shutdown && threads.isEmpty()) {
+                lock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * @return the number of running tasks.
+     */
+    public int getActiveCount() {
+        synchronized (lock) {
+            return threads.size();
+        }
+    }
+
+    /**
+     * @return the number of started tasks.
+     */
+    public long getTaskCount() {
+        synchronized (lock) {
+            return taskCount;
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        synchronized (lock) {
+            shutdown = true;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Interrupts running tasks, there are no waiting tasks so the result is always empty.
+     */
+    @Override
+    public List<Runnable> shutdownNow() {
+        synchronized (lock) {
+            shutdown = true;
+
+            for (Thread thread : threads) {
+                thread.interrupt();
+            }
+
+            lock.notifyAll();
+        }
+
+        return new ArrayList<Runnable>();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        synchronized (lock) {
+            return shutdown;
+        }
+    }
+
+    @Override
+    public boolean isTerminated() {
+        synchronized (lock) {
+            return shutdown && threads.isEmpty();
+        }
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        long deadline = System.nanoTime() + nanos;
+
+        synchronized (lock) {
+            while (!(shutdown && threads.isEmpty())) {
+                if (nanos <= 0) {
+                    return false;
+                }
+
+                TimeUnit.NANOSECONDS.timedWait(lock, nanos);
+                nanos = deadline - System.nanoTime();
+            }
+
+            return true;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package php.runtime.util;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Virtual threads of Java 21+, the runtime is built for Java 8 so they are created via reflection.
+ * On older JVMs (or when the preview API is disabled) platform threads are used instead.
+ */
+public final class VirtualThreads {
+    private static final Object BUILDER;
+    private static final Method BUILDER_UNSTARTED;
+
+    static {
+        Object builder = null;
+        Method unstarted = null;
+
+        try {
+            builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            unstarted = Class.forName("java.lang.Thread$Builder").getMethod("unstarted", Runnable.class);
+        } catch (Throwable e) {
+            builder = null;
+            unstarted = null;
+        }
+
+        BUILDER = builder;
+        BUILDER_UNSTARTED = unstarted;
+    }
+
+    private VirtualThreads() {
+    }
+
+    public static boolean isSupported() {
+        return BUILDER != null;
+    }
+
+    /**
+     * Creates virtual threads when supported, otherwise daemon platform threads.
+     */
+    public static ThreadFactory newThreadFactory(final String prefix) {
+        final AtomicLong count = new AtomicLong();
+
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = null;
+
+                if (BUILDER != null) {
+                    try {
+                        thread = (Thread) BUILDER_UNSTARTED.invoke(BUILDER, runnable);
+                    } catch (Exception e) {
+                        thread = null;
+                    }
+                }
+
+                if (thread == null) {
+                    thread = new Thread(runnable);
+                    thread.setDaemon(true);
+                }
+
+                thread.setName(prefix + "-" + count.incrementAndGet());
+                return thread;
+            }
+        };
+    }
+
+    /**
+     * Executor which starts a new thread for each task, so thread locals never pass from one task to another.
+     * Threads are created by {@link #newThreadFactory}, without virtual threads these are platform threads.
+     */
+    public static ThreadPerTaskExecutor newExecutor(String prefix) {
+        return new ThreadPerTaskExecutor(newThreadFactory(prefix));
+    }
+}
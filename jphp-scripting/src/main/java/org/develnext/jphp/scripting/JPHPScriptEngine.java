@@ -1,50 +1,80 @@
 package org.develnext.jphp.scripting;
 
-import org.develnext.jphp.scripting.util.ReaderInputStream;
-import php.runtime.Information;
+import php.runtime.Memory;
+import php.runtime.env.CompileScope;
 import php.runtime.env.Context;
 import php.runtime.env.Environment;
-import php.runtime.launcher.Launcher;
+import php.runtime.env.ModuleCache;
+import php.runtime.lang.ForeachIterator;
 import php.runtime.memory.ArrayMemory;
 import php.runtime.memory.support.MemoryUtils;
 import php.runtime.reflection.ModuleEntity;
 
 import javax.script.*;
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 
+/**
+ * Compiled scripts are cached by the factory, scripts are evaluated in an environment of the current thread.
+ * Variables of bindings are copied to globals of the environment before a run and back after it.
+ */
 public class JPHPScriptEngine extends AbstractScriptEngine implements Compilable {
 
-    private static final String __ENGINE_VERSION__   = Information.CORE_VERSION;
-    private static final String __NAME__             = Information.NAME;
-    private static final String __SHORT_NAME__       = "jphp";
-    private static final String __LANGUAGE__         = "php";
-    private static final String __LANGUAGE_VERSION__ = Information.LIKE_PHP_VERSION;
+    private final JPHPScriptEngineFactory factory;
 
-    private ScriptEngineFactory factory = null;
-    private Environment environment;
+    private final ThreadLocal<ThreadState> states = new ThreadLocal<ThreadState>();
 
-    public JPHPScriptEngine() {
-        super();
+    protected static class ThreadState {
+        final Environment environment;
 
-        Launcher launcher = new Launcher();
-        try {
-            launcher.run(false);
-        } catch (Throwable e) {
-            //pass
+        // modules with declarations registered in the environment by the hash of their script,
+        // the environment keeps these declarations anyway.
+        final Map<String, ModuleEntity> modules = new HashMap<String, ModuleEntity>();
+
+        ThreadState(Environment environment) {
+            this.environment = environment;
         }
-        environment = new Environment(launcher.getCompileScope(), System.out);
-        environment.getDefaultBuffer().setImplicitFlush(true);
+    }
+
+    public JPHPScriptEngine() {
+        this(new JPHPScriptEngineFactory());
+    }
+
+    public JPHPScriptEngine(JPHPScriptEngineFactory factory) {
+        super();
+        this.factory = factory;
 
         JPHPContext ctx = new JPHPContext();
         ctx.setBindings(createBindings(), ScriptContext.ENGINE_SCOPE);
         setContext(ctx);
 
-        put(LANGUAGE_VERSION, __LANGUAGE_VERSION__);
-        put(LANGUAGE, __LANGUAGE__);
-        put(ENGINE, __NAME__);
-        put(ENGINE_VERSION, __ENGINE_VERSION__);
-        put(NAME, __SHORT_NAME__);
+        put(LANGUAGE_VERSION, factory.getLanguageVersion());
+        put(LANGUAGE, factory.getLanguageName());
+        put(ENGINE, factory.getEngineName());
+        put(ENGINE_VERSION, factory.getEngineVersion());
+        put(NAME, factory.getParameter(NAME));
+    }
+
+    /**
+     * @return the environment of the current thread, it's created on the first call
+     */
+    public Environment getEnvironment() {
+        return getState().environment;
+    }
+
+    protected ThreadState getState() {
+        ThreadState state = states.get();
+
+        if (state == null) {
+            Environment environment = new Environment(factory.getScope(), System.out);
+            environment.getDefaultBuffer().setImplicitFlush(true);
+
+            state = new ThreadState(environment);
+            states.set(state);
+        }
+
+        return state;
     }
 
     @Override
@@ -58,134 +88,190 @@ public class JPHPScriptEngine extends AbstractScriptEngine implements Compilable
     }
 
     @Override
-    public CompiledScript compile(String script) throws ScriptException {
-        return compile(new StringReader(script));
+    public CompiledScript compile(final String script) throws ScriptException {
+        String key = JPHPScriptEngineFactory.hash(script);
+        ModuleEntity module;
+
+        try {
+            module = factory.fetchModule(key, new ModuleCache.Loader() {
+                @Override
+                public ModuleEntity load() throws Throwable {
+                    Environment environment = getEnvironment();
+                    CompileScope scope = environment.getScope();
+
+                    Context context = new Context(new ByteArrayInputStream(script.getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8);
+
+                    // not registered in the scope, so an evicted module can be unloaded.
+                    ModuleEntity module = scope.createCompiler(environment, context).compile(false);
+                    synchronized (scope) {
+                        scope.loadModule(module);
+                    }
+
+                    return module;
+                }
+            });
+        } catch (Throwable e) {
+            throw new ScriptException(new Exception(e));
+        }
+
+        return new JPHPCompiledScript(key, module);
     }
 
     @Override
     public CompiledScript compile(Reader reader) throws ScriptException {
         try {
-            InputStream is = new ReaderInputStream(reader);
-            Context context = new Context(is);
-            ModuleEntity module = environment.importModule(context);
-            return new JPHPCompiledScript(module, environment);
+            StringBuilder sb = new StringBuilder();
+            char[] buffer = new char[8192];
+            int n;
+
+            while ((n = reader.read(buffer)) != -1) {
+                sb.append(buffer, 0, n);
+            }
+
+            return compile(sb.toString());
         } catch (IOException e) {
             throw new ScriptException(e);
-        } catch (Throwable e) {
-            throw new ScriptException(new Exception(e));
         }
     }
 
     @Override
     public Bindings createBindings() {
-        return new JPHPBindings(environment.getGlobals());
+        return new JPHPBindings();
     }
 
     @Override
-    public synchronized ScriptEngineFactory getFactory() {
-        if (factory == null) {
-            factory = new JPHPScriptEngineFactory();
-        }
+    public ScriptEngineFactory getFactory() {
         return factory;
     }
 
-    public void setFactory(JPHPScriptEngineFactory f) {
-        factory = f;
-    }
+    protected void importBindings(ScriptContext context, Environment environment) {
+        ArrayMemory globals = environment.getGlobals();
+        Set<String> superGlobals = environment.getScope().superGlobals;
 
-    public class JPHPBindings implements Bindings {
+        List<String> keys = new ArrayList<String>();
+        ForeachIterator iterator = globals.foreachIterator(false, false);
 
-        private ArrayMemory globals;
+        while (iterator.next()) {
+            String key = iterator.getKey().toString();
 
-        public JPHPBindings(ArrayMemory globals) {
-            this.globals = globals;
+            if (!superGlobals.contains(key)) {
+                keys.add(key);
+            }
         }
 
-        @Override
-        public Object put(String name, Object value) {
-            return globals.putAsKeyString(name, MemoryUtils.valueOf(value));
+        for (String key : keys) {
+            globals.removeByScalar(key);
         }
 
-        @Override
-        public void putAll(Map<? extends String, ? extends Object> toMerge) {
-            for (String key : toMerge.keySet()) {
-                put(key, toMerge.get(key));
-            }
-        }
+        importBindings(context.getBindings(ScriptContext.GLOBAL_SCOPE), globals, superGlobals);
+        importBindings(context.getBindings(ScriptContext.ENGINE_SCOPE), globals, superGlobals);
+    }
 
-        @Override
-        public void clear() {
-            globals.clear();
+    private static void importBindings(Bindings bindings, ArrayMemory globals, Set<String> superGlobals) {
+        if (bindings == null) {
+            return;
         }
 
-        @Override
-        public Set<String> keySet() {
-            Set<String> set = new HashSet<String>(size());
-            for (Object k : globals.keySet()) {
-                set.add(k.toString());
+        Map<String, Object> values = bindings instanceof JPHPBindings
+                ? ((JPHPBindings) bindings).snapshot()
+                : new HashMap<String, Object>(bindings);
+
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            if (!superGlobals.contains(entry.getKey())) {
+                globals.refOfIndex(entry.getKey()).assign(MemoryUtils.valueOf(entry.getValue()));
             }
-            return set;
         }
+    }
 
-        @Override
-        public Collection<Object> values() {
-            return new ArrayList<Object>(Arrays.asList(globals.values()));
+    protected void exportBindings(ScriptContext context, Environment environment) {
+        Bindings bindings = context.getBindings(ScriptContext.ENGINE_SCOPE);
+
+        if (bindings == null) {
+            return;
         }
 
-        @Override
-        public Set<Entry<String, Object>> entrySet() {
-            Set<Entry<String, Object>> set = new HashSet<Entry<String, Object>>(size());
-            for (Object k : globals.keySet()) {
-                set.add(new AbstractMap.SimpleEntry<String, Object>(k.toString(), get(k)));
+        Set<String> superGlobals = environment.getScope().superGlobals;
+        ForeachIterator iterator = environment.getGlobals().foreachIterator(false, false);
+
+        while (iterator.next()) {
+            String key = iterator.getKey().toString();
+
+            if (!superGlobals.contains(key)) {
+                bindings.put(key, iterator.getValue().toValue().toImmutable());
             }
-            return set;
         }
+    }
 
-        @Override
-        public int size() {
-            return globals.size();
-        }
+    /**
+     * Bindings shared by threads, values of php variables are stored as immutable Memory.
+     */
+    public static class JPHPBindings extends SimpleBindings {
+        private final Map<String, Object> map;
 
-        @Override
-        public boolean isEmpty() {
-            return size() == 0;
+        public JPHPBindings() {
+            this(Collections.synchronizedMap(new HashMap<String, Object>()));
         }
 
-        @Override
-        public boolean containsKey(Object key) {
-            return globals.containsKey(key);
+        private JPHPBindings(Map<String, Object> map) {
+            super(map);
+            this.map = map;
         }
 
-        @Override
-        public boolean containsValue(Object value) {
-            return false;
+        public Map<String, Object> snapshot() {
+            synchronized (map) {
+                return new HashMap<String, Object>(map);
+            }
         }
+    }
 
-        @Override
-        public Object get(Object key) {
-            return globals.getByScalar(key);
+    /**
+     * A script evicted from the cache and compiled again gets a new module, its declarations replace
+     * the ones of the old module of the script.
+     */
+    protected static void registerModule(ThreadState state, String key, ModuleEntity module) {
+        ModuleEntity registered = state.modules.get(key);
+
+        if (registered == module) {
+            return;
         }
 
-        @Override
-        public Object remove(Object key) {
-            return globals.removeByScalar(key);
+        if (module.getClasses().isEmpty() && module.getFunctions().isEmpty() && module.getConstants().isEmpty()) {
+            return;
         }
+
+        state.environment.registerModule(module, registered != null);
+        state.modules.put(key, module);
     }
 
     public class JPHPCompiledScript extends CompiledScript {
 
-        private ModuleEntity module;
-        private Environment environment;
-        public JPHPCompiledScript(ModuleEntity m, Environment env) {
+        private final String key;
+        private final ModuleEntity module;
+
+        public JPHPCompiledScript(String key, ModuleEntity m) {
+            this.key = key;
             module = m;
-            environment = env;
+        }
+
+        public ModuleEntity getModule() {
+            return module;
         }
 
         @Override
         public Object eval(ScriptContext context) throws ScriptException {
+            ThreadState state = getState();
+            Environment environment = state.environment;
+            Environment previous = Environment.bindCurrent(environment);
+
             try {
                 try {
-                    return module.include(environment);
+                    registerModule(state, key, module);
+
+                    importBindings(context, environment);
+                    Memory result = module.include(environment);
+                    exportBindings(context, environment);
+
+                    return result;
                 } catch (Exception e) {
                     environment.catchUncaught(e);
                 } catch (Throwable throwable) {
@@ -199,6 +285,8 @@ public class JPHPScriptEngine extends AbstractScriptEngine implements Compilable
                 }
             } catch (Throwable e) {
                 throw new ScriptException(new Exception(e));
+            } finally {
+                Environment.bindCurrent(previous);
             }
             return null;
         }
@@ -1,19 +1,56 @@
 package org.develnext.jphp.scripting;
 
+import php.runtime.Information;
+import php.runtime.common.DigestUtils;
+import php.runtime.env.CompileScope;
+import php.runtime.env.ModuleCache;
+import php.runtime.launcher.Launcher;
+import php.runtime.reflection.ModuleEntity;
+
 import javax.script.ScriptEngine;
 import javax.script.ScriptEngineFactory;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
-
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
 
+/**
+ * Engines of a factory share one compile scope and compiled scripts by the hash of their source,
+ * each engine runs scripts in its own environment per thread (THREADING = MULTITHREADED).
+ *
+ * The cache keeps the last recently used scripts (see {@link #setMaxCacheSize}), a script is compiled by one
+ * thread, others wait for its module. A module removed from the cache is unloaded when no compiled script
+ * or environment (via its declarations) uses it.
+ */
 public class JPHPScriptEngineFactory implements ScriptEngineFactory {
+    public static final String THREADING = "THREADING";
+    public static final int DEFAULT_MAX_CACHE_SIZE = 1024;
+
+    private static final String __ENGINE_VERSION__   = Information.CORE_VERSION;
+    private static final String __NAME__             = Information.NAME;
+    private static final String __SHORT_NAME__       = "jphp";
+    private static final String __LANGUAGE__         = "php";
+    private static final String __LANGUAGE_VERSION__ = Information.LIKE_PHP_VERSION;
 
     private static List<String> names;
     private static List<String> extensions;
     private static List<String> mimeTypes;
-    private static final ThreadLocal<JPHPScriptEngine> engines
-            = new ThreadLocal<JPHPScriptEngine>();
+
+    private volatile CompileScope scope;
+
+    private volatile int maxCacheSize = DEFAULT_MAX_CACHE_SIZE;
+    private final Map<String, Entry> modules = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > maxCacheSize;
+        }
+    };
+
+    private static class Entry {
+        final CountDownLatch latch = new CountDownLatch(1);
+        volatile ModuleEntity module;
+    }
 
     static {
         names = new ArrayList<String>(2);
@@ -31,14 +68,130 @@ public class JPHPScriptEngineFactory implements ScriptEngineFactory {
         mimeTypes = Collections.unmodifiableList(mimeTypes);
     }
 
+    /**
+     * Boots a launcher on the first call, its scope is shared by all engines of the factory.
+     */
+    public CompileScope getScope() {
+        CompileScope result = scope;
+
+        if (result == null) {
+            synchronized (this) {
+                result = scope;
+
+                if (result == null) {
+                    Launcher launcher = new Launcher();
+                    try {
+                        launcher.run(false);
+                    } catch (Throwable e) {
+                        //pass
+                    }
+
+                    scope = result = launcher.getCompileScope();
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the cached module of the key or compiles it via the loader in the current thread,
+     * a failed compilation is not cached and each waiter tries again (like {@link ModuleCache}).
+     */
+    public ModuleEntity fetchModule(String key, ModuleCache.Loader loader) throws Throwable {
+        while (true) {
+            Entry entry;
+            boolean created = false;
+
+            synchronized (modules) {
+                entry = modules.get(key);
+
+                if (entry == null) {
+                    entry = new Entry();
+                    modules.put(key, entry);
+                    created = true;
+                }
+            }
+
+            if (!created) {
+                entry.latch.await();
+
+                if (entry.module != null) {
+                    return entry.module;
+                }
+
+                continue; // failed in other thread.
+            }
+
+            try {
+                entry.module = loader.load();
+                return entry.module;
+            } finally {
+                if (entry.module == null) {
+                    synchronized (modules) {
+                        if (modules.get(key) == entry) {
+                            modules.remove(key);
+                        }
+                    }
+                }
+
+                entry.latch.countDown();
+            }
+        }
+    }
+
+    public int getMaxCacheSize() {
+        return maxCacheSize;
+    }
+
+    /**
+     * @param maxCacheSize the max number of cached scripts, 0 - scripts are not cached
+     */
+    public void setMaxCacheSize(int maxCacheSize) {
+        if (maxCacheSize < 0) {
+            throw new IllegalArgumentException("maxCacheSize must not be negative");
+        }
+
+        synchronized (modules) {
+            this.maxCacheSize = maxCacheSize;
+
+            Iterator<String> iterator = modules.keySet().iterator();
+            while (modules.size() > maxCacheSize && iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+            }
+        }
+    }
+
+    public int getCacheSize() {
+        synchronized (modules) {
+            return modules.size();
+        }
+    }
+
+    public void clearCache() {
+        synchronized (modules) {
+            modules.clear();
+        }
+    }
+
+    public static String hash(String source) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return DigestUtils.bytesToHex(digest.digest(source.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
     @Override
     public String getEngineName() {
-        return getScriptEngine().get(ScriptEngine.ENGINE).toString();
+        return __NAME__;
     }
 
     @Override
     public String getEngineVersion() {
-        return getScriptEngine().get(ScriptEngine.ENGINE_VERSION).toString();
+        return __ENGINE_VERSION__;
     }
 
     @Override
@@ -58,17 +211,32 @@ public class JPHPScriptEngineFactory implements ScriptEngineFactory {
 
     @Override
     public String getLanguageName() {
-        return getScriptEngine().get(ScriptEngine.LANGUAGE).toString();
+        return __LANGUAGE__;
     }
 
     @Override
     public String getLanguageVersion() {
-        return getScriptEngine().get(ScriptEngine.LANGUAGE_VERSION).toString();
+        return __LANGUAGE_VERSION__;
     }
 
     @Override
     public Object getParameter(String key) {
-        return getScriptEngine().get(key).toString();
+        switch (key) {
+            case ScriptEngine.ENGINE:
+                return __NAME__;
+            case ScriptEngine.ENGINE_VERSION:
+                return __ENGINE_VERSION__;
+            case ScriptEngine.NAME:
+                return __SHORT_NAME__;
+            case ScriptEngine.LANGUAGE:
+                return __LANGUAGE__;
+            case ScriptEngine.LANGUAGE_VERSION:
+                return __LANGUAGE_VERSION__;
+            case THREADING:
+                return "MULTITHREADED";
+            default:
+                return null;
+        }
     }
 
     @Override
@@ -122,12 +290,6 @@ public class JPHPScriptEngineFactory implements ScriptEngineFactory {
 
     @Override
     public ScriptEngine getScriptEngine() {
-        JPHPScriptEngine engine = engines.get();
-        if (engine == null) {
-            engine = new JPHPScriptEngine();
-            engine.setFactory(this);
-            engines.set(engine);
-        }
-        return engine;
+        return new JPHPScriptEngine(this);
     }
 }
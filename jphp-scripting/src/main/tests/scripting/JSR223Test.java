@@ -1,5 +1,7 @@
 package scripting;
 
+import org.develnext.jphp.scripting.JPHPScriptEngine;
+import org.develnext.jphp.scripting.JPHPScriptEngineFactory;
 import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -7,6 +9,10 @@ import org.junit.runners.JUnit4;
 import php.runtime.Information;
 
 import javax.script.*;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
 
 
 @RunWith(JUnit4.class)
@@ -51,4 +57,150 @@ public class JSR223Test {
         engine.put("foo", "second");
         Assert.assertEquals("second", script.eval().toString());
     }
+
+    @Test
+    public void testThreading() {
+        ScriptEngineManager factory = new ScriptEngineManager();
+        ScriptEngine engine = factory.getEngineByName("jphp");
+        Assert.assertEquals("MULTITHREADED", engine.getFactory().getParameter("THREADING"));
+    }
+
+    @Test
+    public void testCompiledCache() throws Exception {
+        ScriptEngineFactory f = new ScriptEngineManager().getEngineByName("jphp").getFactory();
+        ScriptEngine engine1 = f.getScriptEngine();
+        ScriptEngine engine2 = f.getScriptEngine();
+
+        CompiledScript script1 = ((Compilable) engine1).compile("<?php function cached_fn() { return 'cached'; } return cached_fn();");
+        CompiledScript script2 = ((Compilable) engine2).compile("<?php function cached_fn() { return 'cached'; } return cached_fn();");
+
+        Assert.assertSame(
+                ((JPHPScriptEngine.JPHPCompiledScript) script1).getModule(),
+                ((JPHPScriptEngine.JPHPCompiledScript) script2).getModule()
+        );
+
+        Assert.assertEquals("cached", script1.eval().toString());
+        Assert.assertEquals("cached", script1.eval().toString());
+        Assert.assertEquals("cached", script2.eval().toString());
+    }
+
+    @Test
+    public void testCompiledCacheSize() throws Exception {
+        JPHPScriptEngineFactory f = new JPHPScriptEngineFactory();
+        f.setMaxCacheSize(2);
+
+        Compilable engine = (Compilable) f.getScriptEngine();
+        JPHPScriptEngine.JPHPCompiledScript first = (JPHPScriptEngine.JPHPCompiledScript) engine.compile("<?php return 1;");
+
+        engine.compile("<?php return 2;");
+        engine.compile("<?php return 3;");
+        Assert.assertEquals(2, f.getCacheSize());
+
+        JPHPScriptEngine.JPHPCompiledScript again = (JPHPScriptEngine.JPHPCompiledScript) engine.compile("<?php return 1;");
+        Assert.assertNotSame(first.getModule(), again.getModule());
+        Assert.assertEquals("1", again.eval().toString());
+        Assert.assertEquals(2, f.getCacheSize());
+    }
+
+    @Test
+    public void testCompiledCacheRedeclare() throws Exception {
+        JPHPScriptEngineFactory f = new JPHPScriptEngineFactory();
+        f.setMaxCacheSize(1);
+
+        ScriptEngine engine = f.getScriptEngine();
+        String declaring = "<?php function decl_fn() { return 'declared'; } return decl_fn();";
+
+        Assert.assertEquals("declared", engine.eval(declaring).toString());
+        Assert.assertEquals("2", engine.eval("<?php return 2;").toString());
+
+        // compiled again after the eviction, its function replaces the old one.
+        Assert.assertEquals("declared", engine.eval(declaring).toString());
+        Assert.assertEquals("declared", engine.eval("<?php return decl_fn();").toString());
+    }
+
+    @Test
+    public void testCompiledCacheUnloads() throws Exception {
+        JPHPScriptEngineFactory f = new JPHPScriptEngineFactory();
+        f.setMaxCacheSize(1);
+
+        ScriptEngine engine = f.getScriptEngine();
+        WeakReference<Class<?>> ref = compileAndEval(engine, "<?php $x = 'unloaded'; return $x;");
+
+        engine.eval("<?php return 'other';");
+
+        for (int i = 0; i < 20 && ref.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+
+        Assert.assertNull(ref.get());
+    }
+
+    private static WeakReference<Class<?>> compileAndEval(ScriptEngine engine, String script) throws ScriptException {
+        JPHPScriptEngine.JPHPCompiledScript compiled = (JPHPScriptEngine.JPHPCompiledScript) ((Compilable) engine).compile(script);
+        Assert.assertEquals("unloaded", compiled.eval().toString());
+
+        return new WeakReference<Class<?>>(compiled.getModule().getNativeClazz());
+    }
+
+    @Test
+    public void testConcurrentCompile() throws Exception {
+        final ScriptEngine engine = new JPHPScriptEngineFactory().getScriptEngine();
+        final CountDownLatch start = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<CompiledScript>> futures = new ArrayList<>();
+
+            for (int i = 0; i < 8; i++) {
+                futures.add(executor.submit(new Callable<CompiledScript>() {
+                    @Override
+                    public CompiledScript call() throws Exception {
+                        start.await();
+                        return ((Compilable) engine).compile("<?php return 'concurrent';");
+                    }
+                }));
+            }
+
+            start.countDown();
+
+            JPHPScriptEngine.JPHPCompiledScript first = (JPHPScriptEngine.JPHPCompiledScript) futures.get(0).get();
+
+            for (Future<CompiledScript> future : futures) {
+                Assert.assertSame(first.getModule(), ((JPHPScriptEngine.JPHPCompiledScript) future.get()).getModule());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testConcurrentEval() throws Exception {
+        ScriptEngineManager factory = new ScriptEngineManager();
+        final ScriptEngine engine = factory.getEngineByName("jphp");
+        final CompiledScript script = ((Compilable) engine).compile("<?php return $x * 2;");
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> futures = new ArrayList<>();
+
+            for (int i = 0; i < 100; i++) {
+                final int x = i;
+                futures.add(executor.submit(new Callable<String>() {
+                    @Override
+                    public String call() throws Exception {
+                        Bindings bindings = engine.createBindings();
+                        bindings.put("x", x);
+                        return script.eval(bindings).toString();
+                    }
+                }));
+            }
+
+            for (int i = 0; i < 100; i++) {
+                Assert.assertEquals(String.valueOf(i * 2), futures.get(i).get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
 }